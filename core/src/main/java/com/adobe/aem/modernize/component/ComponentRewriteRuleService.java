@@ -20,6 +20,8 @@ package com.adobe.aem.modernize.component;
  * #L%
  */
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.sling.api.resource.Resource;
@@ -62,4 +64,37 @@ public interface ComponentRewriteRuleService extends RewriteRuleService {
    * @throws RewriteException if any errors occur when applying the rules
    */
   boolean apply(@NotNull final Resource resource, @NotNull final Set<String> rules) throws RewriteException;
+
+  /**
+   * Applies the indicated rules to each of the provided resources.
+   * <p>
+   * The rules are resolved once for the whole collection, and the child order of each parent is restored once after all
+   * of its resources are processed. An error on one resource does not prevent processing the others.
+   * <p>
+   * Transformations are performed but not saved.
+   *
+   * @param resources Resources to process
+   * @param rules     the ids of the rules to apply
+   * @return the outcome for each resource path, in the order provided
+   */
+  @NotNull
+  Map<String, Outcome> apply(@NotNull final Collection<Resource> resources, @NotNull final Set<String> rules);
+
+  /**
+   * Outcome of applying rules to a single resource.
+   */
+  enum Outcome {
+    /**
+     * One of the specified rules was successfully applied.
+     */
+    SUCCESS,
+    /**
+     * None of the specified rules matched, or the resource no longer exists.
+     */
+    NOT_FOUND,
+    /**
+     * An error occurred while applying the rules.
+     */
+    FAILED
+  }
 }
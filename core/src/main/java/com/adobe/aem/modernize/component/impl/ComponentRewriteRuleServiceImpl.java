@@ -20,26 +20,35 @@ package com.adobe.aem.modernize.component.impl;
  * #L%
  */
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import javax.jcr.Node;
-import javax.jcr.NodeIterator;
 import javax.jcr.RepositoryException;
+import javax.jcr.Session;
 
+import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
 
 import com.adobe.aem.modernize.RewriteException;
 import com.adobe.aem.modernize.component.ComponentRewriteRule;
 import com.adobe.aem.modernize.component.ComponentRewriteRuleService;
+import com.adobe.aem.modernize.impl.ChildOrder;
+import com.adobe.aem.modernize.impl.DetachedTree;
 import com.adobe.aem.modernize.rule.RewriteRule;
 import com.adobe.aem.modernize.rule.impl.AbstractRewriteRuleService;
 import org.jetbrains.annotations.NotNull;
+import org.osgi.framework.BundleContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
@@ -72,12 +81,21 @@ public class ComponentRewriteRuleServiceImpl extends AbstractRewriteRuleService<
 
   private Config config;
 
+  @Reference
+  private ResourceResolverFactory resourceResolverFactory;
+
   @NotNull
   @Override
   protected List<String> getSearchPaths() {
     return Arrays.asList(config.search_paths());
   }
 
+  @NotNull
+  @Override
+  protected ResourceResolverFactory getResourceResolverFactory() {
+    return resourceResolverFactory;
+  }
+
   @Override
   @Deprecated(since = "2.1.0")
   public void apply(@NotNull Resource resource, @NotNull Set<String> rules, boolean deep) throws RewriteException {
@@ -87,7 +105,13 @@ public class ComponentRewriteRuleServiceImpl extends AbstractRewriteRuleService<
       if (deep) {
         List<RewriteRule> rewrites = create(rr, rules);
         Node node = resource.adaptTo(Node.class);
-        ComponentTreeRewriter.rewrite(node, rewrites);
+        if (config.detached_rewrite()) {
+          DetachedTree tree = DetachedTree.load(node);
+          rewrite(tree.getRoot(), rewrites);
+          tree.writeBack();
+        } else {
+          rewrite(node, rewrites);
+        }
       } else {
         apply(resource, rules);
       }
@@ -96,6 +120,14 @@ public class ComponentRewriteRuleServiceImpl extends AbstractRewriteRuleService<
     }
   }
 
+  private void rewrite(Node node, List<RewriteRule> rewrites) throws RewriteException, RepositoryException {
+    if (config.incremental_rewrite()) {
+      new IncrementalTreeRewriter(rewrites).rewrite(node);
+    } else {
+      ComponentTreeRewriter.rewrite(node, rewrites);
+    }
+  }
+
   @Override
   public boolean apply(@NotNull Resource resource, @NotNull Set<String> rules) throws RewriteException {
     ResourceResolver rr = resource.getResourceResolver();
@@ -104,13 +136,9 @@ public class ComponentRewriteRuleServiceImpl extends AbstractRewriteRuleService<
     boolean success = false;
 
     try {
-      String nodeName = node.getName();
-      String prevName = null;
       Node parent = node.getParent();
       boolean isOrdered = parent.getPrimaryNodeType().hasOrderableChildNodes();
-      if (isOrdered) {
-        prevName = findPrevName(nodeName, parent);
-      }
+      List<String> order = isOrdered ? ChildOrder.getNames(parent) : null;
       for (RewriteRule rule : rewrites) {
         if (rule.matches(node)) {
           node = rule.applyTo(node, new HashSet<>());
@@ -120,7 +148,7 @@ public class ComponentRewriteRuleServiceImpl extends AbstractRewriteRuleService<
 
       // Only order if node wasn't removed
       if (node != null && isOrdered) {
-        orderParent(nodeName, prevName, parent);
+        ChildOrder.reorder(parent, order);
       }
     } catch (RepositoryException e) {
       throw new RewriteException("Repository exception while performing rewrite operation.", e);
@@ -128,37 +156,72 @@ public class ComponentRewriteRuleServiceImpl extends AbstractRewriteRuleService<
     return success;
   }
 
-  private String findPrevName(String nodeName, Node parent) throws RepositoryException {
-    String prevName = null;
-    // Need to figure out where in the parent's order we are.
-    NodeIterator siblings = parent.getNodes();
-    while (siblings.hasNext()) {
-      Node sibling = siblings.nextNode();
-      // Stop when we find ourself in list. Prev will either be set, or not.
-      if (sibling.getName().equals(nodeName)) {
-        break;
+  @NotNull
+  @Override
+  public Map<String, Outcome> apply(@NotNull Collection<Resource> resources, @NotNull Set<String> rules) {
+    Map<String, Outcome> outcomes = new LinkedHashMap<>();
+    if (resources.isEmpty()) {
+      return outcomes;
+    }
+    ResourceResolver rr = resources.iterator().next().getResourceResolver();
+    Session session = rr.adaptTo(Session.class);
+    List<RewriteRule> rewrites = create(rr, rules);
+
+    // Group by parent so each container's order is read and restored once; outcomes keep the order provided.
+    Map<String, List<String>> siblings = new LinkedHashMap<>();
+    for (Resource resource : resources) {
+      String path = resource.getPath();
+      outcomes.put(path, Outcome.NOT_FOUND);
+      siblings.computeIfAbsent(PathUtils.getParentPath(path), k -> new ArrayList<>()).add(path);
+    }
+    for (Map.Entry<String, List<String>> entry : siblings.entrySet()) {
+      applyToSiblings(session, entry.getKey(), entry.getValue(), rewrites, outcomes);
+    }
+    return outcomes;
+  }
+
+  /*
+    Applies the rules to each of the paths, all children of the same parent, then restores the parent's child order.
+    If the parent can't be read or reordered, the paths already rewritten keep their outcome, as their changes are kept.
+   */
+  private void applyToSiblings(Session session, String parentPath, List<String> paths, List<RewriteRule> rewrites, Map<String, Outcome> outcomes) {
+    int processed = 0;
+    try {
+      Node parent = session.getNode(parentPath);
+      List<String> order = parent.getPrimaryNodeType().hasOrderableChildNodes() ? ChildOrder.getNames(parent) : null;
+      for (String path : paths) {
+        outcomes.put(path, applyTo(session, path, rewrites));
+        processed++;
+      }
+      if (order != null) {
+        ChildOrder.reorder(parent, order);
+      }
+    } catch (RepositoryException e) {
+      logger.error("Repository exception while performing rewrite operation on children of [{}].", parentPath, e);
+      for (String path : paths.subList(processed, paths.size())) {
+        outcomes.put(path, Outcome.FAILED);
       }
-      prevName = sibling.getName();
     }
-    return prevName;
   }
 
-  private void orderParent(String nodeName, String prevName, Node parent) throws RepositoryException {
-    // Previous not set - we should be first in the order - if previous and first item in list, we're the only child.
-    if (prevName == null) {
-      String nextName = parent.getNodes().nextNode().getName();
-      if (!nextName.equals(nodeName)) {
-        parent.orderBefore(nodeName, nextName);
+  private Outcome applyTo(Session session, String path, List<RewriteRule> rewrites) {
+    try {
+      // A rule applied to a previous sibling may have removed this one
+      if (!session.nodeExists(path)) {
+        return Outcome.NOT_FOUND;
       }
-    } else {
-      NodeIterator siblings = parent.getNodes();
-      String siblingName = siblings.nextNode().getName();
-      while (!siblingName.equals(prevName)) {
-        // There has to be a better way to skip through a parent's children nodes.
-        siblingName = siblings.nextNode().getName();
+      Node node = session.getNode(path);
+      boolean success = false;
+      for (RewriteRule rule : rewrites) {
+        if (node != null && rule.matches(node)) {
+          node = rule.applyTo(node, new HashSet<>());
+          success = true;
+        }
       }
-      siblingName = siblings.nextNode().getName();
-      parent.orderBefore(nodeName, siblingName);
+      return success ? Outcome.SUCCESS : Outcome.NOT_FOUND;
+    } catch (RewriteException | RepositoryException e) {
+      logger.error("Component conversion of [{}] resulted in an error", path, e);
+      return Outcome.FAILED;
     }
   }
 
@@ -177,8 +240,15 @@ public class ComponentRewriteRuleServiceImpl extends AbstractRewriteRuleService<
   @Activate
   @Modified
   @SuppressWarnings("unused")
-  protected void activate(Config config) {
+  protected void activate(BundleContext context, Config config) {
     this.config = config;
+    registerRuleListener(context);
+  }
+
+  @Deactivate
+  @SuppressWarnings("unused")
+  protected void deactivate() {
+    unregisterRuleListener();
   }
 
   @ObjectClassDefinition(
@@ -192,6 +262,18 @@ public class ComponentRewriteRuleServiceImpl extends AbstractRewriteRuleService<
         cardinality = Integer.MAX_VALUE
     )
     String[] search_paths();
+
+    @AttributeDefinition(
+        name = "Incremental Deep Rewrites",
+        description = "Resume deep rewrites after each rewritten subtree, instead of restarting the traversal from the root."
+    )
+    boolean incremental_rewrite() default false;
+
+    @AttributeDefinition(
+        name = "Detached Deep Rewrites",
+        description = "Perform deep rewrites on an in-memory copy of the content, then write only the resulting differences to the repository."
+    )
+    boolean detached_rewrite() default false;
   }
 
 }
@@ -20,6 +20,7 @@ package com.adobe.aem.modernize.component.impl;
  * #L%
  */
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -29,11 +30,14 @@ import java.util.Map;
 import java.util.Set;
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
+import javax.jcr.Session;
 
 import org.apache.jackrabbit.commons.flat.TreeTraverser;
 
 import com.adobe.aem.modernize.RewriteException;
+import com.adobe.aem.modernize.impl.ChildOrder;
 import com.adobe.aem.modernize.rule.RewriteRule;
+import com.adobe.aem.modernize.rule.impl.RewriteRuleIndex;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
@@ -70,33 +74,26 @@ public class ComponentTreeRewriter {
 
     Map<String, Set<String>> processed = new HashMap<>();
     Set<String> finalPaths = new LinkedHashSet<>();
+    RewriteRuleIndex index = new RewriteRuleIndex(rules);
 
     do {
       matched = false;
+      index.reset();
       TreeTraverser traverser = new TreeTraverser(startNode);
       Iterator<Node> iterator = traverser.iterator();
       logger.debug("Starting new pre-order tree traversal at root: {}", startNode.getPath());
 
-      while (iterator.hasNext()) {
+      while (!matched && iterator.hasNext()) {
         Node node = iterator.next();
-
-        // If parent is ordered, move to the end to preserve order. Rules may delete/create new nodes on parent.
-        if (node.getParent().getPrimaryNodeType().hasOrderableChildNodes()) {
-          node.getParent().orderBefore(node.getName(), null);
-        }
-
-        // If we already matched, skip back to the root for next traversal
-        if (matched) {
-          continue;
-        }
+        String path = node.getPath();
 
         // If any rule indicated that the path is final
-        if (finalPaths.contains(node.getPath())) {
+        if (finalPaths.contains(path)) {
           continue;
         }
 
         // Apply the rules
-        for (RewriteRule rule : rules) {
+        for (RewriteRule rule : index.getCandidates(node)) {
 
           if (!processed.containsKey(rule.getId())) {
             processed.put(rule.getId(), new HashSet<>());
@@ -104,12 +101,15 @@ public class ComponentTreeRewriter {
 
           // Some rules may process a node without changing its state enough to no longer match.
           Set<String> ruleProcessedPaths = processed.get(rule.getId());
-          if (!ruleProcessedPaths.contains(node.getPath()) && rule.matches(node)) {
+          if (!ruleProcessedPaths.contains(path) && index.matches(rule, node)) {
 
-            String path = node.getPath();
             logger.debug("Rule [{}] matched subtree at [{}]", rule.getId(), path);
+            Session session = node.getSession();
+            String parentPath = node.getParent().getPath();
+            List<String> following = findFollowing(node);
             Node result = rule.applyTo(node, finalPaths);
             ruleProcessedPaths.add(path);
+            restoreOrder(session, parentPath, result, following);
 
             // set the start node in case it was rewritten
             if (node.equals(startNode)) {
@@ -128,4 +128,43 @@ public class ComponentTreeRewriter {
 
     return startNode;
   }
+
+  /*
+    The names of the siblings following the node, if its parent is ordered.
+   */
+  private static List<String> findFollowing(Node node) throws RepositoryException {
+    Node parent = node.getParent();
+    if (!parent.getPrimaryNodeType().hasOrderableChildNodes()) {
+      return Collections.emptyList();
+    }
+    List<String> names = ChildOrder.getNames(parent);
+    return names.subList(names.indexOf(node.getName()) + 1, names.size());
+  }
+
+  /*
+    Rewrites may create the result as the last child, move it back in front of the first following sibling that still
+    exists. Nodes are not moved while traversing, so the order of all other children is kept as it is.
+   */
+  private static void restoreOrder(Session session, String parentPath, Node result, List<String> following) throws RepositoryException {
+    if (result == null || following.isEmpty() || !session.nodeExists(parentPath)) {
+      return;
+    }
+    Node parent = session.getNode(parentPath);
+    if (!result.getParent().isSame(parent)) {
+      return;
+    }
+    String name = result.getName();
+    List<String> order = ChildOrder.getNames(parent);
+    order.remove(name);
+    int position = order.size();
+    for (String next : following) {
+      // Aggregate rules remove some siblings, those are skipped
+      if (!next.equals(name) && order.contains(next)) {
+        position = order.indexOf(next);
+        break;
+      }
+    }
+    order.add(position, name);
+    ChildOrder.reorder(parent, order);
+  }
 }
@@ -0,0 +1,205 @@
+package com.adobe.aem.modernize.component.impl;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2026 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+
+import com.adobe.aem.modernize.RewriteException;
+import com.adobe.aem.modernize.rule.RewriteRule;
+import com.adobe.aem.modernize.rule.impl.RewriteRuleIndex;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Performs deep rewrites based on specified rules, without restarting the traversal after each rewrite.
+ * <p>
+ * Each parent's children are processed from a list of their names; after a rewrite, processing resumes with the
+ * rewritten subtree and then the following siblings. Only the nodes whose match could have been changed by a rewrite
+ * are checked again: once a parent's children are processed, if any of them changed, the children are checked again
+ * (for aggregate rules) and so is the parent (for patterns with descendants). Unchanged subtrees are not visited again.
+ * <p>
+ * The semantics are those of {@link ComponentTreeRewriter}: a rule is applied to a path at most once, the first
+ * matching rule in order is applied, and final paths are never rewritten.
+ * <p>
+ * Changes are not saved.
+ */
+class IncrementalTreeRewriter {
+
+  private static final Logger logger = LoggerFactory.getLogger(IncrementalTreeRewriter.class);
+
+  private final RewriteRuleIndex index;
+  private final Map<String, Set<String>> processed = new HashMap<>();
+  private final Set<String> finalPaths = new LinkedHashSet<>();
+  private int rewrites = 0;
+
+  /**
+   * Creates a rewriter for the rules.
+   *
+   * @param rules the rules to apply, in order
+   */
+  IncrementalTreeRewriter(@NotNull List<RewriteRule> rules) {
+    this.index = new RewriteRuleIndex(rules);
+  }
+
+  /**
+   * Rewrites the specified tree.
+   * <p>
+   * An exception is thrown if any error occurs terminating the rewrite at that location in the traversal. Changes are not reverted.
+   *
+   * @param root The root of the tree to be rewritten
+   * @return the root node of the rewritten tree, or null if it was removed
+   * @throws RewriteException if the rewrite operation fails
+   * @throws RepositoryException if there is a problem with the repository
+   */
+  @Nullable
+  Node rewrite(@NotNull Node root) throws RewriteException, RepositoryException {
+    String rootPath = root.getPath();
+    logger.debug("Incrementally rewriting content tree rooted at: {}", rootPath);
+    long tick = System.currentTimeMillis();
+
+    Node current = rewriteNode(root, null, 0);
+    if (current != null) {
+      rewriteChildren(current);
+    }
+    // Rewrites below the root may cause it to match, check it again until nothing changes.
+    int before = 0;
+    while (current != null && rewrites != before) {
+      before = rewrites;
+      current = rewriteNode(current, null, 0);
+      if (current != null && rewrites != before) {
+        rewriteChildren(current);
+      }
+    }
+
+    long tock = System.currentTimeMillis();
+    logger.debug("Rewrote content tree rooted at [{}] in {}ms with {} rewrites", rootPath, tock - tick, rewrites);
+    return current;
+  }
+
+  /*
+    Processes the children, and their trees, until no more rewrites occur at this level.
+   */
+  private void rewriteChildren(Node parent) throws RewriteException, RepositoryException {
+    boolean changed = processChildren(parent, true);
+    while (changed) {
+      changed = processChildren(parent, false);
+    }
+  }
+
+  /*
+    Checks each child, and when deep, or when the child was rewritten, its subtree.
+    Returns true if anything changed in the children or their trees.
+   */
+  private boolean processChildren(Node parent, boolean deep) throws RewriteException, RepositoryException {
+    List<String> names = childNames(parent);
+    int before = rewrites;
+    for (int i = 0; i < names.size(); i++) {
+      String name = names.get(i);
+      // Aggregate rules remove siblings
+      if (!parent.hasNode(name)) {
+        continue;
+      }
+      int checked = rewrites;
+      Node child = rewriteNode(parent.getNode(name), names, i);
+      if (child != null && (deep || rewrites != checked)) {
+        rewriteChildren(child);
+      }
+    }
+    return rewrites != before;
+  }
+
+  /*
+    Applies the first matching rule to the node, repeating on the result until no rule matches.
+    Returns the resulting node, or null if it was removed.
+   */
+  private Node rewriteNode(Node node, List<String> siblings, int position) throws RewriteException, RepositoryException {
+    Node current = node;
+    while (current != null && !finalPaths.contains(current.getPath())) {
+      RewriteRule rule = findRule(current);
+      if (rule == null) {
+        break;
+      }
+      String path = current.getPath();
+      logger.debug("Rule [{}] matched subtree at [{}]", rule.getId(), path);
+      Node parent = current.getParent();
+      if (siblings == null) {
+        siblings = childNames(parent);
+        position = siblings.indexOf(current.getName());
+      }
+      current = rule.applyTo(current, finalPaths);
+      processed.get(rule.getId()).add(path);
+      rewrites++;
+      index.reset();
+      restoreOrder(parent, current, siblings, position);
+    }
+    return current;
+  }
+
+  @Nullable
+  private RewriteRule findRule(Node node) throws RepositoryException {
+    String path = node.getPath();
+    for (RewriteRule rule : index.getCandidates(node)) {
+      // Some rules may process a node without changing its state enough to no longer match.
+      Set<String> ruleProcessedPaths = processed.computeIfAbsent(rule.getId(), id -> new HashSet<>());
+      if (!ruleProcessedPaths.contains(path) && index.matches(rule, node)) {
+        return rule;
+      }
+    }
+    return null;
+  }
+
+  /*
+    Rewrites may create the result as the last child, move it back in front of the first following sibling.
+   */
+  private static void restoreOrder(Node parent, Node result, List<String> siblings, int position) throws RepositoryException {
+    if (result == null || !parent.getPrimaryNodeType().hasOrderableChildNodes() || !result.getParent().isSame(parent)) {
+      return;
+    }
+    String name = result.getName();
+    for (int i = position + 1; i < siblings.size(); i++) {
+      String next = siblings.get(i);
+      if (!next.equals(name) && parent.hasNode(next)) {
+        parent.orderBefore(name, next);
+        return;
+      }
+    }
+  }
+
+  private static List<String> childNames(Node parent) throws RepositoryException {
+    List<String> names = new ArrayList<>();
+    NodeIterator children = parent.getNodes();
+    while (children.hasNext()) {
+      names.add(children.nextNode().getName());
+    }
+    return names;
+  }
+}
@@ -20,18 +20,22 @@ package com.adobe.aem.modernize.component.job;
  * #L%
  */
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
 import org.apache.sling.event.jobs.consumer.JobExecutionContext;
 import org.apache.sling.event.jobs.consumer.JobExecutor;
 
-import com.adobe.aem.modernize.RewriteException;
 import com.adobe.aem.modernize.component.ComponentRewriteRuleService;
+import com.adobe.aem.modernize.component.ComponentRewriteRuleService.Outcome;
 import com.adobe.aem.modernize.job.AbstractConversionJobExecutor;
 import com.adobe.aem.modernize.model.ConversionJobBucket;
 import org.jetbrains.annotations.NotNull;
@@ -55,37 +59,53 @@ public class ComponentJobExecutor extends AbstractConversionJobExecutor {
   @Reference
   private ResourceResolverFactory resourceResolverFactory;
 
+  @Reference
+  private JobManager jobManager;
+
   @Override
   protected void doProcess(@NotNull Job job, @NotNull JobExecutionContext context, @NotNull ConversionJobBucket bucket) {
 
     Resource resource = bucket.getResource();
-    final List<String> paths = bucket.getPaths();
+    final List<String> paths = getPendingPaths(bucket);
     context.initProgress(paths.size(), -1);
 
     final Set<String> rules = getComponentRules(bucket);
     if (rules.isEmpty()) {
       context.log("No component rules found, skipping skipping component conversion.");
     } else {
+      // Rewrite and save in batches, so that the transient space stays bounded
       ResourceResolver rr = resource.getResourceResolver();
-      for (String path : paths) {
-        Resource r = rr.getResource(path);
-        if (r != null) {
-          try {
-            if (componentService.apply(r, rules)) {
-              bucket.getSuccess().add(path);
-            } else {
-              bucket.getNotFound().add(path);
-            }
-          } catch (RewriteException e) {
-            logger.error("Component conversion resulted in an error", e);
-            bucket.getFailed().add(path);
-          }
-        } else {
-          bucket.getNotFound().add(path);
-        }
-        context.incrementProgressCount(1);
+      PeriodicCommit commit = periodicCommit(bucket);
+      int size = getCommitInterval() > 0 ? getCommitInterval() : paths.size();
+      for (int start = 0; start < paths.size(); start += size) {
+        List<String> batch = paths.subList(start, Math.min(start + size, paths.size()));
+        apply(rr, batch, rules, bucket, context, commit);
+      }
+    }
+  }
+
+  private void apply(ResourceResolver rr, List<String> paths, Set<String> rules, ConversionJobBucket bucket, JobExecutionContext context, PeriodicCommit commit) {
+    List<Resource> resources = new ArrayList<>();
+    for (String path : paths) {
+      Resource r = rr.getResource(path);
+      if (r != null) {
+        resources.add(r);
       }
     }
+
+    Map<String, Outcome> outcomes = resources.isEmpty() ? Collections.emptyMap() : componentService.apply(resources, rules);
+    for (String path : paths) {
+      Outcome outcome = outcomes.getOrDefault(path, Outcome.NOT_FOUND);
+      if (outcome == Outcome.SUCCESS) {
+        bucket.getSuccess().add(path);
+      } else if (outcome == Outcome.FAILED) {
+        bucket.getFailed().add(path);
+      } else {
+        bucket.getNotFound().add(path);
+      }
+      context.incrementProgressCount(1);
+      commit.processed(path);
+    }
   }
 
   @Override
@@ -93,4 +113,9 @@ public class ComponentJobExecutor extends AbstractConversionJobExecutor {
     return resourceResolverFactory;
   }
 
+  @Override
+  protected JobManager getJobManager() {
+    return jobManager;
+  }
+
 }
@@ -31,12 +31,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
-import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.jcr.Node;
 import javax.jcr.NodeIterator;
-import javax.jcr.Property;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 
@@ -51,6 +49,8 @@ import org.apache.sling.api.resource.ResourceResolverFactory;
 
 import com.adobe.aem.modernize.RewriteException;
 import com.adobe.aem.modernize.component.ComponentRewriteRule;
+import com.adobe.aem.modernize.impl.ChildOrder;
+import com.adobe.aem.modernize.impl.ResourceTypeHierarchy;
 import com.day.cq.commons.jcr.JcrUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -114,6 +114,9 @@ public class ColumnControlRewriteRule implements ComponentRewriteRule {
   @Reference
   private ResourceResolverFactory resourceResolverFactory;
 
+  @Reference
+  private ResourceTypeHierarchy resourceTypeHierarchy;
+
   @Override
   public String getTitle() {
     String[] names = new String[widths.size()];
@@ -137,26 +140,20 @@ public class ColumnControlRewriteRule implements ComponentRewriteRule {
     if (!node.hasProperty(SLING_RESOURCE_TYPE_PROPERTY)) {
       return false;
     }
-    Property property = node.getProperty(SLING_RESOURCE_TYPE_PROPERTY);
-    boolean found = false;
-    Session session = node.getSession();
-    try (ResourceResolver rr = resourceResolverFactory.getResourceResolver(Collections.singletonMap(AUTHENTICATION_INFO_SESSION, session))) {
-      String resourceType = property.getString();
-      while (StringUtils.isNotBlank(resourceType)) {
-        if (StringUtils.equals(RESPONSIVE_GRID_BASE_TYPE, resourceType)) {
-          found = true;
-          break; // This node is of the correct type.
-        }
-        resourceType = rr.getParentResourceType(resourceType);
-
+    String resourceType = node.getProperty(SLING_RESOURCE_TYPE_PROPERTY).getString();
+    Set<String> hierarchy = resourceTypeHierarchy.getCached(resourceType);
+    if (hierarchy == null) {
+      Session session = node.getSession();
+      try (ResourceResolver rr = resourceResolverFactory.getResourceResolver(Collections.singletonMap(AUTHENTICATION_INFO_SESSION, session))) {
+        hierarchy = resourceTypeHierarchy.getHierarchy(rr, resourceType);
+      } catch (LoginException e) {
+        logger.error("Unable to get a ResourceResolver using Node Session info.", e);
+        return false;
       }
-    } catch (LoginException e) {
-      logger.error("Unable to get a ResourceResolver using Node Session info.", e);
-      return false;
     }
 
-    if (!found) {
-      return false;
+    if (!hierarchy.contains(RESPONSIVE_GRID_BASE_TYPE)) {
+      return false; // This node is not of the correct type.
     }
 
     return findFirstColumn(node.getNodes()) != null;
@@ -188,132 +185,107 @@ public class ColumnControlRewriteRule implements ComponentRewriteRule {
   }
 
   private Node processResponsiveGrid(Node root) throws RepositoryException {
+    ColumnLayout model = readLayout(root);
+    List<String> order = new ArrayList<>();
+    for (Section section : model.sections) {
+      order.addAll(section.before);
+      for (Node control : section.controls) {
+        control.remove();
+      }
 
-    Function<List<Queue<String>>, Boolean> empty = (queues) -> {
-      Queue<String> found = queues.stream().filter(q -> !q.isEmpty()).findFirst().orElse(null);
-      return found == null;
-    };
-
-    Queue<String> order = new LinkedList<>();
-
-    List<Queue<String>> columnContents = getColumnContent(root);
-
-    // Sort the nodes onto the parent using responsive grid settings.
-    Node child;
-    NodeIterator siblings = root.getNodes();
-
-    do {
-      child = siblings.nextNode();
-      if (isColumnNode(child)) {
-        child.remove();
-        break;
+      // Sort the column contents onto the parent using responsive grid settings, one row at a time.
+      List<Queue<Node>> contents = new ArrayList<>();
+      for (List<Node> column : section.columns) {
+        contents.add(new LinkedList<>(column));
       }
-      order.add(child.getName());
-    } while (siblings.hasNext());
-
-    boolean offset = false;
-    boolean newline = false;
-    while (!empty.apply(columnContents) && siblings.hasNext()) {
-      for (int c = 0; c < columnContents.size(); c++) {
-        Queue<String> column = columnContents.get(c);
-        if (c == 0 && column.isEmpty()) {
-          offset = true;
-          continue;
-
-        } else if (c != 0 && column.isEmpty()) {
-          newline = true;
-          continue;
-        }
-        Node node = root.getNode(column.remove());
-        addResponsive(node, c, newline, offset);
-        order.add(node.getName());
-        child = siblings.nextNode();
-        if (isColumnNode(child)) {
-          child.remove();
-          siblings.nextNode();
+      boolean offset = false;
+      boolean newline = false;
+      while (contents.stream().anyMatch(q -> !q.isEmpty())) {
+        for (int c = 0; c < contents.size(); c++) {
+          Queue<Node> column = contents.get(c);
+          if (column.isEmpty()) {
+            if (c == 0) {
+              offset = true;
+            } else {
+              newline = true;
+            }
+            continue;
+          }
+          Node node = column.remove();
+          addResponsive(node, c, newline, offset);
+          order.add(node.getName());
+          offset = false;
+          newline = false;
         }
-        offset = false;
-        newline = false;
       }
     }
-
-    // Move remaining non column content to the end, preserve the order.
-    while (siblings.hasNext()) {
-      child = siblings.nextNode();
-      if (isColumnNode(child)) {
-        child.remove();
-        continue;
-      }
-      order.add(child.getName());
-    }
-
-    while (!order.isEmpty()) {
-      root.orderBefore(order.remove(), null);
-    }
-
+    order.addAll(model.trailing);
+    ChildOrder.reorder(root, order);
     return root;
   }
 
   private Node processContainer(Node root, Set<String> finalPaths) throws RepositoryException {
-
-    NodeIterator siblings = root.getNodes();
-    Node node = findFirstColumn(siblings);
-    if (node == null) {
+    ColumnLayout model = readLayout(root);
+    if (model.sections.isEmpty()) {
       return root; // Protect against NPE if incorrectly called.
     }
     Session session = root.getSession();
-    int i = 0;
-    node.remove(); // Remove the starting column.
-    do {
-      // Create the container
-      String name = JcrUtil.createValidChildName(root, NN_HINT);
-      Node container = root.addNode(name, NT_UNSTRUCTURED);
-      container.setProperty(SLING_RESOURCE_TYPE_PROPERTY, containerResourceType);
-      addResponsive(container, i, false, false);
-      finalPaths.add(container.getPath());
-
-      // Added the container, remove the column break;
-      // Move the nodes up to the next column into the container.
-      while (siblings.hasNext()) {
-        node = siblings.nextNode();
-        if (StringUtils.equals(columnControlResourceType, node.getProperty(SLING_RESOURCE_TYPE_PROPERTY).getString())) {
-          // Node is now the next column break;
-          node.remove();  // Remove the columns when we find it, this ensures the end column gets deleted too.
-          break;
+    List<String> order = new ArrayList<>();
+    for (Section section : model.sections) {
+      order.addAll(section.before);
+      for (Node control : section.controls) {
+        control.remove();
+      }
+      for (int i = 0; i < columns; i++) {
+        // Create the container, then move the column's contents into it.
+        String name = JcrUtil.createValidChildName(root, NN_HINT);
+        Node container = root.addNode(name, NT_UNSTRUCTURED);
+        container.setProperty(SLING_RESOURCE_TYPE_PROPERTY, containerResourceType);
+        addResponsive(container, i, false, false);
+        finalPaths.add(container.getPath());
+        for (Node node : section.columns.get(i)) {
+          session.move(node.getPath(), PathUtils.concat(container.getPath(), node.getName()));
         }
-        session.move(node.getPath(), PathUtils.concat(container.getPath(), node.getName()));
+        order.add(name);
       }
-
-      i++;
-    } while (i < columns);
-
-    // Move remaining siblings to after the containers.
-    while (siblings.hasNext()) {
-      Node next = siblings.nextNode();
-      root.orderBefore(next.getName(), null);
     }
+    order.addAll(model.trailing);
+    ChildOrder.reorder(root, order);
     return root;
   }
 
-  private List<Queue<String>> getColumnContent(Node root) throws RepositoryException {
-    List<Queue<String>> columnContents = new ArrayList<>();
+  /*
+    Partitions the children in one pass: every column control of this layout starts a section, whose columns are
+    ended by the next column control nodes. The children around the sections are kept by name, in order.
+   */
+  private ColumnLayout readLayout(Node root) throws RepositoryException {
+    ColumnLayout model = new ColumnLayout();
+    Section current = new Section();
     NodeIterator siblings = root.getNodes();
-    findFirstColumn(siblings);
-    int i = 0;
-    do {
-      Queue<String> nodeNames = new LinkedList<>();
-      columnContents.add(nodeNames);
-      while (siblings.hasNext()) {
-        Node node = siblings.nextNode();
-        if (StringUtils.equals(columnControlResourceType, node.getProperty(SLING_RESOURCE_TYPE_PROPERTY).getString())) {
-          // Node is now the next column break;
-          break;
+    while (siblings.hasNext()) {
+      Node node = siblings.nextNode();
+      if (!isFirstColumn(node)) {
+        current.before.add(node.getName());
+        continue;
+      }
+      current.controls.add(node);
+      for (int i = 0; i < columns; i++) {
+        List<Node> column = new ArrayList<>();
+        current.columns.add(column);
+        while (siblings.hasNext()) {
+          Node child = siblings.nextNode();
+          if (isColumnNode(child)) {
+            current.controls.add(child); // Break or end of the column
+            break;
+          }
+          column.add(child);
         }
-        nodeNames.add(node.getName());
       }
-      i++;
-    } while (i < columns);
-    return columnContents;
+      model.sections.add(current);
+      current = new Section();
+    }
+    model.trailing.addAll(current.before);
+    return model;
   }
 
   private boolean isColumnNode(Node node) throws RepositoryException {
@@ -344,28 +316,20 @@ public class ColumnControlRewriteRule implements ComponentRewriteRule {
 
   // Move the NodeIterator to the column if found.
   private Node findFirstColumn(NodeIterator siblings) throws RepositoryException {
-    Node found = null;
-
-    while (siblings.hasNext() && found == null) {
+    while (siblings.hasNext()) {
       Node node = siblings.nextNode();
-      if (!node.hasProperty(SLING_RESOURCE_TYPE_PROPERTY)) {
-        continue;
-      }
-      Property property = node.getProperty(SLING_RESOURCE_TYPE_PROPERTY);
-      if (property == null || !StringUtils.equals(columnControlResourceType, property.getString())) {
-        continue;
+      if (isFirstColumn(node)) {
+        return node;
       }
+    }
+    return null;
+  }
 
-      if (!node.hasProperty(PN_LAYOUT)) {
-        continue;
-      }
-      property = node.getProperty(PN_LAYOUT);
-      if (property == null || !StringUtils.equals(layout, property.getString())) {
-        continue;
-      }
-      found = node;
+  private boolean isFirstColumn(Node node) throws RepositoryException {
+    if (!isColumnNode(node) || !node.hasProperty(PN_LAYOUT)) {
+      return false;
     }
-    return found;
+    return StringUtils.equals(layout, node.getProperty(PN_LAYOUT).getString());
   }
 
   // This Rule matches off a parent container which has the columns.
@@ -377,16 +341,8 @@ public class ColumnControlRewriteRule implements ComponentRewriteRule {
       @Override
       protected void visit(@NotNull Resource resource) {
         String resourceType = resource.getResourceType();
-        if (StringUtils.equals(PARSYS_BASE_TYPE, resourceType)) {
+        if (StringUtils.equals(PARSYS_BASE_TYPE, resourceType) || resourceTypeHierarchy.isA(rr, resourceType, RESPONSIVE_GRID_BASE_TYPE)) {
           paths.add(resource.getPath());
-        } else {
-          while (StringUtils.isNotBlank(resourceType)) {
-            if (StringUtils.equals(RESPONSIVE_GRID_BASE_TYPE, resourceType)) {
-              paths.add(resource.getPath());
-              break; // This node is of the correct type.
-            }
-            resourceType = rr.getParentResourceType(resourceType);
-          }
         }
       }
     }.accept(resource);
@@ -464,6 +420,20 @@ public class ColumnControlRewriteRule implements ComponentRewriteRule {
     }
   }
 
+  /*
+    The column control sections of a parent, and the children which follow the last of them.
+   */
+  private static final class ColumnLayout {
+    private final List<Section> sections = new ArrayList<>();
+    private final List<String> trailing = new ArrayList<>();
+  }
+
+  private static final class Section {
+    private final List<String> before = new ArrayList<>();
+    private final List<Node> controls = new ArrayList<>();
+    private final List<List<Node>> columns = new ArrayList<>();
+  }
+
   @ObjectClassDefinition(
       name = "AEM Modernize Tools - Column Control Rewrite Rule",
       description = "Rewrites Column control components to grid replacements."
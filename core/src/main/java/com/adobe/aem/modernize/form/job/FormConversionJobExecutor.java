@@ -35,6 +35,7 @@ import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
 import org.apache.sling.event.jobs.consumer.JobExecutionContext;
 import org.apache.sling.event.jobs.consumer.JobExecutor;
 import org.jetbrains.annotations.NotNull;
@@ -67,6 +68,9 @@ public class FormConversionJobExecutor extends AbstractConversionJobExecutor {
     @Reference
     private ResourceResolverFactory resourceResolverFactory;
 
+    @Reference
+    private JobManager jobManager;
+
     @Override
     protected void doProcess(@NotNull Job job, @NotNull JobExecutionContext context, @NotNull ConversionJobBucket bucket) {
         final ConversionJob.PageHandling pageHandling = getPageHandling(bucket);
@@ -78,14 +82,16 @@ public class FormConversionJobExecutor extends AbstractConversionJobExecutor {
         PageManager pm = rr.adaptTo(PageManager.class);
         Set<String> componentRules = getComponentRules(bucket);
 
-        List<String> paths = bucket.getPaths();
+        List<String> paths = getPendingPaths(bucket);
         context.initProgress(paths.size(), -1);
 
+        PeriodicCommit commit = periodicCommit(bucket);
         for (String path : paths) {
             Page page = pm.getPage(path);
             if (page == null) {
                 bucket.getNotFound().add(path);
                 context.incrementProgressCount(1);
+                commit.processed(path);
                 continue;
             }
 
@@ -129,6 +135,7 @@ public class FormConversionJobExecutor extends AbstractConversionJobExecutor {
                 bucket.getFailed().add(path);
             }
             context.incrementProgressCount(1);
+            commit.processed(path);
         }
     }
 
@@ -137,6 +144,11 @@ public class FormConversionJobExecutor extends AbstractConversionJobExecutor {
         return resourceResolverFactory;
     }
 
+    @Override
+    protected JobManager getJobManager() {
+        return jobManager;
+    }
+
     private String getFormsAssetPathFromPagePath(String pagePath) {
         return StringUtils.replace(pagePath, AF_ROOT, DAM_ROOT);
     }
@@ -0,0 +1,160 @@
+package com.adobe.aem.modernize.impl;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2026 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Orders the children of a node using the fewest possible {@link Node#orderBefore(String, String)} calls.
+ * <p>
+ * The children which are already in the desired relative order, the longest increasing subsequence of their current
+ * positions, are left in place; only the remaining children are moved.
+ */
+public final class ChildOrder {
+
+  private ChildOrder() {
+  }
+
+  /**
+   * Lists the names of the node's children, in their current order.
+   *
+   * @param parent the node whose children to list
+   * @return the child names
+   * @throws RepositoryException if the children cannot be read
+   */
+  @NotNull
+  public static List<String> getNames(@NotNull Node parent) throws RepositoryException {
+    List<String> names = new ArrayList<>();
+    NodeIterator children = parent.getNodes();
+    while (children.hasNext()) {
+      names.add(children.nextNode().getName());
+    }
+    return names;
+  }
+
+  /**
+   * Builds the order which results from moving the specified names, in the order given, to the end of the list.
+   *
+   * @param current the current order of the children
+   * @param last    the names to move to the end; any which aren't in the current order are ignored
+   * @return the new order
+   */
+  @NotNull
+  public static List<String> moveToEnd(@NotNull List<String> current, @NotNull Collection<String> last) {
+    Set<String> moved = new LinkedHashSet<>(last);
+    moved.retainAll(new HashSet<>(current));
+    List<String> desired = new ArrayList<>(current.size());
+    for (String name : current) {
+      if (!moved.contains(name)) {
+        desired.add(name);
+      }
+    }
+    desired.addAll(moved);
+    return desired;
+  }
+
+  /**
+   * Orders the children of the parent as specified.
+   * <p>
+   * Names which aren't children of the parent are ignored. Children which aren't listed follow those that are, in
+   * their current relative order. Parents which don't support orderable children are left unchanged.
+   *
+   * @param parent  the node whose children to order
+   * @param desired the desired order of the children
+   * @return the number of children which were moved
+   * @throws RepositoryException if the children cannot be read or ordered
+   */
+  public static int reorder(@NotNull Node parent, @NotNull List<String> desired) throws RepositoryException {
+    if (!parent.getPrimaryNodeType().hasOrderableChildNodes()) {
+      return 0;
+    }
+    List<String> current = getNames(parent);
+    Map<String, Integer> positions = new HashMap<>();
+    for (int i = 0; i < current.size(); i++) {
+      positions.put(current.get(i), i);
+    }
+
+    // Complete target order: listed children, then the unlisted ones as they are now.
+    Set<String> names = new LinkedHashSet<>(desired);
+    names.retainAll(positions.keySet());
+    names.addAll(current);
+    String[] target = names.toArray(new String[0]);
+
+    int[] sequence = new int[target.length];
+    for (int i = 0; i < target.length; i++) {
+      sequence[i] = positions.get(target[i]);
+    }
+    boolean[] keep = longestIncreasing(sequence);
+
+    // Moving back to front, every child is placed directly before its (already placed) successor.
+    int moves = 0;
+    for (int i = target.length - 1; i >= 0; i--) {
+      if (!keep[i]) {
+        parent.orderBefore(target[i], i + 1 < target.length ? target[i + 1] : null);
+        moves++;
+      }
+    }
+    return moves;
+  }
+
+  /*
+    Marks the members of one longest strictly increasing subsequence, O(n log n).
+   */
+  private static boolean[] longestIncreasing(int[] sequence) {
+    int[] tails = new int[sequence.length];
+    int[] previous = new int[sequence.length];
+    int length = 0;
+    for (int i = 0; i < sequence.length; i++) {
+      int low = 0;
+      int high = length;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (sequence[tails[mid]] < sequence[i]) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      previous[i] = low > 0 ? tails[low - 1] : -1;
+      tails[low] = i;
+      if (low == length) {
+        length++;
+      }
+    }
+    boolean[] keep = new boolean[sequence.length];
+    for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+      keep[i] = true;
+    }
+    return keep;
+  }
+}
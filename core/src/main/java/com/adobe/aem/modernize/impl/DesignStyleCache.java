@@ -0,0 +1,129 @@
+package com.adobe.aem.modernize.impl;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2021 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+
+import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.api.designer.Cell;
+import com.day.cq.wcm.api.designer.Design;
+import com.day.cq.wcm.api.designer.Designer;
+import com.day.cq.wcm.api.designer.Style;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Remembers the design styles resolved for pages. Pages built from the same template share their design cells, so each
+ * cell is resolved once instead of once per page.
+ * <p>
+ * Entries are keyed by style path, which is the design path followed by the cell path, and never expire; a cache is meant
+ * for the lifetime of a single job or request, which reads with one resolver. Only paths are kept, resources are always
+ * read with the caller's resolver.
+ */
+public class DesignStyleCache {
+
+  private static final Logger logger = LoggerFactory.getLogger(DesignStyleCache.class);
+
+  private final Map<String, String> styles = new ConcurrentHashMap<>();
+  private final Map<String, Set<String>> policyPaths = new ConcurrentHashMap<>();
+
+  /**
+   * Finds the style resource for the first of the resource's cell paths which exists in its design.
+   *
+   * @param designer the designer of the caller's resolver
+   * @param resource the content resource
+   * @return the style resource, or null if the resource has no style
+   */
+  @Nullable
+  public Resource getStyleResource(@NotNull Designer designer, @NotNull Resource resource) {
+    Style style = designer.getStyle(resource);
+    if (style == null) {
+      return null;
+    }
+    ResourceResolver rr = resource.getResourceResolver();
+    String path = get(styles, style.getPath(), () -> {
+      Iterator<String> it = style.getCell().paths();
+      while (it.hasNext()) {
+        Style cellStyle = designer.getStyle(resource, it.next());
+        if (cellStyle != null && rr.getResource(cellStyle.getPath()) != null) {
+          return cellStyle.getPath();
+        }
+      }
+      return "";
+    });
+    return path.isEmpty() ? null : rr.getResource(path);
+  }
+
+  /**
+   * Lists the design style paths for the cell of the page's content.
+   *
+   * @param page              the page
+   * @param includeSuperTypes whether to include the styles of the cell's super types
+   * @return the paths found
+   */
+  @NotNull
+  public Set<String> getPolicyPaths(@NotNull Page page, boolean includeSuperTypes) {
+    Resource pageContent = page.getContentResource();
+    ResourceResolver rr = pageContent.getResourceResolver();
+    Designer designer = rr.adaptTo(Designer.class);
+    Style style = designer.getStyle(pageContent);
+    if (style == null) {
+      logger.info("Page Content did not have a Style associated: [{}]", pageContent.getPath());
+      return Collections.emptySet();
+    }
+
+    Set<String> paths = new HashSet<>();
+    Design design = designer.getDesign(page);
+    Cell cell = style.getCell();
+    Iterator<String> cellRoots = cell.paths();
+    do {
+      Style cellStyle = design.getStyle(cellRoots.next());
+      paths.addAll(get(policyPaths, cellStyle.getPath(), () -> {
+        Resource resource = rr.getResource(cellStyle.getPath());
+        return resource == null ? Collections.emptySet() : Collections.unmodifiableSet(RulePaths.gatherPaths(resource));
+      }));
+    } while (includeSuperTypes && cellRoots.hasNext());
+
+    return paths;
+  }
+
+  private <T> T get(Map<String, T> entries, String stylePath, Supplier<T> loader) {
+    if (stylePath == null) {
+      return loader.get();
+    }
+    T value = entries.get(stylePath);
+    if (value == null) {
+      value = loader.get();
+      entries.put(stylePath, value);
+    }
+    return value;
+  }
+}
@@ -0,0 +1,135 @@
+package com.adobe.aem.modernize.impl;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2026 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import javax.jcr.PropertyType;
+import javax.jcr.Value;
+import javax.jcr.nodetype.NodeDefinition;
+import javax.jcr.nodetype.NodeType;
+import javax.jcr.nodetype.PropertyDefinition;
+import javax.jcr.version.OnParentVersionAction;
+
+/*
+  The definition of a detached item. Only records what was read from the repository: whether the item is protected,
+  and for properties, whether they are multi-valued. Rules use these to decide which items to copy.
+ */
+class DetachedDefinition implements NodeDefinition, PropertyDefinition {
+
+  private final String name;
+  private final boolean isProtected;
+  private final boolean multiple;
+
+  DetachedDefinition(String name, boolean isProtected, boolean multiple) {
+    this.name = name;
+    this.isProtected = isProtected;
+    this.multiple = multiple;
+  }
+
+  @Override
+  public NodeType getDeclaringNodeType() {
+    return null;
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public boolean isAutoCreated() {
+    return false;
+  }
+
+  @Override
+  public boolean isMandatory() {
+    return false;
+  }
+
+  @Override
+  public int getOnParentVersion() {
+    return OnParentVersionAction.COPY;
+  }
+
+  @Override
+  public boolean isProtected() {
+    return isProtected;
+  }
+
+  @Override
+  public NodeType[] getRequiredPrimaryTypes() {
+    return new NodeType[0];
+  }
+
+  @Override
+  public String[] getRequiredPrimaryTypeNames() {
+    return new String[0];
+  }
+
+  @Override
+  public NodeType getDefaultPrimaryType() {
+    return null;
+  }
+
+  @Override
+  public String getDefaultPrimaryTypeName() {
+    return null;
+  }
+
+  @Override
+  public boolean allowsSameNameSiblings() {
+    return false;
+  }
+
+  @Override
+  public int getRequiredType() {
+    return PropertyType.UNDEFINED;
+  }
+
+  @Override
+  public String[] getValueConstraints() {
+    return new String[0];
+  }
+
+  @Override
+  public Value[] getDefaultValues() {
+    return null;
+  }
+
+  @Override
+  public boolean isMultiple() {
+    return multiple;
+  }
+
+  @Override
+  public String[] getAvailableQueryOperators() {
+    return new String[0];
+  }
+
+  @Override
+  public boolean isFullTextSearchable() {
+    return false;
+  }
+
+  @Override
+  public boolean isQueryOrderable() {
+    return false;
+  }
+}
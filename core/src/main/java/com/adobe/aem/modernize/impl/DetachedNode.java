@@ -0,0 +1,711 @@
+package com.adobe.aem.modernize.impl;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2026 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Predicate;
+import javax.jcr.Binary;
+import javax.jcr.InvalidItemStateException;
+import javax.jcr.Item;
+import javax.jcr.ItemExistsException;
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.PathNotFoundException;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.UnsupportedRepositoryOperationException;
+import javax.jcr.Value;
+import javax.jcr.lock.Lock;
+import javax.jcr.nodetype.ConstraintViolationException;
+import javax.jcr.nodetype.NoSuchNodeTypeException;
+import javax.jcr.nodetype.NodeDefinition;
+import javax.jcr.nodetype.NodeType;
+import javax.jcr.version.Version;
+
+import org.apache.jackrabbit.JcrConstants;
+import org.apache.jackrabbit.commons.AbstractNode;
+import org.apache.jackrabbit.commons.ItemNameMatcher;
+import org.apache.jackrabbit.commons.iterator.NodeIteratorAdapter;
+import org.apache.jackrabbit.commons.iterator.PropertyIteratorAdapter;
+import org.apache.jackrabbit.oak.commons.PathUtils;
+
+/*
+  A node of a DetachedTree. Supports the content operations of the JCR API; versioning, locking and references are not.
+ */
+class DetachedNode extends AbstractNode {
+
+  private final DetachedTree tree;
+  private final String origin;
+  private final boolean isProtected;
+  private final Map<String, DetachedProperty> properties = new LinkedHashMap<>();
+  private Map<String, DetachedNode> children = new LinkedHashMap<>();
+  private final Set<String> mixins;
+  private String primaryType;
+  private DetachedNode parent;
+  private String name;
+  private boolean removed = false;
+  private boolean modified = false;
+
+  DetachedNode(DetachedTree tree, DetachedNode parent, String name, String primaryType, Collection<String> mixins,
+               String origin, boolean isProtected) {
+    this.tree = tree;
+    this.parent = parent;
+    this.name = name;
+    this.primaryType = primaryType;
+    this.mixins = new LinkedHashSet<>(mixins);
+    this.origin = origin;
+    this.isProtected = isProtected;
+    if (parent != null) {
+      parent.children.put(name, this);
+    }
+  }
+
+  /*
+    Adds a property as it was read from the repository.
+   */
+  void loadProperty(String name, int type, boolean multiple, Value[] values, boolean isProtected) {
+    properties.put(name, new DetachedProperty(this, name, type, multiple, values, isProtected));
+  }
+
+  /*
+    The path this node was loaded from, null if it was created in the detached tree.
+   */
+  String getOrigin() {
+    return origin;
+  }
+
+  String getPrimaryType() {
+    return primaryType;
+  }
+
+  Set<String> getMixins() {
+    return mixins;
+  }
+
+  boolean isProtected() {
+    return isProtected;
+  }
+
+  DetachedNode getChild(String name) {
+    return children.get(name);
+  }
+
+  Collection<DetachedNode> getChildren() {
+    return children.values();
+  }
+
+  Collection<DetachedProperty> getPropertyList() {
+    return properties.values();
+  }
+
+  /*
+    Flags this node, and its ancestors, as different from the content they were loaded from.
+   */
+  void markModified() {
+    for (DetachedNode node = this; node != null; node = node.parent) {
+      node.modified = true;
+    }
+  }
+
+  private void checkState() throws InvalidItemStateException {
+    for (DetachedNode node = this; node != null; node = node.parent) {
+      if (node.removed) {
+        throw new InvalidItemStateException(String.format("Node [%s] has been removed.", name));
+      }
+    }
+  }
+
+  /*
+    Resolves a relative path to a node in the detached tree, or null if it doesn't exist.
+   */
+  private DetachedNode resolve(String relPath) throws RepositoryException {
+    checkState();
+    if (relPath.startsWith("/")) {
+      Item item = tree.getSession().itemExists(relPath) ? tree.getSession().getItem(relPath) : null;
+      return item instanceof DetachedNode ? (DetachedNode) item : null;
+    }
+    DetachedNode node = this;
+    for (String segment : PathUtils.elements(relPath)) {
+      if (node == null) {
+        return null;
+      }
+      if (".".equals(segment)) {
+        continue;
+      } else if ("..".equals(segment)) {
+        node = node.parent;
+      } else {
+        node = node.children.get(segment);
+      }
+    }
+    return node;
+  }
+
+  private DetachedProperty resolveProperty(String relPath) throws RepositoryException {
+    checkState();
+    String parentPath = PathUtils.getParentPath(relPath);
+    DetachedNode node = parentPath.isEmpty() ? this : resolve(parentPath);
+    return node == null ? null : node.properties.get(PathUtils.getName(relPath));
+  }
+
+  /*
+    Moves this node to the end of the children of the specified parent.
+   */
+  void moveTo(DetachedNode target, String newName) throws RepositoryException {
+    checkState();
+    target.checkState();
+    if (target.children.containsKey(newName)) {
+      throw new ItemExistsException(String.format("Node [%s] already exists.", PathUtils.concat(target.getPath(), newName)));
+    }
+    for (DetachedNode node = target; node != null; node = node.parent) {
+      if (node == this) {
+        throw new RepositoryException(String.format("Cannot move [%s] within its own subtree.", getPath()));
+      }
+    }
+    parent.children.remove(name);
+    parent.markModified();
+    parent = target;
+    name = newName;
+    target.children.put(newName, this);
+    markModified();
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public String getPath() throws RepositoryException {
+    checkState();
+    List<String> names = new ArrayList<>();
+    DetachedNode node = this;
+    for (; node.parent != null; node = node.parent) {
+      names.add(node.name);
+    }
+    Collections.reverse(names);
+    return PathUtils.concat(node.origin, names.toArray(new String[0]));
+  }
+
+  @Override
+  public Node getParent() throws RepositoryException {
+    checkState();
+    if (parent == null) {
+      if (PathUtils.denotesRoot(origin)) {
+        throw new ItemNotFoundException("The root node has no parent.");
+      }
+      return tree.getSession().getNode(PathUtils.getParentPath(origin));
+    }
+    return parent;
+  }
+
+  @Override
+  public Session getSession() {
+    return tree.getSession();
+  }
+
+  @Override
+  public boolean isNew() {
+    return origin == null;
+  }
+
+  @Override
+  public boolean isModified() {
+    return modified;
+  }
+
+  @Override
+  public boolean isSame(Item otherItem) {
+    return this == otherItem;
+  }
+
+  @Override
+  public void save() throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException("Detached trees are written with DetachedTree.writeBack().");
+  }
+
+  @Override
+  public void refresh(boolean keepChanges) throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException("Detached trees cannot be refreshed.");
+  }
+
+  @Override
+  public void remove() throws RepositoryException {
+    checkState();
+    if (parent == null) {
+      throw new UnsupportedRepositoryOperationException("The parent of a detached tree cannot be removed.");
+    }
+    parent.children.remove(name);
+    parent.markModified();
+    removed = true;
+  }
+
+  @Override
+  public Node addNode(String relPath) throws RepositoryException {
+    return addNode(relPath, JcrConstants.NT_UNSTRUCTURED);
+  }
+
+  @Override
+  public Node addNode(String relPath, String primaryNodeTypeName) throws RepositoryException {
+    checkState();
+    String parentPath = PathUtils.getParentPath(relPath);
+    DetachedNode target = parentPath.isEmpty() ? this : resolve(parentPath);
+    if (target == null) {
+      throw new PathNotFoundException(relPath);
+    }
+    String childName = PathUtils.getName(relPath);
+    if (target.children.containsKey(childName)) {
+      throw new ItemExistsException(String.format("Node [%s] already exists.", PathUtils.concat(target.getPath(), childName)));
+    }
+    String type = primaryNodeTypeName == null ? JcrConstants.NT_UNSTRUCTURED : primaryNodeTypeName;
+    DetachedNode node = new DetachedNode(tree, target, childName, type, Collections.emptyList(), null, false);
+    node.properties.put(JcrConstants.JCR_PRIMARYTYPE, new DetachedProperty(node, JcrConstants.JCR_PRIMARYTYPE, PropertyType.NAME,
+        false, new Value[] { getSession().getValueFactory().createValue(type, PropertyType.NAME) }, true));
+    node.markModified();
+    return node;
+  }
+
+  @Override
+  public void orderBefore(String srcChildRelPath, String destChildRelPath) throws RepositoryException {
+    checkState();
+    if (!getPrimaryNodeType().hasOrderableChildNodes()) {
+      throw new UnsupportedRepositoryOperationException(String.format("Children of [%s] are not orderable.", getPath()));
+    }
+    if (!children.containsKey(srcChildRelPath)) {
+      throw new ItemNotFoundException(String.format("Node [%s] not found.", PathUtils.concat(getPath(), srcChildRelPath)));
+    }
+    if (destChildRelPath != null && !children.containsKey(destChildRelPath)) {
+      throw new ItemNotFoundException(String.format("Node [%s] not found.", PathUtils.concat(getPath(), destChildRelPath)));
+    }
+    if (srcChildRelPath.equals(destChildRelPath)) {
+      return;
+    }
+    DetachedNode moved = children.get(srcChildRelPath);
+    Map<String, DetachedNode> ordered = new LinkedHashMap<>();
+    for (Map.Entry<String, DetachedNode> entry : children.entrySet()) {
+      if (entry.getKey().equals(destChildRelPath)) {
+        ordered.put(srcChildRelPath, moved);
+      }
+      if (!entry.getKey().equals(srcChildRelPath)) {
+        ordered.put(entry.getKey(), entry.getValue());
+      }
+    }
+    if (destChildRelPath == null) {
+      ordered.put(srcChildRelPath, moved);
+    }
+    children = ordered;
+    markModified();
+  }
+
+  @Override
+  public Property setProperty(String name, Value value) throws RepositoryException {
+    if (value == null) {
+      return removeProperty(name);
+    }
+    return setProperty(name, value.getType(), false, new Value[] { value });
+  }
+
+  @Override
+  public Property setProperty(String name, Value[] values) throws RepositoryException {
+    if (values == null) {
+      return removeProperty(name);
+    }
+    List<Value> list = new ArrayList<>();
+    int type = PropertyType.STRING;
+    for (Value value : values) {
+      if (value != null) {
+        list.add(value);
+        type = value.getType();
+      }
+    }
+    return setProperty(name, type, true, list.toArray(new Value[0]));
+  }
+
+  @Override
+  public Property setProperty(String name, Value[] values, int type) throws RepositoryException {
+    if (values == null) {
+      return removeProperty(name);
+    }
+    if (values.length == 0) {
+      return setProperty(name, type == PropertyType.UNDEFINED ? PropertyType.STRING : type, true, values);
+    }
+    return super.setProperty(name, values, type);
+  }
+
+  @Override
+  public Property setProperty(String name, Binary value) throws RepositoryException {
+    return setProperty(name, value == null ? null : getSession().getValueFactory().createValue(value));
+  }
+
+  @Override
+  public Property setProperty(String name, BigDecimal value) throws RepositoryException {
+    return setProperty(name, value == null ? null : getSession().getValueFactory().createValue(value));
+  }
+
+  private Property setProperty(String name, int type, boolean multiple, Value[] values) throws RepositoryException {
+    checkState();
+    DetachedProperty property = properties.get(name);
+    if (property != null && property.isProtected()) {
+      throw new ConstraintViolationException(String.format("Property [%s] is protected.", name));
+    }
+    if (property == null) {
+      property = new DetachedProperty(this, name, type, multiple, values, false);
+      properties.put(name, property);
+    } else {
+      property.update(type, multiple, values);
+    }
+    markModified();
+    return property;
+  }
+
+  private Property removeProperty(String name) throws RepositoryException {
+    checkState();
+    DetachedProperty property = properties.remove(name);
+    if (property != null) {
+      property.markRemoved();
+      markModified();
+    }
+    return property;
+  }
+
+  @Override
+  public Node getNode(String relPath) throws RepositoryException {
+    DetachedNode node = resolve(relPath);
+    if (node == null) {
+      throw new PathNotFoundException(relPath);
+    }
+    return node;
+  }
+
+  @Override
+  public boolean hasNode(String relPath) throws RepositoryException {
+    return resolve(relPath) != null;
+  }
+
+  @Override
+  public boolean hasNodes() throws RepositoryException {
+    checkState();
+    return !children.isEmpty();
+  }
+
+  @Override
+  public NodeIterator getNodes() throws RepositoryException {
+    checkState();
+    return new NodeIteratorAdapter(new ChildIterator(this, new ArrayList<>(children.values()), null));
+  }
+
+  @Override
+  public NodeIterator getNodes(String namePattern) throws RepositoryException {
+    checkState();
+    return new NodeIteratorAdapter(new ChildIterator(this, new ArrayList<>(children.values()), n -> ItemNameMatcher.matches(n, namePattern)));
+  }
+
+  @Override
+  public NodeIterator getNodes(String[] nameGlobs) throws RepositoryException {
+    checkState();
+    return new NodeIteratorAdapter(new ChildIterator(this, new ArrayList<>(children.values()), n -> ItemNameMatcher.matches(n, nameGlobs)));
+  }
+
+  @Override
+  public Property getProperty(String relPath) throws RepositoryException {
+    DetachedProperty property = resolveProperty(relPath);
+    if (property == null) {
+      throw new PathNotFoundException(relPath);
+    }
+    return property;
+  }
+
+  @Override
+  public boolean hasProperty(String relPath) throws RepositoryException {
+    return resolveProperty(relPath) != null;
+  }
+
+  @Override
+  public boolean hasProperties() throws RepositoryException {
+    checkState();
+    return !properties.isEmpty();
+  }
+
+  @Override
+  public PropertyIterator getProperties() throws RepositoryException {
+    checkState();
+    return new PropertyIteratorAdapter(new ArrayList<>(properties.values()));
+  }
+
+  @Override
+  public PropertyIterator getProperties(String namePattern) throws RepositoryException {
+    checkState();
+    List<Property> matches = new ArrayList<>();
+    for (DetachedProperty property : properties.values()) {
+      if (ItemNameMatcher.matches(property.getName(), namePattern)) {
+        matches.add(property);
+      }
+    }
+    return new PropertyIteratorAdapter(matches);
+  }
+
+  @Override
+  public PropertyIterator getProperties(String[] nameGlobs) throws RepositoryException {
+    checkState();
+    List<Property> matches = new ArrayList<>();
+    for (DetachedProperty property : properties.values()) {
+      if (ItemNameMatcher.matches(property.getName(), nameGlobs)) {
+        matches.add(property);
+      }
+    }
+    return new PropertyIteratorAdapter(matches);
+  }
+
+  @Override
+  public Item getPrimaryItem() throws RepositoryException {
+    throw new ItemNotFoundException("Detached nodes have no primary item.");
+  }
+
+  @Override
+  public String getIdentifier() throws RepositoryException {
+    return getPath();
+  }
+
+  @Override
+  public int getIndex() {
+    return 1;
+  }
+
+  @Override
+  public PropertyIterator getReferences() {
+    return PropertyIteratorAdapter.EMPTY;
+  }
+
+  @Override
+  public PropertyIterator getReferences(String name) {
+    return PropertyIteratorAdapter.EMPTY;
+  }
+
+  @Override
+  public PropertyIterator getWeakReferences() {
+    return PropertyIteratorAdapter.EMPTY;
+  }
+
+  @Override
+  public PropertyIterator getWeakReferences(String name) {
+    return PropertyIteratorAdapter.EMPTY;
+  }
+
+  @Override
+  public NodeType getPrimaryNodeType() throws RepositoryException {
+    return tree.getNodeType(primaryType);
+  }
+
+  @Override
+  public NodeType[] getMixinNodeTypes() throws RepositoryException {
+    NodeType[] types = new NodeType[mixins.size()];
+    int i = 0;
+    for (String mixin : mixins) {
+      types[i++] = tree.getNodeType(mixin);
+    }
+    return types;
+  }
+
+  @Override
+  public void setPrimaryType(String nodeTypeName) throws RepositoryException {
+    checkState();
+    primaryType = tree.getNodeType(nodeTypeName).getName();
+    properties.get(JcrConstants.JCR_PRIMARYTYPE).update(PropertyType.NAME, false,
+        new Value[] { getSession().getValueFactory().createValue(primaryType, PropertyType.NAME) });
+    markModified();
+  }
+
+  @Override
+  public void addMixin(String mixinName) throws RepositoryException {
+    checkState();
+    if (mixins.add(tree.getNodeType(mixinName).getName())) {
+      updateMixinProperty();
+    }
+  }
+
+  @Override
+  public void removeMixin(String mixinName) throws RepositoryException {
+    checkState();
+    if (!mixins.remove(mixinName)) {
+      throw new NoSuchNodeTypeException(mixinName);
+    }
+    updateMixinProperty();
+  }
+
+  @Override
+  public boolean canAddMixin(String mixinName) throws RepositoryException {
+    return tree.getNodeType(mixinName).isMixin();
+  }
+
+  private void updateMixinProperty() throws RepositoryException {
+    properties.remove(JcrConstants.JCR_MIXINTYPES);
+    if (!mixins.isEmpty()) {
+      List<Value> values = new ArrayList<>();
+      for (String mixin : mixins) {
+        values.add(getSession().getValueFactory().createValue(mixin, PropertyType.NAME));
+      }
+      properties.put(JcrConstants.JCR_MIXINTYPES, new DetachedProperty(this, JcrConstants.JCR_MIXINTYPES, PropertyType.NAME,
+          true, values.toArray(new Value[0]), true));
+    }
+    markModified();
+  }
+
+  @Override
+  public NodeDefinition getDefinition() {
+    return new DetachedDefinition(name, isProtected, false);
+  }
+
+  @Override
+  public Version checkin() throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException("Detached trees do not support versioning.");
+  }
+
+  @Override
+  public void checkout() throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException("Detached trees do not support versioning.");
+  }
+
+  @Override
+  public void doneMerge(Version version) throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException("Detached trees do not support merging.");
+  }
+
+  @Override
+  public void cancelMerge(Version version) throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException("Detached trees do not support merging.");
+  }
+
+  @Override
+  public void update(String srcWorkspace) throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException("Detached trees do not support updates from other workspaces.");
+  }
+
+  @Override
+  public NodeIterator merge(String srcWorkspace, boolean bestEffort) throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException("Detached trees do not support merging.");
+  }
+
+  @Override
+  public String getCorrespondingNodePath(String workspaceName) throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException("Detached trees do not support other workspaces.");
+  }
+
+  @Override
+  public NodeIterator getSharedSet() throws RepositoryException {
+    return new NodeIteratorAdapter(Collections.singletonList(this));
+  }
+
+  @Override
+  public void removeSharedSet() throws RepositoryException {
+    remove();
+  }
+
+  @Override
+  public void removeShare() throws RepositoryException {
+    remove();
+  }
+
+  @Override
+  public void restore(Version version, String relPath, boolean removeExisting) throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException("Detached trees do not support versioning.");
+  }
+
+  @Override
+  public Version getBaseVersion() throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException("Detached trees do not support versioning.");
+  }
+
+  @Override
+  public Lock lock(boolean isDeep, boolean isSessionScoped) throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException("Detached trees do not support locking.");
+  }
+
+  @Override
+  public Lock getLock() throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException("Detached trees do not support locking.");
+  }
+
+  @Override
+  public void unlock() throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException("Detached trees do not support locking.");
+  }
+
+  @Override
+  public void followLifecycleTransition(String transition) throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException("Detached trees do not support lifecycles.");
+  }
+
+  @Override
+  public String[] getAllowedLifecycleTransistions() throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException("Detached trees do not support lifecycles.");
+  }
+
+  /*
+    Iterates a snapshot of the children; nodes which were removed or moved away before they are reached are skipped.
+   */
+  private static final class ChildIterator implements Iterator<DetachedNode> {
+
+    private final DetachedNode parent;
+    private final Iterator<DetachedNode> snapshot;
+    private final Predicate<String> filter;
+    private DetachedNode next;
+
+    private ChildIterator(DetachedNode parent, List<DetachedNode> snapshot, Predicate<String> filter) {
+      this.parent = parent;
+      this.snapshot = snapshot.iterator();
+      this.filter = filter;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (next == null && snapshot.hasNext()) {
+        DetachedNode candidate = snapshot.next();
+        if (!candidate.removed && candidate.parent == parent && (filter == null || filter.test(candidate.name))) {
+          next = candidate;
+        }
+      }
+      return next != null;
+    }
+
+    @Override
+    public DetachedNode next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      DetachedNode result = next;
+      next = null;
+      return result;
+    }
+  }
+}
@@ -0,0 +1,206 @@
+package com.adobe.aem.modernize.impl;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2026 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import javax.jcr.Binary;
+import javax.jcr.InvalidItemStateException;
+import javax.jcr.Item;
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.UnsupportedRepositoryOperationException;
+import javax.jcr.Value;
+import javax.jcr.ValueFormatException;
+import javax.jcr.nodetype.PropertyDefinition;
+
+import org.apache.jackrabbit.commons.AbstractProperty;
+
+/*
+  A property of a DetachedNode. Values are shared with the repository session they were read from or created by.
+ */
+class DetachedProperty extends AbstractProperty {
+
+  private final DetachedNode parent;
+  private final String name;
+  private final boolean isProtected;
+  private int type;
+  private boolean multiple;
+  private Value[] values;
+  private boolean removed = false;
+
+  DetachedProperty(DetachedNode parent, String name, int type, boolean multiple, Value[] values, boolean isProtected) {
+    this.parent = parent;
+    this.name = name;
+    this.type = type;
+    this.multiple = multiple;
+    this.values = values;
+    this.isProtected = isProtected;
+  }
+
+  void update(int type, boolean multiple, Value[] values) {
+    this.type = type;
+    this.multiple = multiple;
+    this.values = values;
+  }
+
+  void markRemoved() {
+    removed = true;
+  }
+
+  boolean isProtected() {
+    return isProtected;
+  }
+
+  /*
+    Checks if the repository node has this property, with the same type and values.
+   */
+  boolean matches(Node node) throws RepositoryException {
+    if (!node.hasProperty(name)) {
+      return false;
+    }
+    Property property = node.getProperty(name);
+    if (property.isMultiple() != multiple || property.getType() != type) {
+      return false;
+    }
+    return multiple ? Arrays.equals(property.getValues(), values) : property.getValue().equals(values[0]);
+  }
+
+  /*
+    Sets this property on the repository node.
+   */
+  void writeTo(Node node) throws RepositoryException {
+    if (multiple) {
+      node.setProperty(name, values, type);
+    } else {
+      node.setProperty(name, values[0], type);
+    }
+  }
+
+  private void checkState() throws InvalidItemStateException {
+    if (removed) {
+      throw new InvalidItemStateException(String.format("Property [%s] has been removed.", name));
+    }
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public Node getParent() {
+    return parent;
+  }
+
+  @Override
+  public Session getSession() {
+    return parent.getSession();
+  }
+
+  @Override
+  public int getType() throws RepositoryException {
+    checkState();
+    return type;
+  }
+
+  @Override
+  public boolean isMultiple() throws RepositoryException {
+    checkState();
+    return multiple;
+  }
+
+  @Override
+  public Value getValue() throws RepositoryException {
+    checkState();
+    if (multiple) {
+      throw new ValueFormatException(String.format("Property [%s] is multi-valued.", name));
+    }
+    return values[0];
+  }
+
+  @Override
+  public Value[] getValues() throws RepositoryException {
+    checkState();
+    if (!multiple) {
+      throw new ValueFormatException(String.format("Property [%s] is single-valued.", name));
+    }
+    return values.clone();
+  }
+
+  @Override
+  public void setValue(Value[] values) throws RepositoryException {
+    checkState();
+    parent.setProperty(name, values);
+  }
+
+  @Override
+  public Binary getBinary() throws RepositoryException {
+    return getValue().getBinary();
+  }
+
+  @Override
+  public BigDecimal getDecimal() throws RepositoryException {
+    return getValue().getDecimal();
+  }
+
+  @Override
+  public void setValue(Binary value) throws RepositoryException {
+    parent.setProperty(name, value);
+  }
+
+  @Override
+  public void setValue(BigDecimal value) throws RepositoryException {
+    parent.setProperty(name, value);
+  }
+
+  @Override
+  public PropertyDefinition getDefinition() {
+    return new DetachedDefinition(name, isProtected, multiple);
+  }
+
+  @Override
+  public boolean isNew() {
+    return parent.isNew();
+  }
+
+  @Override
+  public boolean isModified() {
+    return parent.isModified();
+  }
+
+  @Override
+  public boolean isSame(Item otherItem) {
+    return this == otherItem;
+  }
+
+  @Override
+  public void save() throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException("Detached trees are written with DetachedTree.writeBack().");
+  }
+
+  @Override
+  public void refresh(boolean keepChanges) throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException("Detached trees cannot be refreshed.");
+  }
+}
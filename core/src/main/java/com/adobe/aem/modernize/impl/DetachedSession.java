@@ -0,0 +1,300 @@
+package com.adobe.aem.modernize.impl;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2026 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import javax.jcr.Item;
+import javax.jcr.Node;
+import javax.jcr.PathNotFoundException;
+import javax.jcr.Property;
+import javax.jcr.Repository;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.UnsupportedRepositoryOperationException;
+import javax.jcr.ValueFactory;
+import javax.jcr.Workspace;
+import javax.jcr.retention.RetentionManager;
+import javax.jcr.security.AccessControlManager;
+
+import org.apache.jackrabbit.commons.AbstractSession;
+import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.xml.sax.ContentHandler;
+
+/*
+  The session of a DetachedTree. Paths in the tree resolve to detached items, all other paths are read from the
+  repository session. Changes can only be made to detached items; they are not saved by this session.
+ */
+class DetachedSession extends AbstractSession {
+
+  private final DetachedTree tree;
+  private final Session live;
+  private final Workspace workspace;
+
+  DetachedSession(DetachedTree tree, Session live) {
+    this.tree = tree;
+    this.live = live;
+    this.workspace = new DetachedWorkspace(this, live.getWorkspace());
+  }
+
+  /*
+    Finds the detached node at the path, null if the path is outside of the tree or doesn't exist.
+   */
+  private DetachedNode resolve(String absPath) throws RepositoryException {
+    DetachedNode anchor = tree.getAnchor();
+    String anchorPath = anchor.getOrigin();
+    if (anchorPath.equals(absPath)) {
+      return anchor;
+    }
+    if (!PathUtils.isAncestor(anchorPath, absPath)) {
+      return null;
+    }
+    String relPath = PathUtils.relativize(anchorPath, absPath);
+    String first = PathUtils.elements(relPath).iterator().next();
+    if (anchor.getChild(first) == null) {
+      return null;
+    }
+    return anchor.hasNode(relPath) ? (DetachedNode) anchor.getNode(relPath) : null;
+  }
+
+  /*
+    Checks whether the path is in the tree, regardless of whether the item exists.
+   */
+  private boolean isDetached(String absPath) {
+    DetachedNode anchor = tree.getAnchor();
+    String anchorPath = anchor.getOrigin();
+    if (anchorPath.equals(absPath)) {
+      return true;
+    }
+    if (!PathUtils.isAncestor(anchorPath, absPath)) {
+      return false;
+    }
+    String first = PathUtils.elements(PathUtils.relativize(anchorPath, absPath)).iterator().next();
+    return anchor.getChild(first) != null || tree.isRootPath(PathUtils.concat(anchorPath, first));
+  }
+
+  @Override
+  public Item getItem(String absPath) throws RepositoryException {
+    if (!isDetached(absPath)) {
+      return live.getItem(absPath);
+    }
+    DetachedNode node = resolve(absPath);
+    if (node != null) {
+      return node;
+    }
+    DetachedNode parent = resolve(PathUtils.getParentPath(absPath));
+    String name = PathUtils.getName(absPath);
+    if (parent != null && parent.hasProperty(name)) {
+      return parent.getProperty(name);
+    }
+    throw new PathNotFoundException(absPath);
+  }
+
+  @Override
+  public boolean itemExists(String absPath) throws RepositoryException {
+    if (!isDetached(absPath)) {
+      return live.itemExists(absPath);
+    }
+    return nodeExists(absPath) || propertyExists(absPath);
+  }
+
+  @Override
+  public Node getNode(String absPath) throws RepositoryException {
+    if (!isDetached(absPath)) {
+      return live.getNode(absPath);
+    }
+    DetachedNode node = resolve(absPath);
+    if (node == null) {
+      throw new PathNotFoundException(absPath);
+    }
+    return node;
+  }
+
+  @Override
+  public boolean nodeExists(String absPath) throws RepositoryException {
+    if (!isDetached(absPath)) {
+      return live.nodeExists(absPath);
+    }
+    return resolve(absPath) != null;
+  }
+
+  @Override
+  public Property getProperty(String absPath) throws RepositoryException {
+    if (!isDetached(absPath)) {
+      return live.getProperty(absPath);
+    }
+    DetachedNode parent = resolve(PathUtils.getParentPath(absPath));
+    if (parent == null) {
+      throw new PathNotFoundException(absPath);
+    }
+    return parent.getProperty(PathUtils.getName(absPath));
+  }
+
+  @Override
+  public boolean propertyExists(String absPath) throws RepositoryException {
+    if (!isDetached(absPath)) {
+      return live.propertyExists(absPath);
+    }
+    DetachedNode parent = resolve(PathUtils.getParentPath(absPath));
+    return parent != null && parent.hasProperty(PathUtils.getName(absPath));
+  }
+
+  @Override
+  public void removeItem(String absPath) throws RepositoryException {
+    if (!isDetached(absPath)) {
+      throw new UnsupportedRepositoryOperationException(String.format("Item [%s] is not in the detached tree.", absPath));
+    }
+    getItem(absPath).remove();
+  }
+
+  @Override
+  public void move(String srcAbsPath, String destAbsPath) throws RepositoryException {
+    if (!isDetached(srcAbsPath) || !isDetached(destAbsPath)) {
+      throw new UnsupportedRepositoryOperationException(String.format("Cannot move [%s] to [%s], outside of the detached tree.", srcAbsPath, destAbsPath));
+    }
+    DetachedNode source = resolve(srcAbsPath);
+    DetachedNode target = resolve(PathUtils.getParentPath(destAbsPath));
+    if (source == null) {
+      throw new PathNotFoundException(srcAbsPath);
+    }
+    if (target == null) {
+      throw new PathNotFoundException(PathUtils.getParentPath(destAbsPath));
+    }
+    source.moveTo(target, PathUtils.getName(destAbsPath));
+  }
+
+  @Override
+  public Node getNodeByUUID(String uuid) throws RepositoryException {
+    return getNodeByIdentifier(uuid);
+  }
+
+  @Override
+  public Node getNodeByIdentifier(String id) throws RepositoryException {
+    Node node = live.getNodeByIdentifier(id);
+    return isDetached(node.getPath()) ? getNode(node.getPath()) : node;
+  }
+
+  @Override
+  public Node getRootNode() throws RepositoryException {
+    return getNode("/");
+  }
+
+  @Override
+  public boolean hasPendingChanges() {
+    return tree.getAnchor().isModified();
+  }
+
+  @Override
+  public void save() throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException("Detached trees are written with DetachedTree.writeBack().");
+  }
+
+  @Override
+  public void refresh(boolean keepChanges) throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException("Detached trees cannot be refreshed.");
+  }
+
+  @Override
+  public ValueFactory getValueFactory() throws RepositoryException {
+    return live.getValueFactory();
+  }
+
+  @Override
+  public Repository getRepository() {
+    return live.getRepository();
+  }
+
+  @Override
+  public String getUserID() {
+    return live.getUserID();
+  }
+
+  @Override
+  public String[] getAttributeNames() {
+    return live.getAttributeNames();
+  }
+
+  @Override
+  public Object getAttribute(String name) {
+    return live.getAttribute(name);
+  }
+
+  @Override
+  public Workspace getWorkspace() {
+    return workspace;
+  }
+
+  @Override
+  public boolean isLive() {
+    return live.isLive();
+  }
+
+  @Override
+  public void logout() {
+    // The repository session is managed by the caller.
+  }
+
+  @Override
+  public boolean hasPermission(String absPath, String actions) throws RepositoryException {
+    return live.hasPermission(absPath, actions);
+  }
+
+  @Override
+  public void checkPermission(String absPath, String actions) throws RepositoryException {
+    live.checkPermission(absPath, actions);
+  }
+
+  @Override
+  public boolean hasCapability(String methodName, Object target, Object[] arguments) throws RepositoryException {
+    return live.hasCapability(methodName, target, arguments);
+  }
+
+  @Override
+  public ContentHandler getImportContentHandler(String parentAbsPath, int uuidBehavior) throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException("Detached trees do not support imports.");
+  }
+
+  @Override
+  @Deprecated
+  public void addLockToken(String lt) {
+    live.addLockToken(lt);
+  }
+
+  @Override
+  @Deprecated
+  public String[] getLockTokens() {
+    return live.getLockTokens();
+  }
+
+  @Override
+  @Deprecated
+  public void removeLockToken(String lt) {
+    live.removeLockToken(lt);
+  }
+
+  @Override
+  public AccessControlManager getAccessControlManager() throws RepositoryException {
+    return live.getAccessControlManager();
+  }
+
+  @Override
+  public RetentionManager getRetentionManager() throws RepositoryException {
+    return live.getRetentionManager();
+  }
+}
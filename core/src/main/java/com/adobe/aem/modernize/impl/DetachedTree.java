@@ -0,0 +1,341 @@
+package com.adobe.aem.modernize.impl;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2026 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+import javax.jcr.nodetype.NodeType;
+
+import org.apache.jackrabbit.JcrConstants;
+import org.apache.jackrabbit.oak.commons.PathUtils;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An in-memory copy of a content tree, which rules can rewrite without making changes in the repository session.
+ * <p>
+ * The tree is loaded from the session, and exposed through the JCR API: {@link #getRoot()} and its session support the
+ * operations used by rewrite rules (reading, adding, removing, moving and ordering nodes, setting properties). Paths
+ * outside of the tree are read from the repository session. The parent of the root is available, but only the root is
+ * loaded as its child; siblings of the root are not visible through the tree.
+ * <p>
+ * Once rewritten, {@link #writeBack()} compares the tree with the content it was loaded from and writes only the net
+ * differences to the repository session. Subtrees which were never modified are not compared. Changes are not saved.
+ */
+public final class DetachedTree {
+
+  private static final Logger logger = LoggerFactory.getLogger(DetachedTree.class);
+  private static final String HOLDER_NAME = "detached-moves";
+
+  private final Session live;
+  private final DetachedSession session;
+  private final Map<String, NodeType> nodeTypes = new HashMap<>();
+  private final String rootPath;
+  private final DetachedNode anchor;
+  private final DetachedNode root;
+
+  private DetachedTree(Node root) throws RepositoryException {
+    this.live = root.getSession();
+    this.session = new DetachedSession(this, live);
+    this.rootPath = root.getPath();
+    this.anchor = load(root.getParent(), null, false);
+    this.root = load(root, anchor, true);
+  }
+
+  /**
+   * Loads the tree rooted at the specified node.
+   *
+   * @param root the root of the tree
+   * @return the detached tree
+   * @throws RepositoryException if the tree cannot be read
+   */
+  @NotNull
+  public static DetachedTree load(@NotNull Node root) throws RepositoryException {
+    long tick = System.currentTimeMillis();
+    DetachedTree tree = new DetachedTree(root);
+    long tock = System.currentTimeMillis();
+    logger.debug("Loaded detached tree rooted at [{}] in {}ms", tree.rootPath, tock - tick);
+    return tree;
+  }
+
+  /**
+   * The root of the detached tree, as it was loaded.
+   *
+   * @return the root node
+   */
+  @NotNull
+  public Node getRoot() {
+    return root;
+  }
+
+  /**
+   * The session through which the detached tree is read and modified.
+   *
+   * @return the detached session
+   */
+  @NotNull
+  public Session getSession() {
+    return session;
+  }
+
+  /**
+   * Writes the differences between the detached tree and the content it was loaded from to the repository session.
+   *
+   * @return the number of nodes and properties which were written
+   * @throws RepositoryException if the changes cannot be written
+   */
+  public int writeBack() throws RepositoryException {
+    long tick = System.currentTimeMillis();
+    Node parent = live.getNode(anchor.getOrigin());
+    Node holder = null;
+    Map<DetachedNode, String> aside = new IdentityHashMap<>();
+    List<DetachedNode> moved = new ArrayList<>();
+    collectMoved(anchor, moved);
+    if (!moved.isEmpty()) {
+      // Moved nodes are set aside before anything is removed, and then moved into place, to keep their identifiers.
+      moved.sort(Comparator.comparingInt((DetachedNode node) -> PathUtils.getDepth(node.getOrigin())).reversed());
+      holder = parent.addNode(uniqueName(parent, HOLDER_NAME), JcrConstants.NT_UNSTRUCTURED);
+      for (int i = 0; i < moved.size(); i++) {
+        String path = PathUtils.concat(holder.getPath(), "node" + i);
+        live.move(moved.get(i).getOrigin(), path);
+        aside.put(moved.get(i), path);
+      }
+    }
+    int writes = sync(anchor, parent, false, aside);
+
+    String name = PathUtils.getName(rootPath);
+    DetachedNode rewritten = anchor.getChild(name);
+    if ((rewritten == null || aside.containsKey(rewritten)) && parent.hasNode(name)) {
+      parent.getNode(name).remove();
+      writes++;
+    }
+    for (DetachedNode child : anchor.getChildren()) {
+      if (child == rewritten && !aside.containsKey(child)) {
+        writes += sync(child, parent.getNode(name), true, aside);
+      } else {
+        writes += create(child, parent, aside);
+      }
+    }
+    if (holder != null) {
+      holder.remove();
+    }
+    long tock = System.currentTimeMillis();
+    logger.debug("Wrote {} changes from detached tree rooted at [{}] in {}ms", writes, rootPath, tock - tick);
+    return writes;
+  }
+
+  boolean isRootPath(String path) {
+    return rootPath.equals(path);
+  }
+
+  @NotNull
+  DetachedNode getAnchor() {
+    return anchor;
+  }
+
+  @NotNull
+  NodeType getNodeType(@NotNull String name) throws RepositoryException {
+    NodeType type = nodeTypes.get(name);
+    if (type == null) {
+      type = live.getWorkspace().getNodeTypeManager().getNodeType(name);
+      nodeTypes.put(name, type);
+    }
+    return type;
+  }
+
+  /*
+    Copies the node, and when deep, its subtree.
+   */
+  private DetachedNode load(Node node, @Nullable DetachedNode parent, boolean deep) throws RepositoryException {
+    List<String> mixins = new ArrayList<>();
+    for (NodeType mixin : node.getMixinNodeTypes()) {
+      mixins.add(mixin.getName());
+    }
+    boolean isProtected = parent != null && node.getDefinition().isProtected();
+    DetachedNode copy = new DetachedNode(this, parent, node.getName(), node.getPrimaryNodeType().getName(), mixins, node.getPath(), isProtected);
+
+    PropertyIterator properties = node.getProperties();
+    while (properties.hasNext()) {
+      Property property = properties.nextProperty();
+      boolean multiple = property.isMultiple();
+      copy.loadProperty(property.getName(), property.getType(), multiple,
+          multiple ? property.getValues() : new Value[] { property.getValue() },
+          property.getDefinition().isProtected());
+    }
+    if (deep) {
+      NodeIterator children = node.getNodes();
+      while (children.hasNext()) {
+        load(children.nextNode(), copy, true);
+      }
+    }
+    return copy;
+  }
+
+  /*
+    Updates the repository node to match the detached node; when deep, children which no longer exist are removed,
+    and the children are ordered. Returns the number of writes.
+   */
+  private int sync(DetachedNode node, Node target, boolean deep, Map<DetachedNode, String> aside) throws RepositoryException {
+    // Unmodified content, in the same place it was loaded from.
+    if (!node.isModified() && target.getPath().equals(node.getOrigin())) {
+      return 0;
+    }
+    int writes = 0;
+    if (!target.getPrimaryNodeType().getName().equals(node.getPrimaryType())) {
+      target.setPrimaryType(node.getPrimaryType());
+      writes++;
+    }
+
+    Set<String> mixins = new LinkedHashSet<>();
+    for (NodeType mixin : target.getMixinNodeTypes()) {
+      mixins.add(mixin.getName());
+    }
+    for (String mixin : mixins) {
+      if (!node.getMixins().contains(mixin)) {
+        target.removeMixin(mixin);
+        writes++;
+      }
+    }
+    for (String mixin : node.getMixins()) {
+      if (!mixins.contains(mixin)) {
+        target.addMixin(mixin);
+        writes++;
+      }
+    }
+
+    List<String> removed = new ArrayList<>();
+    PropertyIterator properties = target.getProperties();
+    while (properties.hasNext()) {
+      Property property = properties.nextProperty();
+      if (!property.getDefinition().isProtected() && !node.hasProperty(property.getName())) {
+        removed.add(property.getName());
+      }
+    }
+    for (String name : removed) {
+      target.getProperty(name).remove();
+      writes++;
+    }
+    for (DetachedProperty property : node.getPropertyList()) {
+      if (!property.isProtected() && !property.matches(target)) {
+        property.writeTo(target);
+        writes++;
+      }
+    }
+
+    if (deep) {
+      removed.clear();
+      NodeIterator children = target.getNodes();
+      while (children.hasNext()) {
+        Node child = children.nextNode();
+        DetachedNode detached = node.getChild(child.getName());
+        if (detached == null || aside.containsKey(detached)) {
+          removed.add(child.getName());
+        }
+      }
+      for (String name : removed) {
+        target.getNode(name).remove();
+        writes++;
+      }
+      List<String> order = new ArrayList<>();
+      for (DetachedNode child : node.getChildren()) {
+        order.add(child.getName());
+        if (target.hasNode(child.getName()) && !aside.containsKey(child)) {
+          writes += sync(child, target.getNode(child.getName()), true, aside);
+        } else {
+          writes += create(child, target, aside);
+        }
+      }
+      writes += ChildOrder.reorder(target, order);
+    }
+    return writes;
+  }
+
+  /*
+    Creates the detached node, and its subtree, in the repository; a node which was set aside is moved into place
+    instead. Returns the number of writes.
+   */
+  private int create(DetachedNode node, Node parent, Map<DetachedNode, String> aside) throws RepositoryException {
+    if (node.isProtected()) {
+      return 0;
+    }
+    String path = aside.get(node);
+    if (path != null) {
+      String target = PathUtils.concat(parent.getPath(), node.getName());
+      live.move(path, target);
+      return 1 + sync(node, live.getNode(target), true, aside);
+    }
+    Node target = parent.addNode(node.getName(), node.getPrimaryType());
+    int writes = 1;
+    for (String mixin : node.getMixins()) {
+      target.addMixin(mixin);
+    }
+    for (DetachedProperty property : node.getPropertyList()) {
+      if (!property.isProtected()) {
+        property.writeTo(target);
+        writes++;
+      }
+    }
+    for (DetachedNode child : node.getChildren()) {
+      writes += create(child, target, aside);
+    }
+    return writes;
+  }
+
+  /*
+    Collects the nodes in the subtree which were loaded from the repository, but are no longer where they were loaded
+    from.
+   */
+  private static void collectMoved(DetachedNode node, List<DetachedNode> moved) {
+    for (DetachedNode child : node.getChildren()) {
+      String origin = child.getOrigin();
+      String parentOrigin = node.getOrigin();
+      if (origin != null && !child.isProtected()
+          && (parentOrigin == null || !origin.equals(PathUtils.concat(parentOrigin, child.getName())))) {
+        moved.add(child);
+      }
+      collectMoved(child, moved);
+    }
+  }
+
+  private static String uniqueName(Node parent, String name) throws RepositoryException {
+    String unique = name;
+    for (int i = 1; parent.hasNode(unique); i++) {
+      unique = name + i;
+    }
+    return unique;
+  }
+}
@@ -0,0 +1,146 @@
+package com.adobe.aem.modernize.impl;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2026 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.InputStream;
+import javax.jcr.NamespaceRegistry;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.UnsupportedRepositoryOperationException;
+import javax.jcr.Workspace;
+import javax.jcr.lock.LockManager;
+import javax.jcr.nodetype.NodeTypeManager;
+import javax.jcr.observation.ObservationManager;
+import javax.jcr.query.QueryManager;
+import javax.jcr.version.Version;
+import javax.jcr.version.VersionManager;
+
+import org.xml.sax.ContentHandler;
+
+/*
+  The workspace of a DetachedSession. Moves are made within the detached tree; node types and namespaces are read from
+  the repository workspace. All other workspace operations would bypass the detached tree, so they are not supported.
+ */
+class DetachedWorkspace implements Workspace {
+
+  private final DetachedSession session;
+  private final Workspace live;
+
+  DetachedWorkspace(DetachedSession session, Workspace live) {
+    this.session = session;
+    this.live = live;
+  }
+
+  @Override
+  public Session getSession() {
+    return session;
+  }
+
+  @Override
+  public String getName() {
+    return live.getName();
+  }
+
+  @Override
+  public void copy(String srcAbsPath, String destAbsPath) throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException(String.format("Cannot copy [%s] to [%s], detached trees do not support workspace copies.", srcAbsPath, destAbsPath));
+  }
+
+  @Override
+  public void copy(String srcWorkspace, String srcAbsPath, String destAbsPath) throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException(String.format("Cannot copy [%s] to [%s], detached trees do not support workspace copies.", srcAbsPath, destAbsPath));
+  }
+
+  @Override
+  public void clone(String srcWorkspace, String srcAbsPath, String destAbsPath, boolean removeExisting) throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException(String.format("Cannot clone [%s] to [%s], detached trees do not support workspace clones.", srcAbsPath, destAbsPath));
+  }
+
+  @Override
+  public void move(String srcAbsPath, String destAbsPath) throws RepositoryException {
+    session.move(srcAbsPath, destAbsPath);
+  }
+
+  @Override
+  public void restore(Version[] versions, boolean removeExisting) throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException("Detached trees do not support versioning.");
+  }
+
+  @Override
+  public LockManager getLockManager() throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException("Detached trees do not support locking.");
+  }
+
+  @Override
+  public QueryManager getQueryManager() throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException("Detached trees do not support queries.");
+  }
+
+  @Override
+  public NamespaceRegistry getNamespaceRegistry() throws RepositoryException {
+    return live.getNamespaceRegistry();
+  }
+
+  @Override
+  public NodeTypeManager getNodeTypeManager() throws RepositoryException {
+    return live.getNodeTypeManager();
+  }
+
+  @Override
+  public ObservationManager getObservationManager() throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException("Detached trees do not support observation.");
+  }
+
+  @Override
+  public VersionManager getVersionManager() throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException("Detached trees do not support versioning.");
+  }
+
+  @Override
+  public String[] getAccessibleWorkspaceNames() throws RepositoryException {
+    return live.getAccessibleWorkspaceNames();
+  }
+
+  @Override
+  public ContentHandler getImportContentHandler(String parentAbsPath, int uuidBehavior) throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException("Detached trees do not support imports.");
+  }
+
+  @Override
+  public void importXML(String parentAbsPath, InputStream in, int uuidBehavior) throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException("Detached trees do not support imports.");
+  }
+
+  @Override
+  public void createWorkspace(String name) throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException("Detached trees do not support creating workspaces.");
+  }
+
+  @Override
+  public void createWorkspace(String name, String srcWorkspace) throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException("Detached trees do not support creating workspaces.");
+  }
+
+  @Override
+  public void deleteWorkspace(String name) throws RepositoryException {
+    throw new UnsupportedRepositoryOperationException("Detached trees do not support deleting workspaces.");
+  }
+}
@@ -0,0 +1,149 @@
+package com.adobe.aem.modernize.impl;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2021 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.apache.sling.jcr.resource.api.JcrResourceConstants;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.osgi.service.component.annotations.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static com.day.cq.wcm.api.NameConstants.*;
+
+/**
+ * Remembers the metadata of Editable Templates which conversions read for every page, so that each template is read once.
+ * A template is read again after it, or its structure, changes.
+ */
+@Component(
+    service = { EditableTemplateCache.class, ResourceChangeListener.class },
+    property = {
+        ResourceChangeListener.PATHS + "=/conf",
+        ResourceChangeListener.PATHS + "=/apps",
+        ResourceChangeListener.PATHS + "=/libs",
+        ResourceChangeListener.CHANGES + "=ADDED",
+        ResourceChangeListener.CHANGES + "=CHANGED",
+        ResourceChangeListener.CHANGES + "=REMOVED"
+    }
+)
+public class EditableTemplateCache implements ResourceChangeListener {
+
+  public static final String NN_STRUCTURE = "structure";
+
+  private static final Logger logger = LoggerFactory.getLogger(EditableTemplateCache.class);
+
+  private final Map<String, Template> templates = new ConcurrentHashMap<>();
+
+  /**
+   * Gets the metadata of the template, reading it with the session if it is not known. Templates which don't exist, or
+   * which the session cannot read, are not remembered.
+   *
+   * @param session the session with which to read the template
+   * @param path    the path of the template
+   * @return the template's metadata
+   * @throws RepositoryException if the template cannot be read
+   */
+  @NotNull
+  public Template get(@NotNull Session session, @NotNull String path) throws RepositoryException {
+    Template template = templates.get(path);
+    if (template == null) {
+      template = new Template(session, path);
+      if (template.exists()) {
+        templates.put(path, template);
+      }
+    }
+    return template;
+  }
+
+  /*
+    Policy mappings are written below templates during conversions, those don't change what is kept here.
+   */
+  @Override
+  public void onChange(@NotNull List<ResourceChange> changes) {
+    if (templates.isEmpty()) {
+      return;
+    }
+    for (ResourceChange change : changes) {
+      String path = change.getPath();
+      templates.keySet().removeIf(t -> {
+        String structure = PathUtils.concat(t, NN_STRUCTURE);
+        boolean changed = path.equals(t) || PathUtils.isAncestor(path, t) || path.equals(structure) || PathUtils.isAncestor(structure, path);
+        if (changed) {
+          logger.debug("Editable Template changed: [{}]", t);
+        }
+        return changed;
+      });
+    }
+  }
+
+  /**
+   * The metadata of an Editable Template.
+   */
+  public static final class Template {
+
+    private final String path;
+    private final boolean exists;
+    private final String structureResourceType;
+
+    private Template(Session session, String path) throws RepositoryException {
+      this.path = path;
+      String structurePath = PathUtils.concat(path, NN_STRUCTURE, NN_CONTENT);
+      this.exists = session.nodeExists(structurePath);
+      String resourceType = null;
+      if (exists) {
+        Node structure = session.getNode(structurePath);
+        if (structure.hasProperty(JcrResourceConstants.SLING_RESOURCE_TYPE_PROPERTY)) {
+          resourceType = structure.getProperty(JcrResourceConstants.SLING_RESOURCE_TYPE_PROPERTY).getString();
+        }
+      }
+      this.structureResourceType = resourceType;
+    }
+
+    @NotNull
+    public String getPath() {
+      return path;
+    }
+
+    /**
+     * @return true if the template has a structure
+     */
+    public boolean exists() {
+      return exists;
+    }
+
+    /**
+     * @return the resource type of the template's structure, which pages created from it use
+     */
+    @Nullable
+    public String getStructureResourceType() {
+      return structureResourceType;
+    }
+  }
+}
@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.apache.jackrabbit.JcrConstants;
 import org.apache.jackrabbit.oak.commons.PathUtils;
@@ -51,6 +52,7 @@ public class ListPageVisitor extends AbstractResourceVisitor {
 
   private final List<String> paths = new ArrayList<>();
   private final int depth;
+  private final Consumer<String> consumer;
 
   public ListPageVisitor() {
     this(10);
@@ -58,12 +60,24 @@ public class ListPageVisitor extends AbstractResourceVisitor {
 
   public ListPageVisitor(int depth) {
     this.depth = depth;
+    this.consumer = paths::add;
+  }
+
+  /**
+   * Creates a visitor which passes each page path to the consumer as it is found, instead of collecting them.
+   *
+   * @param depth    the maximum depth of pages to visit
+   * @param consumer receives the page paths
+   */
+  public ListPageVisitor(int depth, @NotNull Consumer<String> consumer) {
+    this.depth = depth;
+    this.consumer = consumer;
   }
 
   @Override
   protected void visit(@NotNull Resource resource) {
     if (resource.adaptTo(Page.class) != null) {
-      paths.add(resource.getPath());
+      consumer.accept(resource.getPath());
     }
   }
 
@@ -0,0 +1,140 @@
+package com.adobe.aem.modernize.impl;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2021 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Remembers the super type hierarchy of resource types, so that checking whether a resource is of a type is a map lookup.
+ * Hierarchies are read with the service user, so that one caller's access does not decide what others see, and are
+ * discarded whenever anything under {@code /apps} or {@code /libs} changes.
+ */
+@Component(
+    service = { ResourceTypeHierarchy.class, ResourceChangeListener.class },
+    property = {
+        ResourceChangeListener.PATHS + "=/apps",
+        ResourceChangeListener.PATHS + "=/libs",
+        ResourceChangeListener.CHANGES + "=ADDED",
+        ResourceChangeListener.CHANGES + "=CHANGED",
+        ResourceChangeListener.CHANGES + "=REMOVED"
+    }
+)
+public class ResourceTypeHierarchy implements ResourceChangeListener {
+
+  private static final Logger logger = LoggerFactory.getLogger(ResourceTypeHierarchy.class);
+
+  private static final String SERVICE_NAME = "convert-content";
+
+  private final Map<String, Set<String>> hierarchies = new ConcurrentHashMap<>();
+  private final AtomicLong generation = new AtomicLong();
+
+  @Reference
+  private ResourceResolverFactory resourceResolverFactory;
+
+  /**
+   * Gets the hierarchy of the resource type if it is known.
+   *
+   * @param resourceType the resource type
+   * @return the resource type followed by its super types, or null if it has not been read yet
+   */
+  @Nullable
+  public Set<String> getCached(@NotNull String resourceType) {
+    return hierarchies.get(resourceType);
+  }
+
+  /**
+   * Gets the hierarchy of the resource type, reading it if it is not known. The resolver is only used if the service
+   * user cannot log in, in which case the hierarchy is not remembered.
+   *
+   * @param rr           the resolver with which to read the super types if the service user is unavailable
+   * @param resourceType the resource type
+   * @return the resource type followed by its super types
+   */
+  @NotNull
+  public Set<String> getHierarchy(@NotNull ResourceResolver rr, @NotNull String resourceType) {
+    Set<String> hierarchy = hierarchies.get(resourceType);
+    if (hierarchy != null) {
+      return hierarchy;
+    }
+    long current = generation.get();
+    try (ResourceResolver serviceResolver = resourceResolverFactory.getServiceResourceResolver(Collections.singletonMap(ResourceResolverFactory.SUBSERVICE, SERVICE_NAME))) {
+      hierarchy = readHierarchy(serviceResolver, resourceType);
+    } catch (LoginException e) {
+      logger.error("Unable to log in using service user to read resource type hierarchy", e);
+      return readHierarchy(rr, resourceType);
+    }
+    hierarchies.put(resourceType, hierarchy);
+    // Code changed while reading, the hierarchy may be stale
+    if (generation.get() != current) {
+      hierarchies.remove(resourceType, hierarchy);
+    }
+    return hierarchy;
+  }
+
+  /**
+   * Checks whether the resource type is, or inherits from, the super type.
+   *
+   * @param rr           the resolver with which to read the super types if the service user is unavailable
+   * @param resourceType the resource type
+   * @param superType    the super type
+   * @return true if the resource type is the super type or one of its descendants
+   */
+  public boolean isA(@NotNull ResourceResolver rr, @NotNull String resourceType, @NotNull String superType) {
+    return getHierarchy(rr, resourceType).contains(superType);
+  }
+
+  @Override
+  public void onChange(@NotNull List<ResourceChange> changes) {
+    generation.incrementAndGet();
+    if (!hierarchies.isEmpty()) {
+      logger.debug("Code changed, discarding resource type hierarchies: [{}]", changes.get(0).getPath());
+      hierarchies.clear();
+    }
+  }
+
+  private static Set<String> readHierarchy(ResourceResolver rr, String resourceType) {
+    Set<String> hierarchy = new LinkedHashSet<>();
+    String type = resourceType;
+    while (StringUtils.isNotBlank(type) && hierarchy.add(type)) {
+      type = rr.getParentResourceType(type);
+    }
+    return Collections.unmodifiableSet(hierarchy);
+  }
+}
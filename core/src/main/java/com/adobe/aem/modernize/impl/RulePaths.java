@@ -0,0 +1,112 @@
+package com.adobe.aem.modernize.impl;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2021 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import javax.jcr.RepositoryException;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.AbstractResourceVisitor;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.jcr.resource.api.JcrResourceConstants;
+
+import com.adobe.aem.modernize.model.ConversionJob;
+import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.api.PageManager;
+import com.day.cq.wcm.api.Revision;
+import com.day.cq.wcm.api.WCMException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds the paths on a page to which rules may apply. Shared by the rule servlets and the site scan job.
+ */
+public class RulePaths {
+
+  private static final Logger logger = LoggerFactory.getLogger(RulePaths.class);
+
+  private RulePaths() {}
+
+  /**
+   * Gets the content of the page before it was modernized, if requested and available.
+   *
+   * @param page      the page
+   * @param reprocess whether to use the version from before the page was modernized
+   * @return the content resource, or null if the version cannot be found
+   */
+  @Nullable
+  public static Resource getPageContent(@NotNull Page page, boolean reprocess) {
+    if (!reprocess) {
+      return page.getContentResource();
+    }
+    logger.debug("Page reprocess requested.");
+    String versionId = page.getProperties().get(ConversionJob.PN_PRE_MODERNIZE_VERSION, String.class);
+    if (StringUtils.isBlank(versionId)) {
+      logger.debug("Page does not contain previous version. Processing as-is.");
+      return page.getContentResource();
+    }
+
+    try {
+      PageManager pm = page.getPageManager();
+      ResourceResolver rr = page.getContentResource().getResourceResolver();
+      Revision rev = pm.getRevisions(page.getPath(), null).stream().filter(r -> r.getId().equals(versionId)).findFirst().orElse(null);
+      if (rev == null) {
+        return null;
+      }
+      return rr.getResource(rev.getVersion().getFrozenNode().getPath());
+    } catch (WCMException | RepositoryException ex) {
+      logger.warn("Unable to determine revision of page.");
+      return null;
+    }
+  }
+
+  /**
+   * Lists all descendants of the root which have a {@code sling:resourceType}.
+   *
+   * @param root the root of the search, which is not included
+   * @return the paths found
+   */
+  @NotNull
+  public static Set<String> gatherPaths(@NotNull Resource root) {
+    Set<String> paths = new HashSet<>();
+    Iterator<Resource> children = root.listChildren();
+    while (children.hasNext()) {
+      new AbstractResourceVisitor() {
+        @Override
+        protected void visit(@NotNull Resource resource) {
+          ValueMap vm = resource.adaptTo(ValueMap.class);
+          if (vm != null &&
+              StringUtils.isNotBlank(vm.get(JcrResourceConstants.SLING_RESOURCE_TYPE_PROPERTY, String.class))) {
+
+            paths.add(resource.getPath());
+          }
+        }
+      }.accept(children.next());
+    }
+    return paths;
+  }
+}
@@ -20,13 +20,21 @@ package com.adobe.aem.modernize.job;
  * #L%
  */
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.jackrabbit.JcrConstants;
+import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.sling.api.resource.LoginException;
 import org.apache.sling.api.resource.ModifiableValueMap;
 import org.apache.sling.api.resource.PersistenceException;
@@ -35,6 +43,8 @@ import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
+import org.apache.sling.event.jobs.ScheduledJobInfo;
 import org.apache.sling.event.jobs.consumer.JobExecutionContext;
 import org.apache.sling.event.jobs.consumer.JobExecutionResult;
 import org.apache.sling.event.jobs.consumer.JobExecutor;
@@ -54,6 +64,8 @@ public abstract class AbstractConversionJobExecutor implements JobExecutor {
   protected final Logger logger = LoggerFactory.getLogger(getClass());
 
   private static final String SERVICE_NAME = "convert-content";
+  private static final long RESCHEDULE_DELAY = TimeUnit.MINUTES.toMillis(1);
+  private static final int DEFAULT_COMMIT_INTERVAL = 50;
 
   @Override
   public JobExecutionResult process(Job job, JobExecutionContext context) {
@@ -63,6 +75,8 @@ public abstract class AbstractConversionJobExecutor implements JobExecutor {
     }
     ResourceResolver resourceResolver = null;
     Resource tracking = null;
+    PathLeases leases = new PathLeases(getJobManager());
+    boolean leased = false;
     try {
       resourceResolver = login();
       tracking = resourceResolver.getResource(trackingPath);
@@ -78,6 +92,14 @@ public abstract class AbstractConversionJobExecutor implements JobExecutor {
         return context.result().message("Tracking path unable to be adapted to ConversionJobBucket.").cancelled();
       }
 
+      // Buckets of any type, on any instance, never modify the same paths at once
+      Set<String> paths = getLeasePaths(bucket);
+      leased = leases.tryAcquire(tracking, job.getId(), paths);
+      if (!leased) {
+        logger.info("Leases on paths {} of bucket [{}] are held by other conversions, rescheduling it.", paths, trackingPath);
+        return reschedule(job, context, tracking);
+      }
+
       updateTracking(job, tracking);
       doProcess(job, context, bucket);
       Calendar finished = Calendar.getInstance();
@@ -96,39 +118,80 @@ public abstract class AbstractConversionJobExecutor implements JobExecutor {
       attemptTrackingUpdate(tracking);
       return context.result().message("Error when trying to save the changes.").cancelled();
     } finally {
+      if (leased) {
+        leases.release(tracking);
+      }
       if (resourceResolver != null && resourceResolver.isLive()) {
         resourceResolver.close();
       }
     }
   }
 
-  /*
-    Log into the repository with the Service user.
+  /**
+   * Log into the repository with the Service user.
+   *
+   * @return a new resolver, which the caller must close
+   * @throws LoginException if the service user cannot be logged in
    */
-  private ResourceResolver login() throws LoginException {
+  protected ResourceResolver login() throws LoginException {
     return getResourceResolverFactory().getServiceResourceResolver(Collections.singletonMap(ResourceResolverFactory.SUBSERVICE, SERVICE_NAME));
   }
 
   /*
-    Set this JobID onto the job/bucket details node.
+    Set this JobID onto the job/bucket details node; the leased paths were set when acquiring them.
    */
   private void updateTracking(Job job, Resource tracking) throws PersistenceException {
     ModifiableValueMap mvm = tracking.adaptTo(ModifiableValueMap.class);
     mvm.put(PN_JOB_ID, job.getId());
     mvm.put(PN_STARTED, job.getProcessingStarted());
+    mvm.remove(PN_JOB_STATUS);
+    tracking.getResourceResolver().commit();
+  }
+
+  /*
+    Schedules a new job for the bucket, so that no queue thread is held while conflicting conversions run. The bucket
+    waits without a job until then.
+   */
+  private JobExecutionResult reschedule(Job job, JobExecutionContext context, Resource tracking) throws PersistenceException {
+    Date at = new Date(System.currentTimeMillis() + getRescheduleDelay());
+    ScheduledJobInfo info = getJobManager().createJob(job.getTopic())
+        .properties(Collections.singletonMap(PN_TRACKING_PATH, tracking.getPath()))
+        .schedule()
+        .at(at)
+        .add();
+    if (info == null) {
+      context.log("Unable to reschedule the bucket after conflicting conversions.");
+      logger.error("Unable to reschedule bucket [{}] after conflicting conversions.", tracking.getPath());
+      attemptTrackingUpdate(tracking);
+      return context.result().message("Unable to reschedule the bucket after conflicting conversions.").cancelled();
+    }
+    ModifiableValueMap mvm = tracking.adaptTo(ModifiableValueMap.class);
+    mvm.remove(PN_JOB_ID);
+    mvm.put(PN_JOB_STATUS, Status.WAITING.name());
     tracking.getResourceResolver().commit();
+    context.log("Conflicting conversions are running, the bucket was rescheduled for {0}.", at);
+    return context.result().message("Conflicting conversions are running, the bucket was rescheduled.").cancelled();
   }
 
   /*
     Update the bucket path processing details.
    */
   private void updateBucket(ConversionJobBucket bucket, Calendar finished) {
+    ModifiableValueMap mvm = updateProgress(bucket);
+    mvm.put(ConversionJobBucket.PN_FINISHED, finished);
+    mvm.put(PN_JOB_STATUS, Status.SUCCESS.name());
+    mvm.remove(PN_LEASES);
+  }
+
+  /*
+    Update the bucket path processing details recorded so far.
+   */
+  private static ModifiableValueMap updateProgress(ConversionJobBucket bucket) {
     ModifiableValueMap mvm = bucket.getResource().adaptTo(ModifiableValueMap.class);
     mvm.put(PN_SUCCESS, bucket.getSuccess().toArray(new String[] {}));
     mvm.put(PN_FAILED, bucket.getFailed().toArray(new String[] {}));
     mvm.put(PN_NOT_FOUND, bucket.getNotFound().toArray(new String[] {}));
-    mvm.put(ConversionJobBucket.PN_FINISHED, finished);
-    mvm.put(PN_JOB_STATUS, Status.SUCCESS.name());
+    return mvm;
   }
 
   /*
@@ -147,6 +210,7 @@ public abstract class AbstractConversionJobExecutor implements JobExecutor {
       try {
         ModifiableValueMap mvm = tracking.adaptTo(ModifiableValueMap.class);
         mvm.put(PN_JOB_STATUS, Status.FAILED.name());
+        mvm.remove(PN_LEASES);
         tracking.getResourceResolver().commit();
       } catch (PersistenceException e) {
         logger.error("Unable to save job status as {} on tracking node [{}}", Status.FAILED.name(), tracking.getPath());
@@ -154,6 +218,174 @@ public abstract class AbstractConversionJobExecutor implements JobExecutor {
     }
   }
 
+  /**
+   * Paths this bucket may modify. No other bucket with an overlapping lease runs at the same time. Paths ending with
+   * {@code /*} lease the whole subtree, others only the node itself. Defaults to the subtrees of the bucket's paths,
+   * and the target conf when policies are imported.
+   *
+   * @param bucket the bucket to process
+   * @return the paths to lease
+   */
+  @NotNull
+  protected Set<String> getLeasePaths(@NotNull ConversionJobBucket bucket) {
+    Set<String> paths = new LinkedHashSet<>();
+    for (String path : bucket.getPaths()) {
+      paths.add(PathLeases.subtree(path));
+    }
+    addConfLease(bucket, paths);
+    return paths;
+  }
+
+  /**
+   * Leases for a bucket of pages: each page node and its content subtree, and for copies the target page, its content
+   * subtree and its parent node. Child pages are not leased, so buckets of one site run in parallel. Adds the target
+   * conf when policies are imported.
+   *
+   * @param bucket the bucket to process
+   * @return the paths to lease
+   */
+  @NotNull
+  protected Set<String> getPageLeasePaths(@NotNull ConversionJobBucket bucket) {
+    Set<String> paths = new LinkedHashSet<>();
+    String sourceRoot = getSourceRoot(bucket);
+    String targetRoot = getTargetRoot(bucket);
+    boolean copy = getPageHandling(bucket) == PageHandling.COPY && StringUtils.isNotBlank(sourceRoot) && StringUtils.isNotBlank(targetRoot);
+    for (String path : bucket.getPaths()) {
+      addPageLease(path, paths);
+      if (copy) {
+        String target = path.replace(sourceRoot, targetRoot);
+        addPageLease(target, paths);
+        paths.add(PathUtils.getParentPath(target));
+      }
+    }
+    addConfLease(bucket, paths);
+    return paths;
+  }
+
+  private static void addPageLease(String path, Set<String> paths) {
+    paths.add(path);
+    paths.add(PathLeases.subtree(PathUtils.concat(path, JcrConstants.JCR_CONTENT)));
+  }
+
+  /*
+    Policies are imported into shared subtrees of the conf, which are not known before the import. Buckets importing
+    into the same conf are run one at a time on purpose.
+   */
+  private void addConfLease(ConversionJobBucket bucket, Set<String> paths) {
+    String confPath = getTargetConfPath(bucket);
+    if (StringUtils.isNotBlank(confPath) && !getPolicyRules(bucket).isEmpty()) {
+      paths.add(PathLeases.subtree(confPath));
+    }
+  }
+
+  /**
+   * How long to wait before running a bucket again when conflicting buckets hold its leases, in milliseconds.
+   *
+   * @return the delay
+   */
+  protected long getRescheduleDelay() {
+    return RESCHEDULE_DELAY;
+  }
+
+  /**
+   * The bucket's paths that have not been processed yet. Paths recorded as processed by a previous run of the bucket's
+   * job are skipped, so that an interrupted job resumes where it stopped.
+   *
+   * @param bucket the bucket to process
+   * @return the paths to process, in the bucket's order
+   */
+  @NotNull
+  protected List<String> getPendingPaths(@NotNull ConversionJobBucket bucket) {
+    Set<String> processed = new HashSet<>(bucket.getSuccess());
+    processed.addAll(bucket.getFailed());
+    processed.addAll(bucket.getNotFound());
+    return bucket.getPaths().stream().filter(p -> !processed.contains(p)).collect(Collectors.toList());
+  }
+
+  /**
+   * Records the bucket's progress and saves all changes of its resolver. Paths processed up to this point will be
+   * skipped if the bucket's job is run again.
+   *
+   * @param bucket the bucket being processed
+   * @throws PersistenceException if the changes cannot be saved
+   */
+  protected void checkpoint(@NotNull ConversionJobBucket bucket) throws PersistenceException {
+    updateProgress(bucket);
+    bucket.getResource().getResourceResolver().commit();
+  }
+
+  /**
+   * Number of paths after which the changes made while processing a bucket are saved. Zero or less saves all changes
+   * once the bucket is complete.
+   *
+   * @return the commit interval
+   */
+  protected int getCommitInterval() {
+    return DEFAULT_COMMIT_INTERVAL;
+  }
+
+  /**
+   * Creates a tracker that saves the changes of the bucket's resolver every {@link #getCommitInterval()} paths.
+   *
+   * @param bucket the bucket being processed
+   * @return the tracker
+   */
+  @NotNull
+  protected PeriodicCommit periodicCommit(@NotNull ConversionJobBucket bucket) {
+    return periodicCommit(bucket, getCommitInterval());
+  }
+
+  PeriodicCommit periodicCommit(ConversionJobBucket bucket, int interval) {
+    return new PeriodicCommit(bucket, interval);
+  }
+
+  /**
+   * Saves the changes made while processing a bucket every few paths, and refreshes the session, so that the transient
+   * space stays bounded. The bucket's progress is recorded with each save.
+   */
+  protected class PeriodicCommit {
+
+    private final ConversionJobBucket bucket;
+    private final ResourceResolver resolver;
+    private final int interval;
+    private final List<String> pending = new ArrayList<>();
+
+    private PeriodicCommit(ConversionJobBucket bucket, int interval) {
+      this.bucket = bucket;
+      this.resolver = bucket.getResource().getResourceResolver();
+      this.interval = interval;
+    }
+
+    /**
+     * Records that the path was processed, saving the changes when the interval is reached. If the save fails, the
+     * changes since the previous save are reverted, and their successful paths are moved to the failed list.
+     *
+     * @param path the path processed, already added to one of the bucket's lists
+     */
+    public void processed(@NotNull String path) {
+      pending.add(path);
+      if (interval > 0 && pending.size() >= interval) {
+        commit();
+      }
+    }
+
+    private void commit() {
+      try {
+        checkpoint(bucket);
+      } catch (PersistenceException e) {
+        logger.error("Unable to save the changes of paths {}.", pending, e);
+        resolver.revert();
+        for (String path : pending) {
+          if (bucket.getSuccess().remove(path)) {
+            bucket.getFailed().add(path);
+          }
+        }
+      }
+      resolver.refresh();
+      pending.clear();
+    }
+  }
+
   @Nullable
   protected ValueMap getTrackingInfo(ConversionJobBucket bucket) {
     Resource parent = bucket.getResource().getParent();
@@ -247,4 +479,6 @@ public abstract class AbstractConversionJobExecutor implements JobExecutor {
   protected abstract void doProcess(@NotNull Job job, @NotNull JobExecutionContext context, @NotNull ConversionJobBucket bucket);
 
   protected abstract ResourceResolverFactory getResourceResolverFactory();
+
+  protected abstract JobManager getJobManager();
 }
@@ -20,16 +20,27 @@ package com.adobe.aem.modernize.job;
  * #L%
  */
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.sling.api.resource.AbstractResourceVisitor;
+import org.apache.sling.api.resource.LoginException;
 import org.apache.sling.api.resource.ModifiableValueMap;
 import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.Resource;
@@ -37,11 +48,13 @@ import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.apache.sling.api.resource.ResourceUtil;
 import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
 import org.apache.sling.event.jobs.consumer.JobExecutionContext;
 import org.apache.sling.event.jobs.consumer.JobExecutor;
 
 import com.adobe.aem.modernize.RewriteException;
 import com.adobe.aem.modernize.component.ComponentRewriteRuleService;
+import com.adobe.aem.modernize.impl.DesignStyleCache;
 import com.adobe.aem.modernize.impl.RewriteUtils;
 import com.adobe.aem.modernize.model.ConversionJob;
 import com.adobe.aem.modernize.model.ConversionJobBucket;
@@ -51,12 +64,15 @@ import com.day.cq.wcm.api.NameConstants;
 import com.day.cq.wcm.api.Page;
 import com.day.cq.wcm.api.PageManager;
 import com.day.cq.wcm.api.WCMException;
-import com.day.cq.wcm.api.designer.Cell;
 import com.day.cq.wcm.api.designer.Designer;
-import com.day.cq.wcm.api.designer.Style;
 import org.jetbrains.annotations.NotNull;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 import static com.adobe.aem.modernize.model.ConversionJob.PageHandling.*;
 import static com.adobe.aem.modernize.policy.PolicyImportRuleService.*;
 
@@ -66,12 +82,13 @@ import static com.adobe.aem.modernize.policy.PolicyImportRuleService.*;
         JobExecutor.PROPERTY_TOPICS + "=" + FullConversionJobExecutor.JOB_TOPIC
     }
 )
+@Designate(ocd = FullConversionJobExecutor.Config.class)
 public class FullConversionJobExecutor extends AbstractConversionJobExecutor {
 
   public static final String JOB_TOPIC = "com/adobe/aem/modernize/job/topic/convert/full";
 
-  private static final String TMP_POLICY_PATH = "cq:policyPath";
   private static final String POLICIES = "policies";
+  private static final String TMP_POLICY_PATH = "cq:policyPath";
   private static final String PN_POLICY = "cq:policy";
   private static final String POLICY_MAPPING_RESOURCE_TYPE = "wcm/core/components/policies/mappings";
 
@@ -87,83 +104,207 @@ public class FullConversionJobExecutor extends AbstractConversionJobExecutor {
   @Reference
   private ResourceResolverFactory resourceResolverFactory;
 
+  @Reference
+  private JobManager jobManager;
+
+  private Config config;
+
   @Override
   protected void doProcess(Job job, JobExecutionContext context, ConversionJobBucket bucket) {
+    Conversion conversion = new Conversion(context, bucket);
+    List<String> paths = getPendingPaths(bucket);
+    context.initProgress(paths.size(), -1);
 
-    final ConversionJob.PageHandling pageHandling = getPageHandling(bucket);
-    final boolean overwritePolicies = isOverwrite(bucket);
-    String sourceRoot = getSourceRoot(bucket);
-    String targetRoot = getTargetRoot(bucket);
+    // Imported policies are shared between pages, so buckets that import them are converted on one session.
+    int workers = Math.min(config.workers(), paths.size());
+    if (workers > 1 && conversion.policyRules.isEmpty()) {
+      convertParallel(conversion, bucket, paths, workers);
+      synchronized (bucket) {
+        Set<String> processed = new HashSet<>(bucket.getSuccess());
+        processed.addAll(bucket.getNotFound());
+        processed.addAll(bucket.getFailed());
+        paths.stream().filter(p -> !processed.contains(p)).forEach(p -> bucket.getFailed().add(p));
+      }
+    } else {
+      PageManager pm = bucket.getResource().getResourceResolver().adaptTo(PageManager.class);
+      PeriodicCommit commit = periodicCommit(bucket);
+      for (String path : paths) {
+        record(bucket, path, conversion.convert(pm, path));
+        commit.processed(path);
+      }
+    }
+  }
 
-    Resource resource = bucket.getResource();
-    ResourceResolver rr = resource.getResourceResolver();
-    PageManager pm = rr.adaptTo(PageManager.class);
+  private static void record(ConversionJobBucket bucket, String path, Result result) {
+    switch (result) {
+      case SUCCESS:
+        bucket.getSuccess().add(path);
+        break;
+      case NOT_FOUND:
+        bucket.getNotFound().add(path);
+        break;
+      default:
+        bucket.getFailed().add(path);
+    }
+  }
 
-    Set<String> templateRules = getTemplateRules(bucket);
-    Set<String> policyRules = getPolicyRules(bucket);
-    String confDest = getTargetConfPath(bucket);
-    Set<String> componentRules = getComponentRules(bucket);
+  /*
+    Splits the paths into partitions, each converted and saved by a worker on its own service session. Results are
+    recorded as each worker saves, not in the order of the paths. Paths of a worker that could not log in, or that did
+    not finish, are not recorded on the bucket. Returns only once every worker has stopped, as they share the bucket's
+    resolver.
+   */
+  private void convertParallel(Conversion conversion, ConversionJobBucket bucket, List<String> paths, int workers) {
+    ExecutorService pool = Executors.newFixedThreadPool(workers);
+    List<Future<?>> futures = new ArrayList<>();
+    for (List<String> partition : partition(paths, workers, conversion.pageHandling == COPY)) {
+      futures.add(pool.submit(() -> convertPartition(conversion, bucket, partition)));
+    }
+    pool.shutdown();
 
-    List<String> paths = bucket.getPaths();
-    Set<String> importedPolicies = new HashSet<>();
+    boolean interrupted = false;
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        logger.error("Interrupted while waiting for conversion workers.", e);
+        interrupted = true;
+        pool.shutdownNow();
+        break;
+      } catch (ExecutionException e) {
+        logger.error("Conversion worker resulted in an error", e.getCause());
+      }
+    }
+    while (!pool.isTerminated()) {
+      try {
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
 
-    context.initProgress(paths.size(), -1);
+  /*
+    Splits the paths into at most the number of workers contiguous partitions. Copied pages are created beneath the copy
+    of their parent, so when copying, each path is kept in the partition of its top-most ancestor in the list, and is
+    converted after it.
+   */
+  private static List<List<String>> partition(List<String> paths, int workers, boolean subtrees) {
+    Map<String, List<String>> groups = new LinkedHashMap<>();
+    Set<String> all = new HashSet<>(paths);
     for (String path : paths) {
-      Page page = pm.getPage(path);
-      if (page == null) {
-        bucket.getNotFound().add(path);
-        context.incrementProgressCount(1);
-        continue;
+      String root = path;
+      if (subtrees) {
+        for (String parent = PathUtils.getParentPath(path); !PathUtils.denotesRoot(parent) && !parent.isEmpty(); parent = PathUtils.getParentPath(parent)) {
+          if (all.contains(parent)) {
+            root = parent;
+          }
+        }
       }
+      groups.computeIfAbsent(root, k -> new ArrayList<>()).add(path);
+    }
 
-      if (pageHandling == COPY && (StringUtils.isBlank(sourceRoot) || StringUtils.isBlank(targetRoot))) {
-        bucket.getFailed().add(path);
-        continue;
+    int size = (paths.size() + workers - 1) / workers;
+    List<List<String>> partitions = new ArrayList<>();
+    List<String> partition = new ArrayList<>();
+    for (List<String> group : groups.values()) {
+      partition.addAll(group);
+      if (partition.size() >= size) {
+        partitions.add(partition);
+        partition = new ArrayList<>();
       }
+    }
+    if (!partition.isEmpty()) {
+      partitions.add(partition);
+    }
+    return partitions;
+  }
 
-      try {
-        if (pageHandling == RESTORE) {
-          page = RewriteUtils.restore(pm, page);
+  /*
+    Converts the paths on a new session, saving every commit interval. Successful paths whose changes could not be
+    saved are reported as failed. An unexpected error discards the unsaved changes, failing the paths they belong to. A
+    worker stops at the next path once interrupted, leaving the rest unprocessed.
+   */
+  private void convertPartition(Conversion conversion, ConversionJobBucket bucket, List<String> paths) {
+    try (ResourceResolver rr = login()) {
+      PageManager pm = rr.adaptTo(PageManager.class);
+      int interval = getCommitInterval();
+      Map<String, Result> pending = new LinkedHashMap<>();
+      for (String path : paths) {
+        if (Thread.currentThread().isInterrupted()) {
+          break;
         }
-
-        // Walk page's content tree and find all styles and import them
-        if (!policyRules.isEmpty() && !StringUtils.isBlank(confDest)) {
-          importPolicies(page, confDest, policyRules, overwritePolicies, importedPolicies);
+        try {
+          pending.put(path, conversion.convert(pm, path));
+        } catch (RuntimeException e) {
+          logger.error("Unexpected error converting page [{}].", path, e);
+          rr.revert();
+          pending.replaceAll((p, r) -> Result.FAILED);
+          pending.put(path, Result.FAILED);
         }
-
-        RewriteUtils.createVersion(pm, page);
-
-        if (pageHandling == COPY) {
-          page = RewriteUtils.copyPage(pm, page, sourceRoot, targetRoot);
+        if (interval > 0 && pending.size() >= interval) {
+          commit(rr, bucket, pending);
         }
+      }
+      commit(rr, bucket, pending);
+    } catch (LoginException e) {
+      logger.error("Unable to log in using service user to perform conversion", e);
+    }
+  }
 
-        if (!templateRules.isEmpty()) {
-          structureService.apply(page, templateRules);
-        }
+  /*
+    Saves a worker's changes, then records the results on the bucket and checkpoints its progress. The bucket's resolver
+    is shared by all workers.
+   */
+  private void commit(ResourceResolver rr, ConversionJobBucket bucket, Map<String, Result> pending) {
+    if (pending.isEmpty()) {
+      return;
+    }
+    boolean saved = true;
+    try {
+      rr.commit();
+    } catch (PersistenceException e) {
+      logger.error("Unable to save the changes of a conversion worker.", e);
+      rr.revert();
+      saved = false;
+    }
+    rr.refresh();
 
-        // Policies need to be applied before component processing - that will remove temp property.
-        String templatePath = page.getProperties().get(NameConstants.PN_TEMPLATE, String.class);
-        if (StringUtils.startsWith(templatePath, confDest)) {
-          applyPolicies(context, page, confDest);
-        }
+    synchronized (bucket) {
+      for (Map.Entry<String, Result> entry : pending.entrySet()) {
+        record(bucket, entry.getKey(), !saved && entry.getValue() == Result.SUCCESS ? Result.FAILED : entry.getValue());
+      }
+      try {
+        checkpoint(bucket);
+      } catch (PersistenceException e) {
+        logger.error("Unable to save the progress of bucket [{}].", bucket.getResource().getPath(), e);
+      }
+    }
+    pending.clear();
+  }
 
-        if (componentRules.isEmpty()) {
-          context.log("No component rules found, skipping skipping component conversion.");
-        } else {
-          componentService.apply(page.getContentResource(), componentRules, true);
-          fixChildrenOrder(page);
+  @NotNull
+  @Override
+  protected Set<String> getLeasePaths(@NotNull ConversionJobBucket bucket) {
+    Set<String> paths = getPageLeasePaths(bucket);
+
+    // Imported styles are marked in the design
+    if (!getPolicyRules(bucket).isEmpty()) {
+      ResourceResolver rr = bucket.getResource().getResourceResolver();
+      PageManager pm = rr.adaptTo(PageManager.class);
+      Designer designer = rr.adaptTo(Designer.class);
+      for (String path : bucket.getPaths()) {
+        Page page = pm.getPage(path);
+        String designPath = page == null ? null : designer.getDesignPath(page);
+        if (StringUtils.isNotBlank(designPath)) {
+          paths.add(PathLeases.subtree(designPath));
         }
-
-        bucket.getSuccess().add(path);
-      } catch (WCMException e) {
-        logger.error("Error occurred while trying to manage page versions.", e);
-        bucket.getFailed().add(path);
-      } catch (RewriteException e) {
-        logger.error("Conversion resulted in an error", e);
-        bucket.getFailed().add(path);
       }
-      context.incrementProgressCount(1);
     }
+    return paths;
   }
 
   @Override
@@ -171,36 +312,36 @@ public class FullConversionJobExecutor extends AbstractConversionJobExecutor {
     return resourceResolverFactory;
   }
 
-  // Import any styles used by this page - set the new policy reference for later use.
-  private void importPolicies(Page page, String confDest, Set<String> rules, boolean overwrite, Set<String> imported) {
+  @Override
+  protected JobManager getJobManager() {
+    return jobManager;
+  }
+
+  /*
+    Import any styles used by this page - set the new policy reference for later use. Returns the paths, relative to the
+    page, of the resources which reference an imported policy, so that applying the policies need not walk the tree again.
+   */
+  private Set<String> importPolicies(Page page, String confDest, Set<String> rules, boolean overwrite, Set<String> imported, DesignStyleCache styles) {
 
     ResourceResolver rr = page.getContentResource().getResourceResolver();
     Designer designer = rr.adaptTo(Designer.class);
+    Set<String> marked = new LinkedHashSet<>();
     new AbstractResourceVisitor() {
       @Override
       protected void visit(@NotNull Resource resource) {
-        Style style = designer.getStyle(resource);
-        if (style == null) {
-          return;
-        }
-        Cell cell = style.getCell();
-        Iterator<String> it = cell.paths();
-        Resource styleRes = null;
-        while (it.hasNext() && styleRes == null) {
-          style = designer.getStyle(resource, it.next());
-          if (style == null) {
-            continue;
-          }
-          styleRes = rr.getResource(style.getPath());
-        }
-
+        Resource styleRes = styles.getStyleResource(designer, resource);
         if (styleRes != null && !imported.contains(styleRes.getPath())) {
           try {
-            policyService.apply(styleRes, confDest, rules, false, overwrite);
-            String policyPath = styleRes.getValueMap().get(PN_IMPORTED, String.class);
+            // Styles imported by an earlier bucket or job are only looked up
+            String policyPath = overwrite ? null : policyService.getImportedPolicy(styleRes);
+            if (policyPath == null) {
+              policyService.apply(styleRes, confDest, rules, overwrite);
+              policyPath = policyService.getImportedPolicy(styleRes);
+            }
             if (StringUtils.isNotBlank(policyPath)) {
               ModifiableValueMap mvm = resource.adaptTo(ModifiableValueMap.class);
               mvm.put(TMP_POLICY_PATH, policyPath);
+              marked.add(PathUtils.relativize(page.getPath(), resource.getPath()));
             }
             imported.add(styleRes.getPath());
           } catch (RewriteException e) {
@@ -209,40 +350,63 @@ public class FullConversionJobExecutor extends AbstractConversionJobExecutor {
         }
       }
     }.accept(page.getContentResource());
+    return marked;
   }
 
-  private void applyPolicies(JobExecutionContext context, Page page, String confRoot) {
+  /*
+    Map the imported policies into the page's template. Only the marked resources are visited, unless a structure rule
+    moved one of them; then the page's content is searched for the remaining references.
+   */
+  private void applyPolicies(JobExecutionContext context, Page page, String confRoot, Set<String> marked) {
     ResourceResolver rr = page.getContentResource().getResourceResolver();
     String confPolicyRoot = PathUtils.concat(confRoot, POLICY_REL_PATH);
     String templatePath = page.getProperties().get(NameConstants.PN_TEMPLATE, String.class);
     String templatePolicyRoot = PathUtils.concat(templatePath, POLICIES);
     String pagePath = page.getPath();
+
+    boolean moved = false;
+    for (String relPath : marked) {
+      Resource resource = rr.getResource(PathUtils.concat(pagePath, relPath));
+      if (resource == null || !resource.getValueMap().containsKey(TMP_POLICY_PATH)) {
+        moved = true;
+        continue;
+      }
+      applyPolicy(context, resource, confPolicyRoot, templatePolicyRoot, pagePath);
+    }
+    if (!moved) {
+      return;
+    }
     new AbstractResourceVisitor() {
       @Override
       protected void visit(@NotNull Resource resource) {
-        ModifiableValueMap mvm = resource.adaptTo(ModifiableValueMap.class);
-        String policyPath = mvm.get(TMP_POLICY_PATH, String.class);
-        try {
-          if (StringUtils.isNotBlank(policyPath)) {
-            if (policyPath.startsWith(confPolicyRoot)) {
-              String policyRef = policyPath.replaceFirst(confPolicyRoot + "/", ""); // Strip off root
-              String compType = PathUtils.getParentPath(policyRef); // Get component type for applying mapping
-              String containerPath = PathUtils.getParentPath(resource.getPath()).replace(pagePath, templatePolicyRoot);
-              String mappingPath = PathUtils.concat(containerPath, compType);
-              Resource mapping = ResourceUtil.getOrCreateResource(rr, mappingPath, POLICY_MAPPING_RESOURCE_TYPE, null, false);
-              ModifiableValueMap mappingVm = mapping.adaptTo(ModifiableValueMap.class);
-              if (StringUtils.isBlank(mappingVm.get(PN_POLICY, String.class))) { // Don't overwrite existing Policies
-                mappingVm.put(PN_POLICY, policyRef);
-              }
-            }
-            mvm.remove(TMP_POLICY_PATH);
+        applyPolicy(context, resource, confPolicyRoot, templatePolicyRoot, pagePath);
+      }
+    }.accept(page.getContentResource());
+  }
+
+  private void applyPolicy(JobExecutionContext context, Resource resource, String confPolicyRoot, String templatePolicyRoot, String pagePath) {
+    ResourceResolver rr = resource.getResourceResolver();
+    ModifiableValueMap mvm = resource.adaptTo(ModifiableValueMap.class);
+    String policyPath = mvm.get(TMP_POLICY_PATH, String.class);
+    try {
+      if (StringUtils.isNotBlank(policyPath)) {
+        if (policyPath.startsWith(confPolicyRoot)) {
+          String policyRef = policyPath.replaceFirst(confPolicyRoot + "/", ""); // Strip off root
+          String compType = PathUtils.getParentPath(policyRef); // Get component type for applying mapping
+          String containerPath = PathUtils.getParentPath(resource.getPath()).replace(pagePath, templatePolicyRoot);
+          String mappingPath = PathUtils.concat(containerPath, compType);
+          Resource mapping = ResourceUtil.getOrCreateResource(rr, mappingPath, POLICY_MAPPING_RESOURCE_TYPE, null, false);
+          ModifiableValueMap mappingVm = mapping.adaptTo(ModifiableValueMap.class);
+          if (StringUtils.isBlank(mappingVm.get(PN_POLICY, String.class))) { // Don't overwrite existing Policies
+            mappingVm.put(PN_POLICY, policyRef);
           }
-        } catch (PersistenceException e) {
-          logger.error("Unable to apply policy due to repository error.", e);
-          context.log("Unable to apply policy due to repository error: {0}", e.getLocalizedMessage());
         }
+        mvm.remove(TMP_POLICY_PATH);
       }
-    }.accept(page.getContentResource());
+    } catch (PersistenceException e) {
+      logger.error("Unable to apply policy due to repository error.", e);
+      context.log("Unable to apply policy due to repository error: {0}", e.getLocalizedMessage());
+    }
   }
 
   private void fixChildrenOrder(Page page) throws RewriteException {
@@ -257,4 +421,134 @@ public class FullConversionJobExecutor extends AbstractConversionJobExecutor {
     }
   }
 
+  private enum Result {
+    SUCCESS,
+    NOT_FOUND,
+    FAILED
+  }
+
+  /*
+    The settings of a bucket, and the conversion of a single page with them.
+   */
+  private class Conversion {
+
+    private final JobExecutionContext context;
+    private final ConversionJob.PageHandling pageHandling;
+    private final boolean overwritePolicies;
+    private final String sourceRoot;
+    private final String targetRoot;
+    private final Set<String> templateRules;
+    private final Set<String> policyRules;
+    private final String confDest;
+    private final Set<String> componentRules;
+    private final Set<String> importedPolicies = new HashSet<>();
+    private final DesignStyleCache styles = new DesignStyleCache();
+
+    private Conversion(JobExecutionContext context, ConversionJobBucket bucket) {
+      this.context = context;
+      this.pageHandling = getPageHandling(bucket);
+      this.overwritePolicies = isOverwrite(bucket);
+      this.sourceRoot = getSourceRoot(bucket);
+      this.targetRoot = getTargetRoot(bucket);
+      this.templateRules = getTemplateRules(bucket);
+      this.policyRules = getPolicyRules(bucket);
+      this.confDest = getTargetConfPath(bucket);
+      this.componentRules = getComponentRules(bucket);
+    }
+
+    private Result convert(PageManager pm, String path) {
+      Page page = pm.getPage(path);
+      if (page == null) {
+        incrementProgress();
+        return Result.NOT_FOUND;
+      }
+
+      if (pageHandling == COPY && (StringUtils.isBlank(sourceRoot) || StringUtils.isBlank(targetRoot))) {
+        return Result.FAILED;
+      }
+
+      Result result;
+      try {
+        if (pageHandling == RESTORE) {
+          page = RewriteUtils.restore(pm, page);
+        }
+
+        // Walk page's content tree and find all styles and import them
+        Set<String> marked = Collections.emptySet();
+        if (!policyRules.isEmpty() && !StringUtils.isBlank(confDest)) {
+          marked = importPolicies(page, confDest, policyRules, overwritePolicies, importedPolicies, styles);
+        }
+
+        RewriteUtils.createVersion(pm, page);
+
+        if (pageHandling == COPY) {
+          page = RewriteUtils.copyPage(pm, page, sourceRoot, targetRoot);
+        }
+
+        if (!templateRules.isEmpty()) {
+          structureService.apply(page, templateRules);
+        }
+
+        // Policies need to be applied before component processing - that will remove temp property.
+        String templatePath = page.getProperties().get(NameConstants.PN_TEMPLATE, String.class);
+        if (StringUtils.startsWith(templatePath, confDest) && !marked.isEmpty()) {
+          applyPolicies(context, page, confDest, marked);
+        }
+
+        if (componentRules.isEmpty()) {
+          context.log("No component rules found, skipping skipping component conversion.");
+        } else {
+          componentService.apply(page.getContentResource(), componentRules, true);
+          fixChildrenOrder(page);
+        }
+
+        result = Result.SUCCESS;
+      } catch (WCMException e) {
+        logger.error("Error occurred while trying to manage page versions.", e);
+        result = Result.FAILED;
+      } catch (RewriteException e) {
+        logger.error("Conversion resulted in an error", e);
+        result = Result.FAILED;
+      }
+      incrementProgress();
+      return result;
+    }
+
+    private void incrementProgress() {
+      synchronized (context) {
+        context.incrementProgressCount(1);
+      }
+    }
+  }
+
+  @Override
+  protected int getCommitInterval() {
+    return config.commit_interval();
+  }
+
+  @Activate
+  @Modified
+  @SuppressWarnings("unused")
+  protected void activate(Config config) {
+    this.config = config;
+  }
+
+  @ObjectClassDefinition(
+      name = "AEM Modernize Tools - Full Conversion Job Executor",
+      description = "Performs full conversions of the pages in a job bucket."
+  )
+  @interface Config {
+    @AttributeDefinition(
+        name = "Workers",
+        description = "Number of workers converting the pages of a bucket in parallel, each on its own service session. Buckets that import policies are converted by one worker."
+    )
+    int workers() default 1;
+
+    @AttributeDefinition(
+        name = "Commit Interval",
+        description = "Number of pages after which changes are saved, bounding the size of the transient space. Zero or less saves once the bucket is complete."
+    )
+    int commit_interval() default 50;
+  }
+
 }
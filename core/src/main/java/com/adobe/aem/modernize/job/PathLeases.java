@@ -0,0 +1,187 @@
+package com.adobe.aem.modernize.job;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2026 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
+
+import com.adobe.aem.modernize.model.ConversionJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static com.adobe.aem.modernize.model.ConversionJobBucket.*;
+
+/*
+  Path leases for conversion buckets running in parallel, on this or any other instance. A lease is either on a single
+  node, or on a subtree when its path ends with "/*". Two holders never hold overlapping leases: the same node, or a node
+  within the other's subtree.
+
+  Leases are kept in the repository: each holder's paths on its tracking node, and the tracking paths of all holders on
+  the job data root. Acquiring or releasing rewrites the list of holders, so that two instances changing it at once
+  conflict when saving and one of them fails, instead of both taking overlapping leases. A holder whose job is no longer
+  active, such as one of an instance which stopped, is ignored.
+ */
+final class PathLeases {
+
+  static final String SUBTREE = "/*";
+  static final String PN_HOLDERS = "leaseHolders";
+
+  private static final Logger logger = LoggerFactory.getLogger(PathLeases.class);
+  private static final int RELEASE_ATTEMPTS = 3;
+
+  private final JobManager jobManager;
+
+  PathLeases(JobManager jobManager) {
+    this.jobManager = jobManager;
+  }
+
+  /*
+    Acquires all the leases for the bucket's job, if none of them overlap with those of an active holder. Changes
+    pending on the bucket's resolver are discarded.
+   */
+  boolean tryAcquire(Resource tracking, String jobId, Collection<String> paths) {
+    ResourceResolver rr = tracking.getResourceResolver();
+    discardChanges(rr);
+    Resource root = rr.getResource(ConversionJob.JOB_DATA_LOCATION);
+    if (root == null) {
+      return false;
+    }
+    String owner = tracking.getPath();
+    List<String> holders = new ArrayList<>();
+    for (String holder : root.getValueMap().get(PN_HOLDERS, new String[] {})) {
+      if (holder.equals(owner)) {
+        continue;
+      }
+      Resource other = rr.getResource(holder);
+      if (other == null || !isActive(other)) {
+        logger.debug("Discarding leases of inactive bucket [{}].", holder);
+        continue;
+      }
+      holders.add(holder);
+      List<String> held = Arrays.asList(other.getValueMap().get(PN_LEASES, new String[] {}));
+      for (String path : paths) {
+        if (overlaps(path, held)) {
+          logger.debug("Lease [{}] is held by bucket [{}].", path, holder);
+          return false;
+        }
+      }
+    }
+    holders.add(owner);
+    root.adaptTo(ModifiableValueMap.class).put(PN_HOLDERS, holders.toArray(new String[] {}));
+    ModifiableValueMap mvm = tracking.adaptTo(ModifiableValueMap.class);
+    mvm.put(PN_JOB_ID, jobId);
+    mvm.put(PN_LEASES, paths.toArray(new String[] {}));
+    try {
+      rr.commit();
+      return true;
+    } catch (PersistenceException e) {
+      logger.debug("Leases changed while acquiring them for bucket [{}].", owner, e);
+      rr.revert();
+      return false;
+    }
+  }
+
+  /*
+    Releases all the leases of the bucket. Changes pending on the bucket's resolver are discarded. If the holders
+    keep changing, the leases are left to be discarded once the bucket's job is no longer active.
+   */
+  void release(Resource tracking) {
+    ResourceResolver rr = tracking.getResourceResolver();
+    String owner = tracking.getPath();
+    for (int i = 0; i < RELEASE_ATTEMPTS; i++) {
+      discardChanges(rr);
+      Resource root = rr.getResource(ConversionJob.JOB_DATA_LOCATION);
+      Resource current = rr.getResource(owner);
+      if (root == null || current == null) {
+        return;
+      }
+      List<String> holders = new ArrayList<>(Arrays.asList(root.getValueMap().get(PN_HOLDERS, new String[] {})));
+      holders.remove(owner);
+      root.adaptTo(ModifiableValueMap.class).put(PN_HOLDERS, holders.toArray(new String[] {}));
+      current.adaptTo(ModifiableValueMap.class).remove(PN_LEASES);
+      try {
+        rr.commit();
+        return;
+      } catch (PersistenceException e) {
+        logger.debug("Leases changed while releasing them for bucket [{}].", owner, e);
+      }
+    }
+    discardChanges(rr);
+    logger.warn("Unable to release the leases of bucket [{}].", owner);
+  }
+
+  private static void discardChanges(ResourceResolver rr) {
+    if (rr.hasChanges()) {
+      rr.revert();
+    }
+    rr.refresh();
+  }
+
+  private boolean isActive(Resource tracking) {
+    String jobId = tracking.getValueMap().get(PN_JOB_ID, String.class);
+    if (jobId == null || !tracking.getValueMap().containsKey(PN_LEASES)) {
+      return false;
+    }
+    Job job = jobManager.getJobById(jobId);
+    return job != null && job.getJobState() == Job.JobState.ACTIVE;
+  }
+
+  /*
+    The lease on the subtree of the path.
+   */
+  static String subtree(String path) {
+    return PathUtils.denotesRoot(path) ? SUBTREE : path + SUBTREE;
+  }
+
+  static boolean overlaps(String path, Collection<String> others) {
+    for (String other : others) {
+      if (overlaps(path, other)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean overlaps(String lease, String other) {
+    boolean tree = lease.endsWith(SUBTREE);
+    boolean otherTree = other.endsWith(SUBTREE);
+    String path = tree ? getPath(lease) : lease;
+    String otherPath = otherTree ? getPath(other) : other;
+    if (path.equals(otherPath)) {
+      return true;
+    }
+    return (tree && PathUtils.isAncestor(path, otherPath)) || (otherTree && PathUtils.isAncestor(otherPath, path));
+  }
+
+  private static String getPath(String lease) {
+    String path = lease.substring(0, lease.length() - SUBTREE.length());
+    return path.isEmpty() ? "/" : path;
+  }
+}
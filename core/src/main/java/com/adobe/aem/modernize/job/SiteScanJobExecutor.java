@@ -0,0 +1,343 @@
+package com.adobe.aem.modernize.job;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2021 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.jackrabbit.JcrConstants;
+import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.consumer.JobExecutionContext;
+import org.apache.sling.event.jobs.consumer.JobExecutionResult;
+import org.apache.sling.event.jobs.consumer.JobExecutor;
+
+import com.adobe.aem.modernize.component.ComponentRewriteRuleService;
+import com.adobe.aem.modernize.impl.DesignStyleCache;
+import com.adobe.aem.modernize.impl.ListPageVisitor;
+import com.adobe.aem.modernize.impl.RulePaths;
+import com.adobe.aem.modernize.model.ConversionJob;
+import com.adobe.aem.modernize.policy.PolicyImportRuleService;
+import com.adobe.aem.modernize.rule.RewriteRule;
+import com.adobe.aem.modernize.rule.RewriteRuleService;
+import com.adobe.aem.modernize.structure.StructureRewriteRuleService;
+import com.day.cq.wcm.api.NameConstants;
+import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.api.PageManager;
+import com.day.cq.wcm.api.designer.Designer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static com.adobe.aem.modernize.model.ConversionJob.*;
+
+/**
+ * Scans the pages of a site in the background, storing the rules which apply to each page and the paths they match.
+ * <p>
+ * The results of a scan of {@code root} are stored at {@code SCAN_LOCATION + root + "/jcr:content"}; each page has an
+ * entry at the scan's path plus its own path. Rules are stored on the pages by id, their titles once on the scan.
+ */
+@Component(
+    service = { JobExecutor.class },
+    property = {
+        JobExecutor.PROPERTY_TOPICS + "=" + SiteScanJobExecutor.JOB_TOPIC
+    }
+)
+public class SiteScanJobExecutor implements JobExecutor {
+
+  public static final String JOB_TOPIC = "com/adobe/aem/modernize/job/topic/scan";
+  public static final String SCAN_LOCATION = "/var/aem-modernize/scan";
+  public static final String CONTENT_LOCATION = "/content";
+
+  public static final String PN_ROOT = "root";
+  public static final String PN_REPROCESS = "reprocess";
+  public static final String PN_INCLUDE_SUPER_TYPES = "includeSuperTypes";
+  public static final String PN_STATUS = "status";
+  public static final String PN_STARTED = "started";
+  public static final String PN_FINISHED = "finished";
+  public static final String PN_PAGE_COUNT = "pageCount";
+  public static final String PN_RULE_IDS = "ruleIds";
+  public static final String PN_RULE_TITLES = "ruleTitles";
+  public static final String PN_PATH = "path";
+  public static final String PN_COMPONENT_PATHS = "componentPaths";
+  public static final String PN_POLICY_PATHS = "policyPaths";
+
+  private static final Logger logger = LoggerFactory.getLogger(SiteScanJobExecutor.class);
+  private static final String SERVICE_NAME = "convert-content";
+  private static final int SAVE_INTERVAL = 100;
+
+  @Reference
+  private ComponentRewriteRuleService componentService;
+
+  @Reference
+  private PolicyImportRuleService policyService;
+
+  @Reference
+  private StructureRewriteRuleService structureService;
+
+  @Reference
+  private ResourceResolverFactory resourceResolverFactory;
+
+  /**
+   * Gets the path at which the results of a scan of the root are stored.
+   *
+   * @param root the root of the scan
+   * @return the path of the scan
+   */
+  @NotNull
+  public static String getScanPath(@NotNull String root) {
+    return SCAN_LOCATION + (PathUtils.denotesRoot(root) ? "" : root) + "/" + JcrConstants.JCR_CONTENT;
+  }
+
+  /**
+   * Checks whether the path can be the root of a scan: only sites, below {@link #CONTENT_LOCATION}, are scanned.
+   *
+   * @param root the normalized path to check
+   * @return true if the path can be scanned
+   */
+  public static boolean isScanRoot(@Nullable String root) {
+    return root != null && PathUtils.isAbsolute(root) && PathUtils.isAncestor(CONTENT_LOCATION, root);
+  }
+
+  @Override
+  public JobExecutionResult process(Job job, JobExecutionContext context) {
+    String root = job.getProperty(PN_ROOT, String.class);
+    if (StringUtils.isBlank(root)) {
+      return context.result().message("Invalid job state, no root specified to scan.").cancelled();
+    }
+    if (!isScanRoot(root)) {
+      context.log("Scan root [{0}] is not below {1}.", root, CONTENT_LOCATION);
+      return context.result().message("Invalid job state, scan root is not a site.").cancelled();
+    }
+    try (ResourceResolver rr = login()) {
+      Resource resource = rr.getResource(root);
+      if (resource == null) {
+        context.log("Scan root [{0}] does not exist.", root);
+        return context.result().message("Scan root does not exist.").cancelled();
+      }
+      Scan scan = new Scan(rr, root, job.getProperty(PN_REPROCESS, false), job.getProperty(PN_INCLUDE_SUPER_TYPES, false));
+      try {
+        scan.start(job);
+        new ListPageVisitor(Integer.MAX_VALUE, path -> {
+          if (context.isStopped()) {
+            throw new ScanException(null);
+          }
+          scan.add(path);
+        }).accept(resource);
+        scan.finish();
+        return context.result().message("Successfully scanned site.").succeeded();
+      } catch (PersistenceException | ScanException e) {
+        if (e instanceof ScanException && e.getCause() == null) {
+          logger.info("Scan of [{}] was stopped.", root);
+        } else {
+          logger.error("Unable to store the scan of [{}].", root, e);
+        }
+        rr.revert();
+        scan.fail();
+        return context.result().message("Unable to complete the scan.").cancelled();
+      }
+    } catch (LoginException e) {
+      context.log("Unable to log in using service user: {0}", e.getLocalizedMessage());
+      logger.error("Unable to log in using service user to perform scan", e);
+      return context.result().message("Unable to log in using service user.").cancelled();
+    }
+  }
+
+  private ResourceResolver login() throws LoginException {
+    return resourceResolverFactory.getServiceResourceResolver(Collections.singletonMap(ResourceResolverFactory.SUBSERVICE, SERVICE_NAME));
+  }
+
+  /*
+    The state of a single scan; finds the rules for each page and writes its entry.
+   */
+  private class Scan {
+
+    private final ResourceResolver rr;
+    private final String root;
+    private final String path;
+    private final boolean reprocess;
+    private final boolean includeSuperTypes;
+    private final PageManager pm;
+    private final Designer designer;
+    private final DesignStyleCache styles = new DesignStyleCache();
+    private final Map<String, String> titles = new LinkedHashMap<>();
+    private int count = 0;
+
+    private Scan(ResourceResolver rr, String root, boolean reprocess, boolean includeSuperTypes) {
+      this.rr = rr;
+      this.root = root;
+      this.path = getScanPath(root);
+      this.reprocess = reprocess;
+      this.includeSuperTypes = includeSuperTypes;
+      this.pm = rr.adaptTo(PageManager.class);
+      this.designer = rr.adaptTo(Designer.class);
+    }
+
+    /*
+      Replaces any previous scan of the root.
+     */
+    private void start(Job job) throws PersistenceException {
+      Resource previous = rr.getResource(path);
+      if (previous != null) {
+        rr.delete(previous);
+      }
+      Map<String, Object> props = new HashMap<>();
+      props.put(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED);
+      props.put(PN_ROOT, root);
+      props.put(PN_REPROCESS, reprocess);
+      props.put(PN_INCLUDE_SUPER_TYPES, includeSuperTypes);
+      props.put(PN_STATUS, Status.ACTIVE.name());
+      props.put(PN_STARTED, Calendar.getInstance());
+      props.put(PN_PAGE_COUNT, 0L);
+      ResourceUtil.getOrCreateResource(rr, path, props, JcrConstants.NT_UNSTRUCTURED, true);
+    }
+
+    private void add(String pagePath) {
+      Page page = pm.getPage(pagePath);
+      if (page == null) {
+        return;
+      }
+      Map<String, Object> props = new HashMap<>();
+      props.put(PN_PATH, pagePath);
+      props.put(NameConstants.PN_TITLE, page.getProperties().get(NameConstants.PN_TITLE, ""));
+
+      Resource content = RulePaths.getPageContent(page, reprocess);
+      if (content != null && !StringUtils.equals(content.getPath(), page.getPath() + "/" + JcrConstants.JCR_CONTENT)) {
+        props.put(NameConstants.PN_DESIGN_PATH, content.getValueMap().get(NameConstants.PN_DESIGN_PATH, ""));
+      } else {
+        props.put(NameConstants.PN_DESIGN_PATH, StringUtils.defaultString(designer.getDesignPath(page)));
+      }
+      if (content != null) {
+        put(props, PN_TEMPLATE_RULES, null, Collections.singleton(content.getPath()), structureService);
+        put(props, PN_COMPONENT_RULES, PN_COMPONENT_PATHS, RulePaths.gatherPaths(content), componentService);
+      }
+      if (page.getContentResource() != null) {
+        put(props, PN_POLICY_RULES, PN_POLICY_PATHS, styles.getPolicyPaths(page, includeSuperTypes), policyService);
+      }
+
+      try {
+        Resource entry = ResourceUtil.getOrCreateResource(rr, path + pagePath, JcrConstants.NT_UNSTRUCTURED, JcrConstants.NT_UNSTRUCTURED, false);
+        entry.adaptTo(ModifiableValueMap.class).putAll(props);
+        count++;
+        if (count % SAVE_INTERVAL == 0) {
+          rr.getResource(path).adaptTo(ModifiableValueMap.class).put(PN_PAGE_COUNT, (long) count);
+          rr.commit();
+        }
+      } catch (PersistenceException e) {
+        throw new ScanException(e);
+      }
+    }
+
+    /*
+      Stores the rules matching any of the paths, and the paths which matched if requested.
+     */
+    private void put(Map<String, Object> props, String rulesName, String pathsName, Set<String> paths, RewriteRuleService service) {
+      Set<String> ids = new LinkedHashSet<>();
+      Set<String> matched = new LinkedHashSet<>();
+      for (String p : paths) {
+        Resource resource = rr.getResource(p);
+        if (resource == null) {
+          continue;
+        }
+        boolean found = false;
+        for (String id : service.listRules(resource)) {
+          if (title(service, id) != null) {
+            ids.add(id);
+            found = true;
+          }
+        }
+        if (found) {
+          matched.add(p);
+        }
+      }
+      if (!ids.isEmpty()) {
+        props.put(rulesName, ids.toArray(new String[] {}));
+      }
+      if (pathsName != null && !matched.isEmpty()) {
+        props.put(pathsName, matched.toArray(new String[] {}));
+      }
+    }
+
+    private String title(RewriteRuleService service, String id) {
+      if (!titles.containsKey(id)) {
+        RewriteRule rule = service.getRule(rr, id);
+        titles.put(id, rule == null ? null : rule.getTitle());
+      }
+      return titles.get(id);
+    }
+
+    private void finish() throws PersistenceException {
+      Map<String, String> found = new LinkedHashMap<>();
+      titles.forEach((id, title) -> {
+        if (title != null) {
+          found.put(id, title);
+        }
+      });
+      ModifiableValueMap mvm = rr.getResource(path).adaptTo(ModifiableValueMap.class);
+      mvm.put(PN_RULE_IDS, found.keySet().toArray(new String[] {}));
+      mvm.put(PN_RULE_TITLES, found.values().toArray(new String[] {}));
+      mvm.put(PN_PAGE_COUNT, (long) count);
+      mvm.put(PN_STATUS, Status.SUCCESS.name());
+      mvm.put(PN_FINISHED, Calendar.getInstance());
+      rr.commit();
+    }
+
+    /*
+      Records the failure, keeping the entries saved so far.
+     */
+    private void fail() {
+      try {
+        Resource scan = rr.getResource(path);
+        if (scan != null) {
+          ModifiableValueMap mvm = scan.adaptTo(ModifiableValueMap.class);
+          mvm.put(PN_STATUS, Status.FAILED.name());
+          mvm.put(PN_FINISHED, Calendar.getInstance());
+          rr.commit();
+        }
+      } catch (PersistenceException e) {
+        logger.error("Unable to record the failed scan at [{}].", path, e);
+      }
+    }
+  }
+
+  // Carries save errors, or a stop request, out of the page visitor.
+  private static final class ScanException extends RuntimeException {
+
+    private ScanException(PersistenceException cause) {
+      super(cause);
+    }
+  }
+}
@@ -52,6 +52,7 @@ public class ConversionJobBucket {
   public static final String PN_STARTED = "started";
   public static final String PN_FINISHED = "finished";
   public static final String PN_JOB_STATUS = "jobStatus";
+  public static final String PN_LEASES = "leases";
 
   @Self
   @Required
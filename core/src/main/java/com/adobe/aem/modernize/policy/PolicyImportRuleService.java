@@ -27,6 +27,7 @@ import org.apache.sling.api.resource.Resource;
 import com.adobe.aem.modernize.RewriteException;
 import com.adobe.aem.modernize.rule.RewriteRuleService;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.osgi.annotation.versioning.ProviderType;
 
 @ProviderType
@@ -71,4 +72,17 @@ public interface PolicyImportRuleService extends RewriteRuleService {
    */
   boolean apply(@NotNull Resource source, @NotNull String confRoot, @NotNull Set<String> rules, boolean overwrite) throws RewriteException;
 
+  /**
+   * Looks up the Policy previously imported from the provided Style.
+   * <p>
+   * Imports are recorded on the Style itself, so the result is shared by all jobs and requests. A Style which has been imported
+   * is not imported again unless {@code overwrite} is requested; callers can use this to skip applying the rules altogether.
+   *
+   * @param source The Resource Style from which design configurations are read
+   * @return the path of the imported Policy, or {@code null} if the Style has not been imported
+   */
+  @Nullable
+  String getImportedPolicy(@NotNull Resource source);
+
+
 }
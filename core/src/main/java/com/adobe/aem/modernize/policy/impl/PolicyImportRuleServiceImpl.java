@@ -35,6 +35,7 @@ import org.apache.jackrabbit.commons.JcrUtils;
 import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.apache.sling.jcr.resource.api.JcrResourceConstants;
 
 import com.adobe.aem.modernize.RewriteException;
@@ -47,8 +48,10 @@ import com.day.cq.commons.jcr.JcrUtil;
 import com.day.cq.wcm.api.NameConstants;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.osgi.framework.BundleContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
@@ -82,12 +85,21 @@ public class PolicyImportRuleServiceImpl extends AbstractRewriteRuleService<Poli
 
   private Config config;
 
+  @Reference
+  private ResourceResolverFactory resourceResolverFactory;
+
   @NotNull
   @Override
   protected List<String> getSearchPaths() {
     return Arrays.asList(config.search_paths());
   }
 
+  @NotNull
+  @Override
+  protected ResourceResolverFactory getResourceResolverFactory() {
+    return resourceResolverFactory;
+  }
+
   @Override
   @Nullable
   protected RewriteRule getNodeRule(@NotNull Node node) {
@@ -118,28 +130,26 @@ public class PolicyImportRuleServiceImpl extends AbstractRewriteRuleService<Poli
 
   @Override
   public boolean apply(@NotNull Resource src, @NotNull String dest, @NotNull Set<String> rulePaths, boolean overwrite) throws RewriteException {
+    String prevDest = getImportedPolicy(src);
+    if (!overwrite && prevDest != null) {
+      return false;
+    }
     ResourceResolver rr = src.getResourceResolver();
     List<RewriteRule> rules = create(rr, rulePaths);
     boolean applied = false;
 
     try {
       Node node = src.adaptTo(Node.class);
-      String prevDest = null;
-      if (node.hasProperty(PN_IMPORTED)) {
-        prevDest = node.getProperty(PN_IMPORTED).getString();
-      }
-      if (overwrite || StringUtils.isBlank(prevDest)) {
-        for (RewriteRule rule : rules) {
-          if (rule.matches(node)) {
-            Node result = rule.applyTo(node, new HashSet<>());
-            if (result != null) {
-              populateMetadata(result);
-              Node policy = createPolicy(rr, result, dest, prevDest);
-              node.setProperty(PN_IMPORTED, policy.getPath());
-            }
-            applied = true;
-            break;
+      for (RewriteRule rule : rules) {
+        if (rule.matches(node)) {
+          Node result = rule.applyTo(node, new HashSet<>());
+          if (result != null) {
+            populateMetadata(result);
+            Node policy = createPolicy(rr, result, dest, prevDest);
+            node.setProperty(PN_IMPORTED, policy.getPath());
           }
+          applied = true;
+          break;
         }
       }
     } catch (RepositoryException e) {
@@ -148,6 +158,12 @@ public class PolicyImportRuleServiceImpl extends AbstractRewriteRuleService<Poli
     return applied;
   }
 
+  @Override
+  @Nullable
+  public String getImportedPolicy(@NotNull Resource src) {
+    return StringUtils.trimToNull(src.getValueMap().get(PN_IMPORTED, String.class));
+  }
+
   private void populateMetadata(Node result) throws RepositoryException {
     String origPath = result.getPath();
     if (!result.hasProperty(NameConstants.PN_TITLE)) {
@@ -207,8 +223,15 @@ public class PolicyImportRuleServiceImpl extends AbstractRewriteRuleService<Poli
   @Activate
   @Modified
   @SuppressWarnings("unused")
-  protected void activate(PolicyImportRuleServiceImpl.Config config) {
+  protected void activate(BundleContext context, PolicyImportRuleServiceImpl.Config config) {
     this.config = config;
+    registerRuleListener(context);
+  }
+
+  @Deactivate
+  @SuppressWarnings("unused")
+  protected void deactivate() {
+    unregisterRuleListener();
   }
 
   @ObjectClassDefinition(
@@ -27,6 +27,7 @@ import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
 import org.apache.sling.event.jobs.consumer.JobExecutionContext;
 import org.apache.sling.event.jobs.consumer.JobExecutor;
 
@@ -55,10 +56,13 @@ public class PolicyJobExecutor extends AbstractConversionJobExecutor {
   @Reference
   private ResourceResolverFactory resourceResolverFactory;
 
+  @Reference
+  private JobManager jobManager;
+
   @Override
   protected void doProcess(@NotNull Job job, @NotNull JobExecutionContext context, @NotNull ConversionJobBucket bucket) {
     Resource resource = bucket.getResource();
-    final List<String> paths = bucket.getPaths();
+    final List<String> paths = getPendingPaths(bucket);
     context.initProgress(paths.size(), -1);
 
     final Set<String> rules = getPolicyRules(bucket);
@@ -73,6 +77,7 @@ public class PolicyJobExecutor extends AbstractConversionJobExecutor {
       return;
     }
     boolean overwrite = isOverwrite(bucket);
+    PeriodicCommit commit = periodicCommit(bucket);
     for (String path : paths) {
       Resource r = rr.getResource(path);
       if (r != null) {
@@ -90,6 +95,7 @@ public class PolicyJobExecutor extends AbstractConversionJobExecutor {
         bucket.getNotFound().add(path);
       }
       context.incrementProgressCount(1);
+      commit.processed(path);
     }
   }
 
@@ -97,4 +103,9 @@ public class PolicyJobExecutor extends AbstractConversionJobExecutor {
   protected ResourceResolverFactory getResourceResolverFactory() {
     return resourceResolverFactory;
   }
+
+  @Override
+  protected JobManager getJobManager() {
+    return jobManager;
+  }
 }
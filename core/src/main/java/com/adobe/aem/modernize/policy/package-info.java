@@ -1,4 +1,4 @@
-@org.osgi.annotation.versioning.Version("2.1.0")
+@org.osgi.annotation.versioning.Version("2.2.0")
 package com.adobe.aem.modernize.policy;
 
 /*-
@@ -23,12 +23,16 @@ package com.adobe.aem.modernize.rule.impl;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import javax.jcr.Node;
@@ -38,8 +42,12 @@ import javax.jcr.Session;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.jackrabbit.JcrConstants;
 import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.sling.api.resource.LoginException;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
 import org.apache.sling.commons.osgi.Order;
 import org.apache.sling.commons.osgi.RankedServices;
 import org.apache.sling.jcr.resource.api.JcrResourceConstants;
@@ -58,19 +66,31 @@ import com.day.cq.search.result.Hit;
 import com.day.cq.search.result.SearchResult;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public abstract class AbstractRewriteRuleService<S extends ServiceBasedRewriteRule> implements RewriteRuleService {
 
   private static final Logger logger = LoggerFactory.getLogger(AbstractRewriteRuleService.class);
+  private static final String SERVICE_NAME = "convert-content";
 
   protected final RankedServices<S> rules = new RankedServices<>(Order.ASCENDING);
   protected final Map<String, S> ruleMap = new HashMap<>();
 
+  // Node based rules, by path, for rules found in the search paths.
+  private final Map<String, RewriteRule> nodeRules = new ConcurrentHashMap<>();
+  // Incremented whenever cached rules are discarded, so that a rule compiled meanwhile isn't kept.
+  private final AtomicLong generation = new AtomicLong();
+  private ServiceRegistration<ResourceChangeListener> ruleListener;
+
   @NotNull
   protected abstract List<String> getSearchPaths();
 
+  @NotNull
+  protected abstract ResourceResolverFactory getResourceResolverFactory();
+
   @NotNull
   protected List<S> getServiceRules() {
     return Collections.unmodifiableList(rules.getList());
@@ -100,7 +120,11 @@ public abstract class AbstractRewriteRuleService<S extends ServiceBasedRewriteRu
       if (resource == null || resource.adaptTo(Node.class) == null) {
         return null;
       }
-      return getNodeRule(resource.adaptTo(Node.class));
+      Node node = resource.adaptTo(Node.class);
+      if (getSearchPaths().contains(PathUtils.getParentPath(resource.getPath()))) {
+        return getCachedNodeRule(resource.getPath(), node);
+      }
+      return getNodeRule(node);
     }
     return getServiceRuleMap().get(id);
   }
@@ -119,7 +143,8 @@ public abstract class AbstractRewriteRuleService<S extends ServiceBasedRewriteRu
           if (PathUtils.isAbsolute(id)) {
             Resource r = rr.getResource(id);
             if (r != null && searchPaths.contains(PathUtils.getParentPath(r.getPath()))) {
-              rule = getNodeRule(r.adaptTo(Node.class));
+              Node node = r.adaptTo(Node.class);
+              rule = node == null ? null : getCachedNodeRule(r.getPath(), node);
             }
           } else { // Assume non-absolute path is a PID
             rule = getServiceRuleMap().get(id);
@@ -141,6 +166,101 @@ public abstract class AbstractRewriteRuleService<S extends ServiceBasedRewriteRu
     return null;
   }
 
+  /*
+    Rules are immutable once created, so they're shared until their definition changes. They are compiled from a new
+    service session, so that neither the caller's access nor its pending changes decide what is shared. If the service user
+    can't log in, or can't read the rule, the caller's node is used and the rule is not shared.
+   */
+  @Nullable
+  private RewriteRule getCachedNodeRule(@NotNull String path, @NotNull Node node) {
+    RewriteRule rule = nodeRules.get(path);
+    if (rule != null) {
+      return rule;
+    }
+    long current = generation.get();
+    try (ResourceResolver rr = getResourceResolverFactory().getServiceResourceResolver(Collections.singletonMap(ResourceResolverFactory.SUBSERVICE, SERVICE_NAME))) {
+      Resource resource = rr.getResource(path);
+      Node serviceNode = resource == null ? null : resource.adaptTo(Node.class);
+      if (serviceNode == null) {
+        logger.warn("Rule [{}] is not readable by the service user, it will not be cached.", path);
+        return getNodeRule(node);
+      }
+      rule = getNodeRule(serviceNode);
+    } catch (LoginException e) {
+      logger.error("Unable to log in using service user to read rule [{}], it will not be cached.", path, e);
+      return getNodeRule(node);
+    }
+    if (rule != null) {
+      nodeRules.put(path, rule);
+      // The definition changed while it was compiled
+      if (generation.get() != current) {
+        nodeRules.remove(path, rule);
+      }
+    }
+    return rule;
+  }
+
+  /**
+   * Registers a listener on the current search paths, which discards any cached rule whose definition is changed.
+   * Any previously registered listener, and all cached rules, are discarded.
+   *
+   * @param context the context of the implementing component
+   */
+  protected void registerRuleListener(@NotNull BundleContext context) {
+    unregisterRuleListener();
+    List<String> searchPaths = getSearchPaths();
+    if (searchPaths.isEmpty()) {
+      return;
+    }
+    Dictionary<String, Object> props = new Hashtable<>();
+    props.put(ResourceChangeListener.PATHS, searchPaths.toArray(new String[] {}));
+    props.put(ResourceChangeListener.CHANGES, new String[] {
+        ResourceChange.ChangeType.ADDED.name(),
+        ResourceChange.ChangeType.CHANGED.name(),
+        ResourceChange.ChangeType.REMOVED.name()
+    });
+    ruleListener = context.registerService(ResourceChangeListener.class, this::invalidateRules, props);
+  }
+
+  /**
+   * Unregisters the search path listener, if one exists, and discards all cached rules.
+   */
+  protected void unregisterRuleListener() {
+    if (ruleListener != null) {
+      try {
+        ruleListener.unregister();
+      } catch (IllegalStateException e) {
+        logger.debug("Rule listener was already unregistered.");
+      }
+      ruleListener = null;
+    }
+    generation.incrementAndGet();
+    nodeRules.clear();
+  }
+
+  /*
+    Changes anywhere within a rule's tree discard that rule; changes at or above a search path discard them all.
+   */
+  private void invalidateRules(@NotNull List<ResourceChange> changes) {
+    generation.incrementAndGet();
+    List<String> searchPaths = getSearchPaths();
+    for (ResourceChange change : changes) {
+      String path = change.getPath();
+      for (String searchPath : searchPaths) {
+        if (PathUtils.isAncestor(searchPath, path)) {
+          String relative = PathUtils.relativize(searchPath, path);
+          int pos = PathUtils.getNextSlash(relative, 0);
+          String ruleName = pos < 0 ? relative : relative.substring(0, pos);
+          logger.debug("Rule definition changed: [{}]", path);
+          nodeRules.remove(PathUtils.concat(searchPath, ruleName));
+        } else if (StringUtils.equals(searchPath, path) || PathUtils.isAncestor(path, searchPath)) {
+          logger.debug("Rule search path changed: [{}]", path);
+          nodeRules.keySet().removeIf(p -> PathUtils.isAncestor(searchPath, p));
+        }
+      }
+    }
+  }
+
   private List<String> listResourceTypes(Resource resource) {
     String type = resource.getResourceType();
     List<String> types = new ArrayList<>();
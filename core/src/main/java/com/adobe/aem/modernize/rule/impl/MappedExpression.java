@@ -0,0 +1,155 @@
+package com.adobe.aem.modernize.rule.impl;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2026 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Compiled form of a mapped property value in a replacement tree: {@code [!]${<path>[:<default>]}}.
+ * <p>
+ * In aggregate rules the path may reference the content node matched by a pattern, with {@code [pattern:<name>]}.
+ * The reference is resolved to the node's name when the rule is applied.
+ */
+final class MappedExpression {
+
+  private static final Pattern PATTERN_NODE_PATTERN = Pattern.compile("\\[pattern:(.*)\\]");
+
+  // pattern that matches the regex for mapped properties: ${<path>}
+  private static final Pattern MAPPED_PATTERN = Pattern.compile("^(\\!{0,1})\\$\\{('.*?'|.*?)(:(.+))?\\}$");
+
+  // Stands in for the pattern reference while parsing, it can't occur in a node name.
+  private static final String PLACEHOLDER = "\u0000";
+
+  private final boolean negate;
+  private final String path;
+  private final String defaultValue;
+  private final String patternName;
+  // The value as written, used if the referenced pattern isn't mapped to a node
+  private final MappedExpression unmapped;
+
+  private MappedExpression(boolean negate, String path, String defaultValue, String patternName, MappedExpression unmapped) {
+    this.negate = negate;
+    this.path = path;
+    this.defaultValue = defaultValue;
+    this.patternName = patternName;
+    this.unmapped = unmapped;
+  }
+
+  /**
+   * Parses the value from the replacement tree.
+   *
+   * @param value     the value of the property in the rule
+   * @param aggregate whether pattern references are resolved, only aggregate rules support them
+   * @return the expression, or null if the value is not a mapped property
+   */
+  @Nullable
+  static MappedExpression compile(@NotNull String value, boolean aggregate) {
+    MappedExpression unmapped = parse(value, null, null);
+    if (aggregate) {
+      Matcher patternMatcher = PATTERN_NODE_PATTERN.matcher(value);
+      if (patternMatcher.find()) {
+        String template = value.substring(0, patternMatcher.start()) + PLACEHOLDER + value.substring(patternMatcher.end());
+        return parse(template, patternMatcher.group(1), unmapped);
+      }
+    }
+    return unmapped;
+  }
+
+  private static MappedExpression parse(String value, String patternName, MappedExpression unmapped) {
+    Matcher matcher = MAPPED_PATTERN.matcher(value);
+    if (!matcher.matches()) {
+      return unmapped;
+    }
+    // unwrap quoted property paths
+    String path = StringUtils.removeStart(StringUtils.stripEnd(matcher.group(2), "'"), "'");
+    return new MappedExpression("!".equals(matcher.group(1)), path, matcher.group(4), patternName, unmapped);
+  }
+
+  /**
+   * Whether boolean values are negated when mapped.
+   *
+   * @param patternMappings the names of the content nodes matched by each pattern
+   * @return true if the expression starts with {@code !}
+   */
+  boolean isNegate(@NotNull Map<String, String> patternMappings) {
+    if (isUnmapped(patternMappings)) {
+      return unmapped.negate;
+    }
+    return negate;
+  }
+
+  /**
+   * The path of the property in the original tree.
+   *
+   * @param patternMappings the names of the content nodes matched by each pattern
+   * @return the resolved path
+   */
+  @NotNull
+  String getPath(@NotNull Map<String, String> patternMappings) {
+    if (isUnmapped(patternMappings)) {
+      return unmapped.path;
+    }
+    return resolve(path, patternMappings);
+  }
+
+  /**
+   * The value to use if the original property doesn't exist.
+   *
+   * @param patternMappings the names of the content nodes matched by each pattern
+   * @return the resolved value, or null if none is defined
+   */
+  @Nullable
+  String getDefaultValue(@NotNull Map<String, String> patternMappings) {
+    if (isUnmapped(patternMappings)) {
+      return unmapped.defaultValue;
+    }
+    return defaultValue == null ? null : resolve(defaultValue, patternMappings);
+  }
+
+  /**
+   * Whether this expression maps a property, for the specified pattern mappings. If the referenced pattern isn't
+   * mapped, the value is read as written, which may not be an expression.
+   *
+   * @param patternMappings the names of the content nodes matched by each pattern
+   * @return true if the value maps a property
+   */
+  boolean isMapped(@NotNull Map<String, String> patternMappings) {
+    return !isUnmapped(patternMappings) || unmapped != null;
+  }
+
+  private boolean isUnmapped(Map<String, String> patternMappings) {
+    return patternName != null && !patternMappings.containsKey(patternName);
+  }
+
+  private String resolve(String text, Map<String, String> patternMappings) {
+    if (patternName == null) {
+      return text;
+    }
+    return text.replace(PLACEHOLDER, patternMappings.get(patternName));
+  }
+}
@@ -21,26 +21,25 @@ package com.adobe.aem.modernize.rule.impl;
  */
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import javax.jcr.ItemNotFoundException;
 import javax.jcr.Node;
 import javax.jcr.NodeIterator;
 import javax.jcr.Property;
-import javax.jcr.PropertyIterator;
 import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
-import javax.jcr.Value;
 
-import org.apache.commons.lang3.StringUtils;
 import org.apache.jackrabbit.commons.flat.TreeTraverser;
 import org.apache.jackrabbit.oak.commons.PathUtils;
-import org.apache.sling.jcr.resource.api.JcrResourceConstants;
 
 import com.adobe.aem.modernize.RewriteException;
+import com.adobe.aem.modernize.impl.ChildOrder;
 import com.adobe.aem.modernize.rule.RewriteRule;
 import com.day.cq.commons.jcr.JcrUtil;
 import com.day.cq.wcm.api.NameConstants;
@@ -65,26 +64,67 @@ public class NodeBasedRewriteRule implements RewriteRule {
   public static final String PN_CQ_MAP_CHILDREN = "cq:rewriteMapChildren";
 
   private static final Logger logger = LoggerFactory.getLogger(NodeBasedRewriteRule.class);
-  private static final Pattern PATTERN_NODE_PATTERN = Pattern.compile("\\[pattern:(.*)\\]");
-
-  // pattern that matches the regex for mapped properties: ${<path>}
-  private static final Pattern MAPPED_PATTERN = Pattern.compile("^(\\!{0,1})\\$\\{('.*?'|.*?)(:(.+))?\\}$");
-  protected final Node rule;
   private final String id;
   private final String title;
   private final boolean aggregate;
-  private Integer ranking;
+  private final int ranking;
+  private final List<NodePattern> patterns;
+  private final SiblingSequence aggregatePatterns;
+  private final boolean hasReplacement;
+  private final boolean treeIsFinal;
+  private final ReplacementNode replacement;
 
   /**
    * Creates a new RewriteRule referencing the specified path.
+   * <p>
+   * The rule definition is read once, all matching and rewriting is performed against this compiled form.
    *
    * @param node the node containing the rewrite data
    */
   public NodeBasedRewriteRule(@NotNull Node node) throws RepositoryException {
-    this.rule = node;
     this.id = node.getPath();
     this.title = node.hasProperty(NameConstants.PN_TITLE) ? node.getProperty(NameConstants.PN_TITLE).getString() : this.id;
-    this.aggregate = rule.hasNode(NN_AGGREGATE);
+    this.aggregate = node.hasNode(NN_AGGREGATE);
+    this.ranking = readRanking(node);
+    this.patterns = node.hasNode(NN_PATTERNS) ? compilePatterns(node.getNode(NN_PATTERNS)) : null;
+
+    Node aggregateNode = aggregate ? node.getNode(NN_AGGREGATE) : null;
+    if (aggregateNode != null && aggregateNode.hasNode(NN_PATTERNS)) {
+      this.aggregatePatterns = new SiblingSequence(compilePatterns(aggregateNode.getNode(NN_PATTERNS)));
+    } else {
+      this.aggregatePatterns = SiblingSequence.EMPTY;
+    }
+
+    // Need some kind of replacement, or it is an invalid rule.
+    this.hasReplacement = node.hasNode(NN_REPLACEMENT);
+    Node replacementNode = hasReplacement ? node.getNode(NN_REPLACEMENT) : null;
+    // true if the replacement tree is final and all its nodes are excluded from
+    // further processing by the algorithm
+    this.treeIsFinal = replacementNode != null && replacementNode.hasProperty(PN_CQ_REWRITE_FINAL) &&
+        replacementNode.getProperty(PN_CQ_REWRITE_FINAL).getBoolean();
+    // if the replacement node has no children, we replace the tree by the empty tree
+    this.replacement = replacementNode != null && replacementNode.hasNodes() ?
+        ReplacementNode.compile(replacementNode.getNodes().nextNode(), aggregate) : null;
+  }
+
+  private int readRanking(Node node) {
+    try {
+      if (node.hasProperty(PN_CQ_RANKING)) {
+        return Long.valueOf(node.getProperty(PN_CQ_RANKING).getLong()).intValue();
+      }
+    } catch (RepositoryException e) {
+      logger.warn("Caught exception while reading the {} property from rule [{}], using default", PN_CQ_RANKING, id);
+    }
+    return RewriteRule.super.getRanking();
+  }
+
+  private static List<NodePattern> compilePatterns(Node parent) throws RepositoryException {
+    List<NodePattern> compiled = new ArrayList<>();
+    NodeIterator it = parent.getNodes();
+    while (it.hasNext()) {
+      compiled.add(NodePattern.compile(it.nextNode()));
+    }
+    return Collections.unmodifiableList(compiled);
   }
 
   @Override
@@ -99,30 +139,68 @@ public class NodeBasedRewriteRule implements RewriteRule {
 
   @Override
   public int getRanking() {
-    if (ranking == null) {
-      try {
-        if (rule.hasProperty(PN_CQ_RANKING)) {
-          this.ranking = Long.valueOf( rule.getProperty(PN_CQ_RANKING).getLong()).intValue();
-        } else {
-          this.ranking = RewriteRule.super.getRanking();
+    return ranking;
+  }
+
+  /**
+   * The {@code sling:resourceType}s of which the root of a matching tree must have one, by suffix.
+   *
+   * @return the set of types, empty if this rule never matches, or null if matching isn't constrained by type
+   */
+  @Nullable
+  Set<String> getRootResourceTypes() {
+    if (!hasReplacement) {
+      return Collections.emptySet();
+    }
+    if (patterns != null) {
+      Set<String> types = new HashSet<>();
+      for (NodePattern pattern : patterns) {
+        if (pattern.getResourceType() == null) {
+          return null;
         }
-      } catch (RepositoryException e) {
-        logger.warn("Caught exception while reading the {} property from rule [{}], using default", PN_CQ_RANKING, id);
-        this.ranking = RewriteRule.super.getRanking();
+        types.add(pattern.getResourceType());
       }
+      return types;
+    } else if (aggregate && !aggregatePatterns.isEmpty()) {
+      String type = aggregatePatterns.getResourceType();
+      return type == null ? null : Collections.singleton(type);
     }
-    return this.ranking;
+    return Collections.emptySet();
+  }
+
+  /**
+   * Whether this rule matches a sequence of siblings, rather than a single tree.
+   *
+   * @return true if this is a valid aggregate rule
+   */
+  boolean isAggregate() {
+    return hasReplacement && patterns == null && aggregate;
+  }
+
+  /**
+   * Finds every child of the parent at which this aggregate rule matches, in a single pass over the children.
+   *
+   * @param parent the parent of the siblings to check
+   * @return names of the children, for which {@link #matches(Node)} would return true
+   * @throws RepositoryException if the content cannot be read
+   */
+  @NotNull
+  Set<String> findAggregateMatches(@NotNull Node parent) throws RepositoryException {
+    if (!isAggregate()) {
+      return Collections.emptySet();
+    }
+    return aggregatePatterns.scan(parent);
   }
 
   @Override
   public boolean matches(@NotNull Node root) throws RepositoryException {
 
     // Need some kind of replacement, or it is an invalid rule.
-    if (!rule.hasNode(NN_REPLACEMENT)) {
+    if (!hasReplacement) {
       return false;
     }
 
-    if (rule.hasNode(NN_PATTERNS)) {
+    if (patterns != null) {
       return matchesPattern(root);
     } else if (aggregate) {
       return matchesAggregate(root);
@@ -133,30 +211,22 @@ public class NodeBasedRewriteRule implements RewriteRule {
   @Nullable
   @Override
   public Node applyTo(@NotNull Node root, @NotNull Set<String> finalPaths) throws RepositoryException, RewriteException {
-    // check if the 'replacement' node exists
-    if (!rule.hasNode(NN_REPLACEMENT)) {
-      throw new RewriteException("The replacement node was removed between matching check and request to update.");
+    if (!hasReplacement) {
+      throw new RewriteException(String.format("Rule [%s] does not define a replacement node.", id));
     }
 
     // if the replacement node has no children, we replace the tree by the empty tree,
     // i.e. we remove the original tree
-    Node replacement = rule.getNode(NN_REPLACEMENT);
-    if (!replacement.hasNodes()) {
+    if (replacement == null) {
       processRemovals(root);
       return null;
     }
 
-    // true if the replacement tree is final and all its nodes are excluded from
-    // further processing by the algorithm
-    boolean treeIsFinal = false;
-    if (replacement.hasProperty(PN_CQ_REWRITE_FINAL)) {
-      treeIsFinal = replacement.getProperty(PN_CQ_REWRITE_FINAL).getBoolean();
-    }
     /**
      * Approach:
      * - rename (move) the tree to be rewritten to a temporary name
-     * - copy the replacement tree to be a new child of the original tree's parent with the original's name
-     * - process the copied replacement tree (mapped properties, children, etc.)
+     * - create the replacement tree as a new child of the original tree's parent with the original's name
+     * - process the replacement tree (mapped properties, children, etc.) as it is created
      * - at the end, remove the original tree
      */
     // move (rename) original tree
@@ -168,7 +238,7 @@ public class NodeBasedRewriteRule implements RewriteRule {
     if (aggregate) {
       source = parent;
       // Used in potential aggregate use case
-      patternNodeNames = createPatternNodeMapping(parent, tmpName);
+      patternNodeNames = createPatternNodeMapping(root, tmpName);
     } else {
       source = root;
     }
@@ -176,38 +246,10 @@ public class NodeBasedRewriteRule implements RewriteRule {
     String originalName = root.getName();
     root.getSession().move(root.getPath(), PathUtils.concat(parent.getPath(), tmpName));
 
-    // copy replacement to original tree under original name
-    Node replacementNext = replacement.getNodes().nextNode();
-    Node updated = JcrUtil.copy(replacementNext, parent, originalName, false);
-
     // collect mappings: (node in original tree) -> (node in replacement tree)
-    // Don't want to copy during traversal, as it'd mess with iteration
+    // Don't want to copy during creation, as it'd mess with the mapped properties
     final TreeStructure mappings = new TreeStructure();
-    // traverse nodes of newly copied replacement tree
-    for (Node node : new TreeTraverser(updated)) {
-
-      // Rewrite Properties is special case - store it for later when processing properties
-      RewritePropertyProcessors processors = new RewritePropertyProcessors();
-
-      if (node.hasNode(NN_CQ_REWRITE_PROPERTIES)) {
-        processors.setRewriteProperties(node.getNode(NN_CQ_REWRITE_PROPERTIES));
-      }
-
-      if (node.hasNode(NN_CQ_REWRITE_MAP_PROPERTIES)) {
-        processors.setRewriteMapProperties(node.getNode(NN_CQ_REWRITE_MAP_PROPERTIES));
-      }
-
-      if (node.hasNode(NN_CQ_REWRITE_CONSOLIDATE_PROPERTIES)) {
-        processors.setRewriteConsolidateProperties(node.getNode(NN_CQ_REWRITE_CONSOLIDATE_PROPERTIES));
-      }
-
-      // Store this node as being final, if the tree isn't already set
-      if (processProperties(source, node, processors, patternNodeNames, mappings) && !treeIsFinal) {
-        finalPaths.add(node.getPath());
-      }
-
-      processors.remove();
-    }
+    Node updated = createReplacement(replacement, parent, originalName, source, patternNodeNames, mappings, finalPaths);
 
     mappings.processCopies(source, updated);
     mappings.processOrder(updated);
@@ -230,28 +272,41 @@ public class NodeBasedRewriteRule implements RewriteRule {
     return updated;
   }
 
+  /*
+    Creates the replacement node and its subtree, processing the properties as each node is created.
+   */
+  private Node createReplacement(ReplacementNode template, Node parent, String name, Node source,
+                                 Map<String, String> patternMappings, TreeStructure mappings, Set<String> finalPaths) throws RepositoryException {
+    Node node = template.create(parent, name);
+
+    if (template.getMapChildren() != null) {
+      mappings.addNodeMapping(parent.getPath(), template.getMapChildren(), name);
+    }
+    if (template.getOrderBefore() != null) {
+      mappings.addOrder(node.getPath(), template.getOrderBefore());
+    }
+    if (template.isCopyChildren()) {
+      // Store path relative to start of traversal for copying nodes.
+      mappings.addCopyChildrenPath(node.getPath());
+    }
+    // Store this node as being final, if the tree isn't already set
+    if (template.isFinal() && !treeIsFinal) {
+      finalPaths.add(node.getPath());
+    }
+
+    processProperties(source, node, template, patternMappings);
+
+    for (ReplacementNode child : template.getChildren()) {
+      createReplacement(child, node, child.getName(), source, patternMappings, mappings, finalPaths);
+    }
+    return node;
+  }
+
   private void processRemovals(Node root) throws RepositoryException {
     if (aggregate) {
-      // Aggregate patterns match
-      NodeIterator patterns = rule.getNode(NN_AGGREGATE).getNode(NN_PATTERNS).getNodes();
+      // Aggregate patterns match this node and the following siblings
       Node parent = root.getParent();
-      NodeIterator siblings = parent.getNodes();
-      List<String> names = new ArrayList<>();
-      // Find this node in the parent's node list
-      while (siblings.hasNext()) {
-        Node sibling = siblings.nextNode();
-        if (root.getPath().equals(sibling.getPath())) {
-          patterns.next();
-          names.add(sibling.getName());
-          break;
-        }
-      }
-      // Get the remaining pattern matched nodes
-      while (patterns.hasNext()) {
-        patterns.next();
-        names.add(siblings.nextNode().getName());
-      }
-      for (String name : names) {
+      for (String name : aggregatePatterns.window(root)) {
         parent.getNode(name).remove();
       }
     } else {
@@ -262,25 +317,15 @@ public class NodeBasedRewriteRule implements RewriteRule {
   /*
     Creates a map of pattern node names to the name of the node it matched
    */
-  private Map<String, String> createPatternNodeMapping(Node parent, String newName) throws RepositoryException {
+  private Map<String, String> createPatternNodeMapping(Node root, String newName) throws RepositoryException {
     Map<String, String> mapping = new HashMap<>();
-    NodeIterator patterns = rule.getNode(NN_AGGREGATE).getNode(NN_PATTERNS).getNodes();
-    Node pattern = patterns.nextNode();
-
-    NodeIterator children = parent.getNodes();
-    while (children.hasNext()) {
-      Node child = children.nextNode();
-      if (matches(child, pattern)) {
-        // First child that matched will be what gets renamed
-        mapping.put(pattern.getName(), newName);
-        break;
-      }
+    List<String> patternNames = aggregatePatterns.getNames();
+    List<String> window = aggregatePatterns.window(root);
+    // First node that matched will be what gets renamed
+    mapping.put(patternNames.get(0), newName);
+    for (int i = 1; i < window.size(); i++) {
+      mapping.put(patternNames.get(i), window.get(i));
     }
-
-    while (patterns.hasNext()) {
-      mapping.put(patterns.nextNode().getName(), children.nextNode().getName());
-    }
-
     return mapping;
   }
 
@@ -288,10 +333,8 @@ public class NodeBasedRewriteRule implements RewriteRule {
     Matches the node against a simple pattern
    */
   private boolean matchesPattern(Node root) throws RepositoryException {
-    NodeIterator patterns = rule.getNode(NN_PATTERNS).getNodes();
-    while (patterns.hasNext()) {
-      Node pattern = patterns.nextNode();
-      if (matches(root, pattern)) {
+    for (NodePattern pattern : patterns) {
+      if (pattern.matches(root)) {
         return true;
       }
     }
@@ -302,266 +345,68 @@ public class NodeBasedRewriteRule implements RewriteRule {
     Matches the node & siblings against a set of aggregated patterns
    */
   private boolean matchesAggregate(Node root) throws RepositoryException {
-    Node aggregate = rule.getNode(NN_AGGREGATE);
-
-    // No pattern node
-    if (!aggregate.hasNode(NN_PATTERNS)) {
-      return false;
-    }
-
-    // No patterns
-    if (!aggregate.getNode(NN_PATTERNS).getNodes().hasNext()) {
-      return false;
-    }
-
-    // Aggregate patterns must be in order.
-    AggregateIterator iterator = new AggregateIterator(root, aggregate.getNode(NN_PATTERNS));
-    while (iterator.hasNext()) {
-      if (!matches(iterator.nextNode(), iterator.nextPattern())) {
-        return false;
-      }
-      if (!iterator.checkNext()) {
-        return false;
-      }
-    }
-    // Base case
-    return true;
-  }
-
-  /*
-    Compares the node against the pattern, deep match
-   */
-  private boolean matches(@NotNull Node node, Node pattern) throws RepositoryException {
-
-    // Check primary Node types
-    if (!StringUtils.equals(node.getPrimaryNodeType().getName(), pattern.getPrimaryNodeType().getName())) {
-      return false;
-
-      // Check the properties
-    } else if (!matchProperties(node, pattern.getProperties())) {
-      return false;
-    }
-
-    // Check the children tree
-    return matchTree(node, pattern);
+    return aggregatePatterns.matchesAt(root);
   }
 
   /*
-    Checks for required properties on Node
+   * Sets the value of a mapped property with a value from the original tree.
    */
-  private boolean matchProperties(Node node, PropertyIterator requiredProperties) throws RepositoryException {
-    // check that all properties of the pattern match
-    while (requiredProperties.hasNext()) {
-      Property property = requiredProperties.nextProperty();
-      String name = property.getName();
-
-      // skip protected properties
-      if (property.getDefinition().isProtected()) {
-        continue;
-      }
-
-      // Optional rewrites don't fail matching
-      if (PN_CQ_REWRITE_OPTIONAL.equals(name)) {
+  private Property mapProperty(Node original, Node parent, ReplacementNode.TemplateProperty property, Map<String, String> patternMappings) throws RepositoryException {
+    String name = property.getName();
+    boolean deleteProperty = false;
+    for (MappedExpression expression : property.getExpressions()) {
+      if (!expression.isMapped(patternMappings)) {
         continue;
       }
-
-      // Missing required property fails rules
-      if (!node.hasProperty(property.getName())) {
-        return false;
-      }
-
-      // sling:resourceType is a special case - allow for multi-tenant component structures
-      if (JcrResourceConstants.SLING_RESOURCE_TYPE_PROPERTY.equals(name)) {
-        if (!node.getProperty(name).getString().endsWith(property.getString())) {
-          return false;
-        }
-        // property values on pattern and tree differ
-      } else if (!node.getProperty(name).getValue().equals(property.getValue())) {
-        return false;
-      }
-    }
-    return true;
-  }
-
-  /*
-    Check content tree for required children.
-   */
-  private boolean matchTree(Node node, Node patterns) throws RepositoryException {
-    // check that the tree contains all children defined in the pattern (optimization measure, before
-    // checking all children recursively)
-    String rootPath = patterns.getPath();
-
-    // Check each pattern's tree to verify that path exists under the node to match
-    // Small optimization to skip property comparison of early nodes if later nodes are missing
-    List<String> patternPaths = new ArrayList<>();
-    NodeIterator patternChildren = patterns.getNodes();
-    while (patternChildren.hasNext()) {
-      for (Node child : new TreeTraverser(patternChildren.nextNode())) {
-        // Skip optional children trees
-        if (child.hasProperty(PN_CQ_REWRITE_OPTIONAL)) {
-          continue;
+      // this is a mapped property, we will delete it if the mapped destination property doesn't exist
+      deleteProperty = true;
+      String path = expression.getPath(patternMappings);
+      if (original.hasProperty(path)) {
+        // replace property by mapped value in the original tree
+        Property originalProperty = original.getProperty(path);
+        Property newProperty = JcrUtil.copy(originalProperty, parent, name);
+
+        // negate boolean properties if negation character has been set
+        if (expression.isNegate(patternMappings) && originalProperty.getType() == PropertyType.BOOLEAN) {
+          newProperty.setValue(!newProperty.getBoolean());
         }
-        // Check that the required relative path is in the node's structure
-        String relativePath = PathUtils.relativize(rootPath, child.getPath());
-        if (!node.hasNode(relativePath)) {
-          return false;
-        }
-        // Add path for matching properties
-        patternPaths.add(relativePath);
-      }
-    }
 
-    // If we got here, the trees match at least path structure, now deep check the properties.
-    for (String relativePath : patternPaths) {
-      Node pattern = patterns.getNode(relativePath);
-      // Check Primary Node Types
-      if (!StringUtils.equals(node.getPrimaryNodeType().getName(), pattern.getPrimaryNodeType().getName())) {
-        return false;
-
-        // Check that the required relative path is in the node's structure
-      } else if (!matchProperties(node.getNode(relativePath), pattern.getProperties())) {
-        return false;
-      }
-    }
-    return true;
-  }
-
-  /*
-   * Replaces the value of a mapped property with a value from the original tree.
-   */
-  protected Property mapProperty(Node original, Property property, Map<String, String> patternMappings) throws RepositoryException {
-    if (property.getType() != PropertyType.STRING) {
-      // a mapped property must be of type string
-      return null;
-    }
-
-    Node parent = property.getParent();
-    // array containing the expressions: ${<path>}
-    Value[] values;
-    if (property.isMultiple()) {
-      values = property.getValues();
-    } else {
-      values = new Value[1];
-      values[0] = property.getValue();
-    }
-
-    boolean deleteProperty = false;
-    for (Value value : values) {
-      String reference = value.getString();
-
-      if (aggregate) {
-        Matcher patternMatcher = PATTERN_NODE_PATTERN.matcher(reference);
-        while (patternMatcher.find()) {
-          String name = patternMappings.get(patternMatcher.group(1));
-          if (name != null) {
-            reference = patternMatcher.replaceFirst(name);
-            patternMatcher.reset(reference);
-          }
-        }
-      }
-
-      Matcher matcher = MAPPED_PATTERN.matcher(reference);
-      if (matcher.matches()) {
-        // this is a mapped property, we will delete it if the mapped destination property doesn't exist
-        deleteProperty = true;
-        String path = matcher.group(2);
-        // unwrap quoted property paths
-        path = StringUtils.removeStart(StringUtils.stripEnd(path, "'"), "'");
-        if (original.hasProperty(path)) {
-          // replace property by mapped value in the original tree
-          Property originalProperty = original.getProperty(path);
-          String name = property.getName();
-          property.remove();
-          Property newProperty = JcrUtil.copy(originalProperty, parent, name);
-
-          // negate boolean properties if negation character has been set
-          String negate = matcher.group(1);
-          if ("!".equals(negate) && originalProperty.getType() == PropertyType.BOOLEAN) {
-            newProperty.setValue(!newProperty.getBoolean());
-          }
-
-          // the mapping was successful
-          deleteProperty = false;
-          break;
-        } else {
-          String defaultValue = matcher.group(4);
-          if (defaultValue != null) {
-            if (property.isMultiple()) {
-              // the property is multiple in the replacement,
-              // recreate it so we can set the property to the default
-              String name = property.getName();
-              property.remove();
-              parent.setProperty(name, defaultValue);
-            } else {
-              property.setValue(defaultValue);
-            }
-            deleteProperty = false;
-            break;
-          }
+        // the mapping was successful
+        return newProperty;
+      } else {
+        String defaultValue = expression.getDefaultValue(patternMappings);
+        if (defaultValue != null) {
+          return parent.setProperty(name, defaultValue);
         }
       }
     }
     if (deleteProperty) {
       // mapped destination does not exist, we don't include the property in replacement tree
-      property.remove();
       return null;
     }
 
-    return parent.getProperty(property.getName());
+    return property.writeTo(parent);
   }
 
   /*
-    Process the properties for the rewritten node; returns indication if this node was considered "final"
+    Sets the properties for the rewritten node
    */
-  private boolean processProperties(Node originalContent, Node node, RewritePropertyProcessors processors, Map<String, String> patternMappings, TreeStructure mapping) throws RepositoryException {
-    PropertyIterator propertyIterator = node.getProperties();
-    boolean nodeIsFinal = false;
-    while (propertyIterator.hasNext()) {
-      Property property = propertyIterator.nextProperty();
-      // skip protected properties
-      if (property.getDefinition().isProtected()) {
-        continue;
-      }
-
-      // add mapping to collection
-      if (PN_CQ_MAP_CHILDREN.equals(property.getName())) {
-        mapping.addNodeMapping(node.getParent().getPath(), property.getString(), node.getName());
-        // remove property, as we don't want it to be part of the result
-        property.remove();
-        continue;
-      }
-
-      // Add the mapping order
-      if (PN_CQ_ORDER_BEFORE.equals(property.getName())) {
-        mapping.addOrder(node.getPath(), property.getString());
-        // remove order, as we don't want it to be part of the result
-        property.remove();
-        continue;
-      }
-
-      // Set up the status of this node being final
-      if (PN_CQ_REWRITE_FINAL.equals(property.getName())) {
-        nodeIsFinal = true;
-        property.remove();
-        continue;
-      }
-
-      // Set the flag if we are supposed to copy the children node.
-      if (PN_CQ_COPY_CHILDREN.equals(property.getName())) {
-        // Store path relative to start of traversal for copying nodes.
-        mapping.addCopyChildrenPath(node.getPath());
-        property.remove();
+  private void processProperties(Node originalContent, Node node, ReplacementNode template, Map<String, String> patternMappings) throws RepositoryException {
+    RewritePropertyProcessors processors = template.getProcessors();
+    for (ReplacementNode.TemplateProperty property : template.getProperties()) {
+      if (property.getType() != PropertyType.STRING) {
+        // a mapped property must be of type string
+        property.writeTo(node);
         continue;
       }
       // set value from original tree in case this is a mapped property
-      Property mappedProperty = mapProperty(originalContent, property, patternMappings);
+      Property mappedProperty = mapProperty(originalContent, node, property, patternMappings);
       if (mappedProperty != null) {
         processors.rewrite(mappedProperty);
         processors.map(mappedProperty);
       }
     }
     processors.consolidate(node);
-    return nodeIsFinal;
   }
 
   @Override
@@ -662,76 +507,33 @@ public class NodeBasedRewriteRule implements RewriteRule {
       Applies the ordering rules.
      */
     private void processOrder(Node root) throws RepositoryException {
-      // now that everything is copied, reorder
+      // now that everything is copied, reorder; resolve all requested moves per parent, then order each once
+      Map<String, List<String>> orders = new LinkedHashMap<>();
       for (Map.Entry<String, String> entry : ordering.entrySet()) {
         Node move = root.getNode(PathUtils.relativize(root.getPath(), entry.getKey()));
-        move.getParent().orderBefore(move.getName(), entry.getValue());
+        Node parent = move.getParent();
+        List<String> order = orders.get(parent.getPath());
+        if (order == null) {
+          order = ChildOrder.getNames(parent);
+          orders.put(parent.getPath(), order);
+        }
+        if (move.getName().equals(entry.getValue())) {
+          continue;
+        }
+        order.remove(move.getName());
+        if (entry.getValue() == null) {
+          order.add(move.getName());
+        } else {
+          int index = order.indexOf(entry.getValue());
+          if (index < 0) {
+            throw new ItemNotFoundException(String.format("Order before node not found: %s/%s", parent.getPath(), entry.getValue()));
+          }
+          order.add(index, move.getName());
+        }
       }
-    }
-  }
-
-  private static class AggregateIterator implements NodeIterator {
-
-    private final NodeIterator nodeIterator;
-    private final NodeIterator patternIterator;
-
-    /**
-     * Iterator for keeping node and patterns in sync for comparisons.
-     *
-     * @param start    the start of the aggregate pattern
-     * @param patterns the patterns to match
-     */
-    private AggregateIterator(Node start, Node patterns) throws RepositoryException {
-      long skip = 0;
-      NodeIterator siblings = start.getParent().getNodes();
-      boolean found = false;
-      while (!found && siblings.hasNext()) {
-        skip++;
-        found = siblings.nextNode().getName().equals(start.getName());
+      for (Map.Entry<String, List<String>> entry : orders.entrySet()) {
+        ChildOrder.reorder(root.getSession().getNode(entry.getKey()), entry.getValue());
       }
-
-      this.nodeIterator = start.getParent().getNodes();
-      this.nodeIterator.skip(skip - (long) 1);
-      this.patternIterator = patterns.getNodes();
-    }
-
-    public Node nextPattern() {
-      return patternIterator.nextNode();
-    }
-
-    @Override
-    public Node nextNode() {
-      return nodeIterator.nextNode();
-    }
-
-    @Override
-    public void skip(long skipNum) {
-      throw new UnsupportedOperationException("Skip is not supported.");
-    }
-
-    @Override
-    public long getSize() {
-      return Math.min(nodeIterator.getSize(), patternIterator.getSize());
-    }
-
-    @Override
-    public long getPosition() {
-      throw new UnsupportedOperationException("Position is not supported.");
-    }
-
-    @Override
-    public boolean hasNext() {
-      return nodeIterator.hasNext() && patternIterator.hasNext();
-    }
-
-    @Override
-    public Object next() {
-      throw new UnsupportedOperationException("Next is not supported.");
-    }
-
-    // Check if there are more patterns, if so, but no more nodes, does not match
-    public boolean checkNext() {
-      return !patternIterator.hasNext() || nodeIterator.hasNext();
     }
   }
 }
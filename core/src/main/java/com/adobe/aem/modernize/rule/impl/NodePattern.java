@@ -0,0 +1,227 @@
+package com.adobe.aem.modernize.rule.impl;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2026 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.jackrabbit.commons.flat.TreeTraverser;
+import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.sling.jcr.resource.api.JcrResourceConstants;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import static com.adobe.aem.modernize.rule.impl.NodeBasedRewriteRule.*;
+
+/**
+ * Compiled form of a single pattern tree of a {@link NodeBasedRewriteRule}.
+ * <p>
+ * The pattern is read from the repository once; matching a content node only reads the content.
+ */
+final class NodePattern {
+
+  private final String name;
+  private final String primaryType;
+  private final String resourceType;
+  private final List<PropertyPredicate> predicates;
+  private final List<String> requiredPaths;
+  private final List<NodePattern> requiredPatterns;
+
+  private NodePattern(String name, String primaryType, String resourceType, List<PropertyPredicate> predicates,
+                      List<String> requiredPaths, List<NodePattern> requiredPatterns) {
+    this.name = name;
+    this.primaryType = primaryType;
+    this.resourceType = resourceType;
+    this.predicates = predicates;
+    this.requiredPaths = requiredPaths;
+    this.requiredPatterns = requiredPatterns;
+  }
+
+  /**
+   * Compiles the pattern rooted at the specified node, including all of its descendants.
+   *
+   * @param pattern the pattern node
+   * @return the compiled pattern
+   * @throws RepositoryException if the pattern cannot be read
+   */
+  @NotNull
+  static NodePattern compile(@NotNull Node pattern) throws RepositoryException {
+    String rootPath = pattern.getPath();
+
+    // Required descendants, in pre-order, so path structure can be checked before any property comparisons
+    List<String> paths = new ArrayList<>();
+    List<NodePattern> patterns = new ArrayList<>();
+    NodeIterator children = pattern.getNodes();
+    while (children.hasNext()) {
+      for (Node child : new TreeTraverser(children.nextNode())) {
+        // Skip optional children trees
+        if (child.hasProperty(PN_CQ_REWRITE_OPTIONAL)) {
+          continue;
+        }
+        paths.add(PathUtils.relativize(rootPath, child.getPath()));
+        patterns.add(compileNode(child));
+      }
+    }
+    NodePattern root = compileNode(pattern);
+    return new NodePattern(root.name, root.primaryType, root.resourceType, root.predicates,
+        Collections.unmodifiableList(paths), Collections.unmodifiableList(patterns));
+  }
+
+  /*
+    Compiles the node's type and properties, without its descendants.
+   */
+  private static NodePattern compileNode(Node pattern) throws RepositoryException {
+    List<PropertyPredicate> predicates = new ArrayList<>();
+    String resourceType = null;
+    PropertyIterator properties = pattern.getProperties();
+    while (properties.hasNext()) {
+      Property property = properties.nextProperty();
+      String name = property.getName();
+
+      // skip protected properties
+      if (property.getDefinition().isProtected()) {
+        continue;
+      }
+
+      // Optional rewrites don't fail matching
+      if (PN_CQ_REWRITE_OPTIONAL.equals(name)) {
+        continue;
+      }
+      PropertyPredicate predicate = new PropertyPredicate(property);
+      if (predicate.resourceType && !property.isMultiple()) {
+        resourceType = property.getString();
+      }
+      predicates.add(predicate);
+    }
+    return new NodePattern(pattern.getName(), pattern.getPrimaryNodeType().getName(), resourceType,
+        Collections.unmodifiableList(predicates), Collections.emptyList(), Collections.emptyList());
+  }
+
+  /**
+   * The name of the pattern node in the rule definition.
+   *
+   * @return the name
+   */
+  @NotNull
+  String getName() {
+    return name;
+  }
+
+  /**
+   * The {@code sling:resourceType} this pattern requires, if any.
+   *
+   * @return the resource type or null if the pattern doesn't constrain it
+   */
+  @Nullable
+  String getResourceType() {
+    return resourceType;
+  }
+
+  /**
+   * Compares the node against the pattern, deep match.
+   *
+   * @param node the content node to check
+   * @return true if the node, and its required descendants, match the pattern
+   * @throws RepositoryException if the content cannot be read
+   */
+  boolean matches(@NotNull Node node) throws RepositoryException {
+    if (!matchesNode(node)) {
+      return false;
+    }
+
+    // Check each pattern's tree to verify that path exists under the node to match
+    // Small optimization to skip property comparison of early nodes if later nodes are missing
+    for (String relativePath : requiredPaths) {
+      if (!node.hasNode(relativePath)) {
+        return false;
+      }
+    }
+
+    // If we got here, the trees match at least path structure, now deep check the properties.
+    for (int i = 0; i < requiredPaths.size(); i++) {
+      if (!requiredPatterns.get(i).matchesNode(node.getNode(requiredPaths.get(i)))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /*
+    Checks the primary type and required properties of a single node.
+   */
+  private boolean matchesNode(Node node) throws RepositoryException {
+    if (!StringUtils.equals(node.getPrimaryNodeType().getName(), primaryType)) {
+      return false;
+    }
+    for (PropertyPredicate predicate : predicates) {
+      if (!predicate.test(node)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /*
+    A required property, and its value, from the pattern.
+   */
+  private static final class PropertyPredicate {
+
+    private final String name;
+    private final boolean resourceType;
+    private final boolean multiple;
+    private final Value[] values;
+
+    private PropertyPredicate(Property property) throws RepositoryException {
+      this.name = property.getName();
+      this.resourceType = JcrResourceConstants.SLING_RESOURCE_TYPE_PROPERTY.equals(name);
+      this.multiple = property.isMultiple();
+      this.values = multiple ? property.getValues() : new Value[] { property.getValue() };
+    }
+
+    private boolean test(Node node) throws RepositoryException {
+      // Missing required property fails rules
+      if (!node.hasProperty(name)) {
+        return false;
+      }
+      Property property = node.getProperty(name);
+      // Multi-valued properties match only multi-valued properties, with the same values in the same order
+      if (multiple || property.isMultiple()) {
+        return multiple && property.isMultiple() && Arrays.equals(property.getValues(), values);
+      }
+
+      // sling:resourceType is a special case - allow for multi-tenant component structures
+      if (resourceType) {
+        return property.getString().endsWith(values[0].getString());
+      }
+      // property values on pattern and tree differ
+      return property.getValue().equals(values[0]);
+    }
+  }
+}
@@ -0,0 +1,260 @@
+package com.adobe.aem.modernize.rule.impl;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2026 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import javax.jcr.nodetype.NodeType;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import static com.adobe.aem.modernize.rule.impl.NodeBasedRewriteRule.*;
+
+/**
+ * Compiled form of a node in the replacement tree of a {@link NodeBasedRewriteRule}.
+ * <p>
+ * Rewrite directives ({@code cq:copyChildren}, {@code cq:orderBefore}, etc.) are separated from the properties
+ * which are written to the content, so applying the rule doesn't have to copy and then clean up the rule definition.
+ */
+final class ReplacementNode {
+
+  private final String name;
+  private final String primaryType;
+  private final List<String> mixins;
+  private final List<TemplateProperty> properties;
+  private final List<ReplacementNode> children;
+  private final RewritePropertyProcessors processors;
+  private final boolean isFinal;
+  private final boolean copyChildren;
+  private final String orderBefore;
+  private final String mapChildren;
+
+  private ReplacementNode(Node node, boolean aggregate) throws RepositoryException {
+    this.name = node.getName();
+    this.primaryType = node.getPrimaryNodeType().getName();
+
+    List<String> mixins = new ArrayList<>();
+    for (NodeType mixin : node.getMixinNodeTypes()) {
+      mixins.add(mixin.getName());
+    }
+    this.mixins = Collections.unmodifiableList(mixins);
+
+    boolean isFinal = false;
+    boolean copyChildren = false;
+    String orderBefore = null;
+    String mapChildren = null;
+    List<TemplateProperty> properties = new ArrayList<>();
+    PropertyIterator it = node.getProperties();
+    while (it.hasNext()) {
+      Property property = it.nextProperty();
+      // skip protected properties
+      if (property.getDefinition().isProtected()) {
+        continue;
+      }
+      switch (property.getName()) {
+        case PN_CQ_MAP_CHILDREN:
+          mapChildren = property.getString();
+          break;
+        case PN_CQ_ORDER_BEFORE:
+          orderBefore = property.getString();
+          break;
+        case PN_CQ_REWRITE_FINAL:
+          isFinal = true;
+          break;
+        case PN_CQ_COPY_CHILDREN:
+          copyChildren = true;
+          break;
+        default:
+          properties.add(new TemplateProperty(property, aggregate));
+      }
+    }
+    this.properties = Collections.unmodifiableList(properties);
+    this.isFinal = isFinal;
+    this.copyChildren = copyChildren;
+    this.orderBefore = orderBefore;
+    this.mapChildren = mapChildren;
+    this.processors = RewritePropertyProcessors.compile(node);
+
+    List<ReplacementNode> children = new ArrayList<>();
+    NodeIterator nodes = node.getNodes();
+    while (nodes.hasNext()) {
+      Node child = nodes.nextNode();
+      if (isDirective(child.getName())) {
+        continue;
+      }
+      children.add(new ReplacementNode(child, aggregate));
+    }
+    this.children = Collections.unmodifiableList(children);
+  }
+
+  /**
+   * Compiles the replacement tree rooted at the specified node.
+   *
+   * @param node      the root of the replacement tree
+   * @param aggregate whether the rule is an aggregate, which allows pattern references in mapped properties
+   * @return the compiled tree
+   * @throws RepositoryException if the replacement cannot be read
+   */
+  @NotNull
+  static ReplacementNode compile(@NotNull Node node, boolean aggregate) throws RepositoryException {
+    return new ReplacementNode(node, aggregate);
+  }
+
+  private static boolean isDirective(String name) {
+    return NN_CQ_REWRITE_PROPERTIES.equals(name) ||
+        NN_CQ_REWRITE_MAP_PROPERTIES.equals(name) ||
+        NN_CQ_REWRITE_CONSOLIDATE_PROPERTIES.equals(name);
+  }
+
+  /**
+   * Creates the node, without properties or children, as a child of the specified parent.
+   *
+   * @param parent the parent for the new node
+   * @param name   the name of the new node
+   * @return the new node
+   * @throws RepositoryException if the node cannot be created
+   */
+  @NotNull
+  Node create(@NotNull Node parent, @NotNull String name) throws RepositoryException {
+    Node node = parent.addNode(name, primaryType);
+    for (String mixin : mixins) {
+      node.addMixin(mixin);
+    }
+    return node;
+  }
+
+  @NotNull
+  String getName() {
+    return name;
+  }
+
+  @NotNull
+  List<TemplateProperty> getProperties() {
+    return properties;
+  }
+
+  @NotNull
+  List<ReplacementNode> getChildren() {
+    return children;
+  }
+
+  @NotNull
+  RewritePropertyProcessors getProcessors() {
+    return processors;
+  }
+
+  boolean isFinal() {
+    return isFinal;
+  }
+
+  boolean isCopyChildren() {
+    return copyChildren;
+  }
+
+  @Nullable
+  String getOrderBefore() {
+    return orderBefore;
+  }
+
+  @Nullable
+  String getMapChildren() {
+    return mapChildren;
+  }
+
+  /**
+   * A property of a replacement node, as defined in the rule. String values which map properties from the original
+   * tree are parsed when the rule is compiled.
+   */
+  static final class TemplateProperty {
+
+    private final String name;
+    private final int type;
+    private final boolean multiple;
+    private final Value[] values;
+    private final List<MappedExpression> expressions;
+
+    private TemplateProperty(Property property, boolean aggregate) throws RepositoryException {
+      this.name = property.getName();
+      this.type = property.getType();
+      this.multiple = property.isMultiple();
+      this.values = multiple ? property.getValues() : new Value[] { property.getValue() };
+
+      List<MappedExpression> expressions = new ArrayList<>();
+      if (type == PropertyType.STRING) {
+        for (Value value : values) {
+          MappedExpression expression = MappedExpression.compile(value.getString(), aggregate);
+          if (expression != null) {
+            expressions.add(expression);
+          }
+        }
+      }
+      this.expressions = Collections.unmodifiableList(expressions);
+    }
+
+    @NotNull
+    String getName() {
+      return name;
+    }
+
+    int getType() {
+      return type;
+    }
+
+    @NotNull
+    List<Value> getValues() {
+      return Arrays.asList(values);
+    }
+
+    /**
+     * The mapped property expressions, in value order.
+     *
+     * @return the expressions, empty if the property is set as defined
+     */
+    @NotNull
+    List<MappedExpression> getExpressions() {
+      return expressions;
+    }
+
+    /**
+     * Sets this property, as defined in the rule, on the specified node.
+     *
+     * @param node the node to update
+     * @return the new property
+     * @throws RepositoryException if the property cannot be set
+     */
+    @NotNull
+    Property writeTo(@NotNull Node node) throws RepositoryException {
+      if (multiple) {
+        return node.setProperty(name, values.clone());
+      }
+      return node.setProperty(name, values[0]);
+    }
+  }
+}
@@ -0,0 +1,83 @@
+package com.adobe.aem.modernize.rule.impl;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2026 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Trie of pattern {@code sling:resourceType}s, stored last character first.
+ * <p>
+ * Patterns match any type which ends with them, to allow for multi-tenant component structures. Walking a type
+ * from its last character visits every pattern which is a suffix of it, so all candidates are found in a single pass.
+ */
+final class ResourceTypeTrie {
+
+  private final Entry root = new Entry();
+  private boolean empty = true;
+
+  /**
+   * Adds the rule, by its position in the rule set, for the pattern type.
+   *
+   * @param type     the type from the rule pattern
+   * @param position the position of the rule
+   */
+  void add(@NotNull String type, int position) {
+    Entry entry = root;
+    for (int i = type.length() - 1; i >= 0; i--) {
+      entry = entry.children.computeIfAbsent(type.charAt(i), c -> new Entry());
+    }
+    if (entry.positions == null) {
+      entry.positions = new BitSet();
+    }
+    entry.positions.set(position);
+    empty = false;
+  }
+
+  boolean isEmpty() {
+    return empty;
+  }
+
+  /**
+   * Adds the positions of all rules with a pattern type that the specified type ends with.
+   *
+   * @param type   the type of the content
+   * @param result the set to update
+   */
+  void collect(@NotNull String type, @NotNull BitSet result) {
+    Entry entry = root;
+    int i = type.length();
+    while (entry != null) {
+      if (entry.positions != null) {
+        result.or(entry.positions);
+      }
+      entry = --i >= 0 ? entry.children.get(type.charAt(i)) : null;
+    }
+  }
+
+  private static final class Entry {
+    private final Map<Character, Entry> children = new HashMap<>();
+    private BitSet positions;
+  }
+}
@@ -1,8 +1,15 @@
 package com.adobe.aem.modernize.rule.impl;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.jcr.Node;
+import javax.jcr.NodeIterator;
 import javax.jcr.Property;
 import javax.jcr.PropertyIterator;
 import javax.jcr.PropertyType;
@@ -10,100 +17,145 @@ import javax.jcr.RepositoryException;
 import javax.jcr.Value;
 import javax.jcr.ValueFactory;
 
-import lombok.Getter;
-import lombok.NoArgsConstructor;
-import lombok.Setter;
+import static com.adobe.aem.modernize.rule.impl.NodeBasedRewriteRule.*;
 
-@Getter
-@Setter
-@NoArgsConstructor
+/*
+ * Compiled form of the property directive nodes ({@code cq:rewriteProperties}, {@code cq:rewriteMapProperties},
+ * {@code cq:rewriteConsolidateProperties}) of a replacement node.
+ */
 class RewritePropertyProcessors {
 
-  Node rewriteProperties;
-  Node rewriteMapProperties;
-  Node rewriteConsolidateProperties;
+  static final RewritePropertyProcessors NONE = new RewritePropertyProcessors(
+      Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap());
 
-  void remove() throws RepositoryException {
-    if (rewriteProperties != null) {
-      rewriteProperties.remove();
+  private final Map<String, Rewrite> rewriteProperties;
+  private final Map<String, Map<String, String>> rewriteMapProperties;
+  private final Map<String, List<String>> rewriteConsolidateProperties;
+
+  private RewritePropertyProcessors(Map<String, Rewrite> rewriteProperties,
+                                    Map<String, Map<String, String>> rewriteMapProperties,
+                                    Map<String, List<String>> rewriteConsolidateProperties) {
+    this.rewriteProperties = rewriteProperties;
+    this.rewriteMapProperties = rewriteMapProperties;
+    this.rewriteConsolidateProperties = rewriteConsolidateProperties;
+  }
+
+  /*
+   * Reads the directive children of the replacement node, if any exist.
+   */
+  static RewritePropertyProcessors compile(Node replacement) throws RepositoryException {
+    boolean rewrite = replacement.hasNode(NN_CQ_REWRITE_PROPERTIES);
+    boolean map = replacement.hasNode(NN_CQ_REWRITE_MAP_PROPERTIES);
+    boolean consolidate = replacement.hasNode(NN_CQ_REWRITE_CONSOLIDATE_PROPERTIES);
+    if (!rewrite && !map && !consolidate) {
+      return NONE;
     }
-    if (rewriteMapProperties != null) {
-      rewriteMapProperties.remove();
+    return new RewritePropertyProcessors(
+        rewrite ? compileRewrites(replacement.getNode(NN_CQ_REWRITE_PROPERTIES)) : Collections.emptyMap(),
+        map ? compileMaps(replacement.getNode(NN_CQ_REWRITE_MAP_PROPERTIES)) : Collections.emptyMap(),
+        consolidate ? compileConsolidations(replacement.getNode(NN_CQ_REWRITE_CONSOLIDATE_PROPERTIES)) : Collections.emptyMap()
+    );
+  }
+
+  private static Map<String, Rewrite> compileRewrites(Node node) throws RepositoryException {
+    Map<String, Rewrite> rewrites = new HashMap<>();
+    PropertyIterator rules = node.getProperties();
+    while (rules.hasNext()) {
+      Property rule = rules.nextProperty();
+      if (!rule.isMultiple() || rule.getValues().length != 2) {
+        continue;
+      }
+      Value[] rewrite = rule.getValues();
+      if (rewrite[0].getType() == PropertyType.STRING && rewrite[1].getType() == PropertyType.STRING) {
+        rewrites.put(rule.getName(), new Rewrite(Pattern.compile(rewrite[0].getString()), rewrite[1].getString()));
+      }
     }
-    if (rewriteConsolidateProperties != null) {
-      rewriteConsolidateProperties.remove();
+    return rewrites;
+  }
+
+  private static Map<String, Map<String, String>> compileMaps(Node node) throws RepositoryException {
+    Map<String, Map<String, String>> maps = new HashMap<>();
+    NodeIterator children = node.getNodes();
+    while (children.hasNext()) {
+      Node child = children.nextNode();
+      Map<String, String> map = new HashMap<>();
+      PropertyIterator entries = child.getProperties();
+      while (entries.hasNext()) {
+        Property entry = entries.nextProperty();
+        if (entry.getType() == PropertyType.STRING && !entry.isMultiple()) {
+          map.put(entry.getName(), entry.getString());
+        }
+      }
+      maps.put(child.getName(), map);
     }
+    return maps;
+  }
+
+  private static Map<String, List<String>> compileConsolidations(Node node) throws RepositoryException {
+    Map<String, List<String>> consolidations = new LinkedHashMap<>();
+    PropertyIterator rules = node.getProperties();
+    while (rules.hasNext()) {
+      Property rule = rules.nextProperty();
+      if (rule.getDefinition().isProtected()) {
+        continue;
+      }
+      Value[] values = rule.isMultiple() ? rule.getValues() : new Value[] { rule.getValue() };
+      List<String> sources = new ArrayList<>(values.length);
+      for (Value value : values) {
+        sources.add(value.getString());
+      }
+      consolidations.put(rule.getName(), sources);
+    }
+    return consolidations;
   }
 
   /*
    * Applies a string rewrite to a property.
    */
   void rewrite(Property property) throws RepositoryException {
-    if (rewriteProperties != null &&
-        rewriteProperties.hasProperty(property.getName())) {
-
-      Property rule = rewriteProperties.getProperty(property.getName());
-      if (property.getType() == PropertyType.STRING &&
-          rule.isMultiple() &&
-          rule.getValues().length == 2) {
-
-        Value[] rewrite = rule.getValues();
-
-        if (rewrite[0].getType() == PropertyType.STRING && rewrite[1].getType() == PropertyType.STRING) {
-          String pattern = rewrite[0].toString();
-          String replacement = rewrite[1].toString();
-
-          Pattern compiledPattern = Pattern.compile(pattern);
-          Matcher matcher = compiledPattern.matcher(property.getValue().toString());
-          property.setValue(matcher.replaceAll(replacement));
-        }
-      }
+    Rewrite rewrite = rewriteProperties.get(property.getName());
+    if (rewrite != null && property.getType() == PropertyType.STRING && !property.isMultiple()) {
+      Matcher matcher = rewrite.pattern.matcher(property.getString());
+      property.setValue(matcher.replaceAll(rewrite.replacement));
     }
   }
 
   void map(Property property) throws RepositoryException {
-    if (rewriteMapProperties != null &&
-        rewriteMapProperties.hasNode(property.getName()) &&
-        property.getType() == PropertyType.STRING) {
-
-        String value = property.getString();
-        Node map = rewriteMapProperties.getNode(property.getName());
-        
-        if (map.hasProperty(value) &&
-          map.getProperty(value).getType() == PropertyType.STRING &&
-          !map.getProperty(value).isMultiple()) {
-        property.setValue(map.getProperty(value).getString());
+    Map<String, String> map = rewriteMapProperties.get(property.getName());
+    if (map != null && property.getType() == PropertyType.STRING && !property.isMultiple()) {
+      String value = map.get(property.getString());
+      if (value != null) {
+        property.setValue(value);
       }
     }
   }
 
   void consolidate(Node source) throws RepositoryException {
-    if (rewriteConsolidateProperties != null) {
-
-      PropertyIterator rules = rewriteConsolidateProperties.getProperties();
-      ValueFactory vf = source.getSession().getValueFactory();
-      while (rules.hasNext()) {
-        Property newProp = rules.nextProperty();
-        if (newProp.getDefinition().isProtected()) {
+    if (rewriteConsolidateProperties.isEmpty()) {
+      return;
+    }
+    ValueFactory vf = source.getSession().getValueFactory();
+    for (Map.Entry<String, List<String>> rule : rewriteConsolidateProperties.entrySet()) {
+      List<Value> newValues = new ArrayList<>();
+      for (String name : rule.getValue()) {
+        if (!source.hasProperty(name)) {
           continue;
         }
-        Value[] values;
-        if (!newProp.isMultiple()) {
-          values = new Value[] { newProp.getValue() };
-        } else {
-          values = newProp.getValues();
-        }
-        Value[] newValues = new Value[values.length];
-        for (int i = 0; i < values.length; i++) {
-          if (!source.hasProperty(values[i].getString())) {
-            continue;
-          }
-          Property property = source.getProperty(values[i].getString());
-          newValues[i] = vf.createValue(property.getString());
-          property.remove();
-        }
-        source.setProperty(newProp.getName(), newValues);
+        Property property = source.getProperty(name);
+        newValues.add(vf.createValue(property.getString()));
+        property.remove();
       }
+      source.setProperty(rule.getKey(), newValues.toArray(new Value[0]));
+    }
+  }
+
+  private static final class Rewrite {
+    private final Pattern pattern;
+    private final String replacement;
+
+    private Rewrite(Pattern pattern, String replacement) {
+      this.pattern = pattern;
+      this.replacement = replacement;
     }
   }
 }
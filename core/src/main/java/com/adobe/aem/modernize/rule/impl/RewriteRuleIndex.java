@@ -0,0 +1,141 @@
+package com.adobe.aem.modernize.rule.impl;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2026 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.RepositoryException;
+
+import org.apache.sling.jcr.resource.api.JcrResourceConstants;
+
+import com.adobe.aem.modernize.rule.RewriteRule;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Indexes a list of rules by the {@code sling:resourceType}s their patterns require, so that a node is only checked
+ * against the rules which could possibly match it.
+ * <p>
+ * Rules which don't declare a type constraint (service based rules, or patterns without a type) are checked against every node.
+ * Candidates are always returned in the order of the original list.
+ * <p>
+ * Aggregate rules are matched by scanning all the children of a parent at once; the results are kept until
+ * {@link #reset()} is called, which must happen whenever the content is changed.
+ */
+public final class RewriteRuleIndex {
+
+  private final List<RewriteRule> rules;
+  private final ResourceTypeTrie typed = new ResourceTypeTrie();
+  private final BitSet wildcard = new BitSet();
+  // Aggregate rule -> parent path -> names of children at which the rule matches
+  private final Map<RewriteRule, Map<String, Set<String>>> aggregateMatches = new HashMap<>();
+
+  /**
+   * Creates an index for the rules.
+   *
+   * @param rules the rules, in the order they are to be applied
+   */
+  public RewriteRuleIndex(@NotNull List<RewriteRule> rules) {
+    this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+    for (int i = 0; i < this.rules.size(); i++) {
+      RewriteRule rule = this.rules.get(i);
+      Set<String> types = rule instanceof NodeBasedRewriteRule ? ((NodeBasedRewriteRule) rule).getRootResourceTypes() : null;
+      if (types == null) {
+        wildcard.set(i);
+        continue;
+      }
+      for (String type : types) {
+        typed.add(type, i);
+      }
+    }
+  }
+
+  /**
+   * Lists the rules which may match the specified node.
+   *
+   * @param node the node to check
+   * @return the candidate rules, in rule order
+   * @throws RepositoryException if the node's type cannot be read
+   */
+  @NotNull
+  public List<RewriteRule> getCandidates(@NotNull Node node) throws RepositoryException {
+    BitSet matches = (BitSet) wildcard.clone();
+    if (!typed.isEmpty() && node.hasProperty(JcrResourceConstants.SLING_RESOURCE_TYPE_PROPERTY)) {
+      Property property = node.getProperty(JcrResourceConstants.SLING_RESOURCE_TYPE_PROPERTY);
+      // Type constraints are single valued, they never match a multi-valued property
+      if (!property.isMultiple()) {
+        typed.collect(property.getString(), matches);
+      }
+    }
+
+    List<RewriteRule> candidates = new ArrayList<>(matches.cardinality());
+    for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+      candidates.add(rules.get(i));
+    }
+    return candidates;
+  }
+
+  /**
+   * Checks if the rule matches the node. Aggregate rules are checked for all siblings of the node in a single pass,
+   * and the result is reused for the other siblings.
+   *
+   * @param rule the rule to check
+   * @param node the node to check
+   * @return true if the rule matches
+   * @throws RepositoryException if the content cannot be read
+   */
+  public boolean matches(@NotNull RewriteRule rule, @NotNull Node node) throws RepositoryException {
+    if (!(rule instanceof NodeBasedRewriteRule) || !((NodeBasedRewriteRule) rule).isAggregate() || node.getDepth() == 0) {
+      return rule.matches(node);
+    }
+    Node parent = node.getParent();
+    Map<String, Set<String>> byParent = aggregateMatches.computeIfAbsent(rule, r -> new HashMap<>());
+    Set<String> names = byParent.get(parent.getPath());
+    if (names == null) {
+      names = ((NodeBasedRewriteRule) rule).findAggregateMatches(parent);
+      byParent.put(parent.getPath(), names);
+    }
+    return names.contains(node.getName());
+  }
+
+  /**
+   * Discards any match results, to be called after content is changed.
+   */
+  public void reset() {
+    aggregateMatches.clear();
+  }
+
+  /**
+   * The indexed rules.
+   *
+   * @return the rules, in order
+   */
+  @NotNull
+  public List<RewriteRule> getRules() {
+    return rules;
+  }
+}
@@ -0,0 +1,180 @@
+package com.adobe.aem.modernize.rule.impl;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2026 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The ordered patterns of an aggregate rule, which must match consecutive siblings.
+ * <p>
+ * Matching a single node only walks the siblings up to the end of its window. Scanning a parent finds every window
+ * in one pass over its children: each child advances the partial matches in progress, so no child is read more than
+ * once per pattern.
+ */
+final class SiblingSequence {
+
+  static final SiblingSequence EMPTY = new SiblingSequence(Collections.emptyList());
+
+  private final List<NodePattern> patterns;
+
+  SiblingSequence(@NotNull List<NodePattern> patterns) {
+    this.patterns = patterns;
+  }
+
+  boolean isEmpty() {
+    return patterns.isEmpty();
+  }
+
+  int size() {
+    return patterns.size();
+  }
+
+  /**
+   * The {@code sling:resourceType} required of the first node in a window.
+   *
+   * @return the resource type, or null if it isn't constrained
+   */
+  @Nullable
+  String getResourceType() {
+    return patterns.isEmpty() ? null : patterns.get(0).getResourceType();
+  }
+
+  /**
+   * The names of the pattern nodes in the rule definition, in order.
+   *
+   * @return the names
+   */
+  @NotNull
+  List<String> getNames() {
+    List<String> names = new ArrayList<>(patterns.size());
+    for (NodePattern pattern : patterns) {
+      names.add(pattern.getName());
+    }
+    return names;
+  }
+
+  /**
+   * Checks if a window starts at the specified node.
+   *
+   * @param root the first node of the window
+   * @return true if the node and its following siblings match the patterns
+   * @throws RepositoryException if the content cannot be read
+   */
+  boolean matchesAt(@NotNull Node root) throws RepositoryException {
+    if (patterns.isEmpty() || !patterns.get(0).matches(root)) {
+      return false;
+    }
+    NodeIterator siblings = followingSiblings(root);
+    for (int i = 1; i < patterns.size(); i++) {
+      // More patterns, but no more nodes, does not match
+      if (!siblings.hasNext() || !patterns.get(i).matches(siblings.nextNode())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Finds all windows in the children of the parent.
+   *
+   * @param parent the parent of the siblings to scan
+   * @return the names of the children at which a window starts
+   * @throws RepositoryException if the content cannot be read
+   */
+  @NotNull
+  Set<String> scan(@NotNull Node parent) throws RepositoryException {
+    if (patterns.isEmpty()) {
+      return Collections.emptySet();
+    }
+    Set<String> starts = new HashSet<>();
+    // Partial matches: the name of the first node, and the number of patterns matched so far
+    List<String> names = new ArrayList<>();
+    List<Integer> matched = new ArrayList<>();
+
+    NodeIterator children = parent.getNodes();
+    while (children.hasNext()) {
+      Node child = children.nextNode();
+      List<String> nextNames = new ArrayList<>();
+      List<Integer> nextMatched = new ArrayList<>();
+
+      // A window may start at any child
+      names.add(child.getName());
+      matched.add(0);
+      for (int i = 0; i < names.size(); i++) {
+        int count = matched.get(i);
+        if (!patterns.get(count).matches(child)) {
+          continue;
+        }
+        if (count + 1 == patterns.size()) {
+          starts.add(names.get(i));
+        } else {
+          nextNames.add(names.get(i));
+          nextMatched.add(count + 1);
+        }
+      }
+      names = nextNames;
+      matched = nextMatched;
+    }
+    return starts;
+  }
+
+  /**
+   * Lists the names of the nodes in the window starting at the specified node.
+   *
+   * @param root the first node of the window
+   * @return the names, which may be fewer than the patterns if there aren't enough siblings
+   * @throws RepositoryException if the content cannot be read
+   */
+  @NotNull
+  List<String> window(@NotNull Node root) throws RepositoryException {
+    List<String> names = new ArrayList<>(patterns.size());
+    names.add(root.getName());
+    NodeIterator siblings = followingSiblings(root);
+    for (int i = 1; i < patterns.size() && siblings.hasNext(); i++) {
+      names.add(siblings.nextNode().getName());
+    }
+    return names;
+  }
+
+  /*
+    Returns an iterator over the parent's children, positioned after the specified node.
+   */
+  private static NodeIterator followingSiblings(Node node) throws RepositoryException {
+    String name = node.getName();
+    NodeIterator siblings = node.getParent().getNodes();
+    while (siblings.hasNext()) {
+      if (siblings.nextNode().getName().equals(name)) {
+        break;
+      }
+    }
+    return siblings;
+  }
+}
@@ -3,30 +3,23 @@ package com.adobe.aem.modernize.servlet;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
-import javax.jcr.RepositoryException;
 import javax.servlet.ServletException;
 
 import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
-import org.apache.sling.api.resource.AbstractResourceVisitor;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
-import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
-import org.apache.sling.jcr.resource.api.JcrResourceConstants;
 
-import com.adobe.aem.modernize.model.ConversionJob;
+import com.adobe.aem.modernize.impl.RulePaths;
 import com.adobe.aem.modernize.rule.RewriteRule;
 import com.adobe.aem.modernize.rule.RewriteRuleService;
 import com.day.cq.wcm.api.Page;
 import com.day.cq.wcm.api.PageManager;
-import com.day.cq.wcm.api.Revision;
-import com.day.cq.wcm.api.WCMException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -105,44 +98,12 @@ public abstract class AbstractRulesServlet extends SlingSafeMethodsServlet {
 
   @Nullable
   protected Resource getOriginalPageContent(@NotNull Page page) {
-    String versionId = page.getProperties().get(ConversionJob.PN_PRE_MODERNIZE_VERSION, String.class);
-    if (StringUtils.isBlank(versionId)) {
-      logger.debug("Page does not contain previous version. Processing as-is.");
-      return page.getContentResource();
-    }
-
-    try {
-      PageManager pm = page.getPageManager();
-      ResourceResolver rr = page.getContentResource().getResourceResolver();
-      Revision rev = pm.getRevisions(page.getPath(), null).stream().filter(r -> r.getId().equals(versionId)).findFirst().orElse(null);
-      if (rev == null) {
-        return null;
-      }
-      return rr.getResource(rev.getVersion().getFrozenNode().getPath());
-    } catch (WCMException | RepositoryException ex) {
-      logger.warn("Unable to determine revision of page.");
-      return null;
-    }
+    return RulePaths.getPageContent(page, true);
   }
 
   @NotNull
   protected Set<String> gatherPaths(@NotNull Resource root) {
-    Set<String> paths = new HashSet<>();
-    Iterator<Resource> children = root.listChildren();
-    while (children.hasNext()) {
-      new AbstractResourceVisitor() {
-        @Override
-        protected void visit(@NotNull Resource resource) {
-          ValueMap vm = resource.adaptTo(ValueMap.class);
-          if (vm != null &&
-              StringUtils.isNotBlank(vm.get(JcrResourceConstants.SLING_RESOURCE_TYPE_PROPERTY, String.class))) {
-
-            paths.add(resource.getPath());
-          }
-        }
-      }.accept(children.next());
-    }
-    return paths;
+    return RulePaths.gatherPaths(root);
   }
 
   @NotNull
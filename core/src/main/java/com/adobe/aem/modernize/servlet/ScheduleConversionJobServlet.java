@@ -22,32 +22,41 @@ package com.adobe.aem.modernize.servlet;
 
 import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import javax.jcr.AccessDeniedException;
 import javax.jcr.Node;
 import javax.jcr.NodeIterator;
+import javax.jcr.PathNotFoundException;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.jcr.security.AccessControlManager;
 import javax.jcr.security.Privilege;
 import javax.servlet.Servlet;
 
+import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.jackrabbit.JcrConstants;
 import org.apache.jackrabbit.commons.JcrUtils;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.servlets.SlingAllMethodsServlet;
 import org.apache.sling.event.jobs.JobManager;
 import org.apache.sling.jcr.api.SlingRepository;
 import org.apache.sling.jcr.resource.api.JcrResourceConstants;
 
+import com.adobe.aem.modernize.impl.ListPageVisitor;
 import com.adobe.aem.modernize.job.AbstractConversionJobExecutor;
 import com.adobe.aem.modernize.model.ConversionJob;
 import com.adobe.aem.modernize.model.ConversionJobBucket;
@@ -58,8 +67,14 @@ import com.day.cq.wcm.api.designer.Designer;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.Getter;
 import lombok.Setter;
+import org.osgi.service.cm.ConfigurationException;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import static com.adobe.aem.modernize.model.ConversionJob.*;
@@ -75,14 +90,20 @@ import static org.apache.sling.api.servlets.ServletResolverConstants.*;
         SLING_SERVLET_EXTENSIONS + "=json",
     }
 )
+@Designate(ocd = ScheduleConversionJobServlet.Config.class)
 public class ScheduleConversionJobServlet extends SlingAllMethodsServlet {
 
   private static final Logger logger = LoggerFactory.getLogger(ScheduleConversionJobServlet.class);
 
   private static final String PARAM_DATA = "data";
   private static final int MAX_PROCESS_PATHS = 500;
+  private static final long MAX_ESTIMATE_NODES = 2000;
+  private static final long MAX_PROCESS_COST = MAX_ESTIMATE_NODES;
 
   private static final String NN_BUCKETS = "buckets";
+  private static final int SAVE_BUCKETS = 10;
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
 
   @Reference
   private SlingRepository repository;
@@ -90,13 +111,17 @@ public class ScheduleConversionJobServlet extends SlingAllMethodsServlet {
   @Reference
   private JobManager jobManager;
 
+  private int bucketSize = MAX_PROCESS_PATHS;
+  private long bucketCost = MAX_PROCESS_COST;
+
   @Override
   protected void doPost(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
 
     RequestData data = getJobData(request);
+    PathFilter filter = data == null ? null : getFilter(data);
     ResponseData responseData = new ResponseData();
 
-    if (data == null) {
+    if (filter == null) {
       responseData.setMessage("Error processing request parameters.");
       writeResponse(response, SC_BAD_REQUEST, responseData);
       return;
@@ -105,9 +130,11 @@ public class ScheduleConversionJobServlet extends SlingAllMethodsServlet {
     try {
       Session session = rr.adaptTo(Session.class);
       checkPermissions(rr, data);
-      List<String[]> buckets = createBuckets(data);
-      String tracking = createTrackingState(session, data, rr.getUserID(), buckets);
-      if (scheduleJobs(session, data.getType(), tracking)) {
+      String tracking = createTrackingState(rr, data, filter);
+      if (tracking == null) {
+        responseData.setMessage("No pages under the root path match the filters.");
+        writeResponse(response, SC_BAD_REQUEST, responseData);
+      } else if (scheduleJobs(session, data.getType(), tracking)) {
         responseData.setSuccess(true);
         responseData.setMessage("Successfully scheduled conversion job.");
         responseData.setJob(tracking);
@@ -132,7 +159,12 @@ public class ScheduleConversionJobServlet extends SlingAllMethodsServlet {
     try {
       String data = request.getParameter(PARAM_DATA);
       if (StringUtils.isNotBlank(data)) {
-        return new ObjectMapper().readValue(data, RequestData.class);
+        RequestData requestData = MAPPER.readValue(data, RequestData.class);
+        if (ArrayUtils.isEmpty(requestData.getPaths()) && StringUtils.isBlank(requestData.getRoot())) {
+          logger.error("Job data from request has neither paths nor a root path.");
+          return null;
+        }
+        return requestData;
       }
     } catch (IOException e) {
       logger.error("Unable to parse job data from request: {}", e.getLocalizedMessage());
@@ -140,6 +172,16 @@ public class ScheduleConversionJobServlet extends SlingAllMethodsServlet {
     return null;
   }
 
+  // Compile the include/exclude patterns of the job data
+  private PathFilter getFilter(RequestData requestData) {
+    try {
+      return new PathFilter(requestData.getIncludes(), requestData.getExcludes());
+    } catch (PatternSyntaxException e) {
+      logger.error("Unable to parse job data from request: {}", e.getLocalizedMessage());
+    }
+    return null;
+  }
+
   private void checkPermissions(ResourceResolver rr, RequestData data) throws AccessDeniedException {
     try {
       Session session = rr.adaptTo(Session.class);
@@ -150,23 +192,20 @@ public class ScheduleConversionJobServlet extends SlingAllMethodsServlet {
         throw new AccessDeniedException(JOB_DATA_LOCATION);
       }
       
-      for (String path : data.getPaths()) {
+      // Pages expanded from a root are checked as they are found
+      String[] paths = ArrayUtils.isEmpty(data.getPaths()) ? new String[] { data.getRoot() } : data.getPaths();
+      for (String path : paths) {
         if (!acm.hasPrivileges(path, privs)) {
           throw new AccessDeniedException(path);
         }
       }
 
-      if (data.getPolicyRules() != null && data.getPolicyRules().length > 0) {
+      if (ArrayUtils.isNotEmpty(data.getPaths()) && ArrayUtils.isNotEmpty(data.getPolicyRules())) {
         PageManager pm = rr.adaptTo(PageManager.class);
         Designer designer = rr.adaptTo(Designer.class);
+        Set<String> designs = new HashSet<>();
         for (String path : data.getPaths()) {
-          Page page = pm.getPage(path);
-          if (page != null) {
-            String designPath = designer.getDesignPath(page);
-            if (!acm.hasPrivileges(designPath, privs)) {
-              throw new AccessDeniedException(designPath);
-            }
-          }
+          checkDesignPermissions(acm, pm, designer, path, designs);
         }
       }
 
@@ -184,42 +223,117 @@ public class ScheduleConversionJobServlet extends SlingAllMethodsServlet {
 
   }
 
-  private List<String[]> createBuckets(RequestData requestData) {
-    // Don't over load jobs, split up the request into buckets
-    List<String[]> buckets = new ArrayList<>();
-    String[] paths = requestData.getPaths();
-    int bucketCount = paths.length / MAX_PROCESS_PATHS;
-    if (bucketCount % MAX_PROCESS_PATHS != 0) {
-      bucketCount++;
+  private void checkDesignPermissions(AccessControlManager acm, PageManager pm, Designer designer, String path, Set<String> checked) throws RepositoryException {
+    Page page = pm.getPage(path);
+    if (page != null) {
+      String designPath = designer.getDesignPath(page);
+      if (checked.add(designPath) && !acm.hasPrivileges(designPath, new Privilege[] { acm.privilegeFromName(Privilege.JCR_WRITE) })) {
+        throw new AccessDeniedException(designPath);
+      }
     }
+  }
 
-    if (bucketCount > 1) {
-      logger.warn("Processing {} paths exceeds the limit of {}, splitting it into {} distinct jobs.", paths.length, MAX_PROCESS_PATHS, bucketCount);
+  // Estimate the cost of converting a path by its number of content nodes; this runs within the request, so counting
+  // stops at the bucket cost, which is bounded when activating.
+  private long estimateCost(Session session, String path) throws RepositoryException {
+    if (!session.nodeExists(path)) {
+      return 1;
     }
-    int offset = 0;
-
-    while (offset < paths.length) {
-      int endOffset = offset + MAX_PROCESS_PATHS;
-      if (endOffset > paths.length) {
-        endOffset = paths.length;
+    Node node = session.getNode(path);
+    if (node.hasNode(JcrConstants.JCR_CONTENT)) {
+      node = node.getNode(JcrConstants.JCR_CONTENT);
+    }
+    long count = 0;
+    long limit = bucketCost;
+    Deque<Node> stack = new ArrayDeque<>();
+    stack.push(node);
+    while (!stack.isEmpty() && count < limit) {
+      count++;
+      NodeIterator it = stack.pop().getNodes();
+      while (it.hasNext()) {
+        stack.push(it.nextNode());
       }
-      String[] bucketPaths = Arrays.copyOfRange(paths, offset, endOffset);
-      buckets.add(bucketPaths);
-      offset = endOffset;
     }
-    return buckets;
+    return count;
   }
 
-  // Create the tree of data for tracking the state of the job.
-  private String createTrackingState(Session session, RequestData requestData, String userId, List<String[]> buckets) throws RepositoryException {
-    Node tracking = createTrackingNode(session, requestData, userId);
+  // Create the tree of data for tracking the state of the job, writing the buckets as the paths are read. Returns null,
+  // leaving nothing behind, if no paths were found.
+  private String createTrackingState(ResourceResolver rr, RequestData requestData, PathFilter filter) throws RepositoryException {
+    Session session = rr.adaptTo(Session.class);
+    Node tracking = createTrackingNode(session, requestData, rr.getUserID());
+    String trackingPath = tracking.getPath();
     Node parent = tracking.addNode(NN_BUCKETS, JcrConstants.NT_UNSTRUCTURED);
-    for (String[] bucket : buckets) {
-      addBucketNode(session, parent, bucket);
+    String bucketsPath = parent.getPath();
+    try {
+      BucketWriter writer = new BucketWriter(session, parent);
+      if (ArrayUtils.isNotEmpty(requestData.getPaths())) {
+        for (String path : requestData.getPaths()) {
+          writer.add(path);
+        }
+      } else {
+        expand(rr, requestData, filter, writer);
+      }
+      writer.close();
+      if (writer.isEmpty()) {
+        removeTrackingState(session, trackingPath, bucketsPath);
+        return null;
+      }
+      session.save();
+      session.refresh(true);
+      return trackingPath;
+    } catch (RepositoryException e) {
+      // Buckets may have been saved already
+      session.refresh(false);
+      removeTrackingState(session, trackingPath, bucketsPath);
+      throw e;
+    }
+  }
+
+  // Remove the buckets of the job, and its tracking node unless it holds other data.
+  private void removeTrackingState(Session session, String trackingPath, String bucketsPath) throws RepositoryException {
+    if (session.nodeExists(bucketsPath)) {
+      session.getNode(bucketsPath).remove();
+      Node node = session.getNode(trackingPath);
+      if (!node.hasNodes()) {
+        node.remove();
+      }
+      session.save();
+    }
+  }
+
+  // Stream the pages under the root that match the filters into the buckets.
+  private void expand(ResourceResolver rr, RequestData requestData, PathFilter filter, BucketWriter writer) throws RepositoryException {
+    Resource root = rr.getResource(requestData.getRoot());
+    if (root == null) {
+      throw new PathNotFoundException(requestData.getRoot());
+    }
+    boolean checkDesigns = ArrayUtils.isNotEmpty(requestData.getPolicyRules());
+    Session session = rr.adaptTo(Session.class);
+    AccessControlManager acm = session.getAccessControlManager();
+    PageManager pm = rr.adaptTo(PageManager.class);
+    Designer designer = rr.adaptTo(Designer.class);
+    Set<String> designs = new HashSet<>();
+    try {
+      new ListPageVisitor(Integer.MAX_VALUE, path -> {
+        if (!filter.accepts(path)) {
+          return;
+        }
+        try {
+          if (!acm.hasPrivileges(path, new Privilege[] { acm.privilegeFromName(Privilege.JCR_WRITE) })) {
+            throw new AccessDeniedException(path);
+          }
+          if (checkDesigns) {
+            checkDesignPermissions(acm, pm, designer, path, designs);
+          }
+          writer.add(path);
+        } catch (RepositoryException e) {
+          throw new ExpansionException(e);
+        }
+      }).accept(root);
+    } catch (ExpansionException e) {
+      throw e.getCause();
     }
-    session.save();
-    session.refresh(true);
-    return tracking.getPath();
   }
 
   // Create the parent node for tracking.
@@ -269,10 +383,113 @@ public class ScheduleConversionJobServlet extends SlingAllMethodsServlet {
     return true;
   }
 
+  // Splits the paths into buckets by path count and estimated cost, writing each bucket once it is complete.
+  private final class BucketWriter {
+
+    private final Session session;
+    private final Node parent;
+    private List<String> bucket = new ArrayList<>();
+    private long cost = 0;
+    private int paths = 0;
+    private int buckets = 0;
+
+    private BucketWriter(Session session, Node parent) {
+      this.session = session;
+      this.parent = parent;
+    }
+
+    private void add(String path) throws RepositoryException {
+      long pathCost = bucketCost > 0 ? estimateCost(session, path) : 0;
+      if (!bucket.isEmpty() && (bucket.size() >= bucketSize || (bucketCost > 0 && cost + pathCost > bucketCost))) {
+        flush();
+      }
+      bucket.add(path);
+      cost += pathCost;
+      paths++;
+    }
+
+    private void flush() throws RepositoryException {
+      addBucketNode(session, parent, bucket.toArray(new String[] {}));
+      bucket = new ArrayList<>();
+      cost = 0;
+      buckets++;
+      if (buckets % SAVE_BUCKETS == 0) {
+        session.save();
+      }
+    }
+
+    private boolean isEmpty() {
+      return buckets == 0;
+    }
+
+    private void close() throws RepositoryException {
+      if (!bucket.isEmpty()) {
+        flush();
+      }
+      if (buckets > 1) {
+        logger.warn("Processing {} paths exceeds the limit of {} paths or cost of {}, splitting it into {} distinct jobs.", paths, bucketSize, bucketCost, buckets);
+      }
+    }
+  }
+
+  // The include and exclude patterns for the pages expanded from a root, compiled once per request.
+  private static final class PathFilter {
+
+    private final List<Pattern> includes;
+    private final List<Pattern> excludes;
+
+    private PathFilter(String[] includes, String[] excludes) {
+      this.includes = compile(includes);
+      this.excludes = compile(excludes);
+    }
+
+    private boolean accepts(String path) {
+      boolean included = includes.isEmpty() || includes.stream().anyMatch(p -> p.matcher(path).matches());
+      return included && excludes.stream().noneMatch(p -> p.matcher(path).matches());
+    }
+
+    private static List<Pattern> compile(String[] patterns) {
+      List<Pattern> compiled = new ArrayList<>();
+      if (patterns != null) {
+        for (String pattern : patterns) {
+          compiled.add(Pattern.compile(pattern));
+        }
+      }
+      return compiled;
+    }
+  }
+
+  // Carries repository errors out of the page visitor.
+  private static final class ExpansionException extends RuntimeException {
+
+    private ExpansionException(RepositoryException cause) {
+      super(cause);
+    }
+
+    @Override
+    public synchronized RepositoryException getCause() {
+      return (RepositoryException) super.getCause();
+    }
+  }
+
+  @Activate
+  @Modified
+  @SuppressWarnings("unused")
+  protected void activate(Config config) throws ConfigurationException {
+    if (config.bucket_size() < 1) {
+      throw new ConfigurationException("bucket.size", "Bucket size must be at least one path.");
+    }
+    if (config.bucket_cost() > MAX_ESTIMATE_NODES) {
+      throw new ConfigurationException("bucket.cost", "Bucket cost must be at most " + MAX_ESTIMATE_NODES + " nodes.");
+    }
+    this.bucketSize = config.bucket_size();
+    this.bucketCost = config.bucket_cost();
+  }
+
   private void writeResponse(SlingHttpServletResponse response, int code, ResponseData responseData) throws IOException {
     response.setStatus(code);
     response.setContentType("application/json");
-    new ObjectMapper().writeValue(response.getOutputStream(), responseData);
+    MAPPER.writeValue(response.getOutputStream(), responseData);
   }
 
   @Getter
@@ -280,6 +497,9 @@ public class ScheduleConversionJobServlet extends SlingAllMethodsServlet {
   static final class RequestData {
     private String name;
     private String[] paths;
+    private String root;
+    private String[] includes;
+    private String[] excludes;
     private String[] templateRules;
     private String[] componentRules;
     private String[] policyRules;
@@ -299,4 +519,22 @@ public class ScheduleConversionJobServlet extends SlingAllMethodsServlet {
     private String job;
   }
 
+  @ObjectClassDefinition(
+      name = "AEM Modernize Tools - Schedule Conversion Job Servlet",
+      description = "Schedules conversion jobs, splitting their paths into buckets that are each processed by one job."
+  )
+  @interface Config {
+    @AttributeDefinition(
+        name = "Bucket Size",
+        description = "Maximum number of paths in a bucket."
+    )
+    int bucket_size() default MAX_PROCESS_PATHS;
+
+    @AttributeDefinition(
+        name = "Bucket Cost",
+        description = "Maximum estimated cost of a bucket, measured as the number of content nodes of its paths, at most " + MAX_ESTIMATE_NODES + ". A path that reaches it is placed in a bucket of its own. Zero or less splits by path count only."
+    )
+    long bucket_cost() default MAX_PROCESS_COST;
+  }
+
 }
@@ -0,0 +1,306 @@
+package com.adobe.aem.modernize.servlet;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2021 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.security.AccessControlManager;
+import javax.jcr.security.Privilege;
+import javax.servlet.Servlet;
+
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.resource.AbstractResourceVisitor;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.servlets.SlingAllMethodsServlet;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
+
+import com.adobe.aem.modernize.job.SiteScanJobExecutor;
+import com.adobe.aem.modernize.model.ConversionJob;
+import com.day.cq.wcm.api.NameConstants;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.jetbrains.annotations.NotNull;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static com.adobe.aem.modernize.job.SiteScanJobExecutor.*;
+import static javax.servlet.http.HttpServletResponse.*;
+import static org.apache.sling.api.servlets.ServletResolverConstants.*;
+
+/**
+ * Starts a site scan ({@code POST}), or reads the results of the scan covering a path ({@code GET}).
+ * <p>
+ * Results are only returned for a completed scan with the same {@code reprocess} and {@code includeSuperTypes} options,
+ * and only for pages the user can read. The scan's {@code finished} time is returned, so that callers can ignore old
+ * scans. A new scan is started unless a scan job of the root is queued or running.
+ */
+@Component(
+    service = { Servlet.class },
+    property = {
+        SLING_SERVLET_RESOURCE_TYPES + "=aem-modernize/content/job/create",
+        SLING_SERVLET_METHODS + "=GET",
+        SLING_SERVLET_METHODS + "=POST",
+        SLING_SERVLET_EXTENSIONS + "=json",
+        SLING_SERVLET_SELECTORS + "=scan"
+    }
+)
+public class SiteScanServlet extends SlingAllMethodsServlet {
+
+  private static final Logger logger = LoggerFactory.getLogger(SiteScanServlet.class);
+
+  private static final String PARAM_PATH = "path";
+  private static final String STATUS_NONE = "NONE";
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  @Reference
+  private JobManager jobManager;
+
+  @Override
+  protected void doPost(@NotNull SlingHttpServletRequest request, @NotNull SlingHttpServletResponse response) throws IOException {
+    ResponseData data = new ResponseData();
+    String root = StringUtils.isBlank(request.getParameter(PN_ROOT)) ? null : ResourceUtil.normalize(request.getParameter(PN_ROOT));
+    if (!isScanRoot(root)) {
+      data.setMessage(String.format("Scan root must be a path below %s.", CONTENT_LOCATION));
+      writeResponse(response, SC_BAD_REQUEST, data);
+      return;
+    }
+    ResourceResolver rr = request.getResourceResolver();
+    if (rr.getResource(root) == null) {
+      data.setMessage("Scan root does not exist.");
+      writeResponse(response, SC_BAD_REQUEST, data);
+      return;
+    }
+    boolean reprocess = BooleanUtils.toBoolean(request.getParameter(PN_REPROCESS));
+    boolean includeSuperTypes = BooleanUtils.toBoolean(request.getParameter(PN_INCLUDE_SUPER_TYPES));
+
+    // The scan's status is not used, it stays active if the instance stops while scanning.
+    Job running = findScanJob(root, reprocess, includeSuperTypes);
+    if (running != null) {
+      data.setSuccess(true);
+      data.setMessage("Scan is already running.");
+      data.setStatus(running.getJobState() == Job.JobState.ACTIVE ? ConversionJob.Status.ACTIVE.name() : ConversionJob.Status.WAITING.name());
+      writeResponse(response, SC_OK, data);
+      return;
+    }
+
+    Map<String, Object> props = new HashMap<>();
+    props.put(PN_ROOT, root);
+    props.put(PN_REPROCESS, reprocess);
+    props.put(PN_INCLUDE_SUPER_TYPES, includeSuperTypes);
+    if (jobManager.addJob(JOB_TOPIC, props) == null) {
+      logger.error("Unable to create job for topic: {}", JOB_TOPIC);
+      data.setMessage("Unable to schedule the scan.");
+      writeResponse(response, SC_INTERNAL_SERVER_ERROR, data);
+      return;
+    }
+    data.setSuccess(true);
+    data.setMessage("Successfully scheduled scan.");
+    data.setStatus(ConversionJob.Status.WAITING.name());
+    writeResponse(response, SC_OK, data);
+  }
+
+  @Override
+  protected void doGet(@NotNull SlingHttpServletRequest request, @NotNull SlingHttpServletResponse response) throws IOException {
+    ResponseData data = new ResponseData();
+    String path = request.getParameter(PARAM_PATH);
+    if (StringUtils.isBlank(path) || !PathUtils.isAbsolute(path)) {
+      data.setMessage("No path specified.");
+      writeResponse(response, SC_BAD_REQUEST, data);
+      return;
+    }
+    boolean reprocess = BooleanUtils.toBoolean(request.getParameter(PN_REPROCESS));
+    boolean includeSuperTypes = BooleanUtils.toBoolean(request.getParameter(PN_INCLUDE_SUPER_TYPES));
+
+    ResourceResolver rr = request.getResourceResolver();
+    Resource scan = findScan(rr, path, reprocess, includeSuperTypes);
+    if (scan == null) {
+      data.setMessage("No scan found for path.");
+      data.setStatus(STATUS_NONE);
+      writeResponse(response, SC_NOT_FOUND, data);
+      return;
+    }
+    ValueMap vm = scan.getValueMap();
+    data.setStatus(vm.get(PN_STATUS, ConversionJob.Status.UNKNOWN.name()));
+    Calendar finished = vm.get(PN_FINISHED, Calendar.class);
+    data.setFinished(finished == null ? null : finished.getTimeInMillis());
+    data.setSuccess(true);
+    if (!ConversionJob.Status.SUCCESS.name().equals(data.getStatus())) {
+      data.setMessage("Scan has not completed.");
+      writeResponse(response, SC_OK, data);
+      return;
+    }
+
+    Map<String, RuleInfo> rules = new HashMap<>();
+    String[] ids = vm.get(PN_RULE_IDS, new String[] {});
+    String[] titles = vm.get(PN_RULE_TITLES, new String[] {});
+    for (int i = 0; i < ids.length && i < titles.length; i++) {
+      rules.put(ids[i], new RuleInfo(ids[i], titles[i]));
+    }
+    try {
+      data.setPages(listPages(rr, scan, path, rules));
+      data.setMessage("Success");
+      writeResponse(response, SC_OK, data);
+    } catch (RepositoryException e) {
+      logger.error("Unable to read the scan of [{}].", path, e);
+      data.setSuccess(false);
+      data.setMessage("Unable to read the scan, check logs for details.");
+      writeResponse(response, SC_INTERNAL_SERVER_ERROR, data);
+    }
+  }
+
+  // Find a queued or running scan job of the root with the same options.
+  private Job findScanJob(String root, boolean reprocess, boolean includeSuperTypes) {
+    Collection<Job> jobs = jobManager.findJobs(JobManager.QueryType.ALL, JOB_TOPIC, -1, Collections.singletonMap(PN_ROOT, root));
+    for (Job job : jobs) {
+      if (job.getProperty(PN_REPROCESS, false) == reprocess && job.getProperty(PN_INCLUDE_SUPER_TYPES, false) == includeSuperTypes) {
+        return job;
+      }
+    }
+    return null;
+  }
+
+  // Find the nearest scan of the path or one of its ancestors.
+  private Resource findScan(ResourceResolver rr, String path, boolean reprocess, boolean includeSuperTypes) {
+    for (String p = path; !PathUtils.denotesRoot(p); p = PathUtils.getParentPath(p)) {
+      Resource scan = rr.getResource(getScanPath(p));
+      if (scan != null && matches(scan.getValueMap(), reprocess, includeSuperTypes)) {
+        return scan;
+      }
+    }
+    return null;
+  }
+
+  private static boolean matches(ValueMap vm, boolean reprocess, boolean includeSuperTypes) {
+    return vm.get(PN_REPROCESS, false) == reprocess && vm.get(PN_INCLUDE_SUPER_TYPES, false) == includeSuperTypes;
+  }
+
+  // List the entries of the pages at or below the path.
+  private List<PageData> listPages(ResourceResolver rr, Resource scan, String path, Map<String, RuleInfo> rules) throws RepositoryException {
+    List<PageData> pages = new ArrayList<>();
+    Resource start = rr.getResource(scan.getPath() + path);
+    if (start == null) {
+      return pages;
+    }
+    AccessControlManager acm = rr.adaptTo(Session.class).getAccessControlManager();
+    Privilege[] privs = new Privilege[] { acm.privilegeFromName(Privilege.JCR_WRITE) };
+    List<ValueMap> entries = new ArrayList<>();
+    new AbstractResourceVisitor() {
+      @Override
+      protected void visit(@NotNull Resource resource) {
+        if (resource.getValueMap().containsKey(PN_PATH)) {
+          entries.add(resource.getValueMap());
+        }
+      }
+    }.accept(start);
+
+    for (ValueMap entry : entries) {
+      String pagePath = entry.get(PN_PATH, String.class);
+      if (rr.getResource(pagePath) == null) {
+        continue;
+      }
+      PageData page = new PageData();
+      page.setPath(pagePath);
+      page.setTitle(entry.get(NameConstants.PN_TITLE, ""));
+      page.setDesignPath(entry.get(NameConstants.PN_DESIGN_PATH, ""));
+      page.setHasPermission(hasPrivileges(acm, pagePath, privs));
+      page.setHasDesignPermission(StringUtils.isBlank(page.getDesignPath()) || hasPrivileges(acm, page.getDesignPath(), privs));
+      page.setTemplateRules(toRules(entry.get(ConversionJob.PN_TEMPLATE_RULES, new String[] {}), rules));
+      page.setComponentRules(toRules(entry.get(ConversionJob.PN_COMPONENT_RULES, new String[] {}), rules));
+      page.setComponentPaths(entry.get(PN_COMPONENT_PATHS, new String[] {}));
+      page.setPolicyRules(toRules(entry.get(ConversionJob.PN_POLICY_RULES, new String[] {}), rules));
+      page.setPolicyPaths(entry.get(PN_POLICY_PATHS, new String[] {}));
+      pages.add(page);
+    }
+    return pages;
+  }
+
+  private static boolean hasPrivileges(AccessControlManager acm, String path, Privilege[] privs) {
+    try {
+      return acm.hasPrivileges(path, privs);
+    } catch (RepositoryException e) {
+      return false;
+    }
+  }
+
+  private static List<RuleInfo> toRules(String[] ids, Map<String, RuleInfo> rules) {
+    List<RuleInfo> infos = new ArrayList<>();
+    for (String id : ids) {
+      RuleInfo info = rules.get(id);
+      if (info != null) {
+        infos.add(info);
+      }
+    }
+    return infos;
+  }
+
+  private void writeResponse(SlingHttpServletResponse response, int code, ResponseData data) throws IOException {
+    response.setStatus(code);
+    response.setContentType("application/json");
+    MAPPER.writeValue(response.getWriter(), data);
+  }
+
+  @Getter
+  @Setter
+  @NoArgsConstructor
+  static final class ResponseData {
+    private boolean success;
+    private String message;
+    private String status;
+    private Long finished;
+    private List<PageData> pages = Collections.emptyList();
+  }
+
+  @Getter
+  @Setter
+  @NoArgsConstructor
+  static final class PageData {
+    private String path;
+    private String title;
+    private String designPath;
+    private boolean hasPermission;
+    private boolean hasDesignPermission;
+    private List<RuleInfo> templateRules;
+    private List<RuleInfo> componentRules;
+    private String[] componentPaths;
+    private List<RuleInfo> policyRules;
+    private String[] policyPaths;
+  }
+}
@@ -25,17 +25,23 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.jcr.resource.api.JcrResourceConstants;
 
 import com.adobe.aem.modernize.RewriteException;
 import com.adobe.aem.modernize.rule.RewriteRule;
 import com.adobe.aem.modernize.rule.impl.AbstractRewriteRuleService;
 import com.adobe.aem.modernize.structure.StructureRewriteRule;
 import com.adobe.aem.modernize.structure.StructureRewriteRuleService;
+import com.adobe.aem.modernize.structure.rule.PageRewriteRule;
+import com.day.cq.wcm.api.NameConstants;
 import com.day.cq.wcm.api.Page;
 import org.jetbrains.annotations.NotNull;
 import org.osgi.service.component.annotations.Component;
@@ -57,6 +63,7 @@ import org.slf4j.LoggerFactory;
             policy = ReferencePolicy.DYNAMIC,
             policyOption = ReferencePolicyOption.GREEDY,
             bind = "bindRule",
+            updated = "updatedRule",
             unbind = "unbindRule"
         )
     }
@@ -65,12 +72,25 @@ public class StructureRewriteRuleServiceImpl extends AbstractRewriteRuleService<
 
   private final Logger logger = LoggerFactory.getLogger(StructureRewriteRuleServiceImpl.class);
 
+  // Component properties of bound rules, by id, from which the template index is built.
+  private final Map<String, Map<String, Object>> ruleProperties = new ConcurrentHashMap<>();
+  private volatile TemplateRuleIndex index = TemplateRuleIndex.EMPTY;
+
+  @Reference
+  private ResourceResolverFactory resourceResolverFactory;
+
   @NotNull
   @Override
   protected List<String> getSearchPaths() {
     return Collections.emptyList();
   }
 
+  @NotNull
+  @Override
+  protected ResourceResolverFactory getResourceResolverFactory() {
+    return resourceResolverFactory;
+  }
+
   
   @Override
   @Deprecated(since = "2.1.0")
@@ -93,11 +113,19 @@ public class StructureRewriteRuleServiceImpl extends AbstractRewriteRuleService<
     ResourceResolver rr = pageContent.getResourceResolver();
     List<RewriteRule> rewrites = create(rr, rules);
 
+    // Indexed rules are selected by the page's template, type and path; only the others need to check the page.
+    TemplateRuleIndex index = this.index;
+    ValueMap vm = pageContent.getValueMap();
+    Set<String> candidates = index.find(vm.get(NameConstants.PN_TEMPLATE, String.class),
+        vm.get(JcrResourceConstants.SLING_RESOURCE_TYPE_PROPERTY, String.class), pageContent.getPath());
+
     Node node = pageContent.adaptTo(Node.class);
     boolean applied = false;
     try {
       for (RewriteRule rule : rewrites) {
-        if (rule.matches(node)) {
+        String id = rule.getId();
+        boolean matches = id != null && index.isIndexed(id) ? candidates.contains(id) : rule.matches(node);
+        if (matches) {
           rule.applyTo(node, new HashSet<>());
           applied = true;
         }
@@ -112,11 +140,38 @@ public class StructureRewriteRuleServiceImpl extends AbstractRewriteRuleService<
   public void bindRule(StructureRewriteRule rule, Map<String, Object> properties) {
     rules.bind(rule, properties);
     ruleMap.put(rule.getId(), rule);
+    indexRule(rule, properties);
+  }
+
+  @SuppressWarnings("unused")
+  public void updatedRule(StructureRewriteRule rule, Map<String, Object> properties) {
+    indexRule(rule, properties);
   }
 
   @SuppressWarnings("unused")
   public void unbindRule(StructureRewriteRule rule, Map<String, Object> properties) {
     rules.unbind(rule, properties);
     ruleMap.remove(rule.getId());
+    String id = rule.getId();
+    if (id != null && ruleProperties.remove(id) != null) {
+      reindex();
+    }
+  }
+
+  /*
+    Only page rewrite rules are indexed, as their matching is exactly what the index checks. Other rules may have further
+    conditions, so they always match the page themselves.
+   */
+  private void indexRule(StructureRewriteRule rule, Map<String, Object> properties) {
+    String id = rule.getId();
+    if (id == null || !(rule instanceof PageRewriteRule)) {
+      return;
+    }
+    ruleProperties.put(id, properties);
+    reindex();
+  }
+
+  private synchronized void reindex() {
+    index = new TemplateRuleIndex(ruleProperties);
   }
 }
@@ -0,0 +1,159 @@
+package com.adobe.aem.modernize.structure.impl;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2021 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/*
+  Index of page rewrite rules by the static template and resource type they match, with their allowed paths in a path
+  trie. Rules are indexed by their component properties; rules without a static template or resource type property are
+  not indexed and must be matched by the rule itself. Instances are immutable.
+ */
+final class TemplateRuleIndex {
+
+  static final String PN_STATIC_TEMPLATE = "static.template";
+  static final String PN_SLING_RESOURCE_TYPE = "sling.resourceType";
+  static final String PN_ALLOWED_PATHS = "allowed.paths";
+
+  static final TemplateRuleIndex EMPTY = new TemplateRuleIndex(Collections.emptyMap());
+
+  private final Set<String> indexed = new HashSet<>();
+  private final Map<String, PathNode> tries = new HashMap<>();
+
+  TemplateRuleIndex(@NotNull Map<String, Map<String, Object>> properties) {
+    for (Map.Entry<String, Map<String, Object>> entry : properties.entrySet()) {
+      Map<String, Object> props = entry.getValue();
+      String template = toString(props.get(PN_STATIC_TEMPLATE));
+      String resourceType = toString(props.get(PN_SLING_RESOURCE_TYPE));
+      if (StringUtils.isBlank(template) || StringUtils.isBlank(resourceType)) {
+        continue;
+      }
+      String id = entry.getKey();
+      indexed.add(id);
+      PathNode root = tries.computeIfAbsent(key(template, resourceType), k -> new PathNode());
+      List<String> allowed = toList(props.get(PN_ALLOWED_PATHS));
+      if (allowed.isEmpty()) {
+        root.any.add(id);
+      }
+      for (String path : allowed) {
+        root.add(path, id);
+      }
+    }
+  }
+
+  /*
+    Whether the rule with the id is selected by this index, rather than by its own matching.
+   */
+  boolean isIndexed(@NotNull String id) {
+    return indexed.contains(id);
+  }
+
+  /*
+    Ids of the indexed rules for a page with the template and resource type, whose allowed paths include the path.
+   */
+  @NotNull
+  Set<String> find(@Nullable String template, @Nullable String resourceType, @NotNull String path) {
+    if (template == null || resourceType == null) {
+      return Collections.emptySet();
+    }
+    PathNode root = tries.get(key(template, resourceType));
+    if (root == null) {
+      return Collections.emptySet();
+    }
+    Set<String> ids = new HashSet<>(root.any);
+    if (path.startsWith("/")) {
+      root.find(path.substring(1).split("/", -1), ids);
+    }
+    return ids;
+  }
+
+  private static String key(String template, String resourceType) {
+    return template + "\n" + resourceType;
+  }
+
+  private static String toString(Object value) {
+    if (value instanceof String[]) {
+      String[] values = (String[]) value;
+      return values.length == 0 ? null : values[0];
+    }
+    return value == null ? null : value.toString();
+  }
+
+  private static List<String> toList(Object value) {
+    List<String> list = new ArrayList<>();
+    if (value instanceof String[]) {
+      Collections.addAll(list, (String[]) value);
+    } else if (value != null) {
+      list.add(value.toString());
+    }
+    return list;
+  }
+
+  /*
+    Allowed paths are string prefixes of the page path, so the last segment of an allowed path is kept as a prefix of
+    the page's segment at that depth, rather than as a child.
+   */
+  private static final class PathNode {
+
+    private final Set<String> any = new HashSet<>();
+    private final Map<String, PathNode> children = new HashMap<>();
+    private final Map<String, Set<String>> prefixes = new HashMap<>();
+
+    void add(String path, String id) {
+      if (!path.startsWith("/")) {
+        // Relative paths are never a prefix of a page path, unless empty.
+        if (path.isEmpty()) {
+          any.add(id);
+        }
+        return;
+      }
+      String[] segments = path.substring(1).split("/", -1);
+      PathNode node = this;
+      for (int i = 0; i < segments.length - 1; i++) {
+        node = node.children.computeIfAbsent(segments[i], k -> new PathNode());
+      }
+      node.prefixes.computeIfAbsent(segments[segments.length - 1], k -> new HashSet<>()).add(id);
+    }
+
+    void find(String[] segments, Set<String> ids) {
+      PathNode node = this;
+      for (int i = 0; node != null && i < segments.length; i++) {
+        String segment = segments[i];
+        for (Map.Entry<String, Set<String>> prefix : node.prefixes.entrySet()) {
+          if (segment.startsWith(prefix.getKey())) {
+            ids.addAll(prefix.getValue());
+          }
+        }
+        node = node.children.get(segment);
+      }
+    }
+  }
+}
@@ -28,6 +28,7 @@ import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
 import org.apache.sling.event.jobs.consumer.JobExecutionContext;
 import org.apache.sling.event.jobs.consumer.JobExecutor;
 
@@ -61,6 +62,9 @@ public class PageStructureJobExecutor extends AbstractConversionJobExecutor {
   @Reference
   private ResourceResolverFactory resourceResolverFactory;
 
+  @Reference
+  private JobManager jobManager;
+
   @Override
   protected void doProcess(@NotNull Job job, @NotNull JobExecutionContext context, @NotNull ConversionJobBucket bucket) {
     ConversionJob.PageHandling pageHandling = getPageHandling(bucket);
@@ -69,14 +73,16 @@ public class PageStructureJobExecutor extends AbstractConversionJobExecutor {
     ResourceResolver rr = bucket.getResource().getResourceResolver();
     PageManager pm = rr.adaptTo(PageManager.class);
 
-    List<String> paths = bucket.getPaths();
+    List<String> paths = getPendingPaths(bucket);
     context.initProgress(paths.size(), -1);
 
+    PeriodicCommit commit = periodicCommit(bucket);
     for (String path : paths) {
       Page page = pm.getPage(path);
       if (page == null) {
         bucket.getNotFound().add(path);
         context.incrementProgressCount(1);
+        commit.processed(path);
         continue;
       }
 
@@ -108,13 +114,25 @@ public class PageStructureJobExecutor extends AbstractConversionJobExecutor {
         bucket.getFailed().add(path);
       }
       context.incrementProgressCount(1);
+      commit.processed(path);
     }
   }
 
+  @NotNull
+  @Override
+  protected Set<String> getLeasePaths(@NotNull ConversionJobBucket bucket) {
+    return getPageLeasePaths(bucket);
+  }
+
   @Override
   protected ResourceResolverFactory getResourceResolverFactory() {
     return resourceResolverFactory;
   }
 
+  @Override
+  protected JobManager getJobManager() {
+    return jobManager;
+  }
+
 
 }
@@ -27,6 +27,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -47,6 +48,8 @@ import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.jcr.resource.api.JcrResourceConstants;
 
 import com.adobe.aem.modernize.RewriteException;
+import com.adobe.aem.modernize.impl.ChildOrder;
+import com.adobe.aem.modernize.impl.EditableTemplateCache;
 import com.adobe.aem.modernize.structure.StructureRewriteRule;
 import com.day.cq.wcm.api.Page;
 import org.jetbrains.annotations.NotNull;
@@ -57,6 +60,7 @@ import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.ConfigurationPolicy;
 import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.Designate;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
@@ -93,6 +97,10 @@ public class PageRewriteRule implements StructureRewriteRule {
   private List<String> componentsToRemove;
   private List<String> componentsToIgnore;
   private String slingResourceType;
+  private MovePlan plan;
+
+  @Reference
+  private EditableTemplateCache editableTemplates;
 
   @Override
   public String getTitle() {
@@ -149,14 +157,14 @@ public class PageRewriteRule implements StructureRewriteRule {
     }
 
     // Remove specified node & Build node name list for processing
-    List<String> names = new ArrayList<>();
+    Set<String> names = new LinkedHashSet<>();
     NodeIterator children = pageContent.getNodes();
     while (children.hasNext()) {
       Node child = children.nextNode();
       String name = child.getName();
-      if (componentsToRemove.contains(name)) {
+      if (plan.remove.contains(name)) {
         child.remove();
-      } else if (!componentsToIgnore.contains(name)) {
+      } else if (!plan.ignore.contains(name)) {
         names.add(name);
       }
     }
@@ -183,116 +191,94 @@ public class PageRewriteRule implements StructureRewriteRule {
 
   private String getResourceType(Session session) throws RewriteException, RepositoryException {
 
-    String path = PathUtils.concat(editableTemplate, "structure", NN_CONTENT);
-    if (!session.nodeExists(path)) {
+    EditableTemplateCache.Template template = editableTemplates.get(session, editableTemplate);
+    if (!template.exists()) {
       throw new RewriteException(String.format("Unable to find Editable Template: {}", editableTemplate));
     }
-    Node structure = session.getNode(path);
-    if (!structure.hasProperty(JcrResourceConstants.SLING_RESOURCE_TYPE_PROPERTY)) {
+    String resourceType = template.getStructureResourceType();
+    if (resourceType == null) {
+      String path = PathUtils.concat(editableTemplate, EditableTemplateCache.NN_STRUCTURE, NN_CONTENT);
       throw new RewriteException(String.format("Unable to find sling:resourceType on template structure: {}", path));
     }
-    return structure.getProperty(JcrResourceConstants.SLING_RESOURCE_TYPE_PROPERTY).getString();
+    return resourceType;
   }
 
   // This will list any intermediate nodes as needed by the order or rename logic.
-  private void moveRenamedNodes(final Node source, final Node target, final List<String> nodeNames) throws RepositoryException {
+  private void moveRenamedNodes(final Node source, final Node target, final Set<String> nodeNames) throws RepositoryException {
     Session session = source.getSession();
 
-    List<String> processed = new ArrayList<>();
+    Set<String> processed = new HashSet<>();
 
     // Create intermediate nodes for renamed ones;
-    for (String value : componentRenamed.inverseBidiMap().keySet()) {
+    for (Rename rename : plan.renames) {
 
       // Possible that entries were intermediately processed by loop.
-      if (processed.contains(value)) {
+      if (processed.contains(rename.target)) {
         continue;
       }
-      int idx = value.lastIndexOf('/');
-      if (idx > 0) {
-        String[] tokens = value.substring(0, idx).split("/");
-        Node parent = target;
-        String relPath = "";
-        for (String t : tokens) {
-
-          relPath = PathUtils.concat(relPath, t);
-          if (source.hasNode(t)) {
-            // If the mapping has an intermediate node, and that node exists on source, move it to destination.
-            session.move(PathUtils.concat(source.getPath(), t), PathUtils.concat(parent.getPath(), t));
-            parent = target.getNode(t);
-            nodeNames.remove(t);
-          } else if (componentRenamed.containsValue(relPath) && !processed.contains(relPath)) {
-            // If the mapping has an intermediate node which is mapped by rename, apply the intermediate rename now, not later.
-            String sourceName = componentRenamed.inverseBidiMap().get(relPath);
-            session.move(PathUtils.concat(source.getPath(), sourceName), PathUtils.concat(parent.getPath(), t));
-            parent = parent.getNode(t);
-            nodeNames.remove(sourceName);
-            processed.add(relPath);
-          } else {
-            // Create the node if it doesn't exist, otherwise continue walking the tree.
-            if (parent.hasNode(t)) {
-              parent = parent.getNode(t);
-            } else {
-              parent = parent.addNode(t, JcrConstants.NT_UNSTRUCTURED);
-              parent.setProperty(JcrResourceConstants.SLING_RESOURCE_TYPE_PROPERTY, containerResourceType);
-            }
-          }
+      Node parent = target;
+      for (int i = 0; i < rename.tokens.length; i++) {
+        String t = rename.tokens[i];
+        String relPath = rename.relPaths[i];
+        String sourceName = plan.renamedFrom.get(relPath);
+        if (source.hasNode(t)) {
+          // If the mapping has an intermediate node, and that node exists on source, move it to destination.
+          session.move(PathUtils.concat(source.getPath(), t), PathUtils.concat(parent.getPath(), t));
+          parent = parent.getNode(t);
+          nodeNames.remove(t);
+        } else if (sourceName != null && !processed.contains(relPath)) {
+          // If the mapping has an intermediate node which is mapped by rename, apply the intermediate rename now, not later.
+          session.move(PathUtils.concat(source.getPath(), sourceName), PathUtils.concat(parent.getPath(), t));
+          parent = parent.getNode(t);
+          nodeNames.remove(sourceName);
+          processed.add(relPath);
+        } else {
+          parent = getOrCreateContainer(parent, t);
         }
       }
       // All intermediate nodes were created or renames moved to.
-      String key =  componentRenamed.inverseBidiMap().get(value);
-      session.move(PathUtils.concat(source.getPath(), key), PathUtils.concat(target.getPath(), value));
-      nodeNames.remove(key);
-      processed.add(value);
+      session.move(PathUtils.concat(source.getPath(), rename.source), PathUtils.concat(target.getPath(), rename.target));
+      nodeNames.remove(rename.source);
+      processed.add(rename.target);
     }
   }
 
-  private void moveRemainingNodes(final Node source, final Node target, final List<String> names) throws RepositoryException {
+  private void moveRemainingNodes(final Node source, final Node target, final Set<String> names) throws RepositoryException {
     Session session = source.getSession();
 
-    Iterator<String> iterator = names.iterator();
-    while (iterator.hasNext()) {
-      String name = iterator.next();
-      boolean found = false;
-      for (Map.Entry<String, List<String>> entry : componentOrdering.entrySet()) {
-        if (entry.getValue().contains(name) && !entry.getKey().equals(NN_ROOT_CONTAINER)) {
-          String path = entry.getKey().replace(NN_ROOT_CONTAINER + "/", "");
-          String[] tokens = path.split("/");
-          Node parent = target;
-          for (String t : tokens) {
-            if (parent.hasNode(t)) {
-              parent = parent.getNode(t);
-            } else {
-              parent = parent.addNode(t, JcrConstants.NT_UNSTRUCTURED);
-              parent.setProperty(JcrResourceConstants.SLING_RESOURCE_TYPE_PROPERTY, containerResourceType);
-            }
-          }
-          session.move(PathUtils.concat(source.getPath(), name), PathUtils.concat(parent.getPath(), name));
-          found = true;
-        }
-      }
-      if (!found) {
+    for (String name : names) {
+      List<String[]> containers = plan.placements.get(name);
+      if (containers == null) {
         session.move(PathUtils.concat(source.getPath(), name), PathUtils.concat(target.getPath(), name));
+        continue;
+      }
+      for (String[] tokens : containers) {
+        Node parent = target;
+        for (String t : tokens) {
+          parent = getOrCreateContainer(parent, t);
+        }
+        session.move(PathUtils.concat(source.getPath(), name), PathUtils.concat(parent.getPath(), name));
       }
-      iterator.remove();
     }
+    names.clear();
+  }
+
+  // Create the node if it doesn't exist, otherwise continue walking the tree.
+  private Node getOrCreateContainer(Node parent, String name) throws RepositoryException {
+    if (parent.hasNode(name)) {
+      return parent.getNode(name);
+    }
+    Node container = parent.addNode(name, JcrConstants.NT_UNSTRUCTURED);
+    container.setProperty(JcrResourceConstants.SLING_RESOURCE_TYPE_PROPERTY, containerResourceType);
+    return container;
   }
 
   private void orderNodes(Node pageContent) throws RepositoryException {
     for (Map.Entry<String, List<String>> entry : componentOrdering.entrySet()) {
       // Find the list of all the children in this container
       Node parent = pageContent.getNode(entry.getKey());
-      for (String name : entry.getValue()) {
-        parent.orderBefore(name, null);
-      }
-
-      NodeIterator children = parent.getNodes();
-      while (children.hasNext()) {
-        String name = children.nextNode().getName();
-        if (entry.getValue().contains(name)) {
-          continue;
-        }
-        parent.orderBefore(name, null);
-      }
+      // Listed children first, the rest follow in their current order.
+      ChildOrder.reorder(parent, entry.getValue());
     }
   }
 
@@ -404,7 +390,57 @@ public class PageRewriteRule implements StructureRewriteRule {
         }
       }
     }
+    plan = new MovePlan(componentOrdering, componentRenamed, componentsToRemove, componentsToIgnore);
+  }
+
+  private static final class Rename {
+    private final String source;
+    private final String target;
+    private final String[] tokens;
+    private final String[] relPaths;
+
+    private Rename(String source, String target) {
+      this.source = source;
+      this.target = target;
+      int idx = target.lastIndexOf('/');
+      this.tokens = idx > 0 ? target.substring(0, idx).split("/") : new String[0];
+      this.relPaths = new String[tokens.length];
+      String relPath = "";
+      for (int i = 0; i < tokens.length; i++) {
+        relPath = PathUtils.concat(relPath, tokens[i]);
+        relPaths[i] = relPath;
+      }
+    }
+  }
 
+  /*
+    The configuration compiled for applying it to pages: renames with their intermediate containers split, the
+    containers for each ordered component, and the removed and ignored names as sets.
+   */
+  private static final class MovePlan {
+    private final Set<String> remove;
+    private final Set<String> ignore;
+    private final List<Rename> renames = new ArrayList<>();
+    private final Map<String, String> renamedFrom = new HashMap<>();
+    private final Map<String, List<String[]>> placements = new HashMap<>();
+
+    private MovePlan(Map<String, List<String>> ordering, BidiMap<String, String> renamed, List<String> remove, List<String> ignore) {
+      this.remove = new HashSet<>(remove);
+      this.ignore = new HashSet<>(ignore);
+      for (Map.Entry<String, String> entry : renamed.entrySet()) {
+        renames.add(new Rename(entry.getKey(), entry.getValue()));
+        renamedFrom.put(entry.getValue(), entry.getKey());
+      }
+      for (Map.Entry<String, List<String>> entry : ordering.entrySet()) {
+        if (entry.getKey().equals(NN_ROOT_CONTAINER)) {
+          continue;
+        }
+        String[] tokens = entry.getKey().replace(NN_ROOT_CONTAINER + "/", "").split("/");
+        for (String name : new LinkedHashSet<>(entry.getValue())) {
+          placements.computeIfAbsent(name, k -> new ArrayList<>()).add(tokens);
+        }
+      }
+    }
   }
 
   @ObjectClassDefinition(
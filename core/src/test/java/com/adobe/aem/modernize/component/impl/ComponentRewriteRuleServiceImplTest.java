@@ -22,6 +22,7 @@ package com.adobe.aem.modernize.component.impl;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -31,6 +32,9 @@ import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 
 import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
 import org.apache.sling.testing.mock.sling.ResourceResolverType;
 import org.apache.sling.testing.mock.sling.junit5.SlingContext;
 import org.apache.sling.testing.mock.sling.junit5.SlingContextExtension;
@@ -40,6 +44,7 @@ import com.adobe.aem.modernize.component.ComponentRewriteRuleService;
 import com.adobe.aem.modernize.rule.RewriteRule;
 import com.adobe.aem.modernize.rule.impl.NodeBasedRewriteRule;
 import mockit.Expectations;
+import mockit.Invocation;
 import mockit.Mock;
 import mockit.MockUp;
 import mockit.Mocked;
@@ -90,6 +95,56 @@ public class ComponentRewriteRuleServiceImplTest {
     context.registerInjectActivateService(componentRewriteRuleService, props);
   }
 
+  @Test
+  public void testRuleCache() {
+    ResourceResolver rr = context.resourceResolver();
+    String path = "/apps/aem-modernize/component/rules/simple";
+    RewriteRule rule = componentRewriteRuleService.getRule(rr, path);
+    assertNotNull(rule, "Rule found");
+    assertSame(rule, componentRewriteRuleService.getRule(rr, path), "Rule cached");
+
+    String unregistered = "/apps/not-registered/component/rules/simple";
+    assertNotSame(componentRewriteRuleService.getRule(rr, unregistered), componentRewriteRuleService.getRule(rr, unregistered), "Rule outside search paths not cached");
+
+    ResourceChangeListener[] listeners = context.getServices(ResourceChangeListener.class, "(resource.paths=" + RULE_PATHS[0] + ")");
+    assertEquals(1, listeners.length, "Listener registered");
+    ResourceChangeListener listener = listeners[0];
+    listener.onChange(Collections.singletonList(new ResourceChange(ResourceChange.ChangeType.CHANGED, "/apps/aem-modernize/component/rules/other", false)));
+    assertSame(rule, componentRewriteRuleService.getRule(rr, path), "Unrelated change keeps rule");
+
+    listener.onChange(Collections.singletonList(new ResourceChange(ResourceChange.ChangeType.CHANGED, path + "/replacement/simple", false)));
+    RewriteRule updated = componentRewriteRuleService.getRule(rr, path);
+    assertNotSame(rule, updated, "Rule change invalidates rule");
+    assertSame(updated, componentRewriteRuleService.getRule(rr, path), "Updated rule cached");
+
+    listener.onChange(Collections.singletonList(new ResourceChange(ResourceChange.ChangeType.REMOVED, "/apps/aem-modernize", false)));
+    assertNotSame(updated, componentRewriteRuleService.getRule(rr, path), "Search path change invalidates rules");
+  }
+
+  @Test
+  public void testRuleChangedWhileCompiling() {
+    ResourceResolver rr = context.resourceResolver();
+    String path = "/apps/aem-modernize/component/rules/simple";
+    ResourceChangeListener listener = context.getServices(ResourceChangeListener.class, "(resource.paths=" + RULE_PATHS[0] + ")")[0];
+    new MockUp<NodeBasedRewriteRule>() {
+      private boolean changed = false;
+
+      @Mock
+      public void $init(Invocation inv, Node node) {
+        if (!changed) {
+          changed = true;
+          listener.onChange(Collections.singletonList(new ResourceChange(ResourceChange.ChangeType.CHANGED, path + "/replacement/simple", false)));
+        }
+        inv.proceed();
+      }
+    };
+    RewriteRule rule = componentRewriteRuleService.getRule(rr, path);
+    assertNotNull(rule, "Rule found");
+    assertNotSame(rule, componentRewriteRuleService.getRule(rr, path), "Rule compiled during change not cached");
+    RewriteRule updated = componentRewriteRuleService.getRule(rr, path);
+    assertSame(updated, componentRewriteRuleService.getRule(rr, path), "Rule compiled after change cached");
+  }
+
   @Test
   public void testShallowApply() throws Exception {
 
@@ -163,4 +218,38 @@ public class ComponentRewriteRuleServiceImplTest {
     assertTrue(called[0], "TreeRewriteProcessor called");
   }
 
+  @Test
+  public void testDeepApplyIncremental() throws Exception {
+    final boolean[] called = { false };
+    Set<String> rules = new HashSet<>(Arrays.asList(
+        "/apps/aem-modernize/component/rules/simple",
+        "/apps/aem-modernize/component/rules/rewriteOptional"
+    ));
+    new MockUp<IncrementalTreeRewriter>() {
+
+      @Mock
+      public Node rewrite(Node root) {
+        called[0] = true;
+        assertNotNull(root);
+        return root;
+      }
+    };
+    new MockUp<ComponentTreeRewriter>() {
+
+      @Mock
+      public Node rewrite(Node root, List<RewriteRule> rules) {
+        fail("Restarting rewriter should not be called");
+        return root;
+      }
+    };
+
+    Map<String, Object> props = new HashMap<>();
+    props.put("search.paths", RULE_PATHS);
+    props.put("incremental.rewrite", true);
+    ComponentRewriteRuleService service = context.registerInjectActivateService(new ComponentRewriteRuleServiceImpl(), props);
+
+    Resource resource = context.resourceResolver().getResource("/content/test/deep/parent");
+    service.apply(resource, rules, true);
+    assertTrue(called[0], "Incremental rewriter called");
+  }
 }
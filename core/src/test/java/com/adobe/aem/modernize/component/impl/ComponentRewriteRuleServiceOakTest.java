@@ -20,11 +20,19 @@ package com.adobe.aem.modernize.component.impl;
  * #L%
  */
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import javax.jcr.RepositoryException;
 
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.testing.mock.sling.ResourceResolverType;
@@ -32,6 +40,11 @@ import org.apache.sling.testing.mock.sling.junit5.SlingContext;
 import org.apache.sling.testing.mock.sling.junit5.SlingContextExtension;
 
 import com.adobe.aem.modernize.component.ComponentRewriteRuleService;
+import com.adobe.aem.modernize.component.ComponentRewriteRuleService.Outcome;
+import com.adobe.aem.modernize.impl.ChildOrder;
+import mockit.Invocation;
+import mockit.Mock;
+import mockit.MockUp;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -187,4 +200,120 @@ public class ComponentRewriteRuleServiceOakTest {
     assertEquals(parentPath + "/rewriteRanking", children.next().getPath(), "Order preserved");
     assertFalse(children.hasNext(), "Children length");
   }
+
+  @Test
+  public void testBatchApply() throws Exception {
+    String parentPath = "/content/test/all/jcr:content";
+    List<Resource> resources = Arrays.asList(
+        context.resourceResolver().getResource(parentPath + "/copyChildren"),
+        context.resourceResolver().getResource(parentPath + "/copyChildrenOrder"),
+        context.resourceResolver().getResource(parentPath + "/mapProperties"),
+        context.resourceResolver().getResource("/content/test/aggregate/singleNode/jcr:content/copyChildrenOrder")
+    );
+    Set<String> rules = new HashSet<>(Arrays.asList("/apps/aem-modernize/component/rules/copyChildren", "/apps/aem-modernize/component/rules/aggregate"));
+    Map<String, Outcome> outcomes = componentRewriteRuleService.apply(resources, rules);
+    context.resourceResolver().commit();
+
+    Iterator<Map.Entry<String, Outcome>> it = outcomes.entrySet().iterator();
+    Map.Entry<String, Outcome> entry = it.next();
+    assertEquals(parentPath + "/copyChildren", entry.getKey(), "Outcome order");
+    assertEquals(Outcome.SUCCESS, entry.getValue(), "Rule applied");
+    entry = it.next();
+    assertEquals(parentPath + "/copyChildrenOrder", entry.getKey(), "Outcome order");
+    assertEquals(Outcome.SUCCESS, entry.getValue(), "Rule applied");
+    entry = it.next();
+    assertEquals(parentPath + "/mapProperties", entry.getKey(), "Outcome order");
+    assertEquals(Outcome.NOT_FOUND, entry.getValue(), "Removed by aggregate");
+    entry = it.next();
+    assertEquals("/content/test/aggregate/singleNode/jcr:content/copyChildrenOrder", entry.getKey(), "Outcome order");
+    assertEquals(Outcome.SUCCESS, entry.getValue(), "Rule applied");
+    assertFalse(it.hasNext(), "Outcome count");
+
+    Resource parent = context.resourceResolver().getResource(parentPath);
+    Iterator<Resource> children = parent.getChildren().iterator();
+    assertEquals(parentPath + "/simple", children.next().getPath(), "Order preserved");
+    assertEquals(parentPath + "/copyChildren", children.next().getPath(), "Order preserved");
+    assertEquals(parentPath + "/copyChildrenOrder", children.next().getPath(), "Order preserved");
+    assertEquals(parentPath + "/rewriteRanking", children.next().getPath(), "Order preserved");
+    assertEquals(parentPath + "/rewriteMapChildren", children.next().getPath(), "Order preserved");
+    assertEquals(parentPath + "/rewriteFinal", children.next().getPath(), "Order preserved");
+    assertEquals(parentPath + "/rewriteFinalOnReplacement", children.next().getPath(), "Order preserved");
+    assertEquals(parentPath + "/rewriteProperties", children.next().getPath(), "Order preserved");
+    assertFalse(children.hasNext(), "Children length");
+  }
+
+  @Test
+  public void testBatchApplyReorderFails() throws Exception {
+    String parentPath = "/content/test/all/jcr:content";
+    new MockUp<ChildOrder>() {
+      @Mock
+      public int reorder(Invocation invocation, Node parent, List<String> desired) throws RepositoryException {
+        if (parentPath.equals(parent.getPath())) {
+          throw new RepositoryException("Reorder failed");
+        }
+        return invocation.proceed();
+      }
+    };
+    List<Resource> resources = Arrays.asList(
+        context.resourceResolver().getResource(parentPath + "/copyChildren"),
+        context.resourceResolver().getResource(parentPath + "/simple")
+    );
+    Set<String> rules = Collections.singleton("/apps/aem-modernize/component/rules/copyChildren");
+    Map<String, Outcome> outcomes = componentRewriteRuleService.apply(resources, rules);
+
+    assertEquals(Outcome.SUCCESS, outcomes.get(parentPath + "/copyChildren"), "Rewritten sibling keeps outcome");
+    assertEquals(Outcome.NOT_FOUND, outcomes.get(parentPath + "/simple"), "Unmatched sibling keeps outcome");
+  }
+
+  @Test
+  public void testDeepApplyDetached() throws Exception {
+    context.load().json("/component/all-content.json", "/content/test/detached");
+    Set<String> rules = new HashSet<>();
+    for (String name : new String[] { "simple", "copyChildren", "mapProperties", "rewriteOptional", "rewriteRanking",
+        "rewriteMapChildren", "rewriteFinal", "rewriteFinalOnReplacement", "rewriteProperties", "aggregate", "parsys", "geoText" }) {
+      rules.add("/apps/aem-modernize/component/rules/" + name);
+    }
+    Map<String, Object> props = new HashMap<>();
+    props.put("search.paths", RULE_PATHS);
+    props.put("detached.rewrite", true);
+    ComponentRewriteRuleService detachedService = context.registerInjectActivateService(new ComponentRewriteRuleServiceImpl(), props);
+
+    componentRewriteRuleService.apply(context.resourceResolver().getResource("/content/test/all/jcr:content"), rules, true);
+    detachedService.apply(context.resourceResolver().getResource("/content/test/detached/jcr:content"), rules, true);
+    context.resourceResolver().commit();
+
+    assertEquals("core/wcm/components/title/v2/title",
+        context.resourceResolver().getResource("/content/test/detached/jcr:content/simple").getResourceType(), "Detached rewrite written");
+    assertTreeEquals(context.resourceResolver().getResource("/content/test/all/jcr:content").adaptTo(Node.class),
+        context.resourceResolver().getResource("/content/test/detached/jcr:content").adaptTo(Node.class));
+  }
+
+  private static void assertTreeEquals(Node expected, Node actual) throws RepositoryException {
+    PropertyIterator properties = expected.getProperties();
+    while (properties.hasNext()) {
+      Property property = properties.nextProperty();
+      if (property.getDefinition().isProtected()) {
+        continue;
+      }
+      assertTrue(actual.hasProperty(property.getName()), "Property exists: " + property.getPath());
+      Property other = actual.getProperty(property.getName());
+      if (property.isMultiple()) {
+        assertArrayEquals(property.getValues(), other.getValues(), "Property values: " + property.getPath());
+      } else {
+        assertEquals(property.getValue(), other.getValue(), "Property value: " + property.getPath());
+      }
+    }
+    assertEquals(expected.getProperties().getSize(), actual.getProperties().getSize(), "Property count: " + expected.getPath());
+
+    NodeIterator expectedChildren = expected.getNodes();
+    NodeIterator actualChildren = actual.getNodes();
+    while (expectedChildren.hasNext()) {
+      assertTrue(actualChildren.hasNext(), "Child count: " + expected.getPath());
+      Node child = expectedChildren.nextNode();
+      Node other = actualChildren.nextNode();
+      assertEquals(child.getName(), other.getName(), "Child order: " + expected.getPath());
+      assertTreeEquals(child, other);
+    }
+    assertFalse(actualChildren.hasNext(), "Child count: " + expected.getPath());
+  }
 }
@@ -36,6 +36,7 @@ import org.apache.sling.testing.mock.sling.junit5.SlingContextExtension;
 
 import com.adobe.aem.modernize.RewriteException;
 import com.adobe.aem.modernize.rule.RewriteRule;
+import com.adobe.aem.modernize.rule.impl.NodeBasedRewriteRule;
 import mockit.Expectations;
 import mockit.Mocked;
 import org.jetbrains.annotations.NotNull;
@@ -72,7 +73,7 @@ public class ComponentTreeRewriterTest {
     ComponentTreeRewriter.rewrite(root, rules);
 
     Session session = root.getSession();
-    assertTrue(session.hasPendingChanges(), "Updates were made");
+    assertFalse(session.hasPendingChanges(), "Nodes not moved");
     session.save();
     Resource updated = context.resourceResolver().getResource("/content/test/ordered");
 
@@ -84,6 +85,29 @@ public class ComponentTreeRewriterTest {
     assertEquals("rewriteMapChildren", children.next().getName(), "Fourth child correct.");
   }
 
+  @Test
+  public void rewritesAggregates() throws Exception {
+    context.load().json("/rewrite/test-content.json", "/content/test");
+    context.load().json("/rewrite/test-aggregate-rules.json", "/apps/test/rules");
+    Node rule = context.resourceResolver().getResource("/apps/test/rules/aggregate").adaptTo(Node.class);
+    List<RewriteRule> rules = new ArrayList<>();
+    rules.add(new NodeBasedRewriteRule(rule));
+
+    Node root = context.resourceResolver().getResource("/content/test/aggregate").adaptTo(Node.class);
+    root.addNode("after", "nt:unstructured");
+    ComponentTreeRewriter.rewrite(root, rules);
+    root.getSession().save();
+
+    Resource updated = context.resourceResolver().getResource("/content/test/aggregate");
+    Iterator<Resource> children = updated.listChildren();
+    assertEquals("simple", children.next().getName(), "First child correct.");
+    Resource teaser = children.next();
+    assertEquals("title", teaser.getName(), "Second child correct.");
+    assertEquals("core/wcm/components/teaser/v1/teaser", teaser.getResourceType(), "Aggregate rewritten.");
+    assertEquals("after", children.next().getName(), "Third child correct.");
+    assertFalse(children.hasNext(), "Aggregated children removed.");
+  }
+
   @Test
   public void skipsFinalPaths() throws Exception {
 
@@ -102,7 +126,7 @@ public class ComponentTreeRewriterTest {
     ComponentTreeRewriter.rewrite(root, rules);
 
     Session session = root.getSession();
-    assertTrue(session.hasPendingChanges(), "Updates were made");
+    assertFalse(session.hasPendingChanges(), "Nodes not moved");
     session.save();
 
     // Should only be called once when matched.
@@ -121,7 +145,7 @@ public class ComponentTreeRewriterTest {
     ComponentTreeRewriter.rewrite(root, rules);
 
     Session session = root.getSession();
-    assertTrue(session.hasPendingChanges(), "Updates were made");
+    assertFalse(session.hasPendingChanges(), "Nodes not moved");
     session.save();
 
     assertEquals(9, rule.invoked, "Rewrite rule invocations");
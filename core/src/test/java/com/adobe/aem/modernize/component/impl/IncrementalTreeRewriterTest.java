@@ -0,0 +1,249 @@
+package com.adobe.aem.modernize.component.impl;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2026 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.apache.sling.testing.mock.sling.junit5.SlingContext;
+import org.apache.sling.testing.mock.sling.junit5.SlingContextExtension;
+
+import com.adobe.aem.modernize.RewriteException;
+import com.adobe.aem.modernize.rule.RewriteRule;
+import com.adobe.aem.modernize.rule.impl.NodeBasedRewriteRule;
+import mockit.Expectations;
+import mockit.Mocked;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SlingContextExtension.class)
+public class IncrementalTreeRewriterTest {
+
+  // Oak needed to verify order preservation.
+  public final SlingContext context = new SlingContext(ResourceResolverType.JCR_OAK);
+
+  @Mocked
+  private RewriteRule simpleRule;
+
+  @Test
+  public void preservesOrder() throws Exception {
+
+    List<RewriteRule> rules = new ArrayList<>();
+    rules.add(simpleRule);
+
+    new Expectations() {{
+      simpleRule.matches(withInstanceOf(Node.class));
+      result = false;
+      times = 9;
+    }};
+
+    context.load().json("/rewrite/test-ordered.json", "/content/test");
+    Node root = context.resourceResolver().getResource("/content/test/ordered").adaptTo(Node.class);
+    new IncrementalTreeRewriter(rules).rewrite(root);
+
+    Session session = root.getSession();
+    assertFalse(session.hasPendingChanges(), "No updates were made");
+    Resource updated = context.resourceResolver().getResource("/content/test/ordered");
+
+    // Preserved Order
+    Iterator<Resource> children = updated.listChildren();
+    assertEquals("simple", children.next().getName(), "First child correct.");
+    assertEquals("mapProperties", children.next().getName(), "Second child correct.");
+    assertEquals("rewriteProperties", children.next().getName(), "Third child correct.");
+    assertEquals("rewriteMapChildren", children.next().getName(), "Fourth child correct.");
+  }
+
+  @Test
+  public void skipsFinalPaths() throws Exception {
+
+    SetRootFinalRewriteRule finalRewriteRule = new SetRootFinalRewriteRule("/content/test/final/mapProperties");
+    List<RewriteRule> rules = new ArrayList<>();
+    rules.add(simpleRule);
+    rules.add(finalRewriteRule);
+
+    new Expectations() {{
+      simpleRule.matches(withInstanceOf(Node.class));
+      result = false;
+    }};
+
+    context.load().json("/rewrite/test-final.json", "/content/test");
+    Node root = context.resourceResolver().getResource("/content/test/final").adaptTo(Node.class);
+    new IncrementalTreeRewriter(rules).rewrite(root);
+
+    // Should only be called once when matched.
+    assertEquals(1, finalRewriteRule.invoked, "Rewrite rule invocations");
+  }
+
+  @Test
+  void infiniteLoop() throws Exception {
+
+    NoOpRewriteRule rule = new NoOpRewriteRule();
+    List<RewriteRule> rules = new ArrayList<>();
+    rules.add(rule);
+
+    context.load().json("/rewrite/test-ordered.json", "/content/test");
+    Node root = context.resourceResolver().getResource("/content/test/ordered").adaptTo(Node.class);
+    new IncrementalTreeRewriter(rules).rewrite(root);
+
+    assertEquals(9, rule.invoked, "Rewrite rule invocations");
+  }
+
+  @Test
+  public void rewritesAggregates() throws Exception {
+    context.load().json("/rewrite/test-content.json", "/content/test");
+    context.load().json("/rewrite/test-aggregate-rules.json", "/apps/test/rules");
+    Node rule = context.resourceResolver().getResource("/apps/test/rules/aggregate").adaptTo(Node.class);
+    List<RewriteRule> rules = new ArrayList<>();
+    rules.add(new NodeBasedRewriteRule(rule));
+
+    Node root = context.resourceResolver().getResource("/content/test/aggregate").adaptTo(Node.class);
+    root.addNode("after", "nt:unstructured");
+    new IncrementalTreeRewriter(rules).rewrite(root);
+    root.getSession().save();
+
+    Resource updated = context.resourceResolver().getResource("/content/test/aggregate");
+    Iterator<Resource> children = updated.listChildren();
+    assertEquals("simple", children.next().getName(), "First child correct.");
+    Resource teaser = children.next();
+    assertEquals("title", teaser.getName(), "Second child correct.");
+    assertEquals("core/wcm/components/teaser/v1/teaser", teaser.getResourceType(), "Aggregate rewritten.");
+    assertEquals("after", children.next().getName(), "Third child correct.");
+    assertFalse(children.hasNext(), "Aggregated children removed.");
+  }
+
+  @Test
+  public void matchesRestartedTraversal() throws Exception {
+    context.load().json("/component/test-rules.json", "/apps/test/rules");
+    context.load().json("/component/all-content.json", "/content/restarted");
+    context.load().json("/component/all-content.json", "/content/incremental");
+
+    List<RewriteRule> rules = new ArrayList<>();
+    NodeIterator it = context.resourceResolver().getResource("/apps/test/rules").adaptTo(Node.class).getNodes();
+    while (it.hasNext()) {
+      Node rule = it.nextNode();
+      // Orders before a node which doesn't exist in this content
+      if (!rule.getName().equals("copyChildrenOrder")) {
+        rules.add(new NodeBasedRewriteRule(rule));
+      }
+    }
+    rules.sort(new RewriteRule.Comparator());
+
+    Node restarted = context.resourceResolver().getResource("/content/restarted/jcr:content").adaptTo(Node.class);
+    Node incremental = context.resourceResolver().getResource("/content/incremental/jcr:content").adaptTo(Node.class);
+    ComponentTreeRewriter.rewrite(restarted, rules);
+    new IncrementalTreeRewriter(rules).rewrite(incremental);
+    incremental.getSession().save();
+
+    assertTreeEquals(context.resourceResolver().getResource("/content/restarted/jcr:content").adaptTo(Node.class),
+        context.resourceResolver().getResource("/content/incremental/jcr:content").adaptTo(Node.class));
+  }
+
+  private static void assertTreeEquals(Node expected, Node actual) throws RepositoryException {
+    PropertyIterator properties = expected.getProperties();
+    while (properties.hasNext()) {
+      Property property = properties.nextProperty();
+      if (property.getDefinition().isProtected()) {
+        continue;
+      }
+      assertTrue(actual.hasProperty(property.getName()), "Property exists: " + property.getPath());
+      Property other = actual.getProperty(property.getName());
+      if (property.isMultiple()) {
+        assertArrayEquals(property.getValues(), other.getValues(), "Property values: " + property.getPath());
+      } else {
+        assertEquals(property.getValue(), other.getValue(), "Property value: " + property.getPath());
+      }
+    }
+    assertEquals(expected.getProperties().getSize(), actual.getProperties().getSize(), "Property count: " + expected.getPath());
+
+    NodeIterator expectedChildren = expected.getNodes();
+    NodeIterator actualChildren = actual.getNodes();
+    while (expectedChildren.hasNext()) {
+      assertTrue(actualChildren.hasNext(), "Child count: " + expected.getPath());
+      Node child = expectedChildren.nextNode();
+      Node other = actualChildren.nextNode();
+      assertEquals(child.getName(), other.getName(), "Child order: " + expected.getPath());
+      assertTreeEquals(child, other);
+    }
+    assertFalse(actualChildren.hasNext(), "Child count: " + expected.getPath());
+  }
+
+  private static final class SetRootFinalRewriteRule implements RewriteRule {
+
+    private final String path;
+    public int invoked = 0;
+    public SetRootFinalRewriteRule(String path) {
+      this.path = path;
+    }
+
+    @Override
+    public String getId() {
+      return "Mock";
+    }
+
+    @Override
+    public boolean matches(@NotNull Node root) throws RepositoryException {
+      if (StringUtils.equals(root.getPath(), path)) {
+        invoked++;
+      }
+      return StringUtils.equals(root.getPath(), path);
+    }
+
+    @Override
+    public Node applyTo(@NotNull Node root, @NotNull Set<String> finalPaths) throws RepositoryException {
+      finalPaths.add(root.getPath());
+      return root;
+    }
+  }
+
+  private static final class NoOpRewriteRule implements RewriteRule {
+
+    public int invoked = 0;
+    @Override
+    public String getId() {
+      return NoOpRewriteRule.class.getName();
+    }
+
+    @Override
+    public boolean matches(@NotNull Node root) throws RepositoryException {
+      return true;
+    }
+
+    @Override
+    public @Nullable Node applyTo(@NotNull Node root, @NotNull Set<String> finalPaths) throws RewriteException, RepositoryException {
+      invoked++;
+      return root;
+    }
+  }
+}
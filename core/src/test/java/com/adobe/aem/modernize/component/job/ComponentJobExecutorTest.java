@@ -20,23 +20,32 @@ package com.adobe.aem.modernize.component.job;
  * #L%
  */
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
 import org.apache.sling.event.jobs.consumer.JobExecutionContext;
 import org.apache.sling.testing.mock.sling.ResourceResolverType;
 import org.apache.sling.testing.mock.sling.junit5.SlingContext;
 import org.apache.sling.testing.mock.sling.junit5.SlingContextExtension;
 
-import com.adobe.aem.modernize.RewriteException;
 import com.adobe.aem.modernize.component.ComponentRewriteRuleService;
+import com.adobe.aem.modernize.component.ComponentRewriteRuleService.Outcome;
 import com.adobe.aem.modernize.model.ConversionJobBucket;
 import mockit.Expectations;
+import mockit.Mock;
+import mockit.MockUp;
 import mockit.Mocked;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import static com.adobe.aem.modernize.model.ConversionJobBucket.*;
 import static org.junit.jupiter.api.Assertions.*;
 
 @ExtendWith(SlingContextExtension.class)
@@ -52,17 +61,28 @@ public class ComponentJobExecutorTest {
   @Mocked
   private Job job;
 
+  @Mocked
+  private JobManager jobManager;
+
   @Mocked
   private JobExecutionContext jobExecutionContext;
 
   @BeforeEach
   public void beforeEach() {
     context.registerService(ComponentRewriteRuleService.class, componentService);
+    context.registerService(JobManager.class, jobManager);
     context.registerInjectActivateService(executor);
     context.load().json("/job/page-content.json", "/content/test");
     context.load().json("/job/component-job-data.json", "/var/aem-modernize/job-data/component");
   }
 
+  private static Map<String, Outcome> outcomes(Outcome first, Outcome second) {
+    Map<String, Outcome> outcomes = new LinkedHashMap<>();
+    outcomes.put("/content/test/first-page/jcr:content/component", first);
+    outcomes.put("/content/test/second-page/jcr:content/component", second);
+    return outcomes;
+  }
+
   @Test
   public void testDoProcessSuccesses() throws Exception {
     final String jobPath = "/var/aem-modernize/job-data/component/buckets/bucket0";
@@ -70,9 +90,9 @@ public class ComponentJobExecutorTest {
       jobExecutionContext.initProgress(3, -1);
       jobExecutionContext.incrementProgressCount(1);
       times = 3;
-      componentService.apply(withInstanceOf(Resource.class), withInstanceOf(Set.class));
-      returns(true, false);
-      times = 2;
+      componentService.apply(withInstanceOf(Collection.class), withInstanceOf(Set.class));
+      result = outcomes(Outcome.SUCCESS, Outcome.NOT_FOUND);
+      times = 1;
     }};
 
     Resource tracking = context.resourceResolver().getResource(jobPath);
@@ -94,9 +114,9 @@ public class ComponentJobExecutorTest {
       jobExecutionContext.initProgress(3, -1);
       jobExecutionContext.incrementProgressCount(1);
       times = 3;
-      componentService.apply(withInstanceOf(Resource.class), withInstanceOf(Set.class));
-      result = new RewriteException("Error");
-      times = 2;
+      componentService.apply(withInstanceOf(Collection.class), withInstanceOf(Set.class));
+      result = outcomes(Outcome.FAILED, Outcome.FAILED);
+      times = 1;
     }};
 
     Resource tracking = context.resourceResolver().getResource(jobPath);
@@ -111,4 +131,33 @@ public class ComponentJobExecutorTest {
     assertEquals(1, bucket.getNotFound().size(), "NotFound count");
     assertEquals("/content/test/not-found-page/jcr:content/component", bucket.getNotFound().get(0), "Not Found path");
   }
+
+  @Test
+  public void testDoProcessBatches() throws Exception {
+    final String jobPath = "/var/aem-modernize/job-data/component/buckets/bucket0";
+    new MockUp<ComponentJobExecutor>() {
+      @Mock
+      int getCommitInterval() {
+        return 1;
+      }
+    };
+    new Expectations() {{
+      componentService.apply(withInstanceOf(Collection.class), withInstanceOf(Set.class));
+      returns(
+          Collections.singletonMap("/content/test/first-page/jcr:content/component", Outcome.SUCCESS),
+          Collections.singletonMap("/content/test/second-page/jcr:content/component", Outcome.FAILED)
+      );
+      times = 2;
+    }};
+
+    Resource tracking = context.resourceResolver().getResource(jobPath);
+    ConversionJobBucket bucket = tracking.adaptTo(ConversionJobBucket.class);
+    executor.doProcess(job, jobExecutionContext, bucket);
+
+    assertFalse(context.resourceResolver().hasChanges(), "Changes saved");
+    ValueMap vm = context.resourceResolver().getResource(jobPath).getValueMap();
+    assertArrayEquals(new String[] { "/content/test/first-page/jcr:content/component" }, vm.get(PN_SUCCESS, String[].class), "Success saved");
+    assertArrayEquals(new String[] { "/content/test/second-page/jcr:content/component" }, vm.get(PN_FAILED, String[].class), "Failed saved");
+    assertArrayEquals(new String[] { "/content/test/not-found-page/jcr:content/component" }, vm.get(PN_NOT_FOUND, String[].class), "Not Found saved");
+  }
 }
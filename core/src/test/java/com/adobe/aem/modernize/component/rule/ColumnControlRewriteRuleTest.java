@@ -37,6 +37,7 @@ import org.apache.sling.testing.mock.sling.ResourceResolverType;
 import org.apache.sling.testing.mock.sling.junit5.SlingContext;
 import org.apache.sling.testing.mock.sling.junit5.SlingContextExtension;
 
+import com.adobe.aem.modernize.impl.ResourceTypeHierarchy;
 import com.day.cq.wcm.api.NameConstants;
 import mockit.Mock;
 import mockit.MockUp;
@@ -70,6 +71,7 @@ public class ColumnControlRewriteRuleTest {
   public void beforeEach() {
     context.load().json("/component/page-content.json", "/content/test");
     context.load().json("/component/code-content.json", "/apps");
+    context.registerInjectActivateService(new ResourceTypeHierarchy());
   }
 
   @Test
@@ -680,4 +682,69 @@ public class ColumnControlRewriteRuleTest {
     assertFalse(siblings.hasNext(), "No more nodes.");
   }
 
+  @Test
+  public <R extends ResourceResolver, F extends ResourceResolverFactory> void stackedContainers() throws Exception {
+    new MockUp<F>() {
+      @Mock
+      public ResourceResolver getResourceResolver(Map<String, Object> authInfo) {
+        return context.resourceResolver();
+      }
+    };
+    new MockUp<R>() {
+      @Mock
+      public void close() {}
+    };
+
+    ColumnControlRewriteRule rule = new ColumnControlRewriteRule();
+    final Map<String, Object> props = new HashMap<>();
+    props.put("layout.value", "2;cq-colctrl-lt0");
+    props.put("column.widths", new String[] { "default=[6,6]" });
+    props.put("container.resourceType", "geodemo/components/container");
+    context.registerInjectActivateService(rule, props);
+
+    final String path = "/content/test/stacked/jcr:content/par";
+    final String colctrl = "foundation/components/parsys/colctrl";
+    context.create().resource(path, JcrResourceConstants.SLING_RESOURCE_TYPE_PROPERTY, "geodemo/components/container");
+    String[][] children = {
+        { "title", "geometrixx/components/title" }, { "colctrl", colctrl }, { "first", "geometrixx/components/text" },
+        { "col_break", colctrl }, { "second", "geometrixx/components/text" }, { "col_end", colctrl },
+        { "text", "geometrixx/components/text" }, { "colctrl_0", colctrl }, { "third", "geometrixx/components/text" },
+        { "col_break_0", colctrl }, { "fourth", "geometrixx/components/text" }, { "col_end_0", colctrl },
+        { "image", "geometrixx/components/image" }
+    };
+    for (String[] child : children) {
+      Map<String, Object> childProps = new HashMap<>();
+      childProps.put(JcrResourceConstants.SLING_RESOURCE_TYPE_PROPERTY, child[1]);
+      if (child[0].startsWith("colctrl")) {
+        childProps.put("layout", "2;cq-colctrl-lt0");
+      }
+      context.create().resource(path + "/" + child[0], childProps);
+    }
+
+    Node node = context.resourceResolver().getResource(path).adaptTo(Node.class);
+    assertTrue(rule.matches(node), "Match before run");
+    Set<String> finalPaths = new HashSet<>();
+    node = rule.applyTo(node, finalPaths);
+    node.getSession().save();
+
+    assertEquals(4, finalPaths.size(), "All sections converted");
+    assertFalse(rule.matches(node), "No sections left");
+    String[][] expected = {
+        { "title" }, { "container", "first" }, { "container0", "second" }, { "text" },
+        { "container1", "third" }, { "container2", "fourth" }, { "image" }
+    };
+    NodeIterator siblings = node.getNodes();
+    for (String[] entry : expected) {
+      Node sibling = siblings.nextNode();
+      assertEquals(entry[0], sibling.getName(), "Node Order preserved");
+      if (entry.length > 1) {
+        assertTrue(finalPaths.contains(sibling.getPath()), "Container is final");
+        NodeIterator contents = sibling.getNodes();
+        assertEquals(NameConstants.NN_RESPONSIVE_CONFIG, contents.nextNode().getName(), "Responsive config");
+        assertEquals(entry[1], contents.nextNode().getName(), "Container content");
+        assertFalse(contents.hasNext(), "No more content");
+      }
+    }
+    assertFalse(siblings.hasNext(), "No more nodes.");
+  }
 }
@@ -34,6 +34,7 @@ import org.apache.sling.testing.mock.sling.junit5.SlingContext;
 import org.apache.sling.testing.mock.sling.junit5.SlingContextExtension;
 
 import com.adobe.aem.modernize.component.impl.ComponentRewriteRuleServiceImpl;
+import com.adobe.aem.modernize.impl.ResourceTypeHierarchy;
 import mockit.Mock;
 import mockit.MockUp;
 import org.junit.jupiter.api.BeforeEach;
@@ -54,6 +55,7 @@ public class ColumnControlTreeRewriteTest {
     context.load().json("/component/page-content.json", "/content/test");
     context.load().json("/component/code-content.json", "/apps");
     context.load().json("/component/test-rules.json", "/var/aem-modernize/rules/component");
+    context.registerInjectActivateService(new ResourceTypeHierarchy());
   }
 
 
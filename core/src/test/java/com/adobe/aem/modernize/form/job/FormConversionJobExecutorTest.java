@@ -16,6 +16,7 @@ import mockit.Mocked;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
 import org.apache.sling.event.jobs.consumer.JobExecutionContext;
 import org.apache.sling.jcr.resource.api.JcrResourceConstants;
 import org.apache.sling.testing.mock.sling.ResourceResolverType;
@@ -45,6 +46,9 @@ public class FormConversionJobExecutorTest {
     @Mocked
     private Job job;
 
+    @Mocked
+    private JobManager jobManager;
+
     @Mocked
     private JobExecutionContext jobExecutionContext;
 
@@ -64,6 +68,7 @@ public class FormConversionJobExecutorTest {
         Map<String, Object> props = new HashMap<>();
         props.put("search.paths", new String[] { "/var/aem-modernize/rules" });
         context.registerInjectActivateService(componentService, props);
+        context.registerService(JobManager.class, jobManager);
         context.registerInjectActivateService(executor);
     }
 
@@ -0,0 +1,93 @@
+package com.adobe.aem.modernize.impl;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2026 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.Collections;
+import javax.jcr.Node;
+import javax.jcr.Session;
+
+import org.apache.jackrabbit.JcrConstants;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.apache.sling.testing.mock.sling.junit5.SlingContext;
+import org.apache.sling.testing.mock.sling.junit5.SlingContextExtension;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SlingContextExtension.class)
+public class ChildOrderTest {
+
+  private final SlingContext context = new SlingContext(ResourceResolverType.JCR_OAK);
+
+  private Node parent;
+
+  @BeforeEach
+  public void beforeEach() throws Exception {
+    Session session = context.resourceResolver().adaptTo(Session.class);
+    parent = session.getRootNode().addNode("content", JcrConstants.NT_UNSTRUCTURED).addNode("parent", JcrConstants.NT_UNSTRUCTURED);
+    for (String name : Arrays.asList("a", "b", "c", "d", "e", "f")) {
+      parent.addNode(name, JcrConstants.NT_UNSTRUCTURED);
+    }
+    session.save();
+  }
+
+  @Test
+  public void unchanged() throws Exception {
+    assertEquals(0, ChildOrder.reorder(parent, Arrays.asList("a", "b", "c", "d", "e", "f")), "Move count");
+    assertEquals(0, ChildOrder.reorder(parent, Collections.emptyList()), "Move count");
+    assertFalse(parent.getSession().hasPendingChanges(), "No changes");
+  }
+
+  @Test
+  public void minimalMoves() throws Exception {
+    assertEquals(1, ChildOrder.reorder(parent, Arrays.asList("b", "c", "d", "e", "f", "a")), "Move count");
+    assertEquals(Arrays.asList("b", "c", "d", "e", "f", "a"), ChildOrder.getNames(parent), "Order");
+
+    assertEquals(2, ChildOrder.reorder(parent, Arrays.asList("f", "b", "c", "a", "d", "e")), "Move count");
+    assertEquals(Arrays.asList("f", "b", "c", "a", "d", "e"), ChildOrder.getNames(parent), "Order");
+
+    assertEquals(5, ChildOrder.reorder(parent, Arrays.asList("e", "d", "a", "c", "b", "f")), "Move count");
+    assertEquals(Arrays.asList("e", "d", "a", "c", "b", "f"), ChildOrder.getNames(parent), "Order");
+  }
+
+  @Test
+  public void partialOrder() throws Exception {
+    assertEquals(2, ChildOrder.reorder(parent, Arrays.asList("e", "missing", "c")), "Move count");
+    assertEquals(Arrays.asList("e", "c", "a", "b", "d", "f"), ChildOrder.getNames(parent), "Order");
+  }
+
+  @Test
+  public void moveToEnd() throws Exception {
+    ChildOrder.reorder(parent, ChildOrder.moveToEnd(ChildOrder.getNames(parent), Arrays.asList("c", "missing", "a")));
+    assertEquals(Arrays.asList("b", "d", "e", "f", "c", "a"), ChildOrder.getNames(parent), "Order");
+  }
+
+  @Test
+  public void unorderedParent() throws Exception {
+    Node folder = parent.getParent().addNode("folder", JcrConstants.NT_FOLDER);
+    folder.addNode("b", JcrConstants.NT_FOLDER);
+    folder.addNode("a", JcrConstants.NT_FOLDER);
+    assertEquals(0, ChildOrder.reorder(folder, Arrays.asList("a", "b")), "Move count");
+  }
+}
@@ -0,0 +1,113 @@
+package com.adobe.aem.modernize.impl;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2021 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+
+import com.adobe.aem.modernize.MockStyle;
+import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.api.PageManager;
+import com.day.cq.wcm.api.designer.Cell;
+import com.day.cq.wcm.api.designer.Design;
+import com.day.cq.wcm.api.designer.Designer;
+import com.day.cq.wcm.api.designer.Style;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+import mockit.Delegate;
+import mockit.Expectations;
+import mockit.Invocation;
+import mockit.Mock;
+import mockit.MockUp;
+import mockit.Mocked;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(AemContextExtension.class)
+public class DesignStyleCacheTest {
+
+  private static final String CONTENT_PATH = "/content/test";
+  private static final String DESIGN_PATH = "/etc/designs/test";
+  private static final String TITLE_PATH = DESIGN_PATH + "/jcr:content/homepage/title";
+
+  private final AemContext context = new AemContext(ResourceResolverType.JCR_MOCK);
+
+  @Mocked
+  private Designer designer;
+
+  @Mocked
+  private Design design;
+
+  @Mocked
+  private Cell cell;
+
+  @BeforeEach
+  public <R extends ResourceResolver> void beforeEach() {
+    context.load().json("/servlet/page-content.json", CONTENT_PATH);
+    context.load().json("/servlet/design-content.json", DESIGN_PATH);
+
+    Style homepageStyle = new MockStyle(design, cell, DESIGN_PATH + "/jcr:content/homepage");
+    new MockUp<R>() {
+      @Mock
+      public <T> T adaptTo(Invocation inv, Class<T> clazz) {
+        if (clazz == Designer.class) {
+          return (T) designer;
+        } else {
+          return inv.proceed();
+        }
+      }
+    };
+    new Expectations() {{
+      designer.getStyle(withNotNull());
+      result = homepageStyle;
+      designer.getDesign(withInstanceOf(Page.class));
+      result = design;
+      cell.paths();
+      result = new Delegate<Iterator<String>>() {
+        Iterator<String> delegate() {
+          return Arrays.stream(new String[] { "homepage", "page", "basepage" }).iterator();
+        }
+      };
+      design.getStyle("homepage");
+      result = homepageStyle;
+    }};
+  }
+
+  @Test
+  public void reusesPolicyPaths() throws Exception {
+    ResourceResolver rr = context.resourceResolver();
+    Page page = rr.adaptTo(PageManager.class).getPage(CONTENT_PATH);
+    DesignStyleCache styles = new DesignStyleCache();
+
+    Set<String> paths = styles.getPolicyPaths(page, false);
+    assertEquals(3, paths.size(), "Paths list size");
+    assertTrue(paths.contains(TITLE_PATH), "Path list contents");
+
+    rr.delete(rr.getResource(TITLE_PATH));
+    assertEquals(paths, styles.getPolicyPaths(page, false), "Cached paths");
+    assertEquals(2, new DesignStyleCache().getPolicyPaths(page, false).size(), "New cache reads design");
+  }
+}
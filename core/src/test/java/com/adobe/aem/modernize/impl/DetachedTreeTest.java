@@ -0,0 +1,156 @@
+package com.adobe.aem.modernize.impl;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2026 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Arrays;
+import javax.jcr.InvalidItemStateException;
+import javax.jcr.Node;
+import javax.jcr.Session;
+import javax.jcr.UnsupportedRepositoryOperationException;
+import javax.jcr.Workspace;
+
+import org.apache.jackrabbit.JcrConstants;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.apache.sling.testing.mock.sling.junit5.SlingContext;
+import org.apache.sling.testing.mock.sling.junit5.SlingContextExtension;
+
+import com.day.cq.commons.jcr.JcrUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SlingContextExtension.class)
+public class DetachedTreeTest {
+
+  private static final String ROOT = "/content/test/all/jcr:content";
+
+  private final SlingContext context = new SlingContext(ResourceResolverType.JCR_OAK);
+
+  private Session session;
+
+  @BeforeEach
+  public void beforeEach() throws Exception {
+    context.load().json("/component/all-content.json", "/content/test/all");
+    session = context.resourceResolver().adaptTo(Session.class);
+    session.save();
+  }
+
+  @Test
+  public void unchanged() throws Exception {
+    DetachedTree tree = DetachedTree.load(session.getNode(ROOT));
+    Node root = tree.getRoot();
+    assertEquals(ROOT, root.getPath(), "Root path");
+    assertEquals(session.getNode(ROOT).getNodes().getSize(), ChildOrder.getNames(root).size(), "Children loaded");
+    assertEquals("/content/test/all", root.getParent().getPath(), "Parent path");
+    assertTrue(tree.getSession().nodeExists("/content/test"), "Reads outside of the tree");
+
+    assertFalse(tree.getSession().hasPendingChanges(), "Detached session unchanged");
+    assertEquals(0, tree.writeBack(), "Nothing written");
+    assertFalse(session.hasPendingChanges(), "Repository session unchanged");
+  }
+
+  @Test
+  public void changesAreDetached() throws Exception {
+    DetachedTree tree = DetachedTree.load(session.getNode(ROOT));
+    Node root = tree.getRoot();
+    root.getNode("simple").setProperty("title", "Updated");
+    Node removed = root.getNode("copyChildren");
+    removed.remove();
+    root.addNode("added", JcrConstants.NT_UNSTRUCTURED).setProperty("value", 1L);
+
+    assertTrue(tree.getSession().hasPendingChanges(), "Detached session changed");
+    assertFalse(session.hasPendingChanges(), "Repository session unchanged");
+    assertTrue(session.nodeExists(ROOT + "/copyChildren"), "Repository node not removed");
+    assertFalse(root.hasNode("copyChildren"), "Detached node removed");
+    assertThrows(InvalidItemStateException.class, removed::getPath);
+  }
+
+  @Test
+  public void writesDifferences() throws Exception {
+    DetachedTree tree = DetachedTree.load(session.getNode(ROOT));
+    Node root = tree.getRoot();
+    Session detached = tree.getSession();
+
+    // Replace a subtree with an identical copy, the way rules do.
+    detached.move(ROOT + "/copyChildren", ROOT + "/tmp");
+    JcrUtil.copy(root.getNode("tmp"), root, "copyChildren", false);
+    root.getNode("tmp").remove();
+    root.orderBefore("copyChildren", "copyChildrenOrder");
+
+    // Real changes
+    root.getNode("simple").setProperty("title", "Updated");
+    root.getNode("mapProperties").remove();
+    root.addNode("added", JcrConstants.NT_UNSTRUCTURED).setProperty("value", 1L);
+    root.orderBefore("rewriteProperties", "simple");
+
+    assertEquals(5, tree.writeBack(), "Only changes written");
+    session.save();
+
+    Node live = session.getNode(ROOT);
+    assertEquals("Updated", live.getProperty("simple/title").getString(), "Property updated");
+    assertFalse(live.hasNode("mapProperties"), "Node removed");
+    assertEquals(1L, live.getProperty("added/value").getLong(), "Node created");
+    assertEquals(Arrays.asList("rewriteProperties", "simple", "copyChildren", "copyChildrenOrder", "rewriteOptional",
+        "rewriteRanking", "rewriteMapChildren", "rewriteFinal", "rewriteFinalOnReplacement", "added"), ChildOrder.getNames(live), "Order");
+  }
+
+  @Test
+  public void movesKeepIdentifiers() throws Exception {
+    Node simple = session.getNode(ROOT + "/simple");
+    simple.addMixin(JcrConstants.MIX_REFERENCEABLE);
+    session.save();
+    String uuid = simple.getIdentifier();
+
+    DetachedTree tree = DetachedTree.load(session.getNode(ROOT));
+    Node root = tree.getRoot();
+    Session detached = tree.getSession();
+    detached.move(ROOT + "/simple", ROOT + "/copyChildren/simple");
+    root.addNode("simple", JcrConstants.NT_UNSTRUCTURED).setProperty("title", "Replacement");
+    detached.getWorkspace().move(ROOT + "/copyChildren", ROOT + "/moved");
+
+    tree.writeBack();
+    session.save();
+
+    assertEquals(ROOT + "/moved/simple", session.getNodeByIdentifier(uuid).getPath(), "Identifier kept");
+    assertEquals("Replacement", session.getNode(ROOT + "/simple").getProperty("title").getString(), "Node created");
+    assertFalse(session.nodeExists(ROOT + "/copyChildren"), "Node moved");
+    assertEquals(Arrays.asList("jcr:content"), ChildOrder.getNames(session.getNode("/content/test/all")), "Moves cleaned up");
+  }
+
+  @Test
+  public void workspaceIsDetached() throws Exception {
+    DetachedTree tree = DetachedTree.load(session.getNode(ROOT));
+    Workspace workspace = tree.getSession().getWorkspace();
+    assertSame(tree.getSession(), workspace.getSession(), "Detached session");
+    assertThrows(UnsupportedRepositoryOperationException.class, () -> workspace.copy(ROOT + "/simple", ROOT + "/copy"));
+    assertFalse(session.nodeExists(ROOT + "/copy"), "Nothing copied");
+  }
+
+  @Test
+  public void removesRoot() throws Exception {
+    DetachedTree tree = DetachedTree.load(session.getNode(ROOT));
+    tree.getRoot().remove();
+    assertEquals(1, tree.writeBack(), "Root removed");
+    assertFalse(session.nodeExists(ROOT), "Root removed");
+    assertTrue(session.nodeExists("/content/test/all"), "Parent kept");
+  }
+}
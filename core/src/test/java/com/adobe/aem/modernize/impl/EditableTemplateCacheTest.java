@@ -0,0 +1,80 @@
+package com.adobe.aem.modernize.impl;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2021 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.Collections;
+import javax.jcr.Session;
+
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.apache.sling.testing.mock.sling.junit5.SlingContext;
+import org.apache.sling.testing.mock.sling.junit5.SlingContextExtension;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SlingContextExtension.class)
+public class EditableTemplateCacheTest {
+
+  private static final String TEMPLATE = "/conf/aem-modernize/settings/wcm/templates/aem-modernize-home-page";
+
+  private final SlingContext context = new SlingContext(ResourceResolverType.JCR_MOCK);
+
+  private Session session;
+
+  @BeforeEach
+  public void beforeEach() {
+    context.load().json("/structure/conf-template.json", TEMPLATE);
+    session = context.resourceResolver().adaptTo(Session.class);
+  }
+
+  @Test
+  public void template() throws Exception {
+    EditableTemplateCache templates = new EditableTemplateCache();
+    EditableTemplateCache.Template template = templates.get(session, TEMPLATE);
+    assertTrue(template.exists(), "Template exists");
+    assertEquals("aem-modernize/components/structure/homepage", template.getStructureResourceType(), "Structure resource type");
+    assertSame(template, templates.get(session, TEMPLATE), "Cached");
+
+    String missingPath = "/conf/aem-modernize/settings/wcm/templates/missing";
+    EditableTemplateCache.Template missing = templates.get(session, missingPath);
+    assertFalse(missing.exists(), "Template missing");
+    assertNull(missing.getStructureResourceType(), "No structure resource type");
+    assertNotSame(missing, templates.get(session, missingPath), "Missing template not cached");
+  }
+
+  @Test
+  public void templateChanges() throws Exception {
+    EditableTemplateCache templates = new EditableTemplateCache();
+    EditableTemplateCache.Template template = templates.get(session, TEMPLATE);
+
+    templates.onChange(Collections.singletonList(new ResourceChange(ResourceChange.ChangeType.ADDED, TEMPLATE + "/policies/jcr:content/root", false)));
+    assertSame(template, templates.get(session, TEMPLATE), "Policy mappings ignored");
+
+    templates.onChange(Collections.singletonList(new ResourceChange(ResourceChange.ChangeType.CHANGED, TEMPLATE + "/structure/jcr:content", false)));
+    assertNotSame(template, templates.get(session, TEMPLATE), "Structure changed");
+    template = templates.get(session, TEMPLATE);
+
+    templates.onChange(Collections.singletonList(new ResourceChange(ResourceChange.ChangeType.REMOVED, "/conf/aem-modernize", false)));
+    assertNotSame(template, templates.get(session, TEMPLATE), "Ancestor removed");
+  }
+}
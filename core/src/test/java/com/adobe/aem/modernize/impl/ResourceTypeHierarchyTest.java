@@ -0,0 +1,98 @@
+package com.adobe.aem.modernize.impl;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2021 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.apache.sling.testing.mock.sling.junit5.SlingContext;
+import org.apache.sling.testing.mock.sling.junit5.SlingContextExtension;
+
+import mockit.Injectable;
+import mockit.Invocation;
+import mockit.Mock;
+import mockit.MockUp;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SlingContextExtension.class)
+public class ResourceTypeHierarchyTest {
+
+  private static final String CONTAINER = "geodemo/components/container";
+  private static final String GRID = "wcm/foundation/components/responsivegrid";
+
+  private final SlingContext context = new SlingContext(ResourceResolverType.JCR_MOCK);
+
+  private ResourceTypeHierarchy hierarchy;
+
+  @BeforeEach
+  public void beforeEach() {
+    context.load().json("/component/code-content.json", "/apps");
+    hierarchy = context.registerInjectActivateService(new ResourceTypeHierarchy());
+  }
+
+  @Test
+  public void hierarchy() {
+    ResourceResolver rr = context.resourceResolver();
+    assertNull(hierarchy.getCached(CONTAINER), "Not read yet");
+
+    Set<String> types = hierarchy.getHierarchy(rr, CONTAINER);
+    assertEquals(Arrays.asList(CONTAINER, "core/wcm/components/container/v1/container", GRID), new ArrayList<>(types), "Hierarchy");
+    assertSame(types, hierarchy.getCached(CONTAINER), "Cached");
+    assertTrue(hierarchy.isA(rr, CONTAINER, GRID), "Is a grid");
+    assertFalse(hierarchy.isA(rr, GRID, CONTAINER), "Not a container");
+    assertEquals(Collections.singleton("geodemo/components/title"), hierarchy.getHierarchy(rr, "geodemo/components/title"), "No super type");
+  }
+
+  @Test
+  public void codeChanges() {
+    ResourceResolver rr = context.resourceResolver();
+    hierarchy.getHierarchy(rr, CONTAINER);
+    hierarchy.onChange(Collections.singletonList(new ResourceChange(ResourceChange.ChangeType.CHANGED, "/apps/geodemo/components/container", false)));
+    assertNull(hierarchy.getCached(CONTAINER), "Discarded");
+  }
+
+  @Test
+  public void readsWithServiceUser(@Injectable ResourceResolver rr) {
+    Set<String> types = hierarchy.getHierarchy(rr, CONTAINER);
+    assertEquals(Arrays.asList(CONTAINER, "core/wcm/components/container/v1/container", GRID), new ArrayList<>(types), "Hierarchy not limited by caller");
+  }
+
+  @Test
+  public <R extends ResourceResolver> void changeWhileReading() {
+    new MockUp<R>() {
+      @Mock
+      public String getParentResourceType(Invocation inv, String type) {
+        hierarchy.onChange(Collections.singletonList(new ResourceChange(ResourceChange.ChangeType.CHANGED, "/apps/geodemo/components/container", false)));
+        return inv.proceed(type);
+      }
+    };
+    ResourceResolver rr = context.resourceResolver();
+    assertEquals(3, hierarchy.getHierarchy(rr, CONTAINER).size(), "Hierarchy read");
+    assertNull(hierarchy.getCached(CONTAINER), "Stale hierarchy not kept");
+  }
+}
@@ -20,16 +20,22 @@ package com.adobe.aem.modernize.job;
  * #L%
  */
 
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.Map;
 
 import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ModifiableValueMap;
 import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobBuilder;
+import org.apache.sling.event.jobs.JobManager;
 import org.apache.sling.event.jobs.consumer.JobExecutionContext;
 import org.apache.sling.event.jobs.consumer.JobExecutionResult;
 import org.apache.sling.event.jobs.consumer.JobExecutor;
@@ -40,9 +46,11 @@ import org.apache.sling.testing.mock.sling.junit5.SlingContextExtension;
 import com.adobe.aem.modernize.model.ConversionJob;
 import com.adobe.aem.modernize.model.ConversionJobBucket;
 import mockit.Expectations;
+import mockit.Invocation;
 import mockit.Mock;
 import mockit.MockUp;
 import mockit.Mocked;
+import mockit.Verifications;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -68,9 +76,16 @@ public class AbstractConversionJobExecutorTest {
   @Mocked
   private JobExecutionResult executionResult;
 
+  @Mocked
+  private JobManager jobManager;
+
+  @Mocked
+  private JobBuilder.ScheduleBuilder scheduleBuilder;
+
   @BeforeEach
   public void beforeEach() {
     context.load().json("/job/component-job-data.json", ConversionJob.JOB_DATA_LOCATION + "/job");
+    context.registerService(JobManager.class, jobManager);
   }
 
   private void setupResult(boolean success) {
@@ -131,8 +146,13 @@ public class AbstractConversionJobExecutorTest {
   public <R extends ResourceResolver> void testCommitFails() {
 
     new MockUp<R>() {
+      // Acquiring the leases succeeds, later changes fail
       @Mock
-      public void commit() throws PersistenceException {
+      public void commit(Invocation invocation) throws PersistenceException {
+        if (invocation.getInvocationCount() == 1) {
+          invocation.proceed();
+          return;
+        }
         throw new PersistenceException("Failure");
       }
 
@@ -179,17 +199,221 @@ public class AbstractConversionJobExecutorTest {
     assertEquals("/content/test/page-not-found", vm.get("notFound", String[].class)[0], "Not Found saved");
     assertNotNull(vm.get("started", Date.class), "Bucket Start time set");
     assertNotNull(vm.get("finished", Date.class), "Bucket Finished time set");
+    assertFalse(vm.containsKey(PN_LEASES), "Leases released");
+    vm = context.resourceResolver().getResource(ConversionJob.JOB_DATA_LOCATION).getValueMap();
+    assertEquals(0, vm.get(PathLeases.PN_HOLDERS, String[].class).length, "Holder released");
 
     vm = context.resourceResolver().getResource(ConversionJob.JOB_DATA_LOCATION + "/job").getValueMap();
     assertNotNull(vm.get("finished", Date.class), "Aggregate finished time set");
   }
 
+  @Test
+  public void testRecordsLeases() {
+    new Expectations() {{
+      job.getProperty(PN_TRACKING_PATH, String.class);
+      result = ConversionJob.JOB_DATA_LOCATION + "/job/buckets/bucket0";
+      job.getId();
+      result = "JobId";
+      job.getProcessingStarted();
+      result = Calendar.getInstance();
+    }};
+    setupResult(true);
+    LeaseRecordingJobExecutor executor = new LeaseRecordingJobExecutor();
+    context.registerInjectActivateService(executor);
+
+    assertEquals(executionResult, executor.process(job, jobExecutionContext), "Result was created.");
+    assertArrayEquals(new String[] {
+        "/content/test/first-page/jcr:content/component/*",
+        "/content/test/second-page/jcr:content/component/*",
+        "/content/test/not-found-page/jcr:content/component/*"
+    }, executor.leases, "Leases recorded");
+  }
+
+  @Test
+  public void testPageLeases() throws Exception {
+    ResourceResolver rr = context.resourceResolver();
+    ModifiableValueMap mvm = rr.getResource(ConversionJob.JOB_DATA_LOCATION + "/job").adaptTo(ModifiableValueMap.class);
+    mvm.put(ConversionJob.PN_PAGE_HANDLING, ConversionJob.PageHandling.COPY.name());
+    mvm.put(ConversionJob.PN_SOURCE_ROOT, "/content/test");
+    mvm.put(ConversionJob.PN_TARGET_ROOT, "/content/copy");
+    mvm = rr.getResource(ConversionJob.JOB_DATA_LOCATION + "/job/buckets/bucket0").adaptTo(ModifiableValueMap.class);
+    mvm.put(PN_PATHS, new String[] { "/content/test/first-page" });
+    rr.commit();
+
+    ConversionJobBucket bucket = rr.getResource(ConversionJob.JOB_DATA_LOCATION + "/job/buckets/bucket0").adaptTo(ConversionJobBucket.class);
+    assertEquals(new LinkedHashSet<>(Arrays.asList(
+        "/content/test/first-page",
+        "/content/test/first-page/jcr:content/*",
+        "/content/copy/first-page",
+        "/content/copy/first-page/jcr:content/*",
+        "/content/copy"
+    )), new NoOpJobExecutor().getPageLeasePaths(bucket), "Page leases");
+  }
+
+  @Test
+  public void testLeaseConflictReschedules() {
+    final String conflicting = ConversionJob.JOB_DATA_LOCATION + "/job/buckets/bucket1";
+    context.create().resource(conflicting, PN_PATHS, new String[] { "/content/test/first-page/jcr:content/component" });
+    new Expectations() {{
+      job.getProperty(PN_TRACKING_PATH, String.class);
+      returns(ConversionJob.JOB_DATA_LOCATION + "/job/buckets/bucket0", conflicting);
+      job.getId();
+      result = "JobId";
+      job.getTopic();
+      result = "topic";
+      job.getProcessingStarted();
+      result = Calendar.getInstance();
+      jobManager.getJobById("JobId");
+      result = job;
+      job.getJobState();
+      result = Job.JobState.ACTIVE;
+    }};
+    setupResult(true);
+    ConflictingJobExecutor executor = new ConflictingJobExecutor();
+    context.registerInjectActivateService(executor);
+
+    assertEquals(executionResult, executor.process(job, jobExecutionContext), "Result was created.");
+    assertTrue(executor.conflicting, "Conflicting bucket processed");
+    new Verifications() {{
+      Map<String, Object> props;
+      jobManager.createJob("topic").properties(props = withCapture());
+      times = 1;
+      assertEquals(conflicting, props.get(PN_TRACKING_PATH), "Conflicting bucket rescheduled");
+      scheduleBuilder.at((Date) any);
+      times = 1;
+    }};
+    context.resourceResolver().refresh();
+    ValueMap vm = context.resourceResolver().getResource(conflicting).getValueMap();
+    assertEquals(ConversionJob.Status.WAITING.name(), vm.get(PN_JOB_STATUS, String.class), "Conflicting bucket waiting");
+    assertFalse(vm.containsKey(PN_JOB_ID), "Conflicting bucket not started");
+    assertFalse(vm.containsKey(PN_LEASES), "Conflicting bucket holds no leases");
+  }
+
+  @Test
+  public void testPendingPaths() throws Exception {
+    ResourceResolver rr = context.resourceResolver();
+    ModifiableValueMap mvm = rr.getResource(ConversionJob.JOB_DATA_LOCATION + "/job/buckets/bucket0").adaptTo(ModifiableValueMap.class);
+    mvm.put(PN_SUCCESS, new String[] { "/content/test/first-page/jcr:content/component" });
+    mvm.put(PN_FAILED, new String[] { "/content/test/not-found-page/jcr:content/component" });
+    rr.commit();
+
+    ConversionJobBucket bucket = rr.getResource(ConversionJob.JOB_DATA_LOCATION + "/job/buckets/bucket0").adaptTo(ConversionJobBucket.class);
+    assertEquals(Collections.singletonList("/content/test/second-page/jcr:content/component"), new NoOpJobExecutor().getPendingPaths(bucket), "Pending paths");
+  }
+
+  @Test
+  public void testPeriodicCommit() throws Exception {
+    ResourceResolver rr = context.resourceResolver();
+    rr.commit();
+    ConversionJobBucket bucket = rr.getResource(ConversionJob.JOB_DATA_LOCATION + "/job/buckets/bucket0").adaptTo(ConversionJobBucket.class);
+    AbstractConversionJobExecutor.PeriodicCommit commit = new NoOpJobExecutor().periodicCommit(bucket, 2);
+
+    bucket.getSuccess().add("/content/test/first-page");
+    rr.getResource(ConversionJob.JOB_DATA_LOCATION + "/job").adaptTo(ModifiableValueMap.class).put("first", true);
+    commit.processed("/content/test/first-page");
+    assertTrue(rr.hasChanges(), "Changes pending");
+
+    bucket.getNotFound().add("/content/test/page-not-found");
+    commit.processed("/content/test/page-not-found");
+    assertFalse(rr.hasChanges(), "Changes saved");
+    ValueMap vm = rr.getResource(ConversionJob.JOB_DATA_LOCATION + "/job/buckets/bucket0").getValueMap();
+    assertArrayEquals(new String[] { "/content/test/first-page" }, vm.get(PN_SUCCESS, String[].class), "Success recorded");
+    assertArrayEquals(new String[] { "/content/test/page-not-found" }, vm.get(PN_NOT_FOUND, String[].class), "Not Found recorded");
+  }
+
+  @Test
+  public <R extends ResourceResolver> void testPeriodicCommitFails() {
+    new MockUp<R>() {
+      @Mock
+      public void commit() throws PersistenceException {
+        throw new PersistenceException("Failure");
+      }
+
+      @Mock
+      public void revert() {
+
+      }
+    };
+    ResourceResolver rr = context.resourceResolver();
+    ConversionJobBucket bucket = rr.getResource(ConversionJob.JOB_DATA_LOCATION + "/job/buckets/bucket0").adaptTo(ConversionJobBucket.class);
+    AbstractConversionJobExecutor.PeriodicCommit commit = new NoOpJobExecutor().periodicCommit(bucket, 1);
+
+    bucket.getSuccess().add("/content/test/first-page");
+    commit.processed("/content/test/first-page");
+    bucket.getNotFound().add("/content/test/page-not-found");
+    commit.processed("/content/test/page-not-found");
+
+    assertTrue(bucket.getSuccess().isEmpty(), "Success list");
+    assertEquals(1, bucket.getFailed().size(), "Failed list");
+    assertEquals("/content/test/first-page", bucket.getFailed().get(0), "Unsaved path failed");
+    assertEquals(1, bucket.getNotFound().size(), "Not Found list");
+  }
+
+  @Component(service = { JobExecutor.class })
+  public static class LeaseRecordingJobExecutor extends AbstractConversionJobExecutor {
+
+    @Reference
+    private ResourceResolverFactory resourceResolverFactory;
+
+    @Reference
+    private JobManager jobManager;
+
+    private String[] leases;
+
+    @Override
+    protected void doProcess(Job job, JobExecutionContext context, ConversionJobBucket bucket) {
+      leases = bucket.getResource().getValueMap().get(PN_LEASES, String[].class);
+    }
+
+    @Override
+    protected ResourceResolverFactory getResourceResolverFactory() {
+      return resourceResolverFactory;
+    }
+
+    @Override
+    protected JobManager getJobManager() {
+      return jobManager;
+    }
+  }
+
+  @Component(service = { JobExecutor.class })
+  public static class ConflictingJobExecutor extends AbstractConversionJobExecutor {
+
+    @Reference
+    private ResourceResolverFactory resourceResolverFactory;
+
+    @Reference
+    private JobManager jobManager;
+
+    private boolean conflicting;
+
+    @Override
+    protected void doProcess(Job job, JobExecutionContext context, ConversionJobBucket bucket) {
+      // Process the conflicting bucket while this one's leases are held
+      process(job, context);
+      conflicting = true;
+    }
+
+    @Override
+    protected ResourceResolverFactory getResourceResolverFactory() {
+      return resourceResolverFactory;
+    }
+
+    @Override
+    protected JobManager getJobManager() {
+      return jobManager;
+    }
+  }
+
   @Component(service = { JobExecutor.class })
   public static class NoOpJobExecutor extends AbstractConversionJobExecutor {
 
     @Reference
     private ResourceResolverFactory resourceResolverFactory;
 
+    @Reference
+    private JobManager jobManager;
+
     @Override
     protected void doProcess(Job job, JobExecutionContext context, ConversionJobBucket bucket) {
       bucket.getSuccess().add("/content/test/first-page");
@@ -201,5 +425,10 @@ public class AbstractConversionJobExecutorTest {
     protected ResourceResolverFactory getResourceResolverFactory() {
       return resourceResolverFactory;
     }
+
+    @Override
+    protected JobManager getJobManager() {
+      return jobManager;
+    }
   }
 }
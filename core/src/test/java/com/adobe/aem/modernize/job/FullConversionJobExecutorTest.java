@@ -29,10 +29,13 @@ import javax.jcr.Node;
 import javax.jcr.NodeIterator;
 import javax.jcr.RepositoryException;
 
+import org.apache.jackrabbit.JcrConstants;
+import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
 import org.apache.sling.event.jobs.consumer.JobExecutionContext;
 import org.apache.sling.jcr.resource.api.JcrResourceConstants;
 import org.apache.sling.testing.mock.sling.ResourceResolverType;
@@ -40,6 +43,7 @@ import org.apache.sling.testing.mock.sling.ResourceResolverType;
 import com.adobe.aem.modernize.MockStyle;
 import com.adobe.aem.modernize.component.ComponentRewriteRuleService;
 import com.adobe.aem.modernize.component.impl.ComponentRewriteRuleServiceImpl;
+import com.adobe.aem.modernize.impl.EditableTemplateCache;
 import com.adobe.aem.modernize.model.ConversionJob;
 import com.adobe.aem.modernize.model.ConversionJobBucket;
 import com.adobe.aem.modernize.policy.PolicyImportRuleService;
@@ -48,6 +52,7 @@ import com.adobe.aem.modernize.structure.StructureRewriteRule;
 import com.adobe.aem.modernize.structure.StructureRewriteRuleService;
 import com.adobe.aem.modernize.structure.impl.StructureRewriteRuleServiceImpl;
 import com.adobe.aem.modernize.structure.rule.PageRewriteRule;
+import com.day.cq.commons.jcr.JcrUtil;
 import com.day.cq.wcm.api.NameConstants;
 import com.day.cq.wcm.api.Page;
 import com.day.cq.wcm.api.PageManager;
@@ -92,6 +97,9 @@ public class FullConversionJobExecutorTest {
   @Mocked
   private Job job;
 
+  @Mocked
+  private JobManager jobManager;
+
   @Mocked
   private JobExecutionContext jobExecutionContext;
 
@@ -123,6 +131,7 @@ public class FullConversionJobExecutorTest {
     props.put("editable.template", "/conf/test/settings/wcm/templates/homepage");
     props.put("container.resourceType", "aem-modernize/components/container");
 
+    context.registerInjectActivateService(new EditableTemplateCache());
     context.registerInjectActivateService(pageRewriteRule, props);
     context.registerInjectActivateService(structureService);
 
@@ -133,6 +142,7 @@ public class FullConversionJobExecutorTest {
     props = new HashMap<>();
     props.put("search.paths", new String[] { "/var/aem-modernize/rules/component" });
     context.registerInjectActivateService(componentService, props);
+    context.registerService(JobManager.class, jobManager);
     context.registerInjectActivateService(executor);
 
   }
@@ -469,4 +479,128 @@ public class FullConversionJobExecutorTest {
     children.next();
     assertFalse(children.hasNext(), "Created Policy count");
   }
+
+  @Test
+  public <P extends PageManager> void doProcessWorkers() throws Exception {
+    final String path = ConversionJob.JOB_DATA_LOCATION + "/full/workers/buckets/bucket0";
+
+    new MockUp<P>() {
+      @Mock
+      public Revision createRevision(Page page, String label, String desc) {
+        return revision;
+      }
+    };
+    new Expectations() {{
+      jobExecutionContext.initProgress(pathCount, -1);
+      revision.getId();
+      result = version;
+      jobExecutionContext.incrementProgressCount(1);
+      times = pathCount;
+    }};
+
+    FullConversionJobExecutor workers = new FullConversionJobExecutor();
+    Map<String, Object> props = new HashMap<>();
+    props.put("workers", 2);
+    context.registerInjectActivateService(workers, props);
+
+    ResourceResolver rr = context.resourceResolver();
+    ConversionJobBucket bucket = rr.getResource(path).adaptTo(ConversionJobBucket.class);
+    workers.doProcess(job, jobExecutionContext, bucket);
+
+    assertEquals(Arrays.asList("/content/test/first-page", "/content/test/second-page"), bucket.getSuccess(), "Success list");
+    assertEquals(Arrays.asList("/content/test/not-found-page"), bucket.getNotFound(), "Not found list");
+    assertTrue(bucket.getFailed().isEmpty(), "Failed list");
+
+    // Workers save their own changes
+    rr.refresh();
+    ValueMap vm = rr.getResource("/content/test/first-page/jcr:content").adaptTo(ValueMap.class);
+    assertEquals(version, vm.get(PN_PRE_MODERNIZE_VERSION, String.class), "Page Version");
+    assertEquals("aem-modernize/components/structure/homepage", vm.get(JcrResourceConstants.SLING_RESOURCE_TYPE_PROPERTY, String.class), "Page Sling Resource Type");
+    vm = rr.getResource("/content/test/second-page/jcr:content").adaptTo(ValueMap.class);
+    assertEquals("aem-modernize/components/structure/homepage", vm.get(JcrResourceConstants.SLING_RESOURCE_TYPE_PROPERTY, String.class), "Page Sling Resource Type");
+  }
+
+  @Test
+  public <P extends PageManager> void doProcessWorkersError() throws Exception {
+    final String path = ConversionJob.JOB_DATA_LOCATION + "/full/workers/buckets/bucket0";
+
+    new MockUp<P>() {
+      @Mock
+      public Revision createRevision(Page page, String label, String desc) {
+        if (page.getPath().equals("/content/test/first-page")) {
+          throw new IllegalStateException("Unexpected");
+        }
+        return revision;
+      }
+    };
+    FullConversionJobExecutor workers = new FullConversionJobExecutor();
+    Map<String, Object> props = new HashMap<>();
+    props.put("workers", 2);
+    context.registerInjectActivateService(workers, props);
+
+    ResourceResolver rr = context.resourceResolver();
+    ConversionJobBucket bucket = rr.getResource(path).adaptTo(ConversionJobBucket.class);
+    workers.doProcess(job, jobExecutionContext, bucket);
+
+    // The error fails its page, the worker continues with the next
+    assertEquals(Arrays.asList("/content/test/second-page"), bucket.getSuccess(), "Success list");
+    assertEquals(Arrays.asList("/content/test/not-found-page"), bucket.getNotFound(), "Not found list");
+    assertEquals(Arrays.asList("/content/test/first-page"), bucket.getFailed(), "Failed list");
+    rr.refresh();
+    ValueMap vm = rr.getResource("/content/test/second-page/jcr:content").adaptTo(ValueMap.class);
+    assertEquals("aem-modernize/components/structure/homepage", vm.get(JcrResourceConstants.SLING_RESOURCE_TYPE_PROPERTY, String.class), "Page Sling Resource Type");
+  }
+
+  @Test
+  public <P extends PageManager> void doProcessWorkersCopy() throws Exception {
+    final String path = ConversionJob.JOB_DATA_LOCATION + "/full/copyWorkers/buckets/bucket0";
+
+    new MockUp<P>() {
+      @Mock
+      public Revision createRevision(Page page, String label, String desc) {
+        return revision;
+      }
+
+      // Shallow copy, which requires the target's parent
+      @Mock
+      public Page copy(Invocation inv, Page page, String dest, String before, boolean shallow, boolean resolve, boolean commit) throws Exception {
+        ResourceResolver resolver = page.adaptTo(Resource.class).getResourceResolver();
+        Resource parent = resolver.getResource(PathUtils.getParentPath(dest));
+        if (parent == null) {
+          throw new WCMException("Target parent does not exist.");
+        }
+        Node node = parent.adaptTo(Node.class).addNode(PathUtils.getName(dest), NameConstants.NT_PAGE);
+        JcrUtil.copy(page.getContentResource().adaptTo(Node.class), node, NameConstants.NN_CONTENT);
+        return ((PageManager) inv.getInvokedInstance()).getPage(dest);
+      }
+    };
+    new Expectations() {{
+      revision.getId();
+      result = version;
+    }};
+
+    ResourceResolver rr = context.resourceResolver();
+    context.create().resource("/content/copy");
+    context.create().resource("/content/test/first-page/childPage/jcr:content",
+        JcrConstants.JCR_PRIMARYTYPE, "cq:PageContent",
+        NameConstants.PN_TEMPLATE, "/apps/aem-modernize/template/homepage",
+        JcrResourceConstants.SLING_RESOURCE_TYPE_PROPERTY, "aem-modernize/components/homepage");
+    rr.commit();
+
+    FullConversionJobExecutor workers = new FullConversionJobExecutor();
+    Map<String, Object> props = new HashMap<>();
+    props.put("workers", 2);
+    context.registerInjectActivateService(workers, props);
+
+    ConversionJobBucket bucket = rr.getResource(path).adaptTo(ConversionJobBucket.class);
+    workers.doProcess(job, jobExecutionContext, bucket);
+
+    // Child pages are copied by the worker which copied their parent
+    assertEquals(3, bucket.getSuccess().size(), "Success list");
+    assertTrue(bucket.getFailed().isEmpty(), "Failed list");
+    rr.refresh();
+    assertNotNull(rr.getResource("/content/copy/first-page/jcr:content"), "Parent copied");
+    assertNotNull(rr.getResource("/content/copy/first-page/childPage/jcr:content"), "Child copied");
+    assertNotNull(rr.getResource("/content/copy/second-page/jcr:content"), "Sibling copied");
+  }
 }
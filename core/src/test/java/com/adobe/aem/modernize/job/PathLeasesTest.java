@@ -0,0 +1,128 @@
+package com.adobe.aem.modernize.job;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2026 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.apache.sling.testing.mock.sling.junit5.SlingContext;
+import org.apache.sling.testing.mock.sling.junit5.SlingContextExtension;
+
+import com.adobe.aem.modernize.model.ConversionJob;
+import mockit.Expectations;
+import mockit.Mocked;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static com.adobe.aem.modernize.job.PathLeases.*;
+import static com.adobe.aem.modernize.model.ConversionJobBucket.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SlingContextExtension.class)
+public class PathLeasesTest {
+
+  private static final String FIRST = ConversionJob.JOB_DATA_LOCATION + "/job/buckets/bucket0";
+  private static final String SECOND = ConversionJob.JOB_DATA_LOCATION + "/job/buckets/bucket1";
+
+  private final SlingContext context = new SlingContext(ResourceResolverType.JCR_MOCK);
+
+  @Mocked
+  private JobManager jobManager;
+
+  @Mocked
+  private Job job;
+
+  @BeforeEach
+  public void beforeEach() throws Exception {
+    context.load().json("/job/component-job-data.json", ConversionJob.JOB_DATA_LOCATION + "/job");
+    context.create().resource(SECOND);
+    context.resourceResolver().commit();
+  }
+
+  @Test
+  public void overlappingPaths() {
+    assertTrue(overlaps("/content/site/en/*", Collections.singletonList("/content/site/en/*")), "Same path");
+    assertTrue(overlaps("/content/site/en/page/*", Collections.singletonList("/content/site/en/*")), "Descendant path");
+    assertTrue(overlaps("/content/site/*", Collections.singletonList("/content/site/en/*")), "Ancestor path");
+    assertTrue(overlaps("/conf/site/settings/*", Arrays.asList("/content/site/en/*", "/conf/site/*")), "Any path");
+    assertFalse(overlaps("/content/site/fr/*", Arrays.asList("/content/site/en/*", "/content/site/english/*")), "Sibling paths");
+  }
+
+  @Test
+  public void nodePaths() {
+    assertFalse(overlaps("/content/site/en", Arrays.asList("/content/site", "/content/site/jcr:content/*")), "Child page");
+    assertTrue(overlaps("/content/site", Collections.singletonList("/content/site")), "Same node");
+    assertTrue(overlaps("/content/site/en/jcr:content/par", Collections.singletonList("/content/site/en/jcr:content/*")), "Node within subtree");
+    assertTrue(overlaps("/content/*", Collections.singletonList("/content/site")), "Subtree containing node");
+    assertTrue(overlaps(subtree("/"), Collections.singletonList("/content/site")), "Root subtree");
+  }
+
+  @Test
+  public void acquireAndRelease() {
+    new Expectations() {{
+      jobManager.getJobById("first");
+      result = job;
+      job.getJobState();
+      result = Job.JobState.ACTIVE;
+    }};
+    PathLeases leases = new PathLeases(jobManager);
+    Resource first = context.resourceResolver().getResource(FIRST);
+    Resource second = context.resourceResolver().getResource(SECOND);
+
+    assertTrue(leases.tryAcquire(first, "first", Arrays.asList("/content/site/en/*", "/conf/site/*")), "First acquired");
+    assertFalse(leases.tryAcquire(second, "second", Collections.singletonList("/content/site/en/page/*")), "Conflict");
+    assertFalse(second.getValueMap().containsKey(PN_LEASES), "Conflicting leases not recorded");
+    assertTrue(leases.tryAcquire(second, "second", Collections.singletonList("/content/site/fr/*")), "Second acquired");
+
+    ValueMap vm = context.resourceResolver().getResource(ConversionJob.JOB_DATA_LOCATION).getValueMap();
+    assertArrayEquals(new String[] { FIRST, SECOND }, vm.get(PN_HOLDERS, String[].class), "Holders recorded");
+    vm = first.getValueMap();
+    assertEquals("first", vm.get(PN_JOB_ID, String.class), "Job Id recorded");
+    assertArrayEquals(new String[] { "/content/site/en/*", "/conf/site/*" }, vm.get(PN_LEASES, String[].class), "Leases recorded");
+
+    leases.release(first);
+    vm = context.resourceResolver().getResource(ConversionJob.JOB_DATA_LOCATION).getValueMap();
+    assertArrayEquals(new String[] { SECOND }, vm.get(PN_HOLDERS, String[].class), "Holder removed");
+    assertFalse(first.getValueMap().containsKey(PN_LEASES), "Leases removed");
+  }
+
+  @Test
+  public void inactiveHolder() {
+    new Expectations() {{
+      jobManager.getJobById("first");
+      result = null;
+    }};
+    PathLeases leases = new PathLeases(jobManager);
+    Resource first = context.resourceResolver().getResource(FIRST);
+    Resource second = context.resourceResolver().getResource(SECOND);
+
+    assertTrue(leases.tryAcquire(first, "first", Collections.singletonList("/content/site/*")), "First acquired");
+    assertTrue(leases.tryAcquire(second, "second", Collections.singletonList("/content/site/en/*")), "Inactive holder ignored");
+
+    ValueMap vm = context.resourceResolver().getResource(ConversionJob.JOB_DATA_LOCATION).getValueMap();
+    assertArrayEquals(new String[] { SECOND }, vm.get(PN_HOLDERS, String[].class), "Inactive holder discarded");
+  }
+}
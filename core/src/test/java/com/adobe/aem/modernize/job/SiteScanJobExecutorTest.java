@@ -0,0 +1,233 @@
+package com.adobe.aem.modernize.job;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2021 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.consumer.JobExecutionContext;
+import org.apache.sling.event.jobs.consumer.JobExecutionResult;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+
+import com.adobe.aem.modernize.MockRule;
+import com.adobe.aem.modernize.component.ComponentRewriteRuleService;
+import com.adobe.aem.modernize.model.ConversionJob;
+import com.adobe.aem.modernize.policy.PolicyImportRuleService;
+import com.adobe.aem.modernize.structure.StructureRewriteRuleService;
+import com.day.cq.wcm.api.NameConstants;
+import com.day.cq.wcm.api.designer.Designer;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+import mockit.Delegate;
+import mockit.Expectations;
+import mockit.Invocation;
+import mockit.Mock;
+import mockit.MockUp;
+import mockit.Mocked;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static com.adobe.aem.modernize.job.SiteScanJobExecutor.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(AemContextExtension.class)
+public class SiteScanJobExecutorTest {
+
+  private static final String CONTENT_PATH = "/content/test";
+  private static final String COMPONENT_RULE = "/apps/rules/component/simple";
+  private static final String TEMPLATE_RULE = "/apps/rules/template/homepage";
+
+  private final AemContext context = new AemContext(ResourceResolverType.JCR_MOCK);
+
+  private final SiteScanJobExecutor executor = new SiteScanJobExecutor();
+
+  @Mocked
+  private ComponentRewriteRuleService componentService;
+
+  @Mocked
+  private PolicyImportRuleService policyService;
+
+  @Mocked
+  private StructureRewriteRuleService structureService;
+
+  @Mocked
+  private Designer designer;
+
+  @Mocked
+  private Job job;
+
+  @Mocked
+  private JobExecutionContext jobExecutionContext;
+
+  @Mocked
+  private JobExecutionContext.ResultBuilder resultBuilder;
+
+  @Mocked
+  private JobExecutionResult executionResult;
+
+  @BeforeEach
+  public <R extends ResourceResolver> void beforeEach() {
+    context.registerService(ComponentRewriteRuleService.class, componentService);
+    context.registerService(PolicyImportRuleService.class, policyService);
+    context.registerService(StructureRewriteRuleService.class, structureService);
+    context.registerInjectActivateService(executor);
+    context.load().json("/servlet/page-content.json", CONTENT_PATH);
+
+    new MockUp<R>() {
+      @Mock
+      public <T> T adaptTo(Invocation inv, Class<T> clazz) {
+        if (clazz == Designer.class) {
+          return (T) designer;
+        } else {
+          return inv.proceed();
+        }
+      }
+    };
+  }
+
+  private void setupJob(String root) {
+    new Expectations() {{
+      job.getProperty(PN_ROOT, String.class);
+      result = root;
+      job.getProperty(PN_REPROCESS, false);
+      result = false;
+      minTimes = 0;
+      job.getProperty(PN_INCLUDE_SUPER_TYPES, false);
+      result = false;
+      minTimes = 0;
+      jobExecutionContext.result();
+      result = resultBuilder;
+      resultBuilder.message(anyString);
+      result = resultBuilder;
+    }};
+  }
+
+  private static Set<String> matching(Resource resource, String path, String rule) {
+    return path.equals(resource.getPath()) ? Collections.singleton(rule) : Collections.emptySet();
+  }
+
+  @Test
+  public void testMissingRoot() {
+    setupJob("/content/does-not-exist");
+    new Expectations() {{
+      resultBuilder.cancelled();
+      result = executionResult;
+    }};
+    assertEquals(executionResult, executor.process(job, jobExecutionContext), "Result was created.");
+    assertNull(context.resourceResolver().getResource(getScanPath("/content/does-not-exist")), "No scan stored");
+  }
+
+  @Test
+  public void testRootNotSite() {
+    setupJob("/");
+    new Expectations() {{
+      resultBuilder.cancelled();
+      result = executionResult;
+    }};
+    assertEquals(executionResult, executor.process(job, jobExecutionContext), "Result was created.");
+    assertNull(context.resourceResolver().getResource(getScanPath("/")), "No scan stored");
+  }
+
+  @Test
+  public void testScanPaths() {
+    assertEquals(SCAN_LOCATION + "/content/test/jcr:content", getScanPath("/content/test"), "Site scan path");
+    assertEquals(SCAN_LOCATION + "/jcr:content", getScanPath("/"), "Repository root scan path");
+    assertTrue(isScanRoot("/content/test"), "Site");
+    assertFalse(isScanRoot("/"), "Repository root");
+    assertFalse(isScanRoot("/content"), "Content root");
+    assertFalse(isScanRoot("/contentious"), "Sibling of content root");
+    assertFalse(isScanRoot("/apps/test"), "Outside of content");
+    assertFalse(isScanRoot("content/test"), "Relative path");
+  }
+
+  @Test
+  public void testScan() {
+    setupJob(CONTENT_PATH);
+    new Expectations() {{
+      designer.getStyle(withInstanceOf(Resource.class));
+      result = null;
+      designer.getDesignPath(withNotNull());
+      result = "/etc/designs/test";
+      structureService.listRules(withInstanceOf(Resource.class));
+      result = new Delegate<Set<String>>() {
+        Set<String> listRules(Resource resource) {
+          return matching(resource, CONTENT_PATH + "/jcr:content", TEMPLATE_RULE);
+        }
+      };
+      structureService.getRule(withInstanceOf(ResourceResolver.class), TEMPLATE_RULE);
+      result = new MockRule(TEMPLATE_RULE);
+      times = 1;
+      componentService.listRules(withInstanceOf(Resource.class));
+      result = new Delegate<Set<String>>() {
+        Set<String> listRules(Resource resource) {
+          return matching(resource, CONTENT_PATH + "/jcr:content/simple", COMPONENT_RULE);
+        }
+      };
+      componentService.getRule(withInstanceOf(ResourceResolver.class), COMPONENT_RULE);
+      result = new MockRule(COMPONENT_RULE);
+      times = 1;
+      resultBuilder.succeeded();
+      result = executionResult;
+    }};
+    assertEquals(executionResult, executor.process(job, jobExecutionContext), "Result was created.");
+
+    ResourceResolver rr = context.resourceResolver();
+    String scanPath = getScanPath(CONTENT_PATH);
+    ValueMap scan = rr.getResource(scanPath).getValueMap();
+    assertEquals(ConversionJob.Status.SUCCESS.name(), scan.get(PN_STATUS, String.class), "Scan status");
+    assertEquals(CONTENT_PATH, scan.get(PN_ROOT, String.class), "Scan root");
+    assertEquals(5L, scan.get(PN_PAGE_COUNT, 0L), "Page count");
+    assertEquals(Arrays.asList(TEMPLATE_RULE, COMPONENT_RULE), Arrays.asList(scan.get(PN_RULE_IDS, String[].class)), "Rule ids");
+    assertEquals(Arrays.asList(TEMPLATE_RULE, COMPONENT_RULE), Arrays.asList(scan.get(PN_RULE_TITLES, String[].class)), "Rule titles");
+
+    ValueMap home = rr.getResource(scanPath + CONTENT_PATH).getValueMap();
+    assertEquals(CONTENT_PATH, home.get(PN_PATH, String.class), "Page path");
+    assertEquals("English", home.get(NameConstants.PN_TITLE, String.class), "Page title");
+    assertEquals("/etc/designs/test", home.get(NameConstants.PN_DESIGN_PATH, String.class), "Design path");
+    assertArrayEquals(new String[] { TEMPLATE_RULE }, home.get(ConversionJob.PN_TEMPLATE_RULES, String[].class), "Template rules");
+    assertArrayEquals(new String[] { COMPONENT_RULE }, home.get(ConversionJob.PN_COMPONENT_RULES, String[].class), "Component rules");
+    assertEquals(1, home.get(PN_COMPONENT_PATHS, String[].class).length, "Component paths");
+    assertFalse(home.containsKey(ConversionJob.PN_POLICY_RULES), "No policy rules");
+
+    ValueMap products = rr.getResource(scanPath + CONTENT_PATH + "/products").getValueMap();
+    assertEquals("Products", products.get(NameConstants.PN_TITLE, String.class), "Page title");
+    assertFalse(products.containsKey(ConversionJob.PN_COMPONENT_RULES), "No component rules");
+    assertNull(rr.getResource(scanPath + CONTENT_PATH + "/notapage"), "Only pages stored");
+  }
+
+  @Test
+  public void testRescanReplaces() throws Exception {
+    context.create().resource(getScanPath(CONTENT_PATH) + "/stale", "path", "/content/stale");
+    setupJob(CONTENT_PATH);
+    new Expectations() {{
+      resultBuilder.succeeded();
+      result = executionResult;
+    }};
+    assertEquals(executionResult, executor.process(job, jobExecutionContext), "Result was created.");
+    assertNull(context.resourceResolver().getResource(getScanPath(CONTENT_PATH) + "/stale"), "Previous scan removed");
+    assertNotNull(context.resourceResolver().getResource(getScanPath(CONTENT_PATH) + CONTENT_PATH), "Pages stored");
+  }
+}
@@ -253,6 +253,14 @@ public class PolicyImportRuleServiceImplTest {
     assertEquals(0, callCounts[1], "Correct number of apply called.");
   }
 
+  @Test
+  public void testGetImportedPolicy() {
+    ResourceResolver rr = context.resourceResolver();
+    assertEquals("/conf/test/settings/wcm/policies/geometrixx/components/title/policy_1234",
+        policyImportRuleService.getImportedPolicy(rr.getResource("/etc/designs/all/jcr:content/homepage/par/title")), "Imported policy");
+    assertNull(policyImportRuleService.getImportedPolicy(rr.getResource("/etc/designs/all/jcr:content/homepage/title")), "Not imported");
+  }
+
   @Test
   public void testDeepApply() throws RewriteException {
     final boolean[] called = { false, false };
@@ -25,6 +25,7 @@ import java.util.Set;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
 import org.apache.sling.event.jobs.consumer.JobExecutionContext;
 import org.apache.sling.testing.mock.sling.ResourceResolverType;
 import org.apache.sling.testing.mock.sling.junit5.SlingContext;
@@ -53,12 +54,16 @@ public class PolicyJobExecutorTest {
   @Mocked
   private Job job;
 
+  @Mocked
+  private JobManager jobManager;
+
   @Mocked
   private JobExecutionContext jobExecutionContext;
 
   @BeforeEach
   public void beforeEach() {
     context.registerService(PolicyImportRuleService.class, policyService);
+    context.registerService(JobManager.class, jobManager);
     context.registerInjectActivateService(executor);
     context.load().json("/job/design-content.json", "/etc/designs/test");
     context.load().json("/job/policy-job-data.json", "/var/aem-modernize/job-data/policy");
@@ -31,6 +31,7 @@ import javax.jcr.Session;
 
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.apache.sling.testing.mock.sling.ResourceResolverType;
 import org.apache.sling.testing.mock.sling.junit5.SlingContext;
 import org.apache.sling.testing.mock.sling.junit5.SlingContextExtension;
@@ -398,6 +399,12 @@ public class AbstractRewriteRuleServiceTest {
       return Arrays.asList(RULE_PATHS);
     }
 
+    @NotNull
+    @Override
+    protected ResourceResolverFactory getResourceResolverFactory() {
+      return context.getService(ResourceResolverFactory.class);
+    }
+
     @Override
     protected @NotNull List<ServiceBasedRewriteRule> getServiceRules() {
       List<ServiceBasedRewriteRule> rules = new ArrayList<>();
@@ -0,0 +1,77 @@
+package com.adobe.aem.modernize.rule.impl;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2026 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedExpressionTest {
+
+  private final Map<String, String> mappings = Collections.singletonMap("titlePattern", "title_1");
+
+  @Test
+  public void testLiteral() {
+    assertNull(MappedExpression.compile("Some Value", false), "Literal value");
+    assertNull(MappedExpression.compile("${./jcr:title", false), "Unterminated expression");
+    assertNull(MappedExpression.compile("prefix ${./jcr:title}", false), "Embedded expression");
+  }
+
+  @Test
+  public void testSimple() {
+    MappedExpression expression = MappedExpression.compile("${./jcr:title}", false);
+    assertNotNull(expression, "Expression parsed");
+    assertFalse(expression.isNegate(mappings), "Not negated");
+    assertEquals("./jcr", expression.getPath(mappings), "Path stops at default separator");
+    assertEquals("title", expression.getDefaultValue(mappings), "Default value");
+
+    expression = MappedExpression.compile("!${'./jcr:title':Default}", false);
+    assertNotNull(expression, "Expression parsed");
+    assertTrue(expression.isNegate(mappings), "Negated");
+    assertEquals("./jcr:title", expression.getPath(mappings), "Quoted path");
+    assertEquals("Default", expression.getDefaultValue(mappings), "Default value");
+
+    expression = MappedExpression.compile("${text}", false);
+    assertNotNull(expression, "Expression parsed");
+    assertEquals("text", expression.getPath(mappings), "Path");
+    assertNull(expression.getDefaultValue(mappings), "No default");
+  }
+
+  @Test
+  public void testPatternReference() {
+    MappedExpression expression = MappedExpression.compile("${'./[pattern:titlePattern]/jcr:title'}", true);
+    assertNotNull(expression, "Expression parsed");
+    assertEquals("./title_1/jcr:title", expression.getPath(mappings), "Pattern reference resolved");
+    assertTrue(expression.isMapped(mappings), "Mapped expression");
+
+    expression = MappedExpression.compile("${./[pattern:textPattern]/text}", true);
+    assertNotNull(expression, "Expression parsed");
+    assertTrue(expression.isMapped(mappings), "Mapped expression");
+    assertEquals("./[pattern", expression.getPath(mappings), "Unmapped reference read as written");
+    assertEquals("textPattern]/text", expression.getDefaultValue(mappings), "Unmapped reference read as written");
+
+    expression = MappedExpression.compile("${./[pattern:titlePattern]/text}", false);
+    assertNotNull(expression, "Expression parsed");
+    assertEquals("./[pattern", expression.getPath(mappings), "References ignored outside aggregates");
+  }
+}
@@ -20,6 +20,8 @@ package com.adobe.aem.modernize.rule.impl;
  * #L%
  */
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import javax.jcr.Node;
@@ -36,6 +38,7 @@ import org.apache.sling.testing.mock.sling.junit5.SlingContextExtension;
 import com.adobe.aem.modernize.RewriteException;
 import com.adobe.aem.modernize.rule.RewriteRule;
 import com.day.cq.commons.jcr.JcrConstants;
+import com.day.cq.commons.jcr.JcrUtil;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -183,6 +186,86 @@ public class NodeBasedRewriteRuleTest {
     assertTrue(rule.matches(content), "Other Simple Like comparison");
   }
 
+  @Test
+  public void testMatchesDescendantTypes() throws Exception {
+    ResourceResolver rr = context.resourceResolver();
+    Node rule = createRule("descendantTypes");
+    rule.getNode(NN_PATTERNS + "/pattern").addNode("folder", JcrConstants.NT_FOLDER);
+    RewriteRule rewriteRule = new NodeBasedRewriteRule(rule);
+
+    Node content = rr.getResource(CONTENT_ROOT).adaptTo(Node.class).addNode("descendantTypes", JcrConstants.NT_UNSTRUCTURED);
+    content.setProperty("sling:resourceType", "test/descendantTypes");
+    Node folder = content.addNode("folder", JcrConstants.NT_FOLDER);
+    assertTrue(rewriteRule.matches(content), "Descendant compared with its own type");
+
+    folder.remove();
+    content.addNode("folder", JcrConstants.NT_UNSTRUCTURED);
+    assertFalse(rewriteRule.matches(content), "Descendant type differs");
+  }
+
+  @Test
+  public void testMatchesMultiValueProperties() throws Exception {
+    ResourceResolver rr = context.resourceResolver();
+    Node rule = createRule("multiValue");
+    rule.getNode(NN_PATTERNS + "/pattern").setProperty("tags", new String[] { "a", "b" });
+    RewriteRule rewriteRule = new NodeBasedRewriteRule(rule);
+
+    Node content = rr.getResource(CONTENT_ROOT).adaptTo(Node.class).addNode("multiValue", JcrConstants.NT_UNSTRUCTURED);
+    content.setProperty("sling:resourceType", "test/multiValue");
+    content.setProperty("tags", new String[] { "a", "b" });
+    assertTrue(rewriteRule.matches(content), "Same values");
+
+    content.setProperty("tags", new String[] { "a", "c" });
+    assertFalse(rewriteRule.matches(content), "Different values");
+
+    content.setProperty("tags", (Value[]) null);
+    content.setProperty("tags", "a");
+    assertFalse(rewriteRule.matches(content), "Single value");
+
+    rule.getNode(NN_PATTERNS + "/pattern").setProperty("tags", (Value[]) null);
+    rule.getNode(NN_PATTERNS + "/pattern").setProperty("tags", "a");
+    rewriteRule = new NodeBasedRewriteRule(rule);
+    content.setProperty("tags", (Value[]) null);
+    content.setProperty("tags", new String[] { "a" });
+    assertFalse(rewriteRule.matches(content), "Multiple values");
+  }
+
+  @Test
+  public void testRewriteMultiValueProperties() throws Exception {
+    ResourceResolver rr = context.resourceResolver();
+    Node rule = createRule("rewriteMultiValue");
+    Node replacement = rule.getNode(NN_REPLACEMENT + "/replacement");
+    replacement.setProperty("tags", new String[] { "prefix-a", "prefix-b" });
+    replacement.addNode(NN_CQ_REWRITE_PROPERTIES, JcrConstants.NT_UNSTRUCTURED).setProperty("tags", new String[] { "^prefix-(.*)", "$1" });
+    replacement.addNode(NN_CQ_REWRITE_MAP_PROPERTIES, JcrConstants.NT_UNSTRUCTURED).addNode("tags", JcrConstants.NT_UNSTRUCTURED).setProperty("prefix-a", "a");
+    RewriteRule rewriteRule = new NodeBasedRewriteRule(rule);
+
+    Node content = rr.getResource(CONTENT_ROOT).adaptTo(Node.class).addNode("rewriteMultiValue", JcrConstants.NT_UNSTRUCTURED);
+    content.setProperty("sling:resourceType", "test/rewriteMultiValue");
+    Node updated = rewriteRule.applyTo(content, new HashSet<>());
+    assertNotNull(updated, "Rewritten");
+    Value[] tags = updated.getProperty("tags").getValues();
+    assertEquals(2, tags.length, "Values kept");
+    assertEquals("prefix-a", tags[0].getString(), "Multi-valued property not rewritten");
+    assertEquals("prefix-b", tags[1].getString(), "Multi-valued property not rewritten");
+  }
+
+  @Test
+  public void testCompiledRuleDetachedFromDefinition() throws Exception {
+    ResourceResolver rr = context.resourceResolver();
+    Node ruleNode = rr.getResource(SIMPLE_ROOT + "/simple").adaptTo(Node.class);
+    RewriteRule rule = new NodeBasedRewriteRule(ruleNode);
+    ruleNode.remove();
+    ruleNode.getSession().save();
+
+    Node content = rr.getResource(CONTENT_ROOT + "/simple").adaptTo(Node.class);
+    assertTrue(rule.matches(content), "Matches without rule definition");
+    rule.applyTo(content, new HashSet<>());
+    content.getSession().save();
+    Node updated = rr.getResource(CONTENT_ROOT + "/simple").adaptTo(Node.class);
+    assertEquals("core/wcm/components/title/v2/title", updated.getProperty("sling:resourceType").getString(), "Property was updated");
+  }
+
   @Test
   public void testReplacementRemoved() throws Exception {
     ResourceResolver rr = context.resourceResolver();
@@ -484,4 +567,41 @@ public class NodeBasedRewriteRuleTest {
     assertTrue(updated.getProperty("textIsRich").getBoolean(), "textIsRich value");
     assertEquals("/content/dam/aem-modernize/portraits/jane_doe.jpg", updated.getProperty("fileReference").getString(), "fileReference value");
   }
+
+  @Test
+  public void testFindAggregateMatches() throws Exception {
+    ResourceResolver rr = context.resourceResolver();
+    Node parent = rr.getResource(CONTENT_ROOT + "/aggregate").adaptTo(Node.class);
+    NodeBasedRewriteRule rule = new NodeBasedRewriteRule(rr.getResource(AGGREGATE_ROOT + "/aggregate").adaptTo(Node.class));
+    assertTrue(rule.isAggregate(), "Aggregate rule");
+    assertEquals(Collections.singleton("title"), rule.findAggregateMatches(parent), "Single window found");
+
+    // Repeat the sequence, with one partial window between
+    Node title = parent.getNode("title");
+    JcrUtil.copy(title, parent, "title2");
+    JcrUtil.copy(parent.getNode("text"), parent, "text2");
+    JcrUtil.copy(title, parent, "title3");
+    JcrUtil.copy(parent.getNode("text"), parent, "text3");
+    JcrUtil.copy(parent.getNode("image"), parent, "image3");
+    assertEquals(new HashSet<>(Arrays.asList("title", "title3")), rule.findAggregateMatches(parent), "Windows found");
+
+    NodeIterator children = parent.getNodes();
+    while (children.hasNext()) {
+      Node child = children.nextNode();
+      assertEquals(rule.findAggregateMatches(parent).contains(child.getName()), rule.matches(child), "Scan agrees with match: " + child.getName());
+    }
+
+    rule = new NodeBasedRewriteRule(rr.getResource(SIMPLE_ROOT + "/simple").adaptTo(Node.class));
+    assertFalse(rule.isAggregate(), "Simple rule");
+    assertTrue(rule.findAggregateMatches(parent).isEmpty(), "Simple rules have no windows");
+  }
+
+  private Node createRule(String name) throws Exception {
+    Node rule = context.resourceResolver().getResource(SIMPLE_ROOT).adaptTo(Node.class).addNode(name, JcrConstants.NT_UNSTRUCTURED);
+    rule.addNode(NN_PATTERNS, JcrConstants.NT_UNSTRUCTURED).addNode("pattern", JcrConstants.NT_UNSTRUCTURED)
+        .setProperty("sling:resourceType", "test/" + name);
+    rule.addNode(NN_REPLACEMENT, JcrConstants.NT_UNSTRUCTURED).addNode("replacement", JcrConstants.NT_UNSTRUCTURED)
+        .setProperty("sling:resourceType", "test/replaced");
+    return rule;
+  }
 }
@@ -0,0 +1,55 @@
+package com.adobe.aem.modernize.rule.impl;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2026 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.BitSet;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResourceTypeTrieTest {
+
+  private BitSet collect(ResourceTypeTrie trie, String type) {
+    BitSet result = new BitSet();
+    trie.collect(type, result);
+    return result;
+  }
+
+  @Test
+  public void testSuffixMatching() {
+    ResourceTypeTrie trie = new ResourceTypeTrie();
+    assertTrue(trie.isEmpty(), "New trie is empty");
+    trie.add("foo/components/text", 0);
+    trie.add("components/text", 1);
+    trie.add("/apps/foo/components/text", 2);
+    trie.add("foo/components/title", 3);
+    trie.add("text", 4);
+    assertFalse(trie.isEmpty(), "Trie has types");
+
+    assertEquals(BitSet.valueOf(new long[] { 0b10111 }), collect(trie, "/apps/foo/components/text"), "Absolute type");
+    assertEquals(BitSet.valueOf(new long[] { 0b10011 }), collect(trie, "foo/components/text"), "Relative type");
+    assertEquals(BitSet.valueOf(new long[] { 0b10010 }), collect(trie, "bar/components/text"), "Other tenant");
+    assertEquals(BitSet.valueOf(new long[] { 0b10000 }), collect(trie, "richtext"), "Partial name");
+    assertEquals(BitSet.valueOf(new long[] { 0b01000 }), collect(trie, "foo/components/title"), "Different type");
+    assertTrue(collect(trie, "components").isEmpty(), "No match");
+    assertTrue(collect(trie, "").isEmpty(), "Empty type");
+  }
+}
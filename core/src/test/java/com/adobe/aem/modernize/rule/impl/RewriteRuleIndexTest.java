@@ -0,0 +1,126 @@
+package com.adobe.aem.modernize.rule.impl;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2026 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+
+import org.apache.jackrabbit.commons.flat.TreeTraverser;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.apache.sling.testing.mock.sling.junit5.SlingContext;
+import org.apache.sling.testing.mock.sling.junit5.SlingContextExtension;
+
+import com.adobe.aem.modernize.rule.RewriteRule;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SlingContextExtension.class)
+public class RewriteRuleIndexTest {
+
+  private static final String CONTENT_ROOT = "/content/test";
+  private static final String SIMPLE_ROOT = "/apps/test/rules/simple";
+  private static final String AGGREGATE_ROOT = "/apps/test/rules/aggregate";
+  public final SlingContext context = new SlingContext(ResourceResolverType.JCR_OAK);
+
+  private final RewriteRule wildcard = new RewriteRule() {
+    @Override
+    public String getId() {
+      return "wildcard";
+    }
+
+    @Override
+    public boolean matches(@NotNull Node root) {
+      return false;
+    }
+
+    @Override
+    public Node applyTo(@NotNull Node root, @NotNull Set<String> finalPaths) {
+      return root;
+    }
+  };
+
+  @BeforeEach
+  public void beforeEach() {
+    context.load().json("/rewrite/test-content.json", CONTENT_ROOT);
+    context.load().json("/rewrite/test-simple-rules.json", SIMPLE_ROOT);
+    context.load().json("/rewrite/test-aggregate-rules.json", AGGREGATE_ROOT);
+  }
+
+  private List<RewriteRule> loadRules() throws Exception {
+    List<RewriteRule> rules = new ArrayList<>();
+    ResourceResolver rr = context.resourceResolver();
+    for (String root : Arrays.asList(SIMPLE_ROOT, AGGREGATE_ROOT)) {
+      NodeIterator it = rr.getResource(root).adaptTo(Node.class).getNodes();
+      while (it.hasNext()) {
+        rules.add(new NodeBasedRewriteRule(it.nextNode()));
+      }
+    }
+    rules.add(wildcard);
+    return rules;
+  }
+
+  @Test
+  public void testCandidates() throws Exception {
+    RewriteRuleIndex index = new RewriteRuleIndex(loadRules());
+    ResourceResolver rr = context.resourceResolver();
+
+    List<RewriteRule> candidates = index.getCandidates(rr.getResource(CONTENT_ROOT + "/simple").adaptTo(Node.class));
+    assertEquals(2, candidates.size(), "Candidate count");
+    assertEquals(SIMPLE_ROOT + "/simple", candidates.get(0).getId(), "Typed rule");
+    assertEquals("wildcard", candidates.get(1).getId(), "Wildcard rule");
+
+    candidates = index.getCandidates(rr.getResource(CONTENT_ROOT + "/modernizeSimpleLike").adaptTo(Node.class));
+    assertEquals(2, candidates.size(), "Candidate count");
+    assertEquals(SIMPLE_ROOT + "/simpleLike", candidates.get(0).getId(), "Suffix typed rule");
+
+    candidates = index.getCandidates(rr.getResource(CONTENT_ROOT + "/rewriteOptional").adaptTo(Node.class));
+    assertEquals(3, candidates.size(), "Candidate count");
+    assertEquals(SIMPLE_ROOT + "/rewriteOptional", candidates.get(0).getId(), "Rule order preserved");
+    assertEquals(SIMPLE_ROOT + "/nestedRewriteOptional", candidates.get(1).getId(), "Rule order preserved");
+
+    candidates = index.getCandidates(rr.getResource(CONTENT_ROOT + "/aggregate").adaptTo(Node.class));
+    assertEquals(1, candidates.size(), "Untyped node candidate count");
+    assertEquals("wildcard", candidates.get(0).getId(), "Wildcard rule");
+  }
+
+  @Test
+  public void testCandidatesIncludeAllMatches() throws Exception {
+    List<RewriteRule> rules = loadRules();
+    RewriteRuleIndex index = new RewriteRuleIndex(rules);
+    Node root = context.resourceResolver().getResource(CONTENT_ROOT).adaptTo(Node.class);
+    for (Node node : new TreeTraverser(root)) {
+      List<RewriteRule> candidates = index.getCandidates(node);
+      for (RewriteRule rule : rules) {
+        if (rule.matches(node)) {
+          assertTrue(candidates.contains(rule), String.format("Rule [%s] candidate for [%s]", rule.getId(), node.getPath()));
+        }
+      }
+    }
+  }
+}
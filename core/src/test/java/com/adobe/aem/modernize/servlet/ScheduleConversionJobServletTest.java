@@ -20,17 +20,21 @@ package com.adobe.aem.modernize.servlet;
  * #L%
  */
 
+import java.lang.annotation.Annotation;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import javax.jcr.Session;
+import javax.jcr.Value;
 import javax.jcr.security.AccessControlManager;
 import javax.jcr.security.Privilege;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.jackrabbit.JcrConstants;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.event.jobs.JobManager;
 import org.apache.sling.jcr.api.SlingRepository;
@@ -43,6 +47,7 @@ import com.adobe.aem.modernize.job.AbstractConversionJobExecutor;
 import com.adobe.aem.modernize.job.FullConversionJobExecutor;
 import com.adobe.aem.modernize.model.ConversionJob;
 import com.adobe.aem.modernize.model.ConversionJobBucket;
+import com.day.cq.wcm.api.NameConstants;
 import com.day.cq.wcm.api.Page;
 import com.day.cq.wcm.api.PageManager;
 import com.day.cq.wcm.api.designer.Designer;
@@ -56,9 +61,11 @@ import mockit.Mock;
 import mockit.MockUp;
 import mockit.Mocked;
 import mockit.Tested;
+import mockit.Verifications;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.osgi.framework.BundleContext;
+import org.osgi.service.cm.ConfigurationException;
 import static com.adobe.aem.modernize.model.ConversionJob.PageHandling.*;
 import static org.apache.sling.api.SlingHttpServletResponse.*;
 import static org.junit.jupiter.api.Assertions.*;
@@ -482,4 +489,250 @@ public class ScheduleConversionJobServletTest {
     Map<String, Object> jobProps = jobProperties.get(0);
     assertEquals(path + "/buckets/bucket", jobProps.get(AbstractConversionJobExecutor.PN_TRACKING_PATH).toString(), "Job has tracking node path.");
   }
+
+  @Test
+  public void testBucketsByCost() throws Exception {
+    context.create().resource("/content/cost/light1/jcr:content");
+    context.create().resource("/content/cost/heavy/jcr:content");
+    for (int i = 0; i < 5; i++) {
+      context.create().resource("/content/cost/heavy/jcr:content/component" + i);
+    }
+    context.create().resource("/content/cost/light2/jcr:content");
+    context.create().resource("/content/cost/light3/jcr:content");
+
+    servlet.activate(new ScheduleConversionJobServlet.Config() {
+      @Override
+      public int bucket_size() {
+        return 500;
+      }
+
+      @Override
+      public long bucket_cost() {
+        return 6;
+      }
+
+      @Override
+      public Class<? extends Annotation> annotationType() {
+        return ScheduleConversionJobServlet.Config.class;
+      }
+    });
+    assertCostBuckets(servlet);
+  }
+
+  @Test
+  public void testBucketsByDefaultCost() throws Exception {
+    context.create().resource("/content/cost/light1/jcr:content");
+    context.create().resource("/content/cost/heavy/jcr:content");
+    for (int i = 1; i < 2000; i++) {
+      context.create().resource("/content/cost/heavy/jcr:content/component" + i);
+    }
+    context.create().resource("/content/cost/light2/jcr:content");
+    context.create().resource("/content/cost/light3/jcr:content");
+
+    context.registerService(JobManager.class, jobManager);
+    assertCostBuckets(context.registerInjectActivateService(new ScheduleConversionJobServlet()));
+  }
+
+  private <S extends Session> void assertCostBuckets(ScheduleConversionJobServlet servlet) throws Exception {
+    MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(context.resourceResolver(), bundleContext);
+    MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+    ScheduleConversionJobServlet.RequestData requestData = buildJobData();
+    requestData.setType(ConversionJob.Type.FULL);
+    requestData.setPaths(new String[] { "/content/cost/light1", "/content/cost/heavy", "/content/cost/light2", "/content/cost/light3" });
+    Map<String, Object> params = new HashMap<>();
+    params.put("data", new ObjectMapper().writeValueAsString(requestData));
+    request.setParameterMap(params);
+
+    new MockUp<S>() {
+      @Mock
+      public AccessControlManager getAccessControlManager() {
+        return accessControlManager;
+      }
+    };
+    new Expectations() {{
+      accessControlManager.hasPrivileges(anyString, withInstanceOf(Privilege[].class));
+      result = true;
+    }};
+    servlet.doPost(request, response);
+    ScheduleConversionJobServlet.ResponseData result = new ObjectMapper().readValue(response.getOutputAsString(), ScheduleConversionJobServlet.ResponseData.class);
+    assertEquals(SC_OK, response.getStatus(), "Correct response code.");
+
+    Session session = context.resourceResolver().adaptTo(Session.class);
+    String path = result.getJob();
+    assertEquals(1, session.getProperty(path + "/buckets/bucket/" + ConversionJobBucket.PN_PATHS).getValues().length, "Light page before heavy page");
+    assertEquals("/content/cost/heavy", session.getProperty(path + "/buckets/bucket0/" + ConversionJobBucket.PN_PATHS).getValues()[0].getString(), "Heavy page on its own");
+    assertEquals(1, session.getProperty(path + "/buckets/bucket0/" + ConversionJobBucket.PN_PATHS).getValues().length, "Heavy page on its own");
+    assertEquals(2, session.getProperty(path + "/buckets/bucket1/" + ConversionJobBucket.PN_PATHS).getValues().length, "Light pages together");
+    assertFalse(session.nodeExists(path + "/buckets/bucket2"), "Bucket count");
+  }
+
+  @Test
+  public void testInvalidBucketCost() {
+    assertThrows(ConfigurationException.class, () -> servlet.activate(new ScheduleConversionJobServlet.Config() {
+      @Override
+      public int bucket_size() {
+        return 500;
+      }
+
+      @Override
+      public long bucket_cost() {
+        return 2001;
+      }
+
+      @Override
+      public Class<? extends Annotation> annotationType() {
+        return ScheduleConversionJobServlet.Config.class;
+      }
+    }));
+  }
+
+  @Test
+  public void testInvalidBucketSize() {
+    assertThrows(ConfigurationException.class, () -> servlet.activate(new ScheduleConversionJobServlet.Config() {
+      @Override
+      public int bucket_size() {
+        return 0;
+      }
+
+      @Override
+      public long bucket_cost() {
+        return 0;
+      }
+
+      @Override
+      public Class<? extends Annotation> annotationType() {
+        return ScheduleConversionJobServlet.Config.class;
+      }
+    }));
+  }
+
+  @Test
+  public <S extends Session> void testExpandsRoot() throws Exception {
+    for (String name : new String[] { "first", "second", "skipped", "third" }) {
+      context.create().resource("/content/site/" + name, JcrConstants.JCR_PRIMARYTYPE, NameConstants.NT_PAGE);
+      context.create().resource("/content/site/" + name + "/jcr:content", JcrConstants.JCR_PRIMARYTYPE, "cq:PageContent");
+    }
+    context.create().resource("/content/site/first/child", JcrConstants.JCR_PRIMARYTYPE, NameConstants.NT_PAGE);
+    context.create().resource("/content/site/first/child/jcr:content", JcrConstants.JCR_PRIMARYTYPE, "cq:PageContent");
+    context.create().resource("/content/other", JcrConstants.JCR_PRIMARYTYPE, NameConstants.NT_PAGE);
+    context.create().resource("/content/other/jcr:content", JcrConstants.JCR_PRIMARYTYPE, "cq:PageContent");
+
+    servlet.activate(new ScheduleConversionJobServlet.Config() {
+      @Override
+      public int bucket_size() {
+        return 2;
+      }
+
+      @Override
+      public long bucket_cost() {
+        return 0;
+      }
+
+      @Override
+      public Class<? extends Annotation> annotationType() {
+        return ScheduleConversionJobServlet.Config.class;
+      }
+    });
+
+    MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(context.resourceResolver(), bundleContext);
+    MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+    ScheduleConversionJobServlet.RequestData requestData = buildJobData();
+    requestData.setType(ConversionJob.Type.FULL);
+    requestData.setPolicyRules(new String[] {});
+    requestData.setPaths(null);
+    requestData.setRoot("/content/site");
+    requestData.setIncludes(new String[] { "/content/site/.*" });
+    requestData.setExcludes(new String[] { ".*/skipped" });
+    Map<String, Object> params = new HashMap<>();
+    params.put("data", new ObjectMapper().writeValueAsString(requestData));
+    request.setParameterMap(params);
+
+    List<String> checked = new ArrayList<>();
+    new MockUp<S>() {
+      @Mock
+      public AccessControlManager getAccessControlManager() {
+        return accessControlManager;
+      }
+    };
+    new Expectations() {{
+      accessControlManager.hasPrivileges(withCapture(checked), withInstanceOf(Privilege[].class));
+      result = true;
+    }};
+    servlet.doPost(request, response);
+    ScheduleConversionJobServlet.ResponseData result = new ObjectMapper().readValue(response.getOutputAsString(), ScheduleConversionJobServlet.ResponseData.class);
+    assertEquals(SC_OK, response.getStatus(), "Correct response code.");
+
+    Session session = context.resourceResolver().adaptTo(Session.class);
+    String path = result.getJob();
+    List<String> paths = new ArrayList<>();
+    for (String bucket : new String[] { "bucket", "bucket0" }) {
+      for (Value value : session.getProperty(path + "/buckets/" + bucket + "/" + ConversionJobBucket.PN_PATHS).getValues()) {
+        paths.add(value.getString());
+      }
+    }
+    assertFalse(session.nodeExists(path + "/buckets/bucket1"), "Bucket count");
+    assertEquals(Arrays.asList("/content/site/first", "/content/site/first/child", "/content/site/second", "/content/site/third"), paths, "Expanded paths");
+    assertTrue(checked.contains("/content/site"), "Root permissions checked");
+    assertTrue(checked.contains("/content/site/third"), "Page permissions checked");
+    assertFalse(checked.contains("/content/site/skipped"), "Excluded page not checked");
+  }
+
+  @Test
+  public <S extends Session> void testExpandsNoPages() throws Exception {
+    context.create().resource("/content/site/first", JcrConstants.JCR_PRIMARYTYPE, NameConstants.NT_PAGE);
+    context.create().resource("/content/site/first/jcr:content", JcrConstants.JCR_PRIMARYTYPE, "cq:PageContent");
+
+    MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(context.resourceResolver(), bundleContext);
+    MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+    ScheduleConversionJobServlet.RequestData requestData = buildJobData();
+    requestData.setType(ConversionJob.Type.FULL);
+    requestData.setPaths(null);
+    requestData.setRoot("/content/site");
+    requestData.setExcludes(new String[] { ".*" });
+    Map<String, Object> params = new HashMap<>();
+    params.put("data", new ObjectMapper().writeValueAsString(requestData));
+    request.setParameterMap(params);
+
+    new MockUp<S>() {
+      @Mock
+      public AccessControlManager getAccessControlManager() {
+        return accessControlManager;
+      }
+    };
+    new Expectations() {{
+      accessControlManager.hasPrivileges(anyString, withInstanceOf(Privilege[].class));
+      result = true;
+    }};
+    servlet.doPost(request, response);
+    assertEquals(SC_BAD_REQUEST, response.getStatus(), "Correct response code.");
+
+    Calendar today = Calendar.getInstance();
+    String path = String.format("%s/%s/%s/%s",
+        ConversionJob.JOB_DATA_LOCATION,
+        ConversionJob.Type.FULL.name().toLowerCase(),
+        new SimpleDateFormat("yyyy/MM/dd").format(today.getTime()),
+        "test-job");
+    assertFalse(context.resourceResolver().adaptTo(Session.class).nodeExists(path), "Tracking node removed.");
+    new Verifications() {{
+      jobManager.addJob(anyString, (Map<String, Object>) any);
+      times = 0;
+    }};
+  }
+
+  @Test
+  public void testInvalidFilter() throws Exception {
+    MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(context.resourceResolver(), bundleContext);
+    MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+    ScheduleConversionJobServlet.RequestData requestData = buildJobData();
+    requestData.setType(ConversionJob.Type.FULL);
+    requestData.setPaths(null);
+    requestData.setRoot("/content/site");
+    requestData.setIncludes(new String[] { "/content/site/(" });
+    Map<String, Object> params = new HashMap<>();
+    params.put("data", new ObjectMapper().writeValueAsString(requestData));
+    request.setParameterMap(params);
+
+    servlet.doPost(request, response);
+    assertEquals(SC_BAD_REQUEST, response.getStatus(), "Correct response code.");
+  }
 }
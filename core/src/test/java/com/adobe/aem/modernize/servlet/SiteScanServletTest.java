@@ -0,0 +1,294 @@
+package com.adobe.aem.modernize.servlet;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2021 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.jcr.Session;
+import javax.jcr.security.AccessControlManager;
+import javax.jcr.security.Privilege;
+
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+
+import com.adobe.aem.modernize.model.ConversionJob;
+import com.day.cq.wcm.api.NameConstants;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+import mockit.Expectations;
+import mockit.Injectable;
+import mockit.Mock;
+import mockit.MockUp;
+import mockit.Mocked;
+import mockit.Tested;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.osgi.framework.BundleContext;
+import static com.adobe.aem.modernize.job.SiteScanJobExecutor.*;
+import static javax.servlet.http.HttpServletResponse.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(AemContextExtension.class)
+public class SiteScanServletTest {
+
+  private static final String CONTENT_PATH = "/content/test";
+  private static final String RULE = "/apps/rules/component/simple";
+  private static final Calendar FINISHED = Calendar.getInstance();
+
+  private final AemContext context = new AemContext(ResourceResolverType.JCR_MOCK);
+
+  @Mocked
+  private BundleContext bundleContext;
+
+  @Mocked
+  private AccessControlManager accessControlManager;
+
+  @Injectable
+  private JobManager jobManager;
+
+  @Tested
+  private SiteScanServlet servlet;
+
+  @BeforeEach
+  public void beforeEach() {
+    context.load().json("/servlet/page-content.json", CONTENT_PATH);
+  }
+
+  private void createScan(String status) {
+    String scan = getScanPath(CONTENT_PATH);
+    context.create().resource(scan,
+        PN_ROOT, CONTENT_PATH,
+        PN_REPROCESS, false,
+        PN_INCLUDE_SUPER_TYPES, false,
+        PN_STATUS, status,
+        PN_FINISHED, FINISHED,
+        PN_RULE_IDS, new String[] { RULE },
+        PN_RULE_TITLES, new String[] { "Simple" });
+    context.create().resource(scan + CONTENT_PATH,
+        PN_PATH, CONTENT_PATH,
+        NameConstants.PN_TITLE, "English");
+    context.create().resource(scan + CONTENT_PATH + "/products",
+        PN_PATH, CONTENT_PATH + "/products",
+        NameConstants.PN_TITLE, "Products",
+        NameConstants.PN_DESIGN_PATH, "/etc/designs/test",
+        ConversionJob.PN_COMPONENT_RULES, new String[] { RULE },
+        PN_COMPONENT_PATHS, new String[] { CONTENT_PATH + "/products/jcr:content/simple" });
+    context.create().resource(scan + CONTENT_PATH + "/products/square",
+        PN_PATH, CONTENT_PATH + "/products/square",
+        NameConstants.PN_TITLE, "Square");
+    context.create().resource(scan + CONTENT_PATH + "/products/deleted",
+        PN_PATH, CONTENT_PATH + "/products/deleted",
+        NameConstants.PN_TITLE, "Deleted");
+  }
+
+  private MockSlingHttpServletRequest request(Map<String, Object> params) {
+    MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(context.resourceResolver(), bundleContext);
+    request.setParameterMap(params);
+    return request;
+  }
+
+  @Test
+  public void testNoScan() throws Exception {
+    Map<String, Object> params = new HashMap<>();
+    params.put("path", CONTENT_PATH);
+    MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+    servlet.doGet(request(params), response);
+
+    assertEquals(SC_NOT_FOUND, response.getStatus(), "Response code");
+    assertEquals("NONE", new ObjectMapper().readTree(response.getOutputAsString()).get("status").asText(), "Status");
+  }
+
+  @Test
+  public void testOptionsMismatch() throws Exception {
+    createScan(ConversionJob.Status.SUCCESS.name());
+    Map<String, Object> params = new HashMap<>();
+    params.put("path", CONTENT_PATH);
+    params.put(PN_REPROCESS, "true");
+    MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+    servlet.doGet(request(params), response);
+    assertEquals(SC_NOT_FOUND, response.getStatus(), "Response code");
+  }
+
+  @Test
+  public void testScanRunning() throws Exception {
+    createScan(ConversionJob.Status.ACTIVE.name());
+    Map<String, Object> params = new HashMap<>();
+    params.put("path", CONTENT_PATH + "/products");
+    MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+    servlet.doGet(request(params), response);
+
+    JsonNode result = new ObjectMapper().readTree(response.getOutputAsString());
+    assertEquals(SC_OK, response.getStatus(), "Response code");
+    assertEquals(ConversionJob.Status.ACTIVE.name(), result.get("status").asText(), "Status");
+    assertEquals(0, result.get("pages").size(), "No pages");
+  }
+
+  @Test
+  public <S extends Session> void testReadScan() throws Exception {
+    createScan(ConversionJob.Status.SUCCESS.name());
+    new MockUp<S>() {
+      @Mock
+      public AccessControlManager getAccessControlManager() {
+        return accessControlManager;
+      }
+    };
+    new Expectations() {{
+      accessControlManager.hasPrivileges(CONTENT_PATH + "/products", withInstanceOf(Privilege[].class));
+      result = true;
+      accessControlManager.hasPrivileges("/etc/designs/test", withInstanceOf(Privilege[].class));
+      result = true;
+      accessControlManager.hasPrivileges(CONTENT_PATH + "/products/square", withInstanceOf(Privilege[].class));
+      result = false;
+    }};
+
+    Map<String, Object> params = new HashMap<>();
+    params.put("path", CONTENT_PATH + "/products");
+    MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+    servlet.doGet(request(params), response);
+
+    JsonNode result = new ObjectMapper().readTree(response.getOutputAsString());
+    assertEquals(SC_OK, response.getStatus(), "Response code");
+    assertEquals(ConversionJob.Status.SUCCESS.name(), result.get("status").asText(), "Status");
+    assertEquals(FINISHED.getTimeInMillis(), result.get("finished").asLong(), "Finished time");
+    JsonNode pages = result.get("pages");
+    assertEquals(2, pages.size(), "Pages under the path, which exist");
+
+    JsonNode products = pages.get(0);
+    assertEquals(CONTENT_PATH + "/products", products.get("path").asText(), "Page path");
+    assertEquals("Products", products.get("title").asText(), "Page title");
+    assertTrue(products.get("hasPermission").asBoolean(), "Page permission");
+    assertTrue(products.get("hasDesignPermission").asBoolean(), "Design permission");
+    assertEquals(RULE, products.get("componentRules").get(0).get("id").asText(), "Rule id");
+    assertEquals("Simple", products.get("componentRules").get(0).get("title").asText(), "Rule title");
+    assertEquals(1, products.get("componentPaths").size(), "Component paths");
+    assertEquals(0, products.get("templateRules").size(), "Template rules");
+
+    JsonNode square = pages.get(1);
+    assertEquals(CONTENT_PATH + "/products/square", square.get("path").asText(), "Page path");
+    assertFalse(square.get("hasPermission").asBoolean(), "Page permission");
+  }
+
+  @Test
+  public void testStartScan() throws Exception {
+    List<Map<String, Object>> jobProperties = new ArrayList<>();
+    new Expectations() {{
+      jobManager.addJob(JOB_TOPIC, withCapture(jobProperties));
+    }};
+    Map<String, Object> params = new HashMap<>();
+    params.put(PN_ROOT, CONTENT_PATH);
+    params.put(PN_INCLUDE_SUPER_TYPES, "true");
+    MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+    servlet.doPost(request(params), response);
+
+    assertEquals(SC_OK, response.getStatus(), "Response code");
+    assertEquals(1, jobProperties.size(), "Job scheduled");
+    assertEquals(CONTENT_PATH, jobProperties.get(0).get(PN_ROOT), "Job root");
+    assertEquals(false, jobProperties.get(0).get(PN_REPROCESS), "Job reprocess option");
+    assertEquals(true, jobProperties.get(0).get(PN_INCLUDE_SUPER_TYPES), "Job super types option");
+  }
+
+  @Test
+  public void testStartRunningScan(@Mocked Job job) throws Exception {
+    new Expectations() {{
+      jobManager.findJobs(JobManager.QueryType.ALL, JOB_TOPIC, -1, Collections.singletonMap(PN_ROOT, CONTENT_PATH));
+      result = Collections.singletonList(job);
+      job.getProperty(PN_REPROCESS, false);
+      result = false;
+      job.getProperty(PN_INCLUDE_SUPER_TYPES, false);
+      result = false;
+      job.getJobState();
+      result = Job.JobState.QUEUED;
+      jobManager.addJob(anyString, (Map<String, Object>) any);
+      times = 0;
+    }};
+    Map<String, Object> params = new HashMap<>();
+    params.put(PN_ROOT, CONTENT_PATH);
+    MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+    servlet.doPost(request(params), response);
+    assertEquals(SC_OK, response.getStatus(), "Response code");
+    assertEquals(ConversionJob.Status.WAITING.name(), new ObjectMapper().readTree(response.getOutputAsString()).get("status").asText(), "Queued scan");
+  }
+
+  @Test
+  public void testStartStaleScan() throws Exception {
+    createScan(ConversionJob.Status.ACTIVE.name());
+    new Expectations() {{
+      jobManager.findJobs(JobManager.QueryType.ALL, JOB_TOPIC, -1, (Map<String, Object>[]) any);
+      result = Collections.emptyList();
+      jobManager.addJob(JOB_TOPIC, (Map<String, Object>) any);
+      times = 1;
+    }};
+    Map<String, Object> params = new HashMap<>();
+    params.put(PN_ROOT, CONTENT_PATH);
+    MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+    servlet.doPost(request(params), response);
+    assertEquals(SC_OK, response.getStatus(), "Response code");
+  }
+
+  @Test
+  public void testStartMissingRoot() throws Exception {
+    Map<String, Object> params = new HashMap<>();
+    params.put(PN_ROOT, "/content/does-not-exist");
+    MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+    servlet.doPost(request(params), response);
+    assertEquals(SC_BAD_REQUEST, response.getStatus(), "Response code");
+  }
+
+  @Test
+  public void testStartInvalidRoot() throws Exception {
+    new Expectations() {{
+      jobManager.addJob(anyString, (Map<String, Object>) any);
+      times = 0;
+    }};
+    for (String root : new String[] { "/", "/content", "/content/..", "/apps", "/content/test/../../apps" }) {
+      Map<String, Object> params = new HashMap<>();
+      params.put(PN_ROOT, root);
+      MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+      servlet.doPost(request(params), response);
+      assertEquals(SC_BAD_REQUEST, response.getStatus(), "Response code: " + root);
+    }
+  }
+
+  @Test
+  public void testStartNormalizesRoot() throws Exception {
+    List<Map<String, Object>> jobProperties = new ArrayList<>();
+    new Expectations() {{
+      jobManager.addJob(JOB_TOPIC, withCapture(jobProperties));
+    }};
+    Map<String, Object> params = new HashMap<>();
+    params.put(PN_ROOT, CONTENT_PATH + "/products/../");
+    MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+    servlet.doPost(request(params), response);
+
+    assertEquals(SC_OK, response.getStatus(), "Response code");
+    assertEquals(CONTENT_PATH, jobProperties.get(0).get(PN_ROOT), "Job root");
+  }
+}
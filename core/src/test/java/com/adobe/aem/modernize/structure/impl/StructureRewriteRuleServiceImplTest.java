@@ -22,6 +22,7 @@ package com.adobe.aem.modernize.structure.impl;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import javax.jcr.Node;
 
@@ -30,13 +31,16 @@ import org.apache.sling.testing.mock.sling.ResourceResolverType;
 
 import com.adobe.aem.modernize.structure.StructureRewriteRule;
 import com.adobe.aem.modernize.structure.StructureRewriteRuleService;
+import com.adobe.aem.modernize.structure.rule.PageRewriteRule;
 import io.wcm.testing.mock.aem.junit5.AemContext;
 import io.wcm.testing.mock.aem.junit5.AemContextExtension;
 import mockit.Expectations;
 import mockit.Mocked;
+import mockit.Verifications;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import static org.junit.jupiter.api.Assertions.*;
 
 @ExtendWith(AemContextExtension.class)
 public class StructureRewriteRuleServiceImplTest {
@@ -88,4 +92,61 @@ public class StructureRewriteRuleServiceImplTest {
     rules.add("NotMatchedStructureRewriteRule");
     service.apply(page, rules);
   }
+
+  @Test
+  public void applyIndexed(@Mocked PageRewriteRule indexedRewriteRule) throws Exception {
+    new Expectations() {{
+      indexedRewriteRule.getId();
+      result = "IndexedStructureRewriteRule";
+      indexedRewriteRule.getRanking();
+      result = 1;
+    }};
+    Map<String, Object> props = new HashMap<>();
+    props.put("static.template", "/apps/aem-modernize/templates/homepage");
+    props.put("sling.resourceType", "aem-modernize/components/homepage");
+    props.put("allowed.paths", new String[] { "/content/other", "/content/test/match" });
+    context.registerService(StructureRewriteRule.class, indexedRewriteRule, props);
+
+    Set<String> rules = new HashSet<>();
+    rules.add("IndexedStructureRewriteRule");
+    rules.add("MatchedStructureRewriteRule");
+    rules.add("NotMatchedStructureRewriteRule");
+    assertTrue(service.apply(context.resourceResolver().getResource("/content/test/matches"), rules), "Indexed rule applied");
+    assertFalse(service.apply(context.resourceResolver().getResource("/content/test/doesNotMatchTemplate"), rules), "Template");
+    assertFalse(service.apply(context.resourceResolver().getResource("/content/test/doesNotMatchResourceType"), rules), "Resource type");
+
+    new Verifications() {{
+      indexedRewriteRule.matches(withInstanceOf(Node.class));
+      times = 0;
+      indexedRewriteRule.applyTo(withInstanceOf(Node.class), withInstanceOf(Set.class));
+      times = 1;
+    }};
+  }
+
+  @Test
+  public void applyNotIndexed(@Mocked StructureRewriteRule customRewriteRule) throws Exception {
+    new Expectations() {{
+      customRewriteRule.getId();
+      result = "CustomStructureRewriteRule";
+      customRewriteRule.getRanking();
+      result = 1;
+      customRewriteRule.matches(withInstanceOf(Node.class));
+      result = false;
+    }};
+    Map<String, Object> props = new HashMap<>();
+    props.put("static.template", "/apps/aem-modernize/templates/homepage");
+    props.put("sling.resourceType", "aem-modernize/components/homepage");
+    context.registerService(StructureRewriteRule.class, customRewriteRule, props);
+
+    Set<String> rules = new HashSet<>();
+    rules.add("CustomStructureRewriteRule");
+    rules.add("MatchedStructureRewriteRule");
+    rules.add("NotMatchedStructureRewriteRule");
+    assertFalse(service.apply(context.resourceResolver().getResource("/content/test/matches"), rules), "Custom rule not applied");
+
+    new Verifications() {{
+      customRewriteRule.applyTo(withInstanceOf(Node.class), withInstanceOf(Set.class));
+      times = 0;
+    }};
+  }
 }
@@ -0,0 +1,73 @@
+package com.adobe.aem.modernize.structure.impl;
+
+/*-
+ * #%L
+ * AEM Modernize Tools - Core
+ * %%
+ * Copyright (C) 2019 - 2021 Adobe Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TemplateRuleIndexTest {
+
+  private static final String TEMPLATE = "/apps/aem-modernize/templates/homepage";
+  private static final String RESOURCE_TYPE = "aem-modernize/components/homepage";
+
+  @Test
+  public void find() {
+    Map<String, Map<String, Object>> rules = new HashMap<>();
+    rules.put("any", rule(TEMPLATE, RESOURCE_TYPE));
+    rules.put("empty", rule(TEMPLATE, RESOURCE_TYPE, new String[0]));
+    rules.put("site", rule(TEMPLATE, RESOURCE_TYPE, "/content/site/en", "/content/other"));
+    rules.put("prefix", rule(TEMPLATE, RESOURCE_TYPE, "/content/site/e"));
+    rules.put("children", rule(TEMPLATE, RESOURCE_TYPE, "/content/site/"));
+    rules.put("relative", rule(TEMPLATE, RESOURCE_TYPE, "content/site"));
+    rules.put("products", rule("/apps/aem-modernize/templates/products", RESOURCE_TYPE));
+    rules.put("unindexed", Collections.singletonMap("service.pid", "unindexed"));
+    TemplateRuleIndex index = new TemplateRuleIndex(rules);
+
+    assertTrue(index.isIndexed("site"), "Indexed");
+    assertFalse(index.isIndexed("unindexed"), "Not indexed");
+
+    Set<String> found = index.find(TEMPLATE, RESOURCE_TYPE, "/content/site/en/page/jcr:content");
+    assertEquals(Set.of("any", "empty", "site", "prefix", "children"), found, "Allowed paths");
+    found = index.find(TEMPLATE, RESOURCE_TYPE, "/content/site/english/jcr:content");
+    assertEquals(Set.of("any", "empty", "site", "prefix", "children"), found, "String prefix");
+    found = index.find(TEMPLATE, RESOURCE_TYPE, "/content/site/fr/jcr:content");
+    assertEquals(Set.of("any", "empty", "children"), found, "Other language");
+    found = index.find(TEMPLATE, RESOURCE_TYPE, "/content/sites/jcr:content");
+    assertEquals(Set.of("any", "empty"), found, "Other site");
+    assertEquals(Set.of("products"), index.find("/apps/aem-modernize/templates/products", RESOURCE_TYPE, "/content/site/jcr:content"), "Template");
+    assertTrue(index.find(TEMPLATE, "aem-modernize/components/page", "/content/site/jcr:content").isEmpty(), "Resource type");
+    assertTrue(index.find(null, RESOURCE_TYPE, "/content/site/jcr:content").isEmpty(), "No template");
+  }
+
+  private static Map<String, Object> rule(String template, String resourceType, String... allowed) {
+    Map<String, Object> props = new HashMap<>();
+    props.put(TemplateRuleIndex.PN_STATIC_TEMPLATE, template);
+    props.put(TemplateRuleIndex.PN_SLING_RESOURCE_TYPE, resourceType);
+    if (allowed.length > 0 || template == null) {
+      props.put(TemplateRuleIndex.PN_ALLOWED_PATHS, allowed);
+    }
+    return props;
+  }
+}
@@ -29,6 +29,7 @@ import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
 import org.apache.sling.event.jobs.consumer.JobExecutionContext;
 import org.apache.sling.testing.mock.sling.ResourceResolverType;
 
@@ -67,6 +68,9 @@ public class PageStructureJobExecutorTest {
   @Mocked
   private Job job;
 
+  @Mocked
+  private JobManager jobManager;
+
   @Mocked
   private JobExecutionContext jobExecutionContext;
 
@@ -76,6 +80,7 @@ public class PageStructureJobExecutorTest {
   @BeforeEach
   public void beforeEach() {
     context.registerService(StructureRewriteRuleService.class, structureService);
+    context.registerService(JobManager.class, jobManager);
     context.registerInjectActivateService(executor);
     context.load().json("/job/page-content.json", "/content/test");
     context.load().json("/job/structure-job-data.json", ConversionJob.JOB_DATA_LOCATION + "/structure");
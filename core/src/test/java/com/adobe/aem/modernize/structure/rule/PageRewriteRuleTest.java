@@ -36,6 +36,7 @@ import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.jcr.resource.api.JcrResourceConstants;
 import org.apache.sling.testing.mock.sling.ResourceResolverType;
 
+import com.adobe.aem.modernize.impl.EditableTemplateCache;
 import io.wcm.testing.mock.aem.junit5.AemContext;
 import io.wcm.testing.mock.aem.junit5.AemContextExtension;
 import org.junit.jupiter.api.BeforeEach;
@@ -77,6 +78,7 @@ public class PageRewriteRuleTest {
     context.load().json("/structure/page-content.json", "/content/test");
     context.load().json("/structure/page-content.json", "/content/notallowed");
     context.load().json("/structure/conf-template.json", "/conf/aem-modernize/settings/wcm/templates/aem-modernize-home-page");
+    context.registerInjectActivateService(new EditableTemplateCache());
   }
 
   @Test
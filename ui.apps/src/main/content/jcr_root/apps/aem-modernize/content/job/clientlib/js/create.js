@@ -24,6 +24,8 @@
 
     static NO_CONTENT = Granite.I18n.get("There are no items.");
     static EMPTY_ROW = '<tr is="coral-table-row" class="empty-row"><td is="coral-table-cell" alignment="center">' + CreateJobForm.NO_CONTENT + '</td></tr>';
+    // Scans older than this are not used, as the content or rules may have changed since.
+    static SCAN_MAX_AGE = 60 * 60 * 1000;
 
     #ui;
     #$form;
@@ -77,6 +79,61 @@
         .then(this.#getRules)
     }
 
+    // Pages found by a recent completed site scan, keyed by path. Otherwise starts a scan of the root for next time.
+    #getScannedPages = (root) => {
+      const path = Granite.HTTP.getPath(window.location.href);
+      const url = Granite.HTTP.externalize(path + ".scan.json");
+      const params = {
+        reprocess: $("input[name='pageHandling'][value='RESTORE']").is(":checked"),
+        includeSuperTypes: $("input[name='includeSuperTypes']").is(":checked")
+      }
+      return new Promise((resolve) => {
+        if (!root) {
+          resolve({});
+          return;
+        }
+        $.getJSON(url, {...params, path: root}, (data) => {
+          // Scans already queued or running are not started again
+          if (data.status !== "SUCCESS" || !data.finished || Date.now() - data.finished > CreateJobForm.SCAN_MAX_AGE) {
+            $.post(url, {...params, root: root});
+            resolve({});
+            return;
+          }
+          const pages = {};
+          data.pages.forEach((page) => {
+            pages[page.path] = page;
+          });
+          resolve(pages);
+        }).fail((xhr) => {
+          if (xhr.status === 404) {
+            $.post(url, {...params, root: root});
+          }
+          resolve({});
+        });
+      });
+    }
+
+    #populateScannedItem = (page) => {
+      return new Promise((resolve, reject) => {
+        const item = {path: page.path, title: page.title, designPath: page.designPath};
+        const checkDesign = $("input[name='confPath']").length > 0 && item.designPath;
+        item.hasPermission = page.hasPermission && (!checkDesign || page.hasDesignPermission);
+        if (!item.hasPermission) {
+          reject(item);
+          return;
+        }
+        const components = this.#$form.data("aemModernizeComponents") === true;
+        const designs = this.#$form.data("aemModernizeDesigns") === true;
+        const structure = this.#$form.data("aemModernizeStructure") === true;
+        item.componentPaths = components ? page.componentPaths : [];
+        item.componentRules = components ? page.componentRules : [];
+        item.policyPaths = designs ? page.policyPaths : [];
+        item.policyRules = designs ? page.policyRules : [];
+        item.templateRules = structure ? page.templateRules : [];
+        resolve(item);
+      });
+    }
+
     #getPageData = (item) => {
       const path = Granite.HTTP.getPath(window.location.href);
       return new Promise((resolve, reject) => {
@@ -473,7 +530,7 @@
       }
     }
 
-    #addChildren = (pages) => {
+    #addChildren = (pages, scanned = {}) => {
       if (pages.length === 0) {
         return;
       }
@@ -488,7 +545,8 @@
         if (path !== "/content") {
           const item = this.#getItem(path);
           if (!item) {
-            promises.push(this.#populateItem({path: path}).then((item) => {
+            const populate = scanned[path] ? this.#populateScannedItem(scanned[path]) : this.#populateItem({path: path});
+            promises.push(populate.then((item) => {
               return new Promise((resolve) => {
                 this.#addTableRow(item);
                 this.#addHidden(item)
@@ -795,13 +853,15 @@
         $(e.target).closest(".aem-modernize-job-includechildren-dialog").find("button[coral-close]").click();
         _this.#ui.wait();
         const url = Granite.HTTP.externalize(Granite.HTTP.getPath(window.location.href) + ".listchildren.json")
-        const params = $("#aem-modernize-job-includechildren-dialog-form").serialize();
+        const $dialogForm = $("#aem-modernize-job-includechildren-dialog-form");
+        const params = $dialogForm.serialize();
         $.getJSON(url, params, (data) => {
           if (data.total === 0) {
             _this.#ui.clearWait();
             _this.#ui.notify(Granite.I18n.get("Info"), Granite.I18n.get("There were no children for the selected page."));
           } else {
-            _this.#addChildren(data.paths);
+            _this.#getScannedPages($dialogForm.find("[name='path']").val())
+              .then((scanned) => _this.#addChildren(data.paths, scanned));
           }
         }).fail(() => {
           _this.#ui.clearWait();